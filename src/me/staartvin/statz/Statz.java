@@ -1,7 +1,10 @@
 package me.staartvin.statz;
 
 import me.staartvin.statz.api.API;
+import me.staartvin.statz.archive.ArchiveManager;
+import me.staartvin.statz.cache.CacheSnapshotManager;
 import me.staartvin.statz.cache.CachingManager;
+import me.staartvin.statz.cache.OffHeapCacheBackend;
 import me.staartvin.statz.commands.manager.CommandsManager;
 import me.staartvin.statz.config.ConfigHandler;
 import me.staartvin.statz.database.DatabaseConnector;
@@ -12,10 +15,15 @@ import me.staartvin.statz.datamanager.player.PlayerStat;
 import me.staartvin.statz.gui.GUIManager;
 import me.staartvin.statz.hooks.DependencyManager;
 import me.staartvin.statz.importer.ImportManager;
+import me.staartvin.statz.jobs.JobManager;
 import me.staartvin.statz.language.LanguageHandler;
 import me.staartvin.statz.language.StatisticDescriptionConfig;
+import me.staartvin.statz.leaderboard.LeaderboardManager;
 import me.staartvin.statz.listeners.*;
 import me.staartvin.statz.logger.LogManager;
+import me.staartvin.statz.metrics.ListenerWatchdog;
+import me.staartvin.statz.metrics.MetricsManager;
+import me.staartvin.statz.metrics.TimedEventExecutor;
 import me.staartvin.statz.patches.PatchManager;
 import me.staartvin.statz.placeholders.StatzPlaceholders;
 import me.staartvin.statz.statsdisabler.DisableManager;
@@ -26,14 +34,12 @@ import me.staartvin.statz.util.StatzUtil;
 import org.bukkit.ChatColor;
 import org.bukkit.GameMode;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.RegisteredListener;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.*;
 
 /**
  * Main class of Statz Spigot/Bukkit plugin.
@@ -42,6 +48,9 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public class Statz extends JavaPlugin {
 
+    // Number of milliseconds to wait for a running update of the database when Statz is disabled
+    private static final long FINAL_UPDATE_TIMEOUT = 10000;
+
     private DatabaseConnector connector;
     private DataManager dataManager;
     private API statzAPI;
@@ -51,13 +60,21 @@ public class Statz extends JavaPlugin {
     private LogManager logsManager;
     private LanguageHandler langHandler;
     private ImportManager importManager;
+    private JobManager jobManager;
+    private ArchiveManager archiveManager;
     private DisableManager disableManager;
     private PatchManager patchManager;
     private GUIManager guiManager;
 
     private CachingManager cachingManager;
+    private CacheSnapshotManager cacheSnapshotManager;
     private TaskManager taskManager;
     private UpdatePoolManager updatePoolManager;
+    private MetricsManager metricsManager;
+    private ListenerWatchdog listenerWatchdog;
+    private LeaderboardManager leaderboardManager;
+
+    private DistanceTravelledListener distanceTravelledListener;
 
     private StatisticDescriptionConfig statisticDescriptionConfig;
 
@@ -69,6 +86,12 @@ public class Statz extends JavaPlugin {
         // Load config with default values
         this.getConfigHandler().loadConfig();
 
+        // Start recording metrics as soon as possible
+        this.setMetricsManager(new MetricsManager(this));
+
+        // Keep track of the time listeners spend on the main thread
+        this.setListenerWatchdog(new ListenerWatchdog(this));
+
         // Load hooks
         this.setDependencyManager(new DependencyManager(this));
 
@@ -78,6 +101,14 @@ public class Statz extends JavaPlugin {
         // Load data manager as database is loaded!
         this.setDataManager(new DataManager(this));
 
+        // Keep track of leaderboards
+        this.setLeaderboardManager(new LeaderboardManager(this));
+
+        // Fill the cache from the snapshot that was saved when Statz was disabled. This is loaded before anything
+        // can write to the database, as every write increases the flush epoch.
+        this.setCacheSnapshotManager(new CacheSnapshotManager(this));
+        this.getCacheSnapshotManager().load();
+
         // Load API
         this.setStatzAPI(new API(this));
 
@@ -122,6 +153,13 @@ public class Statz extends JavaPlugin {
 
         this.setImportManager(new ImportManager(this));
 
+        // Runs imports and transfers, and lets them continue after a restart.
+        this.setJobManager(new JobManager(this));
+
+        // Keep track of players whose data is archived, so it is restored when it is needed.
+        this.setArchiveManager(new ArchiveManager(this));
+        this.getArchiveManager().load();
+
         this.getLogger().info(this.getDescription().getFullName() + " has been enabled!");
 
         this.getLogsManager().writeToLogFile("Enabled Statz!");
@@ -141,7 +179,13 @@ public class Statz extends JavaPlugin {
         }
 
         // Set up caching manager
-        this.setCachingManager(new CachingManager());
+        if (this.getConfigHandler().isOffHeapCacheEnabled()) {
+            this.setCachingManager(new CachingManager(new OffHeapCacheBackend(
+                    this.getConfigHandler().getOffHeapCacheHeapPlayers(),
+                    this.getConfigHandler().getOffHeapCacheChunkSize())));
+        } else {
+            this.setCachingManager(new CachingManager());
+        }
 
         // Start update pool manager.
         this.setUpdatePoolManager(new UpdatePoolManager(this));
@@ -152,6 +196,15 @@ public class Statz extends JavaPlugin {
         // Run task to sync database with update list.
         this.getTaskManager().startUpdateDatabaseTask();
 
+        // Periodically write metrics to the logs folder.
+        this.getTaskManager().startMetricsSnapshotTask();
+
+        // Enforce the main thread budget of listeners.
+        this.getTaskManager().startListenerWatchdog();
+
+        // Serve metrics to Prometheus if enabled.
+        this.getMetricsManager().startExporter();
+
         // Create Statistic Description handler
         this.setStatisticDescriptionConfig(new StatisticDescriptionConfig(this));
 
@@ -167,12 +220,53 @@ public class Statz extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        // Stop serving metrics.
+        this.getMetricsManager().stopExporter();
+
         debugMessage(ChatColor.RED + "Saving updates to database!");
 
-        // Schedule task to update database for the last time.
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.execute(new UpdateDatabaseTask(this));
-        scheduler.shutdown();
+        // Distance that was sampled while the listener was degraded should be saved as well.
+        if (distanceTravelledListener != null) {
+            distanceTravelledListener.recordPendingDistances();
+        }
+
+        // Stop threads that load data asynchronously.
+        this.getDataManager().shutdown();
+
+        // A periodic update of the database may still be running, so give it some time to finish.
+        long deadline = System.currentTimeMillis() + FINAL_UPDATE_TIMEOUT;
+
+        while (UpdatePoolManager.isForcingPool && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Update database for the last time. This runs on this thread, so it is done before Statz is disabled.
+        UpdateDatabaseTask finalUpdate = new UpdateDatabaseTask(this);
+        finalUpdate.run();
+
+        if (this.getCacheSnapshotManager() != null) {
+            // Only save the cache if it matches the database.
+            if (finalUpdate.hasWrittenAllUpdates()) {
+                this.getCacheSnapshotManager().save();
+            } else {
+                this.getLogger().warning("Not all updates were written to the database, so the cache is not saved.");
+                this.getCacheSnapshotManager().deleteSnapshot();
+            }
+        }
+
+        // Release the memory of the cache, which may be outside of the heap.
+        if (this.getCachingManager() != null) {
+            this.getCachingManager().close();
+        }
+
+        if (this.getDatabaseConnector() != null) {
+            this.getDatabaseConnector().close();
+        }
 
         this.getLogger().info(this.getDescription().getFullName() + " has been disabled!");
 
@@ -186,118 +280,125 @@ public class Statz extends JavaPlugin {
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.DEATHS)) {
-            this.getServer().getPluginManager().registerEvents(new DeathsListener(this), this);
+            this.registerListener(new DeathsListener(this), PlayerStat.DEATHS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.JOINS)) {
-            this.getServer().getPluginManager().registerEvents(new JoinsListener(this), this);
+            this.registerListener(new JoinsListener(this), PlayerStat.JOINS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ITEMS_CAUGHT)) {
-            this.getServer().getPluginManager().registerEvents(new ItemsCaughtListener(this), this);
+            this.registerListener(new ItemsCaughtListener(this), PlayerStat.ITEMS_CAUGHT);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.BLOCKS_PLACED)) {
-            this.getServer().getPluginManager().registerEvents(new BlocksPlacedListener(this), this);
+            this.registerListener(new BlocksPlacedListener(this), PlayerStat.BLOCKS_PLACED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.BLOCKS_BROKEN)) {
-            this.getServer().getPluginManager().registerEvents(new BlocksBrokenListener(this), this);
+            this.registerListener(new BlocksBrokenListener(this), PlayerStat.BLOCKS_BROKEN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.KILLS_MOBS)) {
-            this.getServer().getPluginManager().registerEvents(new KillsMobsListener(this), this);
+            this.registerListener(new KillsMobsListener(this), PlayerStat.KILLS_MOBS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.KILLS_PLAYERS)) {
-            this.getServer().getPluginManager().registerEvents(new KillsPlayersListener(this), this);
+            this.registerListener(new KillsPlayersListener(this), PlayerStat.KILLS_PLAYERS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.FOOD_EATEN)) {
-            this.getServer().getPluginManager().registerEvents(new FoodEatenListener(this), this);
+            this.registerListener(new FoodEatenListener(this), PlayerStat.FOOD_EATEN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.DAMAGE_TAKEN)) {
-            this.getServer().getPluginManager().registerEvents(new DamageTakenListener(this), this);
+            this.registerListener(new DamageTakenListener(this), PlayerStat.DAMAGE_TAKEN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.TIMES_SHORN)) {
-            this.getServer().getPluginManager().registerEvents(new TimesShornListener(this), this);
+            this.registerListener(new TimesShornListener(this), PlayerStat.TIMES_SHORN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.DISTANCE_TRAVELLED)) {
-            this.getServer().getPluginManager().registerEvents(new DistanceTravelledListener(this), this);
-            this.getServer().getPluginManager().registerEvents(new DistanceTravelledVehicleListener(this), this);
-            this.getServer().getPluginManager().registerEvents(new DistanceTravelledToggleGlideListener(this), this);
+            distanceTravelledListener = new DistanceTravelledListener(this);
+
+            this.registerListener(distanceTravelledListener, PlayerStat.DISTANCE_TRAVELLED);
+            this.registerListener(new DistanceTravelledVehicleListener(this), PlayerStat.DISTANCE_TRAVELLED);
+            this.registerListener(new DistanceTravelledToggleGlideListener(this), PlayerStat.DISTANCE_TRAVELLED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ITEMS_CRAFTED)) {
-            this.getServer().getPluginManager().registerEvents(new ItemsCraftedListener(this), this);
+            this.registerListener(new ItemsCraftedListener(this), PlayerStat.ITEMS_CRAFTED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.XP_GAINED)) {
-            this.getServer().getPluginManager().registerEvents(new XPGainedListener(this), this);
+            this.registerListener(new XPGainedListener(this), PlayerStat.XP_GAINED);
         }
 
         // Important listeners that should always be on.
         this.getServer().getPluginManager().registerEvents(new JoinPlayerListener(this), this);
         this.getServer().getPluginManager().registerEvents(new QuitListener(this), this);
 
+        // Load players while they are logging in, so their data is cached when they join.
+        if (this.getConfigHandler().isPreLoginWarmUpEnabled()) {
+            this.getServer().getPluginManager().registerEvents(new PreLoginListener(this), this);
+        }
+
         // Check for votes if the stat is not disabled and PluginLibrary is active.
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.VOTES) && this.getDependencyManager().isPluginLibraryLoaded()) {
-            this.getServer().getPluginManager().registerEvents(new VotesListener(this), this);
+            this.registerListener(new VotesListener(this), PlayerStat.VOTES);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ARROWS_SHOT)) {
-            this.getServer().getPluginManager().registerEvents(new ArrowsShotListener(this), this);
+            this.registerListener(new ArrowsShotListener(this), PlayerStat.ARROWS_SHOT);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ENTERED_BEDS)) {
-            this.getServer().getPluginManager().registerEvents(new EnteredBedsListener(this), this);
+            this.registerListener(new EnteredBedsListener(this), PlayerStat.ENTERED_BEDS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.COMMANDS_PERFORMED)) {
-            this.getServer().getPluginManager().registerEvents(new CommandsPerformedListener(this), this);
+            this.registerListener(new CommandsPerformedListener(this), PlayerStat.COMMANDS_PERFORMED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.TIMES_KICKED)) {
-            this.getServer().getPluginManager().registerEvents(new TimesKickedListener(this), this);
+            this.registerListener(new TimesKickedListener(this), PlayerStat.TIMES_KICKED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.TOOLS_BROKEN)) {
-            this.getServer().getPluginManager().registerEvents(new ToolsBrokenListener(this), this);
+            this.registerListener(new ToolsBrokenListener(this), PlayerStat.TOOLS_BROKEN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.EGGS_THROWN)) {
-            this.getServer().getPluginManager().registerEvents(new EggsThrownListener(this), this);
+            this.registerListener(new EggsThrownListener(this), PlayerStat.EGGS_THROWN);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.WORLDS_CHANGED)) {
-            this.getServer().getPluginManager().registerEvents(new WorldsChangedListener(this), this);
+            this.registerListener(new WorldsChangedListener(this), PlayerStat.WORLDS_CHANGED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.BUCKETS_FILLED)) {
-            this.getServer().getPluginManager().registerEvents(new BucketsFilledListener(this), this);
+            this.registerListener(new BucketsFilledListener(this), PlayerStat.BUCKETS_FILLED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.BUCKETS_EMPTIED)) {
-            this.getServer().getPluginManager().registerEvents(new BucketsEmptiedListener(this), this);
+            this.registerListener(new BucketsEmptiedListener(this), PlayerStat.BUCKETS_EMPTIED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ITEMS_PICKED_UP)) {
-            this.getServer().getPluginManager().registerEvents(new ItemsPickedUpListener(this), this);
+            this.registerListener(new ItemsPickedUpListener(this), PlayerStat.ITEMS_PICKED_UP);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.ITEMS_DROPPED)) {
-            this.getServer().getPluginManager().registerEvents(new ItemsDroppedListener(this), this);
+            this.registerListener(new ItemsDroppedListener(this), PlayerStat.ITEMS_DROPPED);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.TELEPORTS)) {
-            this.getServer().getPluginManager().registerEvents(new TeleportsListener(this), this);
+            this.registerListener(new TeleportsListener(this), PlayerStat.TELEPORTS);
         }
 
         if (!this.getConfigHandler().isStatDisabled(PlayerStat.VILLAGER_TRADES)) {
-            this.getServer().getPluginManager().registerEvents(new VillagerTradesListener(this), this);
+            this.registerListener(new VillagerTradesListener(this), PlayerStat.VILLAGER_TRADES);
         }
 
         for (PlayerStat stat : this.getConfigHandler().getDisabledStats()) {
@@ -308,6 +409,30 @@ public class Statz extends JavaPlugin {
         this.getServer().getPluginManager().registerEvents(new ConfirmTransferCommandListener(this), this);
     }
 
+    /**
+     * Register a listener that records the given statistic. If metrics or the watchdog are enabled, the time the
+     * listener spends on the main thread is recorded for the statistic.
+     *
+     * @param listener Listener to register
+     * @param stat     Statistic the listener records
+     */
+    private void registerListener(Listener listener, PlayerStat stat) {
+        if (!this.getMetricsManager().isEnabled() && !this.getListenerWatchdog().isEnabled()) {
+            this.getServer().getPluginManager().registerEvents(listener, this);
+            return;
+        }
+
+        for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry : this.getPluginLoader()
+                .createRegisteredListeners(listener, this).entrySet()) {
+            for (RegisteredListener registeredListener : entry.getValue()) {
+                this.getServer().getPluginManager().registerEvent(entry.getKey(), listener,
+                        registeredListener.getPriority(), new TimedEventExecutor(registeredListener, stat,
+                                this.getMetricsManager(), this.getListenerWatchdog()), this,
+                        registeredListener.isIgnoringCancelled());
+            }
+        }
+    }
+
     public void debugMessage(String message) {
         // Check if debug is enabled
         if (!this.getConfigHandler().isDebugEnabled())
@@ -540,6 +665,22 @@ public class Statz extends JavaPlugin {
         this.importManager = importManager;
     }
 
+    public JobManager getJobManager() {
+        return jobManager;
+    }
+
+    public void setJobManager(JobManager jobManager) {
+        this.jobManager = jobManager;
+    }
+
+    public ArchiveManager getArchiveManager() {
+        return archiveManager;
+    }
+
+    public void setArchiveManager(ArchiveManager archiveManager) {
+        this.archiveManager = archiveManager;
+    }
+
     public DisableManager getDisableManager() {
         return disableManager;
     }
@@ -572,6 +713,14 @@ public class Statz extends JavaPlugin {
         this.cachingManager = cachingManager;
     }
 
+    public CacheSnapshotManager getCacheSnapshotManager() {
+        return cacheSnapshotManager;
+    }
+
+    public void setCacheSnapshotManager(CacheSnapshotManager cacheSnapshotManager) {
+        this.cacheSnapshotManager = cacheSnapshotManager;
+    }
+
     public TaskManager getTaskManager() {
         return taskManager;
     }
@@ -595,4 +744,28 @@ public class Statz extends JavaPlugin {
     public void setStatisticDescriptionConfig(StatisticDescriptionConfig statisticDescriptionConfig) {
         this.statisticDescriptionConfig = statisticDescriptionConfig;
     }
+
+    public LeaderboardManager getLeaderboardManager() {
+        return leaderboardManager;
+    }
+
+    public void setLeaderboardManager(LeaderboardManager leaderboardManager) {
+        this.leaderboardManager = leaderboardManager;
+    }
+
+    public MetricsManager getMetricsManager() {
+        return metricsManager;
+    }
+
+    public void setMetricsManager(MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+    }
+
+    public ListenerWatchdog getListenerWatchdog() {
+        return listenerWatchdog;
+    }
+
+    public void setListenerWatchdog(ListenerWatchdog listenerWatchdog) {
+        this.listenerWatchdog = listenerWatchdog;
+    }
 }
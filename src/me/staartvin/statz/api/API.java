@@ -1,16 +1,17 @@
 package me.staartvin.statz.api;
 
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.database.datatype.RowRequirement;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import me.staartvin.statz.hooks.DependencyHandler;
 import me.staartvin.statz.hooks.StatzDependency;
+import me.staartvin.statz.leaderboard.Leaderboard;
 import org.bukkit.Statistic;
 
-import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * API class of Statz that other plugins can use to retrieve information from Statz.
@@ -35,32 +36,19 @@ public class API {
 	 * @return the total count of a stat. E.g. the total amount of killed players on a world (or on all worlds).
 	 */
 	public Double getTotalOf(final PlayerStat statType, final UUID uuid, final String worldName) {
-		PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid, statType);
+		PlayerInfo info = plugin.getDataManager().getCachedPlayerInfo(uuid, statType);
 
-		double value = 0;
-
-        List<Query> results = info.getDataOfPlayerStat(statType);
-
-		if (results == null || results.isEmpty())
-			return value;
+		if (info == null) {
+			return null;
+		}
 
 		if (worldName != null) {
 			// Add every value that is in the proper world
-			for (Query result : results) {
-
-                if (result.meetsRequirement(new RowRequirement("world", worldName))) {
-					value += Double.parseDouble(result.getValue("value").toString());
-				}
-			}
-		} else {
-			// Add every value regardless of the world
-			for (Query result : results) {
-				value += Double.parseDouble(result.getValue("value").toString());
-			}
+			return info.getTotalValue(statType, new RowRequirement("world", worldName));
 		}
 
-		return value;
-
+		// Add every value regardless of the world
+		return info.getTotalValue(statType);
 	}
 
 	/**
@@ -78,7 +66,7 @@ public class API {
 	 * @return the total count taking the given conditions in consideration or null if no data for the given player was found.
 	 */
 	public Double getSpecificData(final PlayerStat statType, final UUID uuid, final RowRequirement... conditions) {
-		PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid, statType);
+		PlayerInfo info = plugin.getDataManager().getCachedPlayerInfo(uuid, statType);
 
         if (info == null) {
             return -1.0;
@@ -87,6 +75,63 @@ public class API {
         return info.getTotalValue(statType, conditions);
 	}
 
+	/**
+	 * Get the total value of a statistic of a player without blocking the calling thread. The conditions work the
+	 * same as in {@link #getSpecificData(PlayerStat, UUID, RowRequirement...)}.
+	 * <br>If the data of the player is cached, the returned future is already completed. Otherwise, the total is
+	 * computed by the database, without loading all data of the player.
+	 * @param statType The stat to get info of
+	 * @param uuid UUID of the Player
+	 * @param conditions Extra conditions that need to be met.
+	 * @return a future that is completed with the total count taking the given conditions in consideration.
+	 */
+	public CompletableFuture<Double> getTotalAsync(final PlayerStat statType, final UUID uuid,
+			final RowRequirement... conditions) {
+		return plugin.getDataManager().getTotalAsync(uuid, statType, conditions);
+	}
+
+	/**
+	 * Get the totals of a statistic of a player per value of a column without blocking the calling thread.
+	 * <br>For example, to get the number of kills of a player per type of mob:
+	 * <br><code>getTotalsPerValueAsync(PlayerStat.KILLS_MOBS, uuid of player, "mob");</code>
+	 * <br>Like {@link #getTotalAsync(PlayerStat, UUID, RowRequirement...)}, the totals are computed by the database
+	 * if the data of the player is not cached.
+	 * @param statType The stat to get info of
+	 * @param uuid UUID of the Player
+	 * @param column Column to group the totals by
+	 * @param conditions Extra conditions that need to be met.
+	 * @return a future that is completed with the total count per value of the column.
+	 */
+	public CompletableFuture<Map<String, Double>> getTotalsPerValueAsync(final PlayerStat statType, final UUID uuid,
+			final String column, final RowRequirement... conditions) {
+		return plugin.getDataManager().getTotalsPerValueAsync(uuid, statType, column, conditions);
+	}
+
+	/**
+	 * Load all data of a player into the cache of Statz without blocking the calling thread. Once the returned
+	 * future is completed, {@link #getSpecificData(PlayerStat, UUID, RowRequirement...)} can be used.
+	 * @param uuid UUID of the Player
+	 * @return a future that is completed when the data is loaded.
+	 */
+	public CompletableFuture<PlayerInfo> loadPlayerDataAsync(final UUID uuid) {
+		return plugin.getDataManager().loadPlayerDataAsync(uuid);
+	}
+
+	/**
+	 * Get a leaderboard that ranks all players by the total value of a statistic. The leaderboard is loaded from
+	 * the database the first time it is requested and is kept up-to-date afterwards.
+	 * <br>For example, to rank players by the number of zombies they killed:
+	 * <br><code>getLeaderboard(PlayerStat.KILLS_MOBS, new RowRequirement("mob", "ZOMBIE"));</code>
+	 * @param statType The stat to rank players by
+	 * @param filter Requirement that rows should meet to be counted, or null to count all rows.
+	 * @return a future that is completed with the leaderboard once it is loaded.
+	 * @throws IllegalArgumentException if the statistic has no values or the filter refers to an unknown column.
+	 */
+	public CompletableFuture<Leaderboard> getLeaderboard(final PlayerStat statType, final RowRequirement filter)
+			throws IllegalArgumentException {
+		return plugin.getLeaderboardManager().loadLeaderboard(statType, filter);
+	}
+
 	/**
 	 * Get a dependency handler of Statz. Since Statz also 'tracks' data of other plugins (in reality it provides a way to connect to other plugins,
 	 * but does not actually store the information in its database). 
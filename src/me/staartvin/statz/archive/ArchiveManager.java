@@ -0,0 +1,428 @@
+package me.staartvin.statz.archive;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the rows of players that have not been online for a long time out of the statistic tables and into
+ * {@link #ARCHIVE_TABLE}, where all rows of a player are stored as a single compressed value (see
+ * {@link PlayerArchive}). This keeps the statistic tables and their indexes small.
+ * <br>
+ * <br>
+ * An archived player is restored into the statistic tables as soon as their data is requested, e.g. when they log
+ * in or someone looks them up. Until then, archived players do not show up on leaderboards.
+ */
+public class ArchiveManager {
+
+    /**
+     * Table that holds the rows of archived players.
+     */
+    public static final String ARCHIVE_TABLE = DatabaseConnector.prefix + "archive";
+
+    private final Statz plugin;
+
+    // Players whose rows are in the archive
+    private final Set<UUID> archivedPlayers = ConcurrentHashMap.newKeySet();
+
+    // Only a single player is restored at the same time, so a player is never restored twice.
+    private final Object restoreLock = new Object();
+
+    // Whether the archive table exists, so purges can remove rows from it.
+    private volatile boolean loaded = false;
+
+    public ArchiveManager(Statz plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Create the archive table if it does not exist and load which players are archived. This is called when Statz
+     * is enabled.
+     */
+    public void load() {
+        Connection connection = plugin.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            plugin.getLogger().severe("Could not load archived players, as Statz is not connected to the database.");
+            return;
+        }
+
+        String dataType = plugin.getDatabaseConnector().getDialect().getBinaryType();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + ARCHIVE_TABLE + " (uuid VARCHAR(36) NOT NULL, " +
+                    "data " + dataType + " NOT NULL, archived_at BIGINT NOT NULL, PRIMARY KEY (uuid))");
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT uuid FROM " + ARCHIVE_TABLE)) {
+                while (resultSet.next()) {
+                    archivedPlayers.add(UUID.fromString(resultSet.getString(1)));
+                }
+            }
+
+            loaded = true;
+        } catch (SQLException | IllegalArgumentException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load archived players", e);
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+
+        if (!archivedPlayers.isEmpty()) {
+            plugin.debugMessage("Loaded " + archivedPlayers.size() + " archived players.");
+        }
+    }
+
+    /**
+     * Check whether the rows of a player are in the archive.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player is archived.
+     */
+    public boolean isArchived(UUID uuid) {
+        return uuid != null && archivedPlayers.contains(uuid);
+    }
+
+    /**
+     * Mark players as archived, after their rows were written to the archive by something else than this manager,
+     * such as a transfer between databases.
+     *
+     * @param uuids UUIDs of the archived players
+     */
+    public void addArchivedPlayers(Collection<UUID> uuids) {
+        archivedPlayers.addAll(uuids);
+    }
+
+    /**
+     * Get all players whose rows are in the archive.
+     *
+     * @return the UUIDs of the archived players.
+     */
+    public Set<UUID> getArchivedPlayers() {
+        return Collections.unmodifiableSet(archivedPlayers);
+    }
+
+    /**
+     * Move the rows of a group of players to the archive. The rows of all players are copied to the archive and
+     * removed from the statistic tables in a single transaction. Players that are already archived or have no rows
+     * are skipped. This runs on the calling thread, so it should not be called on the main thread.
+     *
+     * @param uuids UUIDs of the players to archive
+     * @return the number of rows that were moved to the archive, per player that was archived.
+     * @throws SQLException if the rows could not be archived. Nothing is changed in that case.
+     */
+    public Map<UUID, Integer> archivePlayers(List<UUID> uuids) throws SQLException {
+        List<String> uuidStrings = uuids.stream().filter(uuid -> !archivedPlayers.contains(uuid))
+                .map(UUID::toString).collect(Collectors.toList());
+
+        if (uuidStrings.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        DatabaseConnector connector = plugin.getDatabaseConnector();
+        Map<UUID, Map<String, List<Query>>> rowsPerPlayer = new HashMap<>();
+        Map<UUID, Integer> archivedRows = new HashMap<>();
+
+        // Updates should not be written while the rows are being moved, as they would not end up in the archive.
+        synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+            for (PlayerStat statType : PlayerStat.values()) {
+                Table table = DatabaseConnector.getTable(statType);
+
+                if (table == null || table.getColumn("uuid") == null) {
+                    continue;
+                }
+
+                int rowCount = connector.forEachObject(new Selection(table).whereIn("uuid", uuidStrings), row -> {
+                    UUID uuid = row.getUUID();
+
+                    if (uuid == null) {
+                        return;
+                    }
+
+                    // The row gets a new id when it is restored.
+                    row.removeColumn("id");
+
+                    rowsPerPlayer.computeIfAbsent(uuid, k -> new LinkedHashMap<>())
+                            .computeIfAbsent(statType.name(), k -> new ArrayList<>()).add(row);
+                    archivedRows.merge(uuid, 1, Integer::sum);
+                });
+
+                if (rowCount < 0) {
+                    throw new SQLException("Could not read rows of " + table.getTableName() + " to archive.");
+                }
+            }
+
+            if (rowsPerPlayer.isEmpty()) {
+                return archivedRows;
+            }
+
+            List<String> statements = new ArrayList<>(rowsPerPlayer.size());
+            long archivedAt = System.currentTimeMillis();
+
+            for (Map.Entry<UUID, Map<String, List<Query>>> entry : rowsPerPlayer.entrySet()) {
+                statements.add(getArchiveStatement(entry.getKey(), entry.getValue(), archivedAt));
+            }
+
+            connector.purgeData(new ArrayList<>(rowsPerPlayer.keySet()),
+                    plugin.getCacheSnapshotManager().withFlushEpochStatement(statements));
+
+            archivedPlayers.addAll(rowsPerPlayer.keySet());
+            plugin.getCacheSnapshotManager().onFlushed(rowsPerPlayer.keySet());
+        }
+
+        for (UUID uuid : rowsPerPlayer.keySet()) {
+            plugin.getLeaderboardManager().removePlayer(uuid);
+            plugin.getCachingManager().removeCachedData(uuid);
+        }
+
+        return archivedRows;
+    }
+
+    /**
+     * Remove all data of a group of players like {@link DatabaseConnector#purgeData(List, List)}, including their rows
+     * in the archive. Everything is removed in a single transaction, after which the players are no longer archived.
+     * The caller should hold the flush lock of the {@link me.staartvin.statz.datamanager.LeaderboardManager}.
+     *
+     * @param uuids      UUIDs of the players to remove data of
+     * @param statements Statements to perform in the same transaction
+     * @return the number of rows that were removed from the statistic tables.
+     * @throws SQLException if the data could not be removed. Nothing is changed in that case.
+     */
+    public int purgePlayers(List<UUID> uuids, List<String> statements) throws SQLException {
+        List<String> purgeStatements = new ArrayList<>(statements);
+
+        // Without the archive table, there is nothing to remove from it.
+        if (loaded && !uuids.isEmpty()) {
+            purgeStatements.add(getPurgeStatement(uuids));
+        }
+
+        int deletedRows = plugin.getDatabaseConnector().purgeData(uuids, purgeStatements);
+
+        archivedPlayers.removeAll(uuids);
+
+        return deletedRows;
+    }
+
+    /**
+     * Move the rows of a player from the archive back to the statistic tables, if the player is archived. Rows that
+     * were written for the player since it was archived are kept, as the archived rows are added to them. This
+     * runs on the calling thread, so it should not be called on the main thread.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player is not archived (anymore), false if the player could not be restored.
+     */
+    public boolean restorePlayer(UUID uuid) {
+        if (!this.isArchived(uuid)) {
+            return true;
+        }
+
+        synchronized (restoreLock) {
+            // Another thread may have restored the player while this thread was waiting.
+            if (!this.isArchived(uuid)) {
+                return true;
+            }
+
+            try {
+                Map<String, List<Query>> archivedRows = this.readArchive(uuid);
+
+                if (archivedRows == null) {
+                    // There is nothing to restore.
+                    archivedPlayers.remove(uuid);
+                    return true;
+                }
+
+                Map<PlayerStat, List<Query>> rows = new LinkedHashMap<>();
+                Map<Table, List<Query>> batches = new LinkedHashMap<>();
+
+                for (Map.Entry<String, List<Query>> entry : archivedRows.entrySet()) {
+                    PlayerStat statType;
+
+                    try {
+                        statType = PlayerStat.valueOf(entry.getKey());
+                    } catch (IllegalArgumentException e) {
+                        plugin.getLogger().warning("Archive of " + uuid + " contains rows of unknown statistic " +
+                                entry.getKey() + ", which are not restored.");
+                        continue;
+                    }
+
+                    Table table = DatabaseConnector.getTable(statType);
+
+                    if (table == null) {
+                        continue;
+                    }
+
+                    rows.put(statType, entry.getValue());
+                    batches.put(table, entry.getValue());
+                }
+
+                synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                    // The player may have been purged while the archive was read.
+                    if (!archivedPlayers.contains(uuid)) {
+                        return true;
+                    }
+
+                    if (!plugin.getDatabaseConnector().setBatchObjects(batches, DatabaseConnector.SET_OPERATION.ADD,
+                            plugin.getCacheSnapshotManager().withFlushEpochStatement(Collections.singletonList(
+                                    "DELETE FROM " + ARCHIVE_TABLE + " WHERE uuid = '" + uuid + "'")))) {
+                        return false;
+                    }
+
+                    archivedPlayers.remove(uuid);
+                    plugin.getCacheSnapshotManager().onFlushed(Collections.singletonList(uuid));
+
+                    for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+                        plugin.getLeaderboardManager().addFlushedQueries(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+                    if (!plugin.getCachingManager().isPlayerCacheLoaded(uuid, entry.getKey())) {
+                        continue;
+                    }
+
+                    for (Query row : entry.getValue()) {
+                        plugin.getCachingManager().addCachedQuery(entry.getKey(), row, uuid);
+                    }
+                }
+
+                plugin.debugMessage("Restored archived player " + uuid);
+
+                return true;
+            } catch (SQLException | IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not restore archived player " + uuid, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read a page of the archive of another database, in the order of the uuids of the players. This is used to copy
+     * the archive when transferring data between databases. This runs on the calling thread, so it should not be
+     * called on the main thread.
+     *
+     * @param source Database to read the archive of
+     * @param after  UUID of the player after which the page starts, or null to start at the first player
+     * @param limit  Maximum number of players to read
+     * @return a statement per player that stores their archive in the database of Statz, by the uuid of the player.
+     * The map is empty if the source database has no archive.
+     * @throws SQLException if the archive could not be read.
+     */
+    public static Map<UUID, String> readArchiveStatements(DatabaseConnector source, String after, int limit)
+            throws SQLException {
+        Connection connection = source.getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Could not connect to the database to read the archive of.");
+        }
+
+        Map<UUID, String> statements = new LinkedHashMap<>();
+
+        try {
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, ARCHIVE_TABLE, null)) {
+                if (!tables.next()) {
+                    return statements;
+                }
+            }
+
+            try (PreparedStatement select = connection.prepareStatement("SELECT uuid, data, archived_at FROM " +
+                    ARCHIVE_TABLE + (after == null ? "" : " WHERE uuid > ?") + " ORDER BY uuid LIMIT " + limit)) {
+                if (after != null) {
+                    select.setString(1, after);
+                }
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        UUID uuid = UUID.fromString(resultSet.getString(1));
+
+                        statements.put(uuid, getArchiveStatement(uuid, resultSet.getBytes(2), resultSet.getLong(3)));
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Archive contains an invalid uuid", e);
+        } finally {
+            source.releaseConnection(connection);
+        }
+
+        return statements;
+    }
+
+    // Read the archived rows of a player, or null if the player is not in the archive.
+    private Map<String, List<Query>> readArchive(UUID uuid) throws SQLException, IOException {
+        Connection connection = plugin.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try (PreparedStatement select = connection.prepareStatement("SELECT data FROM " + ARCHIVE_TABLE + " WHERE " +
+                "uuid = ?")) {
+            select.setString(1, uuid.toString());
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next() ? PlayerArchive.decompress(resultSet.getBytes(1)) : null;
+            }
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Get the statement that stores the rows of a player in the archive.
+     *
+     * @param uuid       UUID of the player
+     * @param rows       Rows of the player per name of a statistic
+     * @param archivedAt Time at which the player is archived, in milliseconds
+     * @return an INSERT statement for {@link #ARCHIVE_TABLE}.
+     */
+    public static String getArchiveStatement(UUID uuid, Map<String, List<Query>> rows, long archivedAt) {
+        return getArchiveStatement(uuid, PlayerArchive.compress(rows), archivedAt);
+    }
+
+    private static String getArchiveStatement(UUID uuid, byte[] data, long archivedAt) {
+        return "INSERT INTO " + ARCHIVE_TABLE + " (uuid, data, archived_at) VALUES ('" + uuid + "', " +
+                toLiteral(data) + ", " + archivedAt + ")";
+    }
+
+    /**
+     * Get the statement that removes the archived rows of a group of players.
+     *
+     * @param uuids UUIDs of the players
+     * @return a DELETE statement for {@link #ARCHIVE_TABLE}.
+     */
+    public static String getPurgeStatement(Collection<UUID> uuids) {
+        return "DELETE FROM " + ARCHIVE_TABLE + " WHERE uuid IN (" + uuids.stream().map(uuid -> "'" + uuid + "'")
+                .collect(Collectors.joining(", ")) + ")";
+    }
+
+    // Hexadecimal literal of binary data, which MySQL, SQLite and H2 understand.
+    private static String toLiteral(byte[] data) {
+        StringBuilder literal = new StringBuilder(data.length * 2 + 3).append("X'");
+
+        for (byte b : data) {
+            literal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return literal.append("'").toString();
+    }
+}
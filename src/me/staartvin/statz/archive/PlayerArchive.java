@@ -0,0 +1,137 @@
+package me.staartvin.statz.archive;
+
+import me.staartvin.statz.database.datatype.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts the rows of a player to a compressed block of bytes and back, so they can be stored in the archive. The
+ * rows are grouped by the name of the statistic they belong to. The column names of a statistic are written once,
+ * after which every row only contains its values.
+ * <br>
+ * <br>
+ * Values are stored as text, which is also how a {@link Query} holds them.
+ */
+public class PlayerArchive {
+
+    // Version of the format, so older archives can still be read when the format changes.
+    private static final int FORMAT_VERSION = 1;
+
+    private PlayerArchive() {
+    }
+
+    /**
+     * Compress the rows of a player.
+     *
+     * @param rows Rows of the player per name of a statistic
+     * @return the compressed rows.
+     * @throws IllegalArgumentException if rows is null.
+     */
+    public static byte[] compress(Map<String, List<Query>> rows) throws IllegalArgumentException {
+        if (rows == null) {
+            throw new IllegalArgumentException("Rows cannot be null.");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(rows.size());
+
+            for (Map.Entry<String, List<Query>> entry : rows.entrySet()) {
+                Set<String> columns = new LinkedHashSet<>();
+
+                for (Query row : entry.getValue()) {
+                    columns.addAll(row.getData().keySet());
+                }
+
+                output.writeUTF(entry.getKey());
+                output.writeInt(columns.size());
+
+                for (String column : columns) {
+                    output.writeUTF(column);
+                }
+
+                output.writeInt(entry.getValue().size());
+
+                for (Query row : entry.getValue()) {
+                    for (String column : columns) {
+                        Object value = row.getValue(column);
+
+                        output.writeBoolean(value != null);
+
+                        if (value != null) {
+                            output.writeUTF(value.toString());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail.
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompress rows that were compressed with {@link #compress(Map)}.
+     *
+     * @param data Compressed rows
+     * @return the rows per name of a statistic, in the order they were compressed.
+     * @throws IOException if the data is not a valid archive.
+     */
+    public static Map<String, List<Query>> decompress(byte[] data) throws IOException {
+        Map<String, List<Query>> rows = new LinkedHashMap<>();
+
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            int version = input.readInt();
+
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown archive format version " + version);
+            }
+
+            int statCount = input.readInt();
+
+            for (int i = 0; i < statCount; i++) {
+                String statName = input.readUTF();
+                String[] columns = new String[input.readInt()];
+
+                for (int j = 0; j < columns.length; j++) {
+                    columns[j] = input.readUTF();
+                }
+
+                int rowCount = input.readInt();
+                List<Query> statRows = new ArrayList<>(rowCount);
+
+                for (int j = 0; j < rowCount; j++) {
+                    Query row = new Query();
+
+                    for (String column : columns) {
+                        if (input.readBoolean()) {
+                            row.setValue(column, input.readUTF());
+                        }
+                    }
+
+                    statRows.add(row);
+                }
+
+                rows.put(statName, statRows);
+            }
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,82 @@
+package me.staartvin.statz.cache;
+
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage of the cached data of players that is used by the {@link CachingManager}. Implementations must be safe to
+ * use from several threads.
+ */
+public interface CacheBackend {
+
+    /**
+     * Get the cached data of a player.
+     *
+     * @param uuid UUID of the player
+     * @return the cached data, or null if the player is not cached.
+     */
+    PlayerInfo get(UUID uuid);
+
+    /**
+     * Get the cached data of a player, without marking it as recently used. This is meant for reading the data of
+     * many players at once, for example to save the cache.
+     *
+     * @param uuid UUID of the player
+     * @return the cached data, or null if the player is not cached.
+     */
+    PlayerInfo peek(UUID uuid);
+
+    /**
+     * Store the data of a player, replacing any cached data of the player.
+     *
+     * @param uuid UUID of the player
+     * @param data Data to store
+     */
+    void put(UUID uuid, PlayerInfo data);
+
+    /**
+     * Change the cached data of a player. If the player is not cached, empty data is created for the player first.
+     * No other changes are made to the data of the player while the update runs.
+     *
+     * @param uuid   UUID of the player
+     * @param update Change to make
+     */
+    void update(UUID uuid, Consumer<PlayerInfo> update);
+
+    /**
+     * Remove the cached data of a player.
+     *
+     * @param uuid UUID of the player
+     */
+    void remove(UUID uuid);
+
+    /**
+     * Check whether a player is cached.
+     *
+     * @param uuid UUID of the player
+     * @return true if there is cached data of the player, false otherwise.
+     */
+    boolean contains(UUID uuid);
+
+    /**
+     * Get the players that are cached.
+     *
+     * @return the uuids of the cached players.
+     */
+    List<UUID> getPlayers();
+
+    /**
+     * Get the number of players that are cached.
+     *
+     * @return the number of cached players.
+     */
+    int size();
+
+    /**
+     * Remove all cached data and release the memory that the backend holds. This is called when Statz is disabled.
+     */
+    void close();
+}
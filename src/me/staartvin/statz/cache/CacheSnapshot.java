@@ -0,0 +1,293 @@
+package me.staartvin.statz.cache;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * A copy of the cache of Statz in a binary file, so the cache does not have to be loaded from the database again
+ * after a restart. The file is memory-mapped when it is opened, and the data of a player is only decoded when it is
+ * read.
+ * <br>
+ * <br>
+ * The file starts with the schema version of the tables and the flush epoch of the database at the moment the
+ * snapshot was written. The snapshot should only be used if both still match. The data of every player is stored
+ * with a CRC32 checksum, which is checked when the player is read.
+ */
+public class CacheSnapshot {
+
+    private static final int MAGIC = 0x53545A43;
+    private static final int FORMAT_VERSION = 1;
+
+    // Magic number, format version, schema version, flush epoch and number of players
+    private static final int HEADER_SIZE = 24;
+
+    // UUID, length and checksum of the data of a player
+    private static final int ENTRY_HEADER_SIZE = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int schemaVersion;
+    private final long flushEpoch;
+
+    // Offset of the entry of every player
+    private final Map<UUID, Integer> offsets;
+
+    private CacheSnapshot(MappedByteBuffer buffer, int schemaVersion, long flushEpoch, Map<UUID, Integer> offsets) {
+        this.buffer = buffer;
+        this.schemaVersion = schemaVersion;
+        this.flushEpoch = flushEpoch;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Write the data of players to a snapshot file. The file is first written next to the given file, so an
+     * existing snapshot is only replaced once the new one is complete.
+     *
+     * @param file          File to write the snapshot to
+     * @param schemaVersion Version of the tables the data was read from
+     * @param flushEpoch    Flush epoch of the database that the data matches
+     * @param players       Data of the players
+     * @throws IOException if the snapshot could not be written.
+     */
+    public static void write(File file, int schemaVersion, long flushEpoch, Collection<PlayerInfo> players)
+            throws IOException {
+        File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(schemaVersion);
+            output.writeLong(flushEpoch);
+            output.writeInt(players.size());
+
+            for (PlayerInfo player : players) {
+                byte[] payload = encode(player);
+                CRC32 crc = new CRC32();
+
+                crc.update(payload);
+
+                output.writeLong(player.getUUID().getMostSignificantBits());
+                output.writeLong(player.getUUID().getLeastSignificantBits());
+                output.writeInt(payload.length);
+                output.writeInt((int) crc.getValue());
+                output.write(payload);
+            }
+
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Open a snapshot file and find where the data of every player is stored.
+     *
+     * @param file Snapshot file
+     * @return the opened snapshot.
+     * @throws IOException if the file could not be read or is not a valid snapshot.
+     */
+    public static CacheSnapshot open(File file) throws IOException {
+        MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Cache snapshot " + file + " has an invalid size");
+            }
+
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Cache snapshot " + file + " has an unknown format");
+        }
+
+        int playerCount = buffer.getInt(20);
+        Map<UUID, Integer> offsets = new HashMap<>(Math.max(16, playerCount * 2));
+        int offset = HEADER_SIZE;
+
+        for (int i = 0; i < playerCount; i++) {
+            if (offset + ENTRY_HEADER_SIZE > buffer.capacity()) {
+                throw new IOException("Cache snapshot " + file + " ends unexpectedly");
+            }
+
+            int length = buffer.getInt(offset + 16);
+
+            if (length < 0 || length > buffer.capacity() - offset - ENTRY_HEADER_SIZE) {
+                throw new IOException("Cache snapshot " + file + " is damaged at offset " + offset);
+            }
+
+            offsets.put(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)), offset);
+
+            offset += ENTRY_HEADER_SIZE + length;
+        }
+
+        return new CacheSnapshot(buffer, buffer.getInt(8), buffer.getLong(12), offsets);
+    }
+
+    /**
+     * Get the version of the tables that the data in this snapshot was read from.
+     *
+     * @return the schema version.
+     */
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * Get the flush epoch of the database at the moment this snapshot was written.
+     *
+     * @return the flush epoch.
+     */
+    public long getFlushEpoch() {
+        return flushEpoch;
+    }
+
+    /**
+     * Get the players that have data in this snapshot.
+     *
+     * @return the uuids of the players.
+     */
+    public Set<UUID> getPlayers() {
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+
+    /**
+     * Read the data of a player from this snapshot.
+     *
+     * @param uuid UUID of the player
+     * @return the data of the player, or null if the player is not in this snapshot.
+     * @throws IOException if the data of the player is damaged.
+     */
+    public PlayerInfo read(UUID uuid) throws IOException {
+        Integer offset = offsets.get(uuid);
+
+        if (offset == null) {
+            return null;
+        }
+
+        byte[] payload = new byte[buffer.getInt(offset + 16)];
+        ByteBuffer source = buffer.duplicate();
+
+        source.position(offset + ENTRY_HEADER_SIZE);
+        source.get(payload);
+
+        CRC32 crc = new CRC32();
+
+        crc.update(payload);
+
+        if ((int) crc.getValue() != buffer.getInt(offset + 20)) {
+            throw new IOException("The cached data of " + uuid + " is damaged");
+        }
+
+        return decode(uuid, payload);
+    }
+
+    private static byte[] encode(PlayerInfo player) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            Map<PlayerStat, List<Query>> statistics = player.getRowsPerStatistic();
+
+            output.writeInt(statistics.size());
+
+            for (Map.Entry<PlayerStat, List<Query>> statistic : statistics.entrySet()) {
+                output.writeUTF(statistic.getKey().name());
+                output.writeInt(statistic.getValue().size());
+
+                for (Query row : statistic.getValue()) {
+                    List<Map.Entry<String, Object>> columns = new ArrayList<>();
+
+                    for (Map.Entry<String, Object> column : row.getEntrySet()) {
+                        // Ids of the database are not needed in the cache.
+                        if (column.getValue() != null && !column.getKey().equals("id")) {
+                            columns.add(column);
+                        }
+                    }
+
+                    output.writeInt(columns.size());
+
+                    for (Map.Entry<String, Object> column : columns) {
+                        output.writeUTF(column.getKey());
+                        output.writeUTF(column.getValue().toString());
+                    }
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static PlayerInfo decode(UUID uuid, byte[] payload) throws IOException {
+        PlayerInfo info = new PlayerInfo(uuid);
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int statisticCount = input.readInt();
+
+            for (int i = 0; i < statisticCount; i++) {
+                String statName = input.readUTF();
+                int rowCount = input.readInt();
+                List<Query> rows = new ArrayList<>(Math.min(rowCount, 1024));
+
+                for (int j = 0; j < rowCount; j++) {
+                    int columnCount = input.readInt();
+                    Query row = new Query();
+
+                    for (int k = 0; k < columnCount; k++) {
+                        row.setValue(input.readUTF(), input.readUTF());
+                    }
+
+                    rows.add(row);
+                }
+
+                PlayerStat statType;
+
+                try {
+                    statType = PlayerStat.valueOf(statName);
+                } catch (IllegalArgumentException e) {
+                    // The statistic does not exist anymore.
+                    continue;
+                }
+
+                // Set specification of query, so we know how we can read data.
+                rows.forEach(row -> row.setSpecification(statType.getSpecification()));
+
+                info.setData(statType, rows);
+            }
+        }
+
+        return info;
+    }
+}
@@ -0,0 +1,309 @@
+package me.staartvin.statz.cache;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import org.bukkit.ChatColor;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Writes the cache to a {@link CacheSnapshot} when Statz is disabled and uses it to fill the cache after a restart,
+ * instead of loading every player from the database again.
+ * <br>
+ * <br>
+ * Every time the data of players is changed in the database, for example by updates, imports, purges or archiving,
+ * the flush epoch in {@link #META_TABLE} is increased in the same transaction. A snapshot stores the epoch it
+ * matches, so Statz can tell whether the database was changed after the snapshot was written, for example by
+ * another server. The epoch is checked when the data of a player is taken from
+ * the snapshot. Players whose data is written by this server after the restart are removed from the snapshot.
+ */
+public class CacheSnapshotManager {
+
+    /**
+     * Table that holds values that describe the state of the database, such as the flush epoch.
+     */
+    public static final String META_TABLE = DatabaseConnector.prefix + "meta";
+
+    private static final String FLUSH_EPOCH = "flush epoch";
+
+    private final Statz plugin;
+
+    private volatile boolean epochLoaded = false;
+
+    private volatile CacheSnapshot snapshot = null;
+
+    // Players in the snapshot that can still be used
+    private final Set<UUID> remainingPlayers = ConcurrentHashMap.newKeySet();
+
+    // Flush epoch the database should have if only this server wrote to it since the snapshot. Guarded by the flush
+    // lock of the leaderboard manager.
+    private long expectedEpoch;
+
+    public CacheSnapshotManager(Statz plugin) {
+        this.plugin = plugin;
+    }
+
+    private File getSnapshotFile() {
+        return new File(plugin.getDataFolder(), "cache.snapshot");
+    }
+
+    /**
+     * Create the meta table if it does not exist and open the snapshot of the cache, if there is one. This is
+     * called when Statz is enabled.
+     */
+    public void load() {
+        Connection connection = plugin.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            plugin.getLogger().severe("Could not load the flush epoch, as Statz is not connected to the database.");
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + META_TABLE + " (name VARCHAR(64) NOT NULL, " +
+                    "value BIGINT NOT NULL, PRIMARY KEY (name))");
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT value FROM " + META_TABLE + " WHERE name = '" +
+                    FLUSH_EPOCH + "'")) {
+                if (!resultSet.next()) {
+                    statement.executeUpdate("INSERT INTO " + META_TABLE + " (name, value) VALUES ('" + FLUSH_EPOCH +
+                            "', 0)");
+                }
+            }
+
+            // Patches change the data of players, so snapshots of every server are outdated.
+            if (plugin.getPatchManager().getAppliedPatchCount() > 0) {
+                statement.executeUpdate(this.getFlushEpochStatement());
+            }
+
+            epochLoaded = true;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load the flush epoch", e);
+            return;
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+
+        File file = this.getSnapshotFile();
+
+        if (!plugin.getConfigHandler().isCacheSnapshotEnabled() || !file.exists()) {
+            return;
+        }
+
+        try {
+            CacheSnapshot openedSnapshot = CacheSnapshot.open(file);
+
+            if (openedSnapshot.getSchemaVersion() != this.getSchemaVersion()) {
+                plugin.debugMessage(ChatColor.YELLOW + "The cache snapshot was made for other tables, so it is not " +
+                        "used.");
+                return;
+            }
+
+            synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                expectedEpoch = openedSnapshot.getFlushEpoch();
+                remainingPlayers.addAll(openedSnapshot.getPlayers());
+                snapshot = openedSnapshot;
+            }
+
+            plugin.debugMessage(ChatColor.GREEN + "Loaded the cache snapshot of " + remainingPlayers.size() +
+                    " players");
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read the cache snapshot, so it is not used", e);
+        }
+    }
+
+    /**
+     * Take the data of a player from the snapshot. The data is only given if the database has not been changed
+     * since the snapshot was written, apart from the updates this server wrote for other players. Every player can
+     * only be taken once, as the cache is kept up-to-date afterwards.
+     * <br>
+     * <br>
+     * Note that this method checks the database and so it should be run asynchronously.
+     *
+     * @param uuid UUID of the player
+     * @return the data of the player, or null if it should be loaded from the database.
+     */
+    public PlayerInfo takePlayer(UUID uuid) {
+        CacheSnapshot currentSnapshot = snapshot;
+
+        if (currentSnapshot == null || !remainingPlayers.remove(uuid)) {
+            return null;
+        }
+
+        // No updates are written while the epoch is compared, so it cannot change in between.
+        synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+            long epoch;
+
+            try {
+                epoch = this.readFlushEpoch();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not check the flush epoch of the database", e);
+                return null;
+            }
+
+            if (epoch != expectedEpoch) {
+                plugin.debugMessage(ChatColor.YELLOW + "The database was changed after the cache snapshot was made, " +
+                        "so it is not used anymore.");
+                this.discardSnapshot();
+                return null;
+            }
+        }
+
+        try {
+            return currentSnapshot.read(uuid);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read the cached data of " + uuid, e);
+            return null;
+        }
+    }
+
+    /**
+     * Add the statement that increases the flush epoch to the statements of a transaction. Every transaction that
+     * changes the data of players should include it, so other servers can tell that their snapshot is outdated.
+     * After the transaction is committed, {@link #onFlushed(Collection)} should be called.
+     *
+     * @param statements Statements of the transaction
+     * @return the statements with the statement that increases the flush epoch, or the given statements if the
+     * flush epoch could not be loaded.
+     */
+    public List<String> withFlushEpochStatement(List<String> statements) {
+        if (!epochLoaded) {
+            return statements;
+        }
+
+        List<String> result = new ArrayList<>(statements);
+
+        result.add(this.getFlushEpochStatement());
+
+        return result;
+    }
+
+    /**
+     * Register that the data of players was changed in a transaction that included the statements of
+     * {@link #withFlushEpochStatement(List)}. The caller must hold the flush lock of the leaderboard manager.
+     *
+     * @param players Players whose data was changed
+     */
+    public void onFlushed(Collection<UUID> players) {
+        if (!epochLoaded) {
+            return;
+        }
+
+        expectedEpoch++;
+
+        if (snapshot != null) {
+            remainingPlayers.removeAll(players);
+        }
+    }
+
+    private String getFlushEpochStatement() {
+        return "UPDATE " + META_TABLE + " SET value = value + 1 WHERE name = '" + FLUSH_EPOCH + "'";
+    }
+
+    private void discardSnapshot() {
+        snapshot = null;
+        remainingPlayers.clear();
+    }
+
+    /**
+     * Write the cache to the snapshot file. This should only be done when all updates have been written to the
+     * database, so the cache matches the database.
+     */
+    public void save() {
+        if (!plugin.getConfigHandler().isCacheSnapshotEnabled() || !epochLoaded) {
+            return;
+        }
+
+        for (PlayerStat statType : PlayerStat.values()) {
+            if (plugin.getUpdatePoolManager().hasUpdateQueries(statType)) {
+                plugin.getLogger().warning("Not all updates were written to the database, so the cache snapshot is " +
+                        "not saved.");
+                this.deleteSnapshot();
+                return;
+            }
+        }
+
+        List<PlayerInfo> players = new ArrayList<>();
+
+        for (UUID uuid : plugin.getCachingManager().getCachedPlayers()) {
+            PlayerInfo info = plugin.getCachingManager().peekCachedPlayerData(uuid);
+
+            if (info != null) {
+                players.add(info);
+            }
+        }
+
+        try {
+            CacheSnapshot.write(this.getSnapshotFile(), this.getSchemaVersion(), this.readFlushEpoch(), players);
+        } catch (IOException | SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not save the cache snapshot", e);
+            this.deleteSnapshot();
+            return;
+        }
+
+        plugin.debugMessage(ChatColor.GREEN + "Saved the cache of " + players.size() + " players");
+    }
+
+    /**
+     * Delete the snapshot file, so it is not used after a restart. This is done when the cache may not match the
+     * database.
+     */
+    public void deleteSnapshot() {
+        File file = this.getSnapshotFile();
+
+        if (file.exists() && !file.delete()) {
+            plugin.getLogger().warning("Could not delete the cache snapshot " + file);
+        }
+    }
+
+    private long readFlushEpoch() throws SQLException {
+        Connection connection = plugin.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT value FROM " + META_TABLE + " WHERE name = '" +
+                     FLUSH_EPOCH + "'")) {
+            if (!resultSet.next()) {
+                throw new SQLException("The flush epoch is missing from " + META_TABLE);
+            }
+
+            return resultSet.getLong(1);
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+    }
+
+    // Version of the tables, which changes if a table or column is added, removed or renamed.
+    private int getSchemaVersion() {
+        int version = 1;
+
+        for (Table table : plugin.getDatabaseConnector().getTables()) {
+            version = 31 * version + table.getTableName().hashCode();
+
+            for (Column column : table.getColumns()) {
+                version = 31 * version + column.getColumnName().hashCode();
+            }
+        }
+
+        return version;
+    }
+}
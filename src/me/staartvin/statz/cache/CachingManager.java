@@ -4,10 +4,8 @@ import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is responsible for keeping a record of cached data for a loaded player. Each time an update query is
@@ -22,6 +20,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * <br>
  * Finally, there is task that runs periodically that grabs the data from the database and overwrites the cache. This
  * happens to prevent a possible deviation between the real data (in the database) and the cache.
+ * <br>
+ * <br>
+ * The cached data is kept by a {@link CacheBackend}. By default, it is kept on the heap, but it can also be kept in
+ * direct memory with an {@link OffHeapCacheBackend}.
  */
 public class CachingManager {
 
@@ -31,7 +33,32 @@ public class CachingManager {
     // make a way to know when data has been cached but it is empty for a player.
 
     // To keep track of the cached data
-    private ConcurrentHashMap<UUID, PlayerInfo> cachedPlayerData = new ConcurrentHashMap<>();
+    private final CacheBackend cachedPlayerData;
+
+    public CachingManager() {
+        this(new HeapCacheBackend());
+    }
+
+    public CachingManager(CacheBackend backend) {
+        this.cachedPlayerData = backend;
+    }
+
+    /**
+     * Get the backend that keeps the cached data.
+     *
+     * @return the backend of the cache.
+     */
+    public CacheBackend getBackend() {
+        return cachedPlayerData;
+    }
+
+    /**
+     * Remove all cached data and release the memory of the backend. This is called when Statz is disabled, after
+     * the cache has been saved.
+     */
+    public void close() {
+        cachedPlayerData.close();
+    }
 
     /**
      * Register cached data for a player. It will overwrite any current cached data.
@@ -98,6 +125,22 @@ public class CachingManager {
         return cachedPlayerData.get(uuid);
     }
 
+    /**
+     * Get cached data of a player without marking it as recently used, see {@link CacheBackend#peek(UUID)}. Use
+     * this when reading the data of many players at once.
+     *
+     * @param uuid UUID of the player.
+     *
+     * @return PlayerInfo object containing cached data or null if no cached data exists.
+     */
+    public PlayerInfo peekCachedPlayerData(UUID uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        return cachedPlayerData.peek(uuid);
+    }
+
 
     /**
      * Add a single query to the cache of a player.
@@ -117,11 +160,21 @@ public class CachingManager {
             throw new IllegalArgumentException("UUID cannot be null.");
         }
 
-        PlayerInfo info = new PlayerInfo(uuid);
+        // Merge the query into the cached data, so the totals of the player are updated without going over all rows.
+        cachedPlayerData.update(uuid, info -> info.applyDelta(statType, queryToAdd));
+    }
 
-        info.addRow(statType, queryToAdd);
+    /**
+     * Remove all cached data of a player, for example because the data of the player was purged.
+     *
+     * @param uuid UUID of the player
+     */
+    public void removeCachedData(UUID uuid) {
+        if (uuid == null) {
+            return;
+        }
 
-        this.addCachedData(uuid, info);
+        cachedPlayerData.remove(uuid);
     }
 
     /**
@@ -131,7 +184,7 @@ public class CachingManager {
      * @return true if there is cached data about the given player. False otherwise.
      */
     public boolean isPlayerCacheLoaded(UUID uuid) {
-        return cachedPlayerData.containsKey(uuid) && cachedPlayerData.get(uuid) != null;
+        return uuid != null && cachedPlayerData.contains(uuid);
     }
 
     /**
@@ -144,13 +197,10 @@ public class CachingManager {
      */
     public boolean isPlayerCacheLoaded(UUID uuid, PlayerStat statType) {
 
-        // Check if we have at least one statistic stored for the player
-        if (!isPlayerCacheLoaded(uuid)) {
-            return false;
-        }
+        PlayerInfo cachedData = this.getCachedPlayerData(uuid);
 
         // Check if the data has been loaded before (can be an empty list).
-        return cachedPlayerData.get(uuid).hasDataOfPlayerStat(statType);
+        return cachedData != null && cachedData.hasDataOfPlayerStat(statType);
     }
 
     /**
@@ -159,6 +209,15 @@ public class CachingManager {
      * @return a list of uuids of players that have cached data.
      */
     public List<UUID> getCachedPlayers() {
-        return new ArrayList<>(this.cachedPlayerData.keySet());
+        return this.cachedPlayerData.getPlayers();
+    }
+
+    /**
+     * Get the number of players that have cached data.
+     *
+     * @return number of players in the cache.
+     */
+    public int getCachedPlayerCount() {
+        return this.cachedPlayerData.size();
     }
 }
@@ -0,0 +1,63 @@
+package me.staartvin.statz.cache;
+
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the cached data of every player on the Java heap. This is the default backend.
+ */
+public class HeapCacheBackend implements CacheBackend {
+
+    // To keep track of the cached data
+    private final ConcurrentHashMap<UUID, PlayerInfo> cachedPlayerData = new ConcurrentHashMap<>();
+
+    @Override
+    public PlayerInfo get(UUID uuid) {
+        return cachedPlayerData.get(uuid);
+    }
+
+    @Override
+    public PlayerInfo peek(UUID uuid) {
+        return cachedPlayerData.get(uuid);
+    }
+
+    @Override
+    public void put(UUID uuid, PlayerInfo data) {
+        cachedPlayerData.put(uuid, data);
+    }
+
+    @Override
+    public void update(UUID uuid, Consumer<PlayerInfo> update) {
+        update.accept(cachedPlayerData.computeIfAbsent(uuid, PlayerInfo::new));
+    }
+
+    @Override
+    public void remove(UUID uuid) {
+        cachedPlayerData.remove(uuid);
+    }
+
+    @Override
+    public boolean contains(UUID uuid) {
+        return cachedPlayerData.containsKey(uuid);
+    }
+
+    @Override
+    public List<UUID> getPlayers() {
+        return new ArrayList<>(cachedPlayerData.keySet());
+    }
+
+    @Override
+    public int size() {
+        return cachedPlayerData.size();
+    }
+
+    @Override
+    public void close() {
+        cachedPlayerData.clear();
+    }
+}
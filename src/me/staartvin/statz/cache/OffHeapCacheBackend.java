@@ -0,0 +1,339 @@
+package me.staartvin.statz.cache;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the cached data of players outside of the Java heap, so a very large cache does not slow down the garbage
+ * collector. Only the players that were used most recently are kept on the heap as {@link PlayerInfo} objects. The
+ * other players are encoded and stored in an {@link OffHeapPlayerStore}, and are decoded again when they are used.
+ * <br>
+ * <br>
+ * Rows are encoded with a fixed layout per statistic. The names of the columns are stored once, after which every
+ * row is stored as the ids of its column values, followed by its 'value' column as a double. Column values are
+ * stored once in a table of strings, as there are only a few different worlds, mobs, materials, etc. Once the table
+ * of strings is full, new values are stored in the rows themselves. The uuid of a row is not stored, as it is the
+ * uuid of the player, and neither is the id that the database gave it.
+ */
+public class OffHeapCacheBackend implements CacheBackend {
+
+    // Marks a column that a row does not have
+    private static final int NO_STRING = -1;
+
+    // Marks a string that is stored in the row itself, as the table of strings is full
+    private static final int INLINE_STRING = -2;
+
+    // Maximum number of strings in the table of strings. Strings are never removed from the table, so columns with
+    // many different values (e.g. commands that players typed) should not make it grow forever.
+    private static final int MAX_STRINGS = 1 << 16;
+
+    private final OffHeapPlayerStore store;
+
+    private final int hotPlayerCount;
+
+    // Players that are on the heap, from least to most recently used. Guarded by this.
+    private final LinkedHashMap<UUID, PlayerInfo> hotPlayers = new LinkedHashMap<>();
+
+    // Strings of column names and values, by their id. Guarded by this.
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    /**
+     * Create a new backend.
+     *
+     * @param hotPlayerCount Number of players that are kept on the heap
+     * @param chunkSize      Number of bytes of direct memory that is allocated at once
+     * @throws IllegalArgumentException if the number of players is smaller than 1 or the chunk size is too small.
+     */
+    public OffHeapCacheBackend(int hotPlayerCount, int chunkSize) throws IllegalArgumentException {
+        if (hotPlayerCount < 1) {
+            throw new IllegalArgumentException("At least one player should be kept on the heap.");
+        }
+
+        this.hotPlayerCount = hotPlayerCount;
+        this.store = new OffHeapPlayerStore(chunkSize);
+    }
+
+    @Override
+    public synchronized PlayerInfo get(UUID uuid) {
+        PlayerInfo info = hotPlayers.remove(uuid);
+
+        if (info == null) {
+            byte[] data = store.get(uuid);
+
+            if (data == null) {
+                return null;
+            }
+
+            info = this.decode(uuid, data);
+            store.remove(uuid);
+        }
+
+        // Mark the player as the most recently used.
+        hotPlayers.put(uuid, info);
+
+        this.evictPlayers();
+
+        return info;
+    }
+
+    @Override
+    public synchronized PlayerInfo peek(UUID uuid) {
+        PlayerInfo info = hotPlayers.get(uuid);
+
+        if (info != null) {
+            return info;
+        }
+
+        byte[] data = store.get(uuid);
+
+        return data == null ? null : this.decode(uuid, data);
+    }
+
+    @Override
+    public synchronized void put(UUID uuid, PlayerInfo data) {
+        store.remove(uuid);
+
+        hotPlayers.remove(uuid);
+        hotPlayers.put(uuid, data);
+
+        this.evictPlayers();
+    }
+
+    @Override
+    public synchronized void update(UUID uuid, Consumer<PlayerInfo> update) {
+        PlayerInfo info = this.get(uuid);
+
+        if (info == null) {
+            info = new PlayerInfo(uuid);
+            this.put(uuid, info);
+        }
+
+        update.accept(info);
+    }
+
+    @Override
+    public synchronized void remove(UUID uuid) {
+        hotPlayers.remove(uuid);
+        store.remove(uuid);
+    }
+
+    @Override
+    public synchronized boolean contains(UUID uuid) {
+        return hotPlayers.containsKey(uuid) || store.contains(uuid);
+    }
+
+    @Override
+    public synchronized List<UUID> getPlayers() {
+        List<UUID> players = new ArrayList<>(hotPlayers.keySet());
+
+        players.addAll(store.getPlayers());
+
+        return players;
+    }
+
+    @Override
+    public synchronized int size() {
+        return hotPlayers.size() + store.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        hotPlayers.clear();
+        strings.clear();
+        stringIds.clear();
+
+        store.close();
+    }
+
+    /**
+     * Get the number of players that are kept on the heap.
+     *
+     * @return the number of players on the heap.
+     */
+    public synchronized int getHotPlayerCount() {
+        return hotPlayers.size();
+    }
+
+    /**
+     * Get the number of bytes of direct memory that is used to store players.
+     *
+     * @return the allocated bytes.
+     */
+    public long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    // Move the least recently used players to the store until few enough players are on the heap.
+    private void evictPlayers() {
+        Iterator<Map.Entry<UUID, PlayerInfo>> iterator = hotPlayers.entrySet().iterator();
+
+        while (hotPlayers.size() > hotPlayerCount && iterator.hasNext()) {
+            Map.Entry<UUID, PlayerInfo> player = iterator.next();
+
+            store.put(player.getKey(), this.encode(player.getValue()));
+            iterator.remove();
+        }
+    }
+
+    // Write a string as its id in the table of strings, or as its bytes if the table is full.
+    private void writeString(DataOutputStream output, String string) throws IOException {
+        Integer id = stringIds.get(string);
+
+        if (id == null && strings.size() < MAX_STRINGS) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+
+        if (id != null) {
+            output.writeInt(id);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        output.writeInt(INLINE_STRING);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    // Read a string that was written by writeString, or null if a row does not have the column.
+    private String readString(DataInputStream input) throws IOException {
+        int id = input.readInt();
+
+        if (id == NO_STRING) {
+            return null;
+        }
+
+        if (id != INLINE_STRING) {
+            return strings.get(id);
+        }
+
+        byte[] bytes = new byte[input.readInt()];
+
+        input.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] encode(PlayerInfo info) {
+        Map<PlayerStat, List<Query>> statistics = info.getRowsPerStatistic();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(statistics.size());
+
+            for (Map.Entry<PlayerStat, List<Query>> statistic : statistics.entrySet()) {
+                Set<String> columns = new LinkedHashSet<>();
+
+                for (Query row : statistic.getValue()) {
+                    for (String column : row.getData().keySet()) {
+                        // The uuid is the uuid of the player and the value is stored separately.
+                        if (!column.equals("uuid") && !column.equals("value") && !column.equals("id")) {
+                            columns.add(column);
+                        }
+                    }
+                }
+
+                output.writeByte(statistic.getKey().ordinal());
+                output.writeShort(columns.size());
+                output.writeInt(statistic.getValue().size());
+
+                for (String column : columns) {
+                    this.writeString(output, column);
+                }
+
+                for (Query row : statistic.getValue()) {
+                    for (String column : columns) {
+                        Object value = row.getData().get(column);
+
+                        if (value == null) {
+                            output.writeInt(NO_STRING);
+                        } else {
+                            this.writeString(output, value.toString());
+                        }
+                    }
+
+                    output.writeDouble(row.hasColumn("value") ? row.getValue() : Double.NaN);
+                }
+            }
+        } catch (IOException e) {
+            // Writing to an array does not fail.
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private PlayerInfo decode(UUID uuid, byte[] data) {
+        PlayerInfo info = new PlayerInfo(uuid);
+        String uuidString = uuid.toString();
+        PlayerStat[] statTypes = PlayerStat.values();
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data))) {
+            int statisticCount = input.readByte();
+
+            for (int i = 0; i < statisticCount; i++) {
+                PlayerStat statType = statTypes[input.readByte()];
+                String[] columns = new String[input.readShort()];
+                int rowCount = input.readInt();
+                List<Query> rows = new ArrayList<>(rowCount);
+
+                for (int j = 0; j < columns.length; j++) {
+                    columns[j] = this.readString(input);
+                }
+
+                for (int j = 0; j < rowCount; j++) {
+                    Query row = new Query();
+
+                    row.setValue("uuid", uuidString);
+
+                    for (String column : columns) {
+                        String value = this.readString(input);
+
+                        if (value != null) {
+                            row.setValue(column, value);
+                        }
+                    }
+
+                    double value = input.readDouble();
+
+                    if (!Double.isNaN(value)) {
+                        row.setValue("value", value);
+                    }
+
+                    // Set specification of query, so we know how we can read data.
+                    row.setSpecification(statType.getSpecification());
+
+                    rows.add(row);
+                }
+
+                info.setData(statType, rows);
+            }
+        } catch (IOException e) {
+            // The bytes were written by encode, so they can always be read.
+            throw new IllegalStateException(e);
+        }
+
+        return info;
+    }
+}
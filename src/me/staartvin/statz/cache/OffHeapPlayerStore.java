@@ -0,0 +1,378 @@
+package me.staartvin.statz.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stores a block of bytes per player outside of the Java heap. The bytes are written to chunks of direct memory,
+ * which the garbage collector does not have to scan, and are found with an open-addressing index of primitive arrays.
+ * <br>
+ * <br>
+ * Records are appended to the current chunk. When the record of a player is replaced or removed, the old record stays
+ * in its chunk as garbage. Once most of a chunk is garbage, its remaining records are moved to the current chunk and
+ * the chunk is released.
+ * <br>
+ * <br>
+ * All methods are synchronized, so the store can be used from several threads.
+ */
+public class OffHeapPlayerStore {
+
+    // UUID and length of the record
+    private static final int RECORD_HEADER_SIZE = 20;
+
+    // A chunk is compacted once less than this part of it is in use.
+    private static final double MIN_LIVE_RATIO = 0.25;
+
+    private static final int MIN_INDEX_CAPACITY = 64;
+
+    private final int chunkSize;
+
+    // Chunks of direct memory. Released chunks are null, so the positions of the other chunks do not change.
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    // Number of bytes in each chunk that belong to records that are still in use
+    private final List<Integer> liveBytes = new ArrayList<>();
+
+    private int currentChunk = -1;
+
+    // Index from uuid to location of the record. A slot is empty if its location is 0.
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private long[] locations;
+    private int size = 0;
+
+    private long allocatedBytes = 0;
+    private long storedBytes = 0;
+
+    /**
+     * Create a new store.
+     *
+     * @param chunkSize Number of bytes of direct memory that is allocated at once
+     * @throws IllegalArgumentException if the chunk size is smaller than 1 KB.
+     */
+    public OffHeapPlayerStore(int chunkSize) throws IllegalArgumentException {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("Chunk size must be at least 1 KB.");
+        }
+
+        this.chunkSize = chunkSize;
+        this.createIndex(MIN_INDEX_CAPACITY);
+    }
+
+    /**
+     * Store the bytes of a player, replacing any bytes that were stored for the player before.
+     *
+     * @param uuid UUID of the player
+     * @param data Bytes to store
+     */
+    public synchronized void put(UUID uuid, byte[] data) {
+        int slot = this.findSlot(uuid);
+
+        if (locations[slot] != 0) {
+            this.release(locations[slot]);
+        } else {
+            // Keep the index at most half full, so lookups stay short.
+            if ((size + 1) * 2 > locations.length) {
+                this.createIndex(locations.length * 2);
+                slot = this.findSlot(uuid);
+            }
+
+            mostSignificantBits[slot] = uuid.getMostSignificantBits();
+            leastSignificantBits[slot] = uuid.getLeastSignificantBits();
+            size++;
+        }
+
+        locations[slot] = this.append(uuid, data);
+        storedBytes += data.length;
+
+        this.compactChunks();
+    }
+
+    /**
+     * Get the bytes of a player.
+     *
+     * @param uuid UUID of the player
+     * @return a copy of the stored bytes, or null if nothing is stored for the player.
+     */
+    public synchronized byte[] get(UUID uuid) {
+        long location = locations[this.findSlot(uuid)];
+
+        if (location == 0) {
+            return null;
+        }
+
+        ByteBuffer chunk = chunks.get(getChunk(location)).duplicate();
+        int offset = getOffset(location);
+        byte[] data = new byte[chunk.getInt(offset + 16)];
+
+        chunk.position(offset + RECORD_HEADER_SIZE);
+        chunk.get(data);
+
+        return data;
+    }
+
+    /**
+     * Check whether bytes are stored for a player.
+     *
+     * @param uuid UUID of the player
+     * @return true if bytes are stored for the player, false otherwise.
+     */
+    public synchronized boolean contains(UUID uuid) {
+        return locations[this.findSlot(uuid)] != 0;
+    }
+
+    /**
+     * Remove the bytes of a player.
+     *
+     * @param uuid UUID of the player
+     * @return true if bytes were stored for the player, false otherwise.
+     */
+    public synchronized boolean remove(UUID uuid) {
+        int slot = this.findSlot(uuid);
+
+        if (locations[slot] == 0) {
+            return false;
+        }
+
+        this.release(locations[slot]);
+        this.removeSlot(slot);
+        size--;
+
+        this.compactChunks();
+
+        return true;
+    }
+
+    /**
+     * Remove the bytes of all players and drop the chunks of direct memory and the index, so their memory can be
+     * reclaimed. The store is empty afterwards, but can still be used.
+     */
+    public synchronized void close() {
+        chunks.clear();
+        liveBytes.clear();
+        currentChunk = -1;
+
+        mostSignificantBits = null;
+        leastSignificantBits = null;
+        locations = null;
+        this.createIndex(MIN_INDEX_CAPACITY);
+        size = 0;
+
+        allocatedBytes = 0;
+        storedBytes = 0;
+    }
+
+    /**
+     * Get the players that have bytes in this store.
+     *
+     * @return the uuids of the players.
+     */
+    public synchronized List<UUID> getPlayers() {
+        List<UUID> players = new ArrayList<>(size);
+
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (locations[slot] != 0) {
+                players.add(new UUID(mostSignificantBits[slot], leastSignificantBits[slot]));
+            }
+        }
+
+        return players;
+    }
+
+    /**
+     * Get the number of players that have bytes in this store.
+     *
+     * @return the number of players.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes of direct memory that is allocated by this store.
+     *
+     * @return the allocated bytes.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Get the number of bytes that players have stored, without the overhead of the store.
+     *
+     * @return the stored bytes.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    private static int getChunk(long location) {
+        return (int) (location >>> 32) - 1;
+    }
+
+    private static int getOffset(long location) {
+        return (int) location;
+    }
+
+    // Chunk numbers start at 1, so a location is never 0.
+    private static long getLocation(int chunk, int offset) {
+        return ((long) (chunk + 1) << 32) | offset;
+    }
+
+    private long append(UUID uuid, byte[] data) {
+        int recordSize = RECORD_HEADER_SIZE + data.length;
+
+        if (currentChunk < 0 || chunks.get(currentChunk).remaining() < recordSize) {
+            this.allocateChunk(Math.max(chunkSize, recordSize));
+        }
+
+        ByteBuffer chunk = chunks.get(currentChunk);
+        int offset = chunk.position();
+
+        chunk.putLong(uuid.getMostSignificantBits());
+        chunk.putLong(uuid.getLeastSignificantBits());
+        chunk.putInt(data.length);
+        chunk.put(data);
+
+        liveBytes.set(currentChunk, liveBytes.get(currentChunk) + recordSize);
+
+        return getLocation(currentChunk, offset);
+    }
+
+    private void allocateChunk(int capacity) {
+        // Reuse the position of a released chunk, so the list does not keep growing.
+        int chunk = chunks.indexOf(null);
+
+        if (chunk < 0) {
+            chunk = chunks.size();
+            chunks.add(null);
+            liveBytes.add(0);
+        }
+
+        chunks.set(chunk, ByteBuffer.allocateDirect(capacity));
+        liveBytes.set(chunk, 0);
+        allocatedBytes += capacity;
+
+        currentChunk = chunk;
+    }
+
+    private void release(long location) {
+        int chunk = getChunk(location);
+        int dataLength = chunks.get(chunk).getInt(getOffset(location) + 16);
+
+        liveBytes.set(chunk, liveBytes.get(chunk) - RECORD_HEADER_SIZE - dataLength);
+        storedBytes -= dataLength;
+    }
+
+    private void compactChunks() {
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            ByteBuffer buffer = chunks.get(chunk);
+
+            if (buffer == null || chunk == currentChunk || liveBytes.get(chunk) >= buffer.capacity() * MIN_LIVE_RATIO) {
+                continue;
+            }
+
+            this.moveRecords(chunk);
+
+            chunks.set(chunk, null);
+            allocatedBytes -= buffer.capacity();
+        }
+    }
+
+    // Move the records of a chunk that are still in use to the current chunk.
+    private void moveRecords(int chunk) {
+        ByteBuffer buffer = chunks.get(chunk);
+        int offset = 0;
+
+        while (offset < buffer.position()) {
+            UUID uuid = new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+            int dataLength = buffer.getInt(offset + 16);
+            int slot = this.findSlot(uuid);
+
+            if (locations[slot] == getLocation(chunk, offset)) {
+                byte[] data = new byte[dataLength];
+                ByteBuffer source = buffer.duplicate();
+
+                source.position(offset + RECORD_HEADER_SIZE);
+                source.get(data);
+
+                locations[slot] = this.append(uuid, data);
+            }
+
+            offset += RECORD_HEADER_SIZE + dataLength;
+        }
+    }
+
+    private void createIndex(int capacity) {
+        long[] oldMostSignificantBits = mostSignificantBits;
+        long[] oldLeastSignificantBits = leastSignificantBits;
+        long[] oldLocations = locations;
+
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        locations = new long[capacity];
+
+        if (oldLocations == null) {
+            return;
+        }
+
+        for (int oldSlot = 0; oldSlot < oldLocations.length; oldSlot++) {
+            if (oldLocations[oldSlot] == 0) {
+                continue;
+            }
+
+            int slot = this.findSlot(oldMostSignificantBits[oldSlot], oldLeastSignificantBits[oldSlot]);
+
+            mostSignificantBits[slot] = oldMostSignificantBits[oldSlot];
+            leastSignificantBits[slot] = oldLeastSignificantBits[oldSlot];
+            locations[slot] = oldLocations[oldSlot];
+        }
+    }
+
+    private int findSlot(UUID uuid) {
+        return this.findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // Find the slot of a uuid, or the empty slot where it should be put.
+    private int findSlot(long msb, long lsb) {
+        int mask = locations.length - 1;
+        int slot = hash(msb, lsb) & mask;
+
+        while (locations[slot] != 0 && (mostSignificantBits[slot] != msb || leastSignificantBits[slot] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    // Empty a slot and move later entries back, so no entry becomes unreachable.
+    private void removeSlot(int slot) {
+        int mask = locations.length - 1;
+        int empty = slot;
+        int next = (slot + 1) & mask;
+
+        while (locations[next] != 0) {
+            int home = hash(mostSignificantBits[next], leastSignificantBits[next]) & mask;
+
+            // Only move the entry if its home slot is not between the empty slot and its current slot.
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                mostSignificantBits[empty] = mostSignificantBits[next];
+                leastSignificantBits[empty] = leastSignificantBits[next];
+                locations[empty] = locations[next];
+                empty = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        locations[empty] = 0;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,174 @@
+package me.staartvin.statz.commands;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.commands.manager.StatzCommand;
+import me.staartvin.statz.jobs.BulkJob;
+import me.staartvin.statz.jobs.JobContext;
+import me.staartvin.statz.language.Lang;
+import me.staartvin.statz.util.StatzUtil;
+import me.staartvin.statz.util.StatzUtil.Time;
+import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ArchiveCommand extends StatzCommand {
+
+    // Name of the job that archives players
+    private static final String ARCHIVE_JOB_NAME = "archive";
+
+    // Number of players whose data is archived in a single transaction
+    private static final int ARCHIVE_CHUNK_SIZE = 200;
+
+    private final Statz plugin;
+
+    public ArchiveCommand(final Statz instance) {
+        this.setUsage("/statz archive <time>");
+        this.setDesc("Archive data of users that have not been online for a while.");
+        this.setPermission("statz.archive");
+
+        plugin = instance;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, final Command cmd, final String label, final String[] args) {
+
+        if (args.length < 2) {
+            sender.sendMessage(Lang.INCORRECT_COMMAND_USAGE.getConfigValue(this.getUsage()));
+            return true;
+        }
+
+        String timeString = args[1];
+
+        if (!timeString.contains("h") && !timeString.contains("d") && !timeString.contains("m")) {
+            sender.sendMessage(ChatColor.RED + "Incorrect time format specified.");
+            sender.sendMessage(ChatColor.GOLD + "Make sure your time is formatted like this: 10d 4h 10m (or something" +
+                    " like that)");
+            return true;
+        }
+
+        // Time in minutes
+        int timeThreshold = StatzUtil.stringToTime(timeString, Time.MINUTES);
+
+        if (timeThreshold < 5) {
+            sender.sendMessage(ChatColor.RED + "I cannot archive data of users that were online less than 5 minutes " +
+                    "ago.");
+            sender.sendMessage(ChatColor.GOLD + "Make sure your time is formatted like this: 10d 4h 10m (or something" +
+                    " like that)");
+            return true;
+        }
+
+        if (plugin.getJobManager().isRunning(ARCHIVE_JOB_NAME)) {
+            sender.sendMessage(ChatColor.RED + "Data of players is already being archived.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Archiving data of players that were last online " + ChatColor.RED
+                + StatzUtil.timeToString(timeThreshold, Time.MINUTES) + " ago...");
+
+        ArchiveJob job = new ArchiveJob(sender.getName(), timeThreshold);
+
+        // Failures are reported to the sender by the job manager.
+        plugin.getJobManager().startJob(job, sender).thenAccept(rows -> sender.sendMessage(ChatColor.GREEN +
+                "Successfully archived " + job.archivedPlayers.get() + " players (" + rows + " rows). Their data is " +
+                "restored when they log in or are looked up."));
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see me.staartvin.statz.commands.manager.StatzCommand#onTabComplete(org.bukkit.command.CommandSender, org
+     * .bukkit.command.Command, java.lang.String, java.lang.String[])
+     */
+    @Override
+    public List<String> onTabComplete(final CommandSender sender, final Command cmd, final String commandLabel,
+                                      final String[] args) {
+
+        return null;
+    }
+
+    /**
+     * Moves the data of players that have not been online for a while to the archive, in chunks of
+     * {@link #ARCHIVE_CHUNK_SIZE} players. Players that are already archived are skipped, so the job does not store
+     * checkpoints.
+     */
+    private class ArchiveJob implements BulkJob {
+
+        private final String archivedBy;
+        private final int timeThreshold;
+
+        private final AtomicInteger archivedPlayers = new AtomicInteger();
+
+        private ArchiveJob(String archivedBy, int timeThreshold) {
+            this.archivedBy = archivedBy;
+            this.timeThreshold = timeThreshold;
+        }
+
+        @Override
+        public String getName() {
+            return ARCHIVE_JOB_NAME;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Archiving inactive players";
+        }
+
+        @Override
+        public void run(JobContext context) throws Exception {
+            List<UUID> uuids = new ArrayList<>();
+
+            for (OfflinePlayer player : plugin.getServer().getOfflinePlayers()) {
+                if (player == null || player.isOnline())
+                    continue;
+
+                long lastPlayed = System.currentTimeMillis() - player.getLastPlayed();
+
+                if (lastPlayed <= 0)
+                    continue;
+
+                // Player has not been offline for more than the threshold, so ignore him/her.
+                if ((lastPlayed / 60000) < timeThreshold)
+                    continue;
+
+                UUID uuid = player.getUniqueId();
+
+                if (uuid == null || plugin.getArchiveManager().isArchived(uuid))
+                    continue;
+
+                uuids.add(uuid);
+            }
+
+            context.addTotalWork(uuids.size());
+
+            for (int start = 0; start < uuids.size(); start += ARCHIVE_CHUNK_SIZE) {
+                List<UUID> chunk = uuids.subList(start, Math.min(start + ARCHIVE_CHUNK_SIZE, uuids.size()));
+                Map<UUID, Integer> archivedRows = plugin.getArchiveManager().archivePlayers(chunk);
+
+                List<String> messages = new ArrayList<>(archivedRows.size());
+                int rowCount = 0;
+
+                for (Map.Entry<UUID, Integer> entry : archivedRows.entrySet()) {
+                    messages.add(archivedBy + " archived player " + entry.getKey());
+                    rowCount += entry.getValue();
+                }
+
+                if (!messages.isEmpty()) {
+                    plugin.getLogsManager().writeToLogFile(messages);
+                    plugin.debugMessage("Archived " + messages.size() + " players!");
+                }
+
+                archivedPlayers.addAndGet(archivedRows.size());
+
+                context.completeWork(chunk.size());
+                context.addWrittenRows(rowCount);
+            }
+        }
+    }
+}
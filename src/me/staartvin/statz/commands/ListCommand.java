@@ -239,6 +239,11 @@ public class ListCommand extends StatzCommand {
 
                     PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid, statType);
 
+                    // We are running async, so we can load the data if it is not cached.
+                    if (info == null) {
+                        info = plugin.getDataManager().loadPlayerData(uuid, statType);
+                    }
+
                     sender.sendMessage(Lang.SPECIFIC_STAT_HEADER.getConfigValue(statType, playerName));
 
                     // Only use valid info.
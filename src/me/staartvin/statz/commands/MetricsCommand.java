@@ -0,0 +1,50 @@
+package me.staartvin.statz.commands;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.commands.manager.StatzCommand;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+public class MetricsCommand extends StatzCommand {
+
+    private final Statz plugin;
+
+    public MetricsCommand(final Statz instance) {
+        this.setUsage("/statz metrics");
+        this.setDesc("Show runtime metrics of Statz.");
+        this.setPermission("statz.metrics");
+
+        plugin = instance;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, final Command cmd, final String label, final String[] args) {
+
+        if (!plugin.getMetricsManager().isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "Metrics are disabled. Enable them in the config of Statz.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.BLUE + "---------------- [Statz metrics] ----------------");
+
+        for (String line : plugin.getMetricsManager().createReport()) {
+            sender.sendMessage(ChatColor.GRAY + line);
+        }
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see me.staartvin.statz.commands.manager.StatzCommand#onTabComplete(org.bukkit.command.CommandSender, org
+     * .bukkit.command.Command, java.lang.String, java.lang.String[])
+     */
+    @Override
+    public List<String> onTabComplete(final CommandSender sender, final Command cmd, final String commandLabel,
+                                      final String[] args) {
+
+        return null;
+    }
+}
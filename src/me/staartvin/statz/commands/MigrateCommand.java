@@ -2,6 +2,7 @@ package me.staartvin.statz.commands;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.commands.manager.StatzCommand;
+import me.staartvin.statz.importer.ImportManager;
 import me.staartvin.statz.language.Lang;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -9,7 +10,6 @@ import org.bukkit.command.CommandSender;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 
 public class MigrateCommand extends StatzCommand {
 
@@ -35,19 +35,16 @@ public class MigrateCommand extends StatzCommand {
             // This type is no longer supported.
             sender.sendMessage(org.bukkit.ChatColor.RED + "This migration type is no longer supported.");
         } else if (args[1].equalsIgnoreCase("minecraft")) {
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        int importedPlayers = plugin.getImportManager().importFromVanilla().get();
+            if (plugin.getJobManager().isRunning(ImportManager.IMPORT_JOB_NAME)) {
+                sender.sendMessage(ChatColor.RED + "Statistics of Minecraft are already being imported.");
+                return true;
+            }
 
-                        sender.sendMessage(ChatColor.GREEN + "Imported statistics of " + importedPlayers + " players.");
-                    } catch (InterruptedException | ExecutionException e) {
-                        sender.sendMessage(ChatColor.RED + "Could not import data from Minecraft!");
-                        e.printStackTrace();
-                    }
-                }
-            });
+            sender.sendMessage(ChatColor.GOLD + "Importing statistics of Minecraft... This may take a while!");
+
+            // Failures are reported to the sender by the job manager.
+            plugin.getImportManager().importFromVanilla(sender).thenAccept(importedPlayers ->
+                    sender.sendMessage(ChatColor.GREEN + "Imported statistics of " + importedPlayers + " players."));
         } else {
             sender.sendMessage(org.bukkit.ChatColor.RED + "You provided an invalid migration type. You can only use " +
                     "'stats3' or 'minecraft'.");
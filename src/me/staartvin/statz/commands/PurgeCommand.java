@@ -2,6 +2,8 @@ package me.staartvin.statz.commands;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.commands.manager.StatzCommand;
+import me.staartvin.statz.jobs.BulkJob;
+import me.staartvin.statz.jobs.JobContext;
 import me.staartvin.statz.language.Lang;
 import me.staartvin.statz.util.StatzUtil;
 import me.staartvin.statz.util.StatzUtil.Time;
@@ -11,11 +13,22 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PurgeCommand extends StatzCommand {
 
+    // Name of the job that purges players
+    private static final String PURGE_JOB_NAME = "purge";
+
+    // Number of players whose data is removed in a single transaction
+    private static final int PURGE_CHUNK_SIZE = 500;
+
     private final Statz plugin;
 
     public PurgeCommand(final Statz instance) {
@@ -55,58 +68,140 @@ public class PurgeCommand extends StatzCommand {
             return true;
         }
 
+        if (plugin.getJobManager().isRunning(PURGE_JOB_NAME)) {
+            sender.sendMessage(ChatColor.RED + "Data of players is already being purged.");
+            return true;
+        }
+
         sender.sendMessage(ChatColor.GOLD + "Purging data of players that were last online " + ChatColor.RED
                 + StatzUtil.timeToString(timeThreshold, Time.MINUTES) + " ago...");
 
-        int count = 0;
+        PurgeJob job = new PurgeJob(sender.getName(), timeThreshold);
+
+        // Failures are reported to the sender by the job manager.
+        plugin.getJobManager().startJob(job, sender).thenAccept(rows -> sender.sendMessage(ChatColor.GREEN +
+                "Successfully removed " + job.purgedPlayers.get() + " players from the database."));
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see me.staartvin.statz.commands.manager.StatzCommand#onTabComplete(org.bukkit.command.CommandSender, org
+     * .bukkit.command.Command, java.lang.String, java.lang.String[])
+     */
+    @Override
+    public List<String> onTabComplete(final CommandSender sender, final Command cmd, final String commandLabel,
+                                      final String[] args) {
+
+        return null;
+    }
+
+    /**
+     * Removes the data of players that have not been online for a while. The players are looked up first, after
+     * which their data is removed in chunks of {@link #PURGE_CHUNK_SIZE} players, with a single statement per table
+     * for each chunk. Removing data can safely be repeated, so the job does not store checkpoints.
+     */
+    private class PurgeJob implements BulkJob {
+
+        private final String purgedBy;
+        private final int timeThreshold;
+
+        private final AtomicInteger purgedPlayers = new AtomicInteger();
+
+        private PurgeJob(String purgedBy, int timeThreshold) {
+            this.purgedBy = purgedBy;
+            this.timeThreshold = timeThreshold;
+        }
+
+        @Override
+        public String getName() {
+            return PURGE_JOB_NAME;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Purging inactive players";
+        }
 
-        for (OfflinePlayer player : plugin.getServer().getOfflinePlayers()) {
-            if (player == null)
-                continue;
+        @Override
+        public void run(JobContext context) throws Exception {
+            List<UUID> uuids = new ArrayList<>();
 
-            long lastPlayed = System.currentTimeMillis() - player.getLastPlayed();
+            for (OfflinePlayer player : plugin.getServer().getOfflinePlayers()) {
+                if (player == null)
+                    continue;
 
-            if (lastPlayed <= 0)
-                continue;
+                long lastPlayed = System.currentTimeMillis() - player.getLastPlayed();
 
-            // Player has not been offline for more than the threshold, so ignore him/her.
-            if ((lastPlayed / 60000) < timeThreshold)
-                continue;
+                if (lastPlayed <= 0)
+                    continue;
 
-            UUID uuid = player.getUniqueId();
+                // Player has not been offline for more than the threshold, so ignore him/her.
+                if ((lastPlayed / 60000) < timeThreshold)
+                    continue;
 
-            // Sanity check
-            if (uuid == null)
-                continue;
+                UUID uuid = player.getUniqueId();
 
-            // Kick player if he is online to make sure nothing gets mixed up.
-            if (player.isOnline()) {
-                Player p = (Player) player;
+                // Sanity check
+                if (uuid == null)
+                    continue;
 
-                p.kickPlayer(ChatColor.RED + "Your database records have been reset, please log back in.");
+                uuids.add(uuid);
             }
 
-            plugin.debugMessage("Purging player " + uuid + " from database!");
-            plugin.getLogsManager().writeToLogFile(sender.getName() + " purged player " + uuid);
+            context.addTotalWork(uuids.size());
 
-            plugin.getDatabaseConnector().purgeData(uuid);
+            if (uuids.isEmpty()) {
+                return;
+            }
 
-            count++;
-        }
+            Set<UUID> purgedUUIDs = new HashSet<>(uuids);
 
-        sender.sendMessage(ChatColor.GREEN + "Successfully removed " + count + " players from the database.");
+            plugin.getServer().getScheduler().callSyncMethod(plugin, () -> {
+                for (UUID uuid : purgedUUIDs) {
+                    Player player = plugin.getServer().getPlayer(uuid);
 
-        return true;
-    }
+                    // Kick player if he is online to make sure nothing gets mixed up.
+                    if (player != null) {
+                        player.kickPlayer(ChatColor.RED + "Your database records have been reset, please log back " +
+                                "in.");
+                    }
+                }
 
-    /* (non-Javadoc)
-     * @see me.staartvin.statz.commands.manager.StatzCommand#onTabComplete(org.bukkit.command.CommandSender, org
-     * .bukkit.command.Command, java.lang.String, java.lang.String[])
-     */
-    @Override
-    public List<String> onTabComplete(final CommandSender sender, final Command cmd, final String commandLabel,
-                                      final String[] args) {
+                // Updates that have not been written yet should not bring back any data.
+                plugin.getUpdatePoolManager().removeQueries(purgedUUIDs);
 
-        return null;
+                return null;
+            }).get();
+
+            for (int start = 0; start < uuids.size(); start += PURGE_CHUNK_SIZE) {
+                List<UUID> chunk = uuids.subList(start, Math.min(start + PURGE_CHUNK_SIZE, uuids.size()));
+                int deletedRows;
+
+                // Do not write updates to the database while data is removed.
+                synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                    deletedRows = plugin.getArchiveManager().purgePlayers(chunk,
+                            plugin.getCacheSnapshotManager().withFlushEpochStatement(Collections.emptyList()));
+                    plugin.getCacheSnapshotManager().onFlushed(chunk);
+                }
+
+                List<String> messages = new ArrayList<>(chunk.size());
+
+                for (UUID uuid : chunk) {
+                    plugin.getLeaderboardManager().removePlayer(uuid);
+                    plugin.getCachingManager().removeCachedData(uuid);
+
+                    messages.add(purgedBy + " purged player " + uuid);
+                }
+
+                plugin.getLogsManager().writeToLogFile(messages);
+                plugin.debugMessage("Purged " + chunk.size() + " players from database!");
+
+                purgedPlayers.addAndGet(chunk.size());
+
+                context.completeWork(chunk.size());
+                context.addWrittenRows(deletedRows);
+            }
+        }
     }
 }
@@ -0,0 +1,142 @@
+package me.staartvin.statz.commands;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.commands.manager.StatzCommand;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.language.Lang;
+import me.staartvin.statz.leaderboard.Leaderboard;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class TopCommand extends StatzCommand {
+
+    private static final int ENTRIES_PER_PAGE = 10;
+
+    private final Statz plugin;
+
+    public TopCommand(final Statz instance) {
+        this.setUsage("/statz top <stat> (column=value) (page)");
+        this.setDesc("Show the players with the highest value of a statistic.");
+        this.setPermission("statz.top");
+
+        plugin = instance;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, final Command cmd, final String label, final String[] args) {
+
+        if (args.length < 2) {
+            sender.sendMessage(Lang.INCORRECT_COMMAND_USAGE.getConfigValue(this.getUsage()));
+            return true;
+        }
+
+        PlayerStat statType;
+
+        try {
+            statType = PlayerStat.valueOf(args[1].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + "'" + args[1] + "' is not a valid statistic.");
+            return true;
+        }
+
+        RowRequirement filter = null;
+        int page = 1;
+
+        for (int i = 2; i < args.length; i++) {
+            String argument = args[i];
+
+            if (argument.contains("=")) {
+                filter = new RowRequirement(argument.substring(0, argument.indexOf('=')),
+                        argument.substring(argument.indexOf('=') + 1));
+                continue;
+            }
+
+            try {
+                page = Math.max(1, Integer.parseInt(argument));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(Lang.INCORRECT_COMMAND_USAGE.getConfigValue(this.getUsage()));
+                return true;
+            }
+        }
+
+        final int pageNumber = page;
+        final String title = statType + (filter == null ? "" : " (" + filter.getColumnName() + " = " +
+                filter.getColumnValue() + ")");
+
+        try {
+            plugin.getLeaderboardManager().loadLeaderboard(statType, filter).whenComplete((leaderboard, error) ->
+                    // The leaderboard is loaded on another thread, but messages should be sent on the main thread.
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        if (error instanceof IllegalArgumentException) {
+                            sender.sendMessage(ChatColor.RED + error.getMessage());
+                            return;
+                        }
+
+                        if (error != null) {
+                            sender.sendMessage(ChatColor.RED + "Could not load the leaderboard of " + title + ".");
+                            return;
+                        }
+
+                        this.showPage(sender, leaderboard, title, pageNumber);
+                    }));
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + e.getMessage());
+        }
+
+        return true;
+    }
+
+    private void showPage(CommandSender sender, Leaderboard leaderboard, String title, int page) {
+        int pages = Math.max(1, (leaderboard.size() + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE);
+        int firstRank = (page - 1) * ENTRIES_PER_PAGE + 1;
+
+        sender.sendMessage(ChatColor.BLUE + "---------------- [Top " + title + "] ----------------");
+
+        List<Leaderboard.Entry> entries = leaderboard.getEntries(firstRank, ENTRIES_PER_PAGE);
+
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "There are no players on this page.");
+        }
+
+        int rank = firstRank;
+
+        for (Leaderboard.Entry entry : entries) {
+            sender.sendMessage(ChatColor.GOLD + "#" + rank + " " + ChatColor.BLUE
+                    + plugin.getLeaderboardManager().getPlayerName(entry.getUUID()) + ChatColor.GRAY + ": "
+                    + ChatColor.GREEN + entry.getValue());
+            rank++;
+        }
+
+        sender.sendMessage(ChatColor.GRAY + "Page " + Math.min(page, pages) + " of " + pages);
+    }
+
+    /* (non-Javadoc)
+     * @see me.staartvin.statz.commands.manager.StatzCommand#onTabComplete(org.bukkit.command.CommandSender, org
+     * .bukkit.command.Command, java.lang.String, java.lang.String[])
+     */
+    @Override
+    public List<String> onTabComplete(final CommandSender sender, final Command cmd, final String commandLabel,
+                                      final String[] args) {
+
+        if (args.length != 2) {
+            return null;
+        }
+
+        List<String> statistics = new ArrayList<>();
+
+        for (PlayerStat statType : PlayerStat.values()) {
+            if (statType != PlayerStat.PLAYERS
+                    && statType.toString().toLowerCase(Locale.ROOT).startsWith(args[1].toLowerCase(Locale.ROOT))) {
+                statistics.add(statType.toString().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        return statistics;
+    }
+}
@@ -1,23 +1,53 @@
 package me.staartvin.statz.commands;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.archive.ArchiveManager;
 import me.staartvin.statz.commands.manager.StatzCommand;
 import me.staartvin.statz.database.DatabaseConnector;
 import me.staartvin.statz.database.MySQLConnector;
 import me.staartvin.statz.database.SQLiteConnector;
+import me.staartvin.statz.database.datatype.Column;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
 import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
 import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.jobs.BulkJob;
+import me.staartvin.statz.jobs.JobContext;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class TransferCommand extends StatzCommand {
 
+	// Number of rows that are read and written to the database at once while transferring
+	private static final int TRANSFER_BATCH_SIZE = 1000;
+
+	// Number of tables that are transferred at the same time
+	private static final int TRANSFER_THREADS = 4;
+
+	// Number of pages of a table that can be read before they are written
+	private static final int TRANSFER_QUEUE_SIZE = 2;
+
+	// Names of the jobs that transfer the databases
+	private static final String SQLITE_TO_MYSQL_JOB = "transfer-sqlite-to-mysql";
+	private static final String MYSQL_TO_SQLITE_JOB = "transfer-mysql-to-sqlite";
+
 	private static Statz plugin;
 	private static DatabaseConnector SQLiteConnector, MySQLConnector;
 
@@ -37,101 +67,416 @@ public class TransferCommand extends StatzCommand {
 
 	public static void confirmTransfer(final CommandSender sender) {
 		// Run after a player has confirmed the command.
+		confirmTransferSQLite.remove(sender.getName());
+
+		if (plugin.getJobManager().isRunning(SQLITE_TO_MYSQL_JOB)) {
+			sender.sendMessage(ChatColor.RED + "The SQLite database is already being transferred!");
+			return;
+		}
+
+		sender.sendMessage(ChatColor.GOLD + "Transferring database records... This make take a while!");
 
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+		// Load SQLiteConnector
+		SQLiteConnector = new SQLiteConnector(plugin);
 
-			public void run() {
-				confirmTransferSQLite.remove(sender.getName());
+		SQLiteConnector.loadTables();
 
-				sender.sendMessage(ChatColor.GOLD + "Transferring database records... This make take a while!");
+		plugin.getLogsManager().writeToLogFile("Starting tranfer from SQLite to MySQL database!");
 
-				// Load SQLiteConnector
-				SQLiteConnector = new SQLiteConnector(plugin);
+		startTransfer(sender, new TransferJob(SQLITE_TO_MYSQL_JOB, "Transferring SQLite to MySQL", SQLiteConnector,
+				false), "SQLite", "MySQL");
+	}
 
-				SQLiteConnector.loadTables();
-				SQLiteConnector.load();
+	public static void confirmReverseTransfer(final CommandSender sender) {
+		// Run after a player has confirmed the command.
+		confirmTransferMySQL.remove(sender.getName());
 
-				int updateCount = 0;
+		if (plugin.getJobManager().isRunning(MYSQL_TO_SQLITE_JOB)) {
+			sender.sendMessage(ChatColor.RED + "The MySQL database is already being transferred!");
+			return;
+		}
 
-				plugin.getLogsManager().writeToLogFile("Starting tranfer from SQLite to MySQL database!");
+		sender.sendMessage(ChatColor.GOLD + "Transferring database records... This make take a while!");
 
-				for (PlayerStat stat : PlayerStat.values()) {
-					// When using null as queries parameter, it will get all data in the table.
-					List<Query> storedSQLiteQueries = SQLiteConnector.getObjects(stat.getTableName());
+		// Load SQLiteConnector
+		MySQLConnector = new MySQLConnector(plugin);
 
-					Table table = DatabaseConnector.getTable(stat.getTableName());
+		MySQLConnector.loadTables();
 
-					// Write transferred items to log
-					plugin.getLogsManager().writeToLogFile(storedSQLiteQueries, stat);
+		plugin.getLogsManager().writeToLogFile("Starting tranfer from MySQL to SQLite database!");
+
+		// Do not write the ID column because SQLite automatically assigns id's to its tables.
+		startTransfer(sender, new TransferJob(MYSQL_TO_SQLITE_JOB, "Transferring MySQL to SQLite", MySQLConnector,
+				true), "MySQL", "SQLite");
+	}
 
-					plugin.getDatabaseConnector().setBatchObjects(table, storedSQLiteQueries,
-							DatabaseConnector.SET_OPERATION.ADD);
+	/**
+	 * Start a transfer once its source database has been loaded. The source database is closed when the transfer
+	 * is done, also if it failed.
+	 */
+	private static void startTransfer(final CommandSender sender, final TransferJob job, final String from,
+			final String to) {
+		job.source.load().thenCompose(loaded -> plugin.getJobManager().startJob(job, sender))
+				.whenComplete((updateCount, error) -> {
+					job.source.close();
+
+					// The job manager reports failed jobs itself.
+					if (error != null) {
+						return;
+					}
+
+					plugin.getLogsManager().writeToLogFile("Wrote " + updateCount + " changes while transferring " +
+							from + " to " + to + " database");
+
+					sender.sendMessage(ChatColor.GREEN + "Transferred " + ChatColor.GOLD + updateCount +
+							ChatColor.GREEN + " database records from " + from + " to " + to + "!");
+				});
+	}
+
+	/**
+	 * Copies the tables of another database to the database that Statz uses. Every table is read in pages, in the
+	 * order of a unique key, and each page is written in a single transaction together with the last key it
+	 * contains, so a transfer that was interrupted continues after the last page that was written. Several tables
+	 * are transferred at the same time. The archive is transferred after the tables of the statistics.
+	 */
+	private static class TransferJob implements BulkJob {
+
+		// Position of a table that has been transferred completely
+		private static final String TABLE_DONE = "done";
+
+		private final String name, description;
+		private final DatabaseConnector source;
+		private final boolean skipIds;
+
+		private TransferJob(String name, String description, DatabaseConnector source, boolean skipIds) {
+			this.name = name;
+			this.description = description;
+			this.source = source;
+			this.skipIds = skipIds;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
 
-					updateCount += storedSQLiteQueries.size();
+		@Override
+		public String getDescription() {
+			return description;
+		}
+
+		@Override
+		public void run(JobContext context) throws Exception {
+			Map<PlayerStat, Table> tables = new EnumMap<>(PlayerStat.class);
+
+			for (PlayerStat stat : PlayerStat.values()) {
+				Table table = DatabaseConnector.getTable(stat.getTableName());
+
+				if (table == null) {
+					continue;
 				}
 
-				plugin.getLogsManager().writeToLogFile("Wrote " + updateCount + " changes while transferring SQLite to" +
-						" MySQL database");
+				tables.put(stat, table);
+				context.addTotalWork(Math.max(0, source.countObjects(table)));
+			}
+
+			// Every table has a thread that writes its pages, and a thread that reads them.
+			ExecutorService writers = Executors.newFixedThreadPool(TRANSFER_THREADS);
+			ExecutorService readers = Executors.newFixedThreadPool(TRANSFER_THREADS);
+
+			try {
+				List<Future<?>> transfers = new ArrayList<>();
 
-				sender.sendMessage(ChatColor.GREEN + "Transferred " + ChatColor.GOLD + updateCount + ChatColor.GREEN
-						+ " database records from SQLite to MySQL!");
+				for (Map.Entry<PlayerStat, Table> entry : tables.entrySet()) {
+					transfers.add(writers.submit(() -> {
+						this.transferTable(context, readers, entry.getKey(), entry.getValue());
+						return null;
+					}));
+				}
+
+				for (Future<?> transfer : transfers) {
+					transfer.get();
+				}
+			} finally {
+				// Stop the other tables if one of them failed.
+				writers.shutdownNow();
+				readers.shutdownNow();
 			}
-		});
 
-	}
+			this.transferArchive(context);
+		}
 
-	public static void confirmReverseTransfer(final CommandSender sender) {
-		// Run after a player has confirmed the command.
+		/**
+		 * Transfer the archived players of the source database, one page at a time in the order of their uuids.
+		 * Players that are already archived in the database of Statz are skipped, as two archives of a player
+		 * cannot be combined.
+		 */
+		private void transferArchive(JobContext context) throws SQLException, InterruptedException {
+			String checkpoint = "table:" + ArchiveManager.ARCHIVE_TABLE;
+			String lastKey = context.getCheckpoint(checkpoint);
+
+			if (TABLE_DONE.equals(lastKey)) {
+				return;
+			}
+
+			while (true) {
+				Map<UUID, String> archives = ArchiveManager.readArchiveStatements(source, lastKey,
+						TRANSFER_BATCH_SIZE);
+				List<UUID> players = new ArrayList<>(archives.size());
+				List<String> statements = new ArrayList<>(archives.size());
 
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+				for (Map.Entry<UUID, String> archive : archives.entrySet()) {
+					lastKey = archive.getKey().toString();
 
-			public void run() {
-				confirmTransferMySQL.remove(sender.getName());
+					if (plugin.getArchiveManager().isArchived(archive.getKey())) {
+						plugin.getLogger().warning("Did not transfer the archive of " + archive.getKey() + ", as " +
+								"the player is already archived.");
+						continue;
+					}
 
-				sender.sendMessage(ChatColor.GOLD + "Transferring database records... This make take a while!");
+					players.add(archive.getKey());
+					statements.add(archive.getValue());
+				}
 
-				// Load SQLiteConnector
-				MySQLConnector = new MySQLConnector(plugin);
+				boolean last = archives.size() < TRANSFER_BATCH_SIZE;
 
-				MySQLConnector.loadTables();
-				MySQLConnector.load();
+				context.write(Collections.emptyMap(), statements, Collections.singletonMap(checkpoint,
+						last ? TABLE_DONE : lastKey));
+				context.addWrittenRows(statements.size());
 
-				int updateCount = 0;
+				plugin.getArchiveManager().addArchivedPlayers(players);
 
-				plugin.getLogsManager().writeToLogFile("Starting tranfer from MySQL to SQLite database!");
+				if (last) {
+					return;
+				}
+			}
+		}
 
-				for (PlayerStat stat : PlayerStat.values()) {
-					// When using null as queries parameter, it will get all data in the table.
-					List<Query> storedMySQLQueries = MySQLConnector.getObjects(stat.getTableName());
+		/**
+		 * Transfer a table. Pages of rows are read on another thread and handed over through a queue of a limited
+		 * size, so the reader can never get far ahead of the writer and memory use does not depend on the size of
+		 * the table.
+		 */
+		private void transferTable(JobContext context, ExecutorService readers, PlayerStat stat, Table table) throws
+				Exception {
+			String checkpoint = "table:" + table.getTableName();
+			String position = context.getCheckpoint(checkpoint);
+			String keyColumn = this.getKeyColumn(table);
+
+			long transferred = 0;
+			String lastKey = null;
+
+			if (position != null) {
+				int separator = position.indexOf(':');
+
+				transferred = Long.parseLong(separator < 0 ? position : position.substring(0, separator));
+				context.skipWork(transferred);
+
+				if (separator < 0) {
+					// The table has been transferred completely.
+					return;
+				}
+
+				lastKey = position.substring(separator + 1);
+			}
+
+			BlockingQueue<TransferPage> pages = new ArrayBlockingQueue<>(TRANSFER_QUEUE_SIZE);
+			long startCount = transferred;
+			String startKey = lastKey;
+
+			Future<?> reader = readers.submit(() -> {
+				if (keyColumn == null) {
+					this.streamPages(table, startCount, pages);
+				} else {
+					this.readPages(table, keyColumn, startCount, startKey, pages);
+				}
 
-					// Remove ID column because SQLite automatically assigns id's to its tables.
-					for (Query q : storedMySQLQueries) {
-						if (q.hasColumn("id")) {
-							q.removeColumn("id");
+				return null;
+			});
+
+			try {
+				while (true) {
+					TransferPage page = pages.poll(1, TimeUnit.SECONDS);
+
+					if (page == null) {
+						// Throw the error of the reader if it stopped before the last page.
+						if (reader.isDone()) {
+							reader.get();
+						}
+
+						continue;
+					}
+
+					if (skipIds) {
+						for (Query query : page.rows) {
+							query.removeColumn("id");
 						}
 					}
 
 					// Write transferred items to log
-					plugin.getLogsManager().writeToLogFile(storedMySQLQueries, stat);
+					plugin.getLogsManager().writeToLogFile(page.rows, stat);
+
+					context.write(stat, page.rows, checkpoint, page.position);
+					context.completeWork(page.rows.size());
+
+					if (page.last) {
+						return;
+					}
+				}
+			} finally {
+				reader.cancel(true);
+			}
+		}
+
+		/**
+		 * Read the rows of a table that come after a key, one page at a time. Each page is read with a separate
+		 * query that starts after the last key of the previous page, so no cursor is kept open while the writer is
+		 * busy. The last page that is put on the queue is marked as last.
+		 */
+		private void readPages(Table table, String keyColumn, long transferred, String lastKey,
+				BlockingQueue<TransferPage> pages) throws SQLException, InterruptedException {
+			while (true) {
+				List<Query> rows = new ArrayList<>();
+				Selection selection = new Selection(table);
+				boolean rowIdKey = table.getColumn(keyColumn) == null;
+
+				if (rowIdKey) {
+					selection.withRowId(keyColumn);
+				}
+
+				selection.orderBy(keyColumn, false).limit(TRANSFER_BATCH_SIZE);
+
+				if (lastKey != null) {
+					selection.whereAfter(keyColumn, toKeyValue(table, keyColumn, lastKey));
+				}
+
+				if (source.forEachObject(selection, rows::add) < 0) {
+					throw new SQLException("Could not read table " + table.getTableName());
+				}
+
+				transferred += rows.size();
+
+				String pageKey = rows.isEmpty() ? null : rows.get(rows.size() - 1).getValue(keyColumn).toString();
+
+				// The row id is not a column of the table, so it cannot be written.
+				if (rowIdKey) {
+					for (Query row : rows) {
+						row.removeColumn(keyColumn);
+					}
+				}
+
+				if (rows.size() < TRANSFER_BATCH_SIZE) {
+					pages.put(new TransferPage(rows, String.valueOf(transferred), true));
+					return;
+				}
 
-					Table table = DatabaseConnector.getTable(stat.getTableName());
+				lastKey = pageKey;
 
-					plugin.getDatabaseConnector().setBatchObjects(table, storedMySQLQueries,
-							DatabaseConnector.SET_OPERATION.ADD);
+				pages.put(new TransferPage(rows, transferred + ":" + lastKey, false));
+			}
+		}
 
-					updateCount += storedMySQLQueries.size();
+		/**
+		 * Read the rows of a table without a key. Such a table cannot be read from a position, so all rows are read
+		 * with a single streaming query and are put on the queue in pages while they are read. If the transfer was
+		 * interrupted, the rows that were already written are skipped. This relies on the source database returning
+		 * the rows in the same order again, which is the case as long as the table does not change.
+		 */
+		private void streamPages(Table table, long transferred, BlockingQueue<TransferPage> pages) throws
+				SQLException {
+			List<Query> rows = new ArrayList<>(TRANSFER_BATCH_SIZE);
+			long[] position = {0, transferred};
+
+			int rowCount = source.forEachObject(new Selection(table), row -> {
+				// This row was written before the transfer was interrupted.
+				if (position[0]++ < transferred) {
+					return;
 				}
 
-				plugin.getLogsManager().writeToLogFile("Wrote " + updateCount + " changes while transferring MySQL to " +
-						"SQLite database");
+				rows.add(row);
+
+				if (rows.size() < TRANSFER_BATCH_SIZE) {
+					return;
+				}
+
+				position[1] += rows.size();
+
+				// The page is not the last, so it has a position that is continued from.
+				this.putPage(pages, new TransferPage(new ArrayList<>(rows), position[1] + ":", false));
+				rows.clear();
+			}, true);
+
+			if (rowCount < 0) {
+				throw new SQLException("Could not read table " + table.getTableName());
+			}
+
+			position[1] += rows.size();
 
-				sender.sendMessage(ChatColor.GREEN + "Transferred " + ChatColor.GOLD + updateCount + ChatColor.GREEN
-						+ " database records from MySQL to SQLite!");
+			this.putPage(pages, new TransferPage(new ArrayList<>(rows), String.valueOf(position[1]), true));
+		}
 
+		private void putPage(BlockingQueue<TransferPage> pages, TransferPage page) {
+			try {
+				pages.put(page);
+			} catch (InterruptedException e) {
+				// The writer stopped, so stop reading the table.
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Stopped reading a table that is transferred", e);
+			}
+		}
+
+		/**
+		 * Get a column that has a different value for every row of a table in the source database, so the rows of
+		 * the table can be read in order. Not every table of the source database has the same columns as the table
+		 * of Statz (e.g. some SQLite tables do not have an id), so the first row of the table is checked. Tables
+		 * without such a column are read in the order of the row id of the database, if it has one.
+		 *
+		 * @return name of the column, or null if the table is empty or has no such column.
+		 */
+		private String getKeyColumn(Table table) {
+			Query[] firstRow = new Query[1];
+
+			source.forEachObject(new Selection(table).limit(1), row -> firstRow[0] = row);
+
+			if (firstRow[0] == null) {
+				return null;
+			}
 
+			if (firstRow[0].hasColumn("id")) {
+				return "id";
 			}
-		});
 
+			Column uuid = table.getColumn("uuid");
+
+			if (uuid != null && (uuid.isPrimaryKey() || uuid.isUnique()) && firstRow[0].hasColumn("uuid")) {
+				return "uuid";
+			}
+
+			return source.getDialect().getRowIdColumn();
+		}
+
+		private static Object toKeyValue(Table table, String keyColumn, String value) {
+			Column column = table.getColumn(keyColumn);
+
+			// A row id is always a number.
+			return column == null || column.getDataType() == SQLDataType.INT ? (Object) Long.valueOf(value) : value;
+		}
+	}
+
+	/**
+	 * Rows of a table that are written in a single transaction, with the position of the table after the rows.
+	 */
+	private static class TransferPage {
+
+		private final List<Query> rows;
+		private final String position;
+		private final boolean last;
+
+		private TransferPage(List<Query> rows, String position, boolean last) {
+			this.rows = rows;
+			this.position = position;
+			this.last = last;
+		}
 	}
 
 	@Override
@@ -44,6 +44,9 @@ public class CommandsManager implements TabExecutor {
 		registeredCommands.put(Arrays.asList("transfer"), new TransferCommand(plugin));
 		registeredCommands.put(Arrays.asList("migrate"), new MigrateCommand(plugin));
 		registeredCommands.put(Arrays.asList("purge"), new PurgeCommand(plugin));
+		registeredCommands.put(Arrays.asList("archive"), new ArchiveCommand(plugin));
+		registeredCommands.put(Arrays.asList("metrics"), new MetricsCommand(plugin));
+		registeredCommands.put(Arrays.asList("top"), new TopCommand(plugin));
 	}
 
 	public HashMap<List<String>, StatzCommand> getRegisteredCommands() {
@@ -51,7 +51,53 @@ public class ConfigHandler {
                 "is off by default and create large log files if left on for a long time."
                 + "\nThe option 'make backup of database before patching' tells Statz whether to make a backup of the" +
                 " database before attempting to patch it. This will require that Statz can use the backup database " +
-                "specified in the mysql section. Be sure to give Statz the correct permissions in your database");
+                "specified in the mysql section. Be sure to give Statz the correct permissions in your database"
+                + "\nThe 'metrics.enabled' option records runtime metrics (events, database flushes, cache hits) that" +
+                " you can view with /statz metrics. Every 'metrics.snapshot interval' minutes, a snapshot is written " +
+                "to the logs folder. Set the interval to 0 to disable snapshots. Only the last 'metrics.snapshots to " +
+                "keep' snapshots are kept."
+                + "\nSet 'metrics.prometheus.enabled' to true to serve the metrics in Prometheus format on " +
+                "http://<metrics.prometheus.address>:<metrics.prometheus.port>/metrics. Only bind to a public " +
+                "address if your firewall protects it."
+                + "\nThe watchdog measures how long the listeners of Statz take on the main thread. If they use " +
+                "more than 'watchdog.tick budget' milliseconds in a single tick, the most expensive statistic does " +
+                "less work on the main thread for 'watchdog.degrade time' seconds. DISTANCE_TRAVELLED is then only " +
+                "recorded every 'watchdog.distance sample interval' moves (no distance is lost)."
+                + "\nThe 'database threads' option sets how many threads can load data from the database at the " +
+                "same time. At most 'database queue size' requests can wait for a thread."
+                + "\nPlaceholders never wait for the database. When the data of a player is still loading, " +
+                "'placeholder loading text' is shown instead. A computed placeholder is reused for 'placeholder " +
+                "cache time' milliseconds. Set it to 0 to always compute placeholders."
+                + "\nWhen 'dictionary encoding' is true, names of worlds, materials, mobs, etc. are stored once in a " +
+                "dictionary and the statistics only store their numeric id, which makes the database a lot smaller. " +
+                "The database is converted when the server starts, so make a backup first. Setting it back to false " +
+                "does not convert the database back."
+                + "\nWhen 'binary uuids' is true, the uuids of players are stored as 16 bytes instead of text, which " +
+                "makes the indexes of the database less than half as large. Like 'dictionary encoding', the database " +
+                "is converted when the server starts and is not converted back."
+                + "\nImports and transfers write at most 'bulk jobs.rows per second' rows per second, so the server " +
+                "keeps enough database time for players. Set it to 0 to write as fast as possible. Every 'bulk " +
+                "jobs.progress interval' seconds, the progress of a job is sent to whoever started it. A job that was " +
+                "interrupted continues where it stopped when it is started again."
+                + "\nSet 'h2.enabled' to true to store data in an embedded H2 database instead of SQLite. H2 handles " +
+                "reads and writes from several threads better than SQLite, without needing a MySQL server. MySQL is " +
+                "used if both are enabled. Data is not moved when you switch databases."
+                + "\nSet 'segment log.enabled' to true to store statistics in an append-only log in the 'segments' " +
+                "folder instead of SQLite, which makes saving cheap and loads the data of a player with a single " +
+                "read. Changes are written to files of 'segment log.segment size' MB, which are merged once " +
+                "'segment log.compaction threshold' MB has been written. MySQL and H2 are used instead if they are " +
+                "enabled."
+                + "\nWhen 'cache snapshot' is true, the cache is saved to a file when the server stops and is used " +
+                "again after a restart, so players do not have to be loaded from the database. It is not used if " +
+                "the database was changed in the meantime."
+                + "\nWhen 'pre-login warm-up.enabled' is true, the data of a player is loaded while they are logging " +
+                "in, so it is cached before they join. Players that log in at the same time are loaded together. A " +
+                "login waits at most 'pre-login warm-up.timeout' milliseconds for the data, after which it is loaded " +
+                "in the background."
+                + "\nSet 'off-heap cache.enabled' to true to keep the cache outside of the Java heap, which keeps " +
+                "garbage collection short on servers that cache a lot of players. Only the 'off-heap cache.heap " +
+                "players' most recently used players are kept on the heap. Memory is allocated in blocks of " +
+                "'off-heap cache.chunk size' MB. Raise -XX:MaxDirectMemorySize if the cache does not fit.");
 
         plugin.getConfig().addDefault("track stats", true);
         plugin.getConfig().addDefault("show database save message", false);
@@ -63,6 +109,12 @@ public class ConfigHandler {
         plugin.getConfig().addDefault("mysql.database", "Statz");
         plugin.getConfig().addDefault("mysql.database for backups", "Statz_backups");
 
+        plugin.getConfig().addDefault("h2.enabled", false);
+
+        plugin.getConfig().addDefault("segment log.enabled", false);
+        plugin.getConfig().addDefault("segment log.segment size", 16);
+        plugin.getConfig().addDefault("segment log.compaction threshold", 64);
+
         plugin.getConfig().addDefault("periodic save time", TaskManager.UPDATE_DATABASE_TASK_INTERVAL);
 
         plugin.getConfig().addDefault("refresh player cache time", TaskManager.UPDATE_PLAYER_CACHE_INTERVAL);
@@ -87,6 +139,39 @@ public class ConfigHandler {
 
         plugin.getConfig().addDefault("make backup of database before patching", true);
 
+        plugin.getConfig().addDefault("metrics.enabled", true);
+        plugin.getConfig().addDefault("metrics.snapshot interval", TaskManager.METRICS_SNAPSHOT_INTERVAL);
+        plugin.getConfig().addDefault("metrics.snapshots to keep", 24);
+        plugin.getConfig().addDefault("metrics.prometheus.enabled", false);
+        plugin.getConfig().addDefault("metrics.prometheus.address", "127.0.0.1");
+        plugin.getConfig().addDefault("metrics.prometheus.port", 9225);
+
+        plugin.getConfig().addDefault("watchdog.enabled", true);
+        plugin.getConfig().addDefault("watchdog.tick budget", 2.0);
+        plugin.getConfig().addDefault("watchdog.degrade time", 10);
+        plugin.getConfig().addDefault("watchdog.distance sample interval", 10);
+
+        plugin.getConfig().addDefault("database threads", 4);
+        plugin.getConfig().addDefault("database queue size", 1024);
+
+        plugin.getConfig().addDefault("placeholder loading text", "...");
+        plugin.getConfig().addDefault("placeholder cache time", 1000);
+
+        plugin.getConfig().addDefault("bulk jobs.rows per second", 10000);
+        plugin.getConfig().addDefault("bulk jobs.progress interval", 10);
+
+        plugin.getConfig().addDefault("cache snapshot", true);
+
+        plugin.getConfig().addDefault("pre-login warm-up.enabled", true);
+        plugin.getConfig().addDefault("pre-login warm-up.timeout", 500);
+
+        plugin.getConfig().addDefault("off-heap cache.enabled", false);
+        plugin.getConfig().addDefault("off-heap cache.heap players", 1000);
+        plugin.getConfig().addDefault("off-heap cache.chunk size", 4);
+
+        plugin.getConfig().addDefault("dictionary encoding", false);
+        plugin.getConfig().addDefault("binary uuids", false);
+
         plugin.getConfig().options().copyDefaults(true);
 
         this.saveConfig();
@@ -122,6 +207,36 @@ public class ConfigHandler {
         return plugin.getConfig().getBoolean("mysql.enabled", false);
     }
 
+    public boolean isH2Enabled() {
+        return plugin.getConfig().getBoolean("h2.enabled", false);
+    }
+
+    public boolean isCacheSnapshotEnabled() {
+        return plugin.getConfig().getBoolean("cache snapshot", true);
+    }
+
+    public boolean isSegmentLogEnabled() {
+        return plugin.getConfig().getBoolean("segment log.enabled", false);
+    }
+
+    /**
+     * Get the size of a file of the segment log.
+     *
+     * @return the size of a segment in bytes, between 1 MB and 1 GB.
+     */
+    public int getSegmentSize() {
+        return Math.max(1, Math.min(1024, plugin.getConfig().getInt("segment log.segment size", 16))) * 1024 * 1024;
+    }
+
+    /**
+     * Get the number of bytes that is written to the segment log before it is compacted.
+     *
+     * @return the compaction threshold in bytes.
+     */
+    public long getSegmentCompactionThreshold() {
+        return Math.max(1, plugin.getConfig().getLong("segment log.compaction threshold", 64)) * 1024 * 1024;
+    }
+
     public String getMySQLHostname() {
         return plugin.getConfig().getString("mysql.hostname", "localhost:3306");
     }
@@ -233,4 +348,101 @@ public class ConfigHandler {
         return plugin.getConfig().getBoolean("make backup of database before patching", true);
     }
 
+    public boolean isMetricsEnabled() {
+        return plugin.getConfig().getBoolean("metrics.enabled", true);
+    }
+
+    public int getMetricsSnapshotInterval() {
+        return plugin.getConfig().getInt("metrics.snapshot interval", TaskManager.METRICS_SNAPSHOT_INTERVAL);
+    }
+
+    public int getMetricsSnapshotsToKeep() {
+        return Math.max(1, plugin.getConfig().getInt("metrics.snapshots to keep", 24));
+    }
+
+    public boolean isPrometheusExporterEnabled() {
+        return plugin.getConfig().getBoolean("metrics.prometheus.enabled", false);
+    }
+
+    public String getPrometheusAddress() {
+        return plugin.getConfig().getString("metrics.prometheus.address", "127.0.0.1");
+    }
+
+    public int getPrometheusPort() {
+        return plugin.getConfig().getInt("metrics.prometheus.port", 9225);
+    }
+
+    public boolean isWatchdogEnabled() {
+        return plugin.getConfig().getBoolean("watchdog.enabled", true);
+    }
+
+    public double getWatchdogTickBudget() {
+        return plugin.getConfig().getDouble("watchdog.tick budget", 2.0);
+    }
+
+    public int getWatchdogDegradeTime() {
+        return plugin.getConfig().getInt("watchdog.degrade time", 10);
+    }
+
+    public int getWatchdogDistanceSampleInterval() {
+        return Math.max(1, plugin.getConfig().getInt("watchdog.distance sample interval", 10));
+    }
+
+    public int getDatabaseThreads() {
+        return Math.max(1, plugin.getConfig().getInt("database threads", 4));
+    }
+
+    public int getDatabaseQueueSize() {
+        return Math.max(1, plugin.getConfig().getInt("database queue size", 1024));
+    }
+
+    public String getPlaceholderLoadingText() {
+        return plugin.getConfig().getString("placeholder loading text", "...");
+    }
+
+    public long getPlaceholderCacheTime() {
+        return Math.max(0, plugin.getConfig().getLong("placeholder cache time", 1000));
+    }
+
+    public boolean isDictionaryEncodingEnabled() {
+        return plugin.getConfig().getBoolean("dictionary encoding", false);
+    }
+
+    public boolean isBinaryUUIDsEnabled() {
+        return plugin.getConfig().getBoolean("binary uuids", false);
+    }
+
+    public int getBulkJobRowsPerSecond() {
+        return Math.max(0, plugin.getConfig().getInt("bulk jobs.rows per second", 10000));
+    }
+
+    public int getBulkJobProgressInterval() {
+        return Math.max(1, plugin.getConfig().getInt("bulk jobs.progress interval", 10));
+    }
+
+    public boolean isPreLoginWarmUpEnabled() {
+        return plugin.getConfig().getBoolean("pre-login warm-up.enabled", true);
+    }
+
+    public long getPreLoginWarmUpTimeout() {
+        return Math.max(0, plugin.getConfig().getLong("pre-login warm-up.timeout", 500));
+    }
+
+    public boolean isOffHeapCacheEnabled() {
+        return plugin.getConfig().getBoolean("off-heap cache.enabled", false);
+    }
+
+    public int getOffHeapCacheHeapPlayers() {
+        return Math.max(1, plugin.getConfig().getInt("off-heap cache.heap players", 1000));
+    }
+
+    /**
+     * Get the size of a block of direct memory that the off-heap cache allocates.
+     *
+     * @return the chunk size in bytes.
+     */
+    public int getOffHeapCacheChunkSize() {
+        return Math.max(1, Math.min(1024, plugin.getConfig().getInt("off-heap cache.chunk size", 4))) * 1024 * 1024;
+    }
+
 }
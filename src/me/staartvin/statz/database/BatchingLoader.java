@@ -0,0 +1,142 @@
+package me.staartvin.statz.database;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Combines requests for single keys into batches, so they can be loaded from the database with a single request.
+ * Batches are loaded one after another on a thread of a {@link DatabaseExecutor}. Keys that are requested while a
+ * batch is being loaded are collected and loaded together in the next batch, so the busier the database is, the
+ * larger the batches become.
+ * <br>
+ * <br>
+ * A key that is already waiting to be loaded shares the future of the waiting request.
+ *
+ * @param <K> Type of the keys, e.g. the UUID of a player
+ * @param <V> Type of the loaded values
+ */
+public class BatchingLoader<K, V> {
+
+    private final DatabaseExecutor executor;
+    private final Function<List<K>, Map<K, V>> loader;
+    private final int maxBatchSize;
+
+    // Keys that wait to be loaded, in the order they were requested. Guarded by this.
+    private final Map<K, CompletableFuture<V>> pendingRequests = new LinkedHashMap<>();
+
+    // Whether a thread is loading batches. Guarded by this.
+    private boolean loading = false;
+
+    /**
+     * Create a new loader.
+     *
+     * @param executor     Executor to load the batches on
+     * @param loader       Function that loads the values of a batch of keys. Keys without a value are completed
+     *                     with null.
+     * @param maxBatchSize Maximum number of keys that are loaded together
+     * @throws IllegalArgumentException if the maximum batch size is smaller than 1.
+     */
+    public BatchingLoader(DatabaseExecutor executor, Function<List<K>, Map<K, V>> loader, int maxBatchSize)
+            throws IllegalArgumentException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+
+        this.executor = executor;
+        this.loader = loader;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Load the value of a key in the next batch.
+     *
+     * @param key Key to load
+     * @return a future that is completed with the loaded value, or exceptionally if the batch could not be loaded.
+     */
+    public CompletableFuture<V> load(K key) {
+        CompletableFuture<V> future;
+
+        synchronized (this) {
+            future = pendingRequests.get(key);
+
+            if (future != null) {
+                return future;
+            }
+
+            future = new CompletableFuture<>();
+            pendingRequests.put(key, future);
+
+            // The running thread picks up the key in its next batch.
+            if (loading) {
+                return future;
+            }
+
+            loading = true;
+        }
+
+        executor.supply(() -> {
+            this.loadBatches();
+            return null;
+        }).whenComplete((result, error) -> {
+            // The executor did not accept the request, so nothing will load the waiting keys.
+            if (error != null) {
+                this.failPendingRequests(error);
+            }
+        });
+
+        return future;
+    }
+
+    private void loadBatches() {
+        while (true) {
+            Map<K, CompletableFuture<V>> batch = new LinkedHashMap<>();
+
+            synchronized (this) {
+                Iterator<Map.Entry<K, CompletableFuture<V>>> iterator = pendingRequests.entrySet().iterator();
+
+                while (iterator.hasNext() && batch.size() < maxBatchSize) {
+                    Map.Entry<K, CompletableFuture<V>> request = iterator.next();
+
+                    batch.put(request.getKey(), request.getValue());
+                    iterator.remove();
+                }
+
+                if (batch.isEmpty()) {
+                    loading = false;
+                    return;
+                }
+            }
+
+            try {
+                Map<K, V> values = loader.apply(new ArrayList<>(batch.keySet()));
+
+                for (Map.Entry<K, CompletableFuture<V>> request : batch.entrySet()) {
+                    request.getValue().complete(values.get(request.getKey()));
+                }
+            } catch (Throwable e) {
+                for (CompletableFuture<V> future : batch.values()) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void failPendingRequests(Throwable error) {
+        List<CompletableFuture<V>> futures;
+
+        synchronized (this) {
+            futures = new ArrayList<>(pendingRequests.values());
+            pendingRequests.clear();
+            loading = false;
+        }
+
+        for (CompletableFuture<V> future : futures) {
+            future.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package me.staartvin.statz.database;
+
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The uuid column of every table of Statz is compared on every lookup and is part of most indexes. When 'binary
+ * uuids' is enabled, uuids are stored as 16 bytes instead of a text of 36 characters, which makes the indexes less
+ * than half as large.
+ * <br>
+ * <br>
+ * Like the {@link Dictionary}, uuids are only converted when data is written to or read from the database, so
+ * {@link me.staartvin.statz.database.datatype.Query} objects always contain the text of a uuid. A table only stores
+ * binary uuids after it has been converted by {@link me.staartvin.statz.patches.BinaryUUIDPatch}.
+ */
+public class BinaryUUIDs {
+
+    /**
+     * Table that holds the names of the tables that store binary uuids.
+     */
+    public static final String BINARY_TABLES_TABLE = DatabaseConnector.prefix + "binary_uuid_tables";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final DatabaseConnector connector;
+
+    // Names of the tables that store binary uuids
+    private volatile Set<String> binaryTables = ConcurrentHashMap.newKeySet();
+
+    public BinaryUUIDs(DatabaseConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Get the 16 bytes of a uuid, most significant byte first.
+     *
+     * @param uuid UUID to convert
+     * @return the bytes of the uuid.
+     */
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    /**
+     * Get the uuid of 16 bytes that were created by {@link #toBytes(UUID)}.
+     *
+     * @param bytes Bytes of the uuid
+     * @return the uuid.
+     * @throws IllegalArgumentException if the bytes are not a uuid.
+     */
+    public static UUID fromBytes(byte[] bytes) throws IllegalArgumentException {
+        if (bytes == null || bytes.length != 16) {
+            throw new IllegalArgumentException("A uuid consists of 16 bytes.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Get the uuid of a value that was read from the database, which is either a text or 16 bytes.
+     *
+     * @param value Value of a uuid column
+     * @return the uuid.
+     * @throws IllegalArgumentException if the value is not a uuid.
+     */
+    public static UUID toUUID(Object value) throws IllegalArgumentException {
+        if (value instanceof byte[]) {
+            return fromBytes((byte[]) value);
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("A uuid cannot be null.");
+        }
+
+        return UUID.fromString(value.toString());
+    }
+
+    /**
+     * Get the value of a column as it should be stored in a {@link me.staartvin.statz.database.datatype.Query}.
+     * Binary uuids are the only binary values that Statz stores, so they are replaced by the text of the uuid.
+     *
+     * @param value Value that was read from the database
+     * @return the text of the uuid if the value is a binary uuid, or the given value otherwise.
+     */
+    public static Object readValue(Object value) {
+        if (value instanceof byte[] && ((byte[]) value).length == 16) {
+            return fromBytes((byte[]) value).toString();
+        }
+
+        return value;
+    }
+
+    /**
+     * Get a SQL literal of the bytes of a uuid, which is understood by both MySQL and SQLite.
+     *
+     * @param uuid UUID to convert
+     * @return a literal of the form X'...'.
+     */
+    public static String toLiteral(UUID uuid) {
+        byte[] bytes = toBytes(uuid);
+        StringBuilder literal = new StringBuilder(35).append("X'");
+
+        for (byte b : bytes) {
+            literal.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+
+        return literal.append('\'').toString();
+    }
+
+    /**
+     * Load the names of the tables that store binary uuids. If the database has not been converted, no table
+     * stores binary uuids.
+     */
+    public void load() {
+        Set<String> loadedTables = ConcurrentHashMap.newKeySet();
+
+        Connection connection = connector.getConnection();
+
+        if (connection == null) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT table_name FROM " + BINARY_TABLES_TABLE)) {
+            while (resultSet.next()) {
+                loadedTables.add(resultSet.getString(1).toLowerCase());
+            }
+        } catch (SQLException e) {
+            // The database has not been converted.
+            loadedTables.clear();
+        } finally {
+            connector.releaseConnection(connection);
+        }
+
+        binaryTables = loadedTables;
+    }
+
+    /**
+     * Check whether a table stores binary uuids.
+     *
+     * @param table Table to check
+     * @return true if the uuids of the table are stored as bytes.
+     */
+    public boolean isBinary(Table table) {
+        return table != null && binaryTables.contains(table.getTableName().toLowerCase());
+    }
+
+    /**
+     * Get the value that should be bound to a parameter that is compared to a column of a table.
+     *
+     * @param table      Table of the column
+     * @param columnName Name of the column
+     * @param value      Value to compare the column with
+     * @return the bytes of the uuid if the column stores binary uuids, or the given value otherwise.
+     */
+    public Object getParameterValue(Table table, String columnName, Object value) {
+        if (value == null || !"uuid".equalsIgnoreCase(columnName) || !this.isBinary(table)) {
+            return value;
+        }
+
+        try {
+            return toBytes(UUID.fromString(value.toString()));
+        } catch (IllegalArgumentException e) {
+            // Not a uuid, so it will not match any row.
+            return value;
+        }
+    }
+
+    /**
+     * Get the SQL literal of a value that is written to a column of a table.
+     *
+     * @param table      Table of the column
+     * @param columnName Name of the column
+     * @param value      Value that is written
+     * @return a literal of the bytes of the uuid, or null if the column does not store binary uuids.
+     */
+    public String getLiteral(Table table, String columnName, Object value) {
+        if (value == null || !"uuid".equalsIgnoreCase(columnName) || !this.isBinary(table)) {
+            return null;
+        }
+
+        try {
+            return toLiteral(UUID.fromString(value.toString()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace the uuids in the conditions of a selection by their bytes.
+     *
+     * @param selection Selection to convert
+     * @return the converted selection, or the given selection if its table does not store binary uuids.
+     */
+    public Selection convert(Selection selection) {
+        if (!this.isBinary(selection.getTable())) {
+            return selection;
+        }
+
+        return selection.withConvertedValues("uuid", value -> this.getParameterValue(selection.getTable(), "uuid",
+                value));
+    }
+}
@@ -1,23 +1,45 @@
 package me.staartvin.statz.database;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Column;
 import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
 import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.dialect.SQLDialect;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import org.bukkit.ChatColor;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public abstract class DatabaseConnector {
 	private final Statz plugin;
 
+	// Encodes names of worlds, materials, etc. for tables that have been converted
+	private final Dictionary dictionary;
+
+	// Converts uuids for tables that store them as bytes
+	private final BinaryUUIDs binaryUUIDs;
+
+	// Builds the SQL that differs between database engines
+	private final SQLDialect dialect;
+
 	// All tables are stored here.
 	private static List<Table> tables = new ArrayList<Table>();
 
@@ -40,10 +62,17 @@ public abstract class DatabaseConnector {
 	 *                'c5f39a1d-3786-46a7-8953-d4efabf8880d'.
 	 * @param mode    What mode should the update run in? See {@link SET_OPERATION}.
 	 */
-	public abstract void setObjects(final Table table, final Query results, SET_OPERATION mode);
+	public void setObjects(final Table table, final Query results, SET_OPERATION mode) {
+		// Run the query async to not disturb the main server thread.
+		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> this.setBatchObjects(table,
+				Collections.singletonList(results), mode));
+	}
 
-	public DatabaseConnector(final Statz instance) {
+	public DatabaseConnector(final Statz instance, final SQLDialect dialect) {
 		plugin = instance;
+		this.dialect = dialect;
+		dictionary = new Dictionary(instance, this);
+		binaryUUIDs = new BinaryUUIDs(this);
 	}
 
 	/**
@@ -92,9 +121,30 @@ public abstract class DatabaseConnector {
 	public abstract Connection getConnection();
 
 	/**
-	 * Connects to sqlite database and automatically creates tables when needed.
+	 * Connects to the database and automatically creates tables when needed. This is done in the background, see
+	 * {@link #loadDatabase()}.
+	 *
+	 * @return a future that is completed once loading the database has finished, also if it failed.
+	 */
+	public CompletableFuture<Void> load() {
+		CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+			try {
+				this.loadDatabase();
+			} finally {
+				loaded.complete(null);
+			}
+		});
+
+		return loaded;
+	}
+
+	/**
+	 * Connects to the database and automatically creates tables when needed. This is called on a thread of its
+	 * own by {@link #load()}.
 	 */
-	public abstract void load();
+	protected abstract void loadDatabase();
 
 	/**
 	 * Tests whether there is a valid connection available between the
@@ -111,6 +161,83 @@ public abstract class DatabaseConnector {
 			}
 
 			plugin.debugMessage(ChatColor.AQUA + "Statz is connected to its database!");
+
+			// Some features depend on the version of the database.
+			DatabaseMetaData metaData = connection.getMetaData();
+
+			dialect.setDatabaseVersion(metaData.getDatabaseMajorVersion(), metaData.getDatabaseMinorVersion());
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+
+		// Find out which tables store ids instead of names, and bytes instead of uuids.
+		dictionary.load();
+		binaryUUIDs.load();
+	}
+
+	/**
+	 * Release the resources that this connector holds, such as files and pools of connections. It is called when
+	 * Statz is disabled, after the last updates have been written.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Get the dictionary that encodes the names of worlds, materials, etc. of this database.
+	 *
+	 * @return the dictionary of this database.
+	 */
+	public Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Get the dialect of this database, which describes the SQL it understands and what features it supports.
+	 *
+	 * @return the dialect of this database.
+	 */
+	public SQLDialect getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * Create the statements that create the loaded tables if they do not exist yet.
+	 *
+	 * @return SQL statements that will create the necessary tables when run.
+	 */
+	public List<String> createTablesStatement() {
+		final List<String> statements = new ArrayList<>();
+
+		for (final Table table : this.getTables()) {
+			statements.add(dialect.createTableStatement(table));
+
+			plugin.debugMessage(ChatColor.GREEN + "Loaded table '" + table.getTableName() + "'");
+		}
+
+		return statements;
+	}
+
+	/**
+	 * Get the tables of this database that store uuids as bytes.
+	 *
+	 * @return the binary uuids of this database.
+	 */
+	public BinaryUUIDs getBinaryUUIDs() {
+		return binaryUUIDs;
+	}
+
+	/**
+	 * Give back a connection that was obtained with {@link #getConnection()} and is no longer needed.
+	 *
+	 * @param connection Connection to give back, can be null
+	 */
+	public void releaseConnection(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+
+		try {
+			connection.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -127,7 +254,127 @@ public abstract class DatabaseConnector {
 	 *            info about requirements.
 	 * @return a list of {@link Query} objects, each representing one row in the database.
 	 */
-	public abstract List<Query> getObjects(final Table table, final RowRequirement... requirements);
+	public List<Query> getObjects(final Table table, final RowRequirement... requirements) {
+		if (table == null) {
+			plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+			return new ArrayList<>();
+		}
+
+		return this.getObjects(new Selection(table).where(requirements));
+	}
+
+	/**
+	 * Get the rows and columns described by a selection from the database. Use this instead of
+	 * {@link #getObjects(Table, RowRequirement...)} to filter on more than just equality, or if only some of the
+	 * columns or rows are needed.
+	 *
+	 * @param selection
+	 *            Selection of the rows and columns to retrieve. See {@link Selection} for more info.
+	 * @return a list of {@link Query} objects, each representing one row in the database.
+	 */
+	public List<Query> getObjects(final Selection selection) {
+		final List<Query> results = new ArrayList<>();
+
+		this.forEachObject(selection, results::add);
+
+		return results;
+	}
+
+	/**
+	 * Pass the rows described by a selection to a consumer, one at a time, while they are read from the database.
+	 * Unlike {@link #getObjects(Selection)}, the rows are not collected in a list, so even very large tables can be
+	 * read without keeping all of their rows in memory. The consumer is called on the thread of the caller and
+	 * should not access the database of this connector itself.
+	 *
+	 * @param selection
+	 *            Selection of the rows and columns to retrieve. See {@link Selection} for more info.
+	 * @param consumer
+	 *            Consumer that is given every row
+	 * @return the number of rows that were read, or -1 if the rows could not be read.
+	 */
+	public int forEachObject(final Selection selection, final Consumer<Query> consumer) {
+		return this.forEachObject(selection, consumer, false);
+	}
+
+	/**
+	 * See {@link #forEachObject(Selection, Consumer)}. Some databases (e.g. MySQL) read the whole result into memory
+	 * before the first row is given, unless the rows are streamed. A streamed result keeps its connection busy until
+	 * all rows are read, so only stream bulk reads of (almost) whole tables.
+	 *
+	 * @param selection
+	 *            Selection of the rows and columns to retrieve. See {@link Selection} for more info.
+	 * @param consumer
+	 *            Consumer that is given every row
+	 * @param stream
+	 *            Whether the rows should be streamed from the database
+	 * @return the number of rows that were read, or -1 if the rows could not be read.
+	 */
+	public int forEachObject(final Selection selection, final Consumer<Query> consumer, final boolean stream) {
+		Table table = selection.getTable();
+		Selection storedSelection = binaryUUIDs.convert(dictionary.encode(selection));
+
+		if (!dictionary.isEncoded(table)) {
+			return this.forEachRow(storedSelection, consumer, stream);
+		}
+
+		return this.forEachRow(storedSelection, row -> consumer.accept(dictionary.decode(table, row)), stream);
+	}
+
+	/**
+	 * Read the rows of a selection from the database, as they are stored. See
+	 * {@link #forEachObject(Selection, Consumer)}.
+	 *
+	 * @param selection
+	 *            Selection of the rows and columns to retrieve.
+	 * @param consumer
+	 *            Consumer that is given every row
+	 * @return the number of rows that were read, or -1 if the rows could not be read.
+	 */
+	protected abstract int forEachRow(final Selection selection, final Consumer<Query> consumer);
+
+	/**
+	 * See {@link #forEachRow(Selection, Consumer)}. Only databases that read whole results into memory need to stream
+	 * rows, so the rows are not streamed by default.
+	 *
+	 * @param selection
+	 *            Selection of the rows and columns to retrieve.
+	 * @param consumer
+	 *            Consumer that is given every row
+	 * @param stream
+	 *            Whether the rows should be streamed from the database
+	 * @return the number of rows that were read, or -1 if the rows could not be read.
+	 */
+	protected int forEachRow(final Selection selection, final Consumer<Query> consumer, final boolean stream) {
+		return this.forEachRow(selection, consumer);
+	}
+
+	/**
+	 * Get the value that should be bound to the parameter of a requirement, see {@link Dictionary} and
+	 * {@link BinaryUUIDs}.
+	 *
+	 * @param table Table the requirement is checked on
+	 * @param requirement Requirement to bind
+	 * @return the value to compare the column with.
+	 */
+	protected Object getParameterValue(final Table table, final RowRequirement requirement) {
+		return binaryUUIDs.getParameterValue(table, requirement.getColumnName(),
+				dictionary.getComparedValue(table, requirement));
+	}
+
+	/**
+	 * Bind the parameters of a selection to a statement that was created with {@link Selection#toSQL()}.
+	 *
+	 * @param statement Statement to bind the parameters to
+	 * @param selection Selection the statement was created with
+	 * @throws SQLException if a parameter could not be bound.
+	 */
+	protected void bindParameters(PreparedStatement statement, final Selection selection) throws SQLException {
+		List<Object> parameters = selection.getParameters();
+
+		for (int i = 0; i < parameters.size(); i++) {
+			statement.setObject(i + 1, parameters.get(i));
+		}
+	}
 
 	/**
 	 * @see #getObjects(Table, RowRequirement...)
@@ -139,12 +386,392 @@ public abstract class DatabaseConnector {
 		return this.getObjects(getTable(tableName), requirements);
 	}
 
+	/**
+	 * Get the sum of the 'value' column per player of a table, computed by the database in a single query.
+	 *
+	 * @param table
+	 *            Table to get the totals of
+	 * @param requirements
+	 *            Requirements that rows should meet to be counted. See {@link RowRequirement} for more info about
+	 *            requirements.
+	 * @return the total per player, ordered from the highest to the lowest total.
+	 * @throws IllegalArgumentException if a requirement refers to a column that the table does not have.
+	 */
+	public Map<UUID, Double> getTotalsPerPlayer(final Table table, final RowRequirement... requirements)
+			throws IllegalArgumentException {
+		if (table == null) {
+			plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+			return new LinkedHashMap<>();
+		}
+
+		String statement = this.createTotalsPerPlayerStatement(table, requirements);
+		Connection connection = this.getConnection();
+
+		if (connection == null) {
+			plugin.getLogger().warning("Statz is not connected to your database properly!");
+			return new LinkedHashMap<>();
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(statement)) {
+			for (int i = 0; i < requirements.length; i++) {
+				ps.setObject(i + 1, this.getParameterValue(table, requirements[i]));
+			}
+
+			try (ResultSet rs = ps.executeQuery()) {
+				return this.readTotalsPerPlayer(rs);
+			}
+		} catch (final SQLException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't execute " + dialect.getName() + " statement:", ex);
+			return new LinkedHashMap<>();
+		} finally {
+			this.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Create the SQL statement for {@link #getTotalsPerPlayer(Table, RowRequirement...)}. The values of the
+	 * requirements are left as parameters, so they must be bound in the same order as they were given.
+	 *
+	 * @param table Table to get the totals of
+	 * @param requirements Requirements that rows should meet to be counted
+	 * @return a SQL statement with one parameter per requirement.
+	 * @throws IllegalArgumentException if a requirement refers to a column that the table does not have.
+	 */
+	protected String createTotalsPerPlayerStatement(final Table table, final RowRequirement... requirements)
+			throws IllegalArgumentException {
+		StringBuilder builder = new StringBuilder("SELECT uuid, SUM(value) AS total FROM ").append(table.getTableName());
+
+		this.appendRequirements(builder, table, requirements);
+
+		return builder.append(" GROUP BY uuid ORDER BY total DESC").toString();
+	}
+
+	/**
+	 * Append a WHERE clause to a statement that checks the given requirements. The values of the requirements are
+	 * left as parameters.
+	 */
+	private void appendRequirements(StringBuilder builder, final Table table, final RowRequirement... requirements)
+			throws IllegalArgumentException {
+		for (int i = 0; i < requirements.length; i++) {
+			Column column = getKnownColumn(table, requirements[i].getColumnName());
+
+			builder.append(i == 0 ? " WHERE " : " AND ").append(column.getColumnName()).append(" = ?");
+		}
+	}
+
+	/**
+	 * Only use names of columns we know in a statement, as they cannot be passed as a parameter.
+	 */
+	private static Column getKnownColumn(final Table table, final String columnName) throws IllegalArgumentException {
+		Column column = table.getColumn(columnName);
+
+		if (column == null) {
+			throw new IllegalArgumentException(String.format("Table '%s' does not have a column '%s'",
+					table.getTableName(), columnName));
+		}
+
+		return column;
+	}
+
+	/**
+	 * Read the result of the statement created by {@link #createTotalsPerPlayerStatement(Table, RowRequirement...)}.
+	 *
+	 * @param resultSet Result of the statement
+	 * @return the total per player, in the order of the result.
+	 * @throws SQLException if the result could not be read.
+	 */
+	protected Map<UUID, Double> readTotalsPerPlayer(ResultSet resultSet) throws SQLException {
+		Map<UUID, Double> totals = new LinkedHashMap<>();
+
+		while (resultSet.next()) {
+			try {
+				totals.put(BinaryUUIDs.toUUID(resultSet.getObject(1)), resultSet.getDouble(2));
+			} catch (IllegalArgumentException e) {
+				// Ignore rows that do not have a valid UUID.
+			}
+		}
+
+		return totals;
+	}
+
+	/**
+	 * Sum the 'value' column of a table in the database, grouped by the given columns. Only the sums are sent
+	 * back, so this is a lot cheaper than retrieving all rows with {@link #getObjects(Table, RowRequirement...)}
+	 * and adding them up.
+	 * <br>
+	 * <br>
+	 * For example, to get the number of mobs a player killed per type of mob:
+	 * <br><code>getAggregatedObjects(table, new String[]{"mob"}, new RowRequirement("uuid", uuid.toString()));</code>
+	 *
+	 * @param table
+	 *            Table to sum the values of
+	 * @param groupBy
+	 *            Columns to group the rows by. If no columns are given, all rows are summed.
+	 * @param requirements
+	 *            Requirements that rows should meet to be counted. See {@link RowRequirement} for more info about
+	 *            requirements.
+	 * @return a query per group that contains the columns of the group and the sum in the 'value' column.
+	 * @throws IllegalArgumentException if the table has no 'value' column or a group or requirement refers to a
+	 *             column that the table does not have.
+	 */
+	public List<Query> getAggregatedObjects(final Table table, final String[] groupBy,
+			final RowRequirement... requirements) throws IllegalArgumentException {
+		if (table == null) {
+			plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+			return new ArrayList<>();
+		}
+
+		String statement = this.createAggregateStatement(table, groupBy, requirements);
+		Connection connection = this.getConnection();
+
+		if (connection == null) {
+			plugin.getLogger().warning("Statz is not connected to your database properly!");
+			return new ArrayList<>();
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(statement)) {
+			for (int i = 0; i < requirements.length; i++) {
+				ps.setObject(i + 1, this.getParameterValue(table, requirements[i]));
+			}
+
+			try (ResultSet rs = ps.executeQuery()) {
+				return this.readAggregatedObjects(rs, table, groupBy);
+			}
+		} catch (final SQLException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't execute " + dialect.getName() + " statement:", ex);
+			return new ArrayList<>();
+		} finally {
+			this.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Sum the 'value' column of all rows of a table that meet the given requirements. See
+	 * {@link #getAggregatedObjects(Table, String[], RowRequirement...)}.
+	 *
+	 * @param table
+	 *            Table to sum the values of
+	 * @param requirements
+	 *            Requirements that rows should meet to be counted.
+	 * @return the sum of the values, or 0 if no rows meet the requirements.
+	 * @throws IllegalArgumentException if the table has no 'value' column or a requirement refers to a column
+	 *             that the table does not have.
+	 */
+	public double getTotal(final Table table, final RowRequirement... requirements) throws IllegalArgumentException {
+		List<Query> result = this.getAggregatedObjects(table, new String[0], requirements);
+
+		if (result.isEmpty()) {
+			return 0;
+		}
+
+		return result.get(0).getValue();
+	}
+
+	/**
+	 * Count the rows of a table.
+	 *
+	 * @param table Table to count the rows of
+	 * @return the number of rows in the table, or -1 if the rows could not be counted.
+	 */
+	public long countObjects(final Table table) {
+		Connection connection = this.getConnection();
+
+		if (connection == null) {
+			plugin.getLogger().warning("Statz is not connected to your database properly!");
+			return -1;
+		}
+
+		try (Statement statement = connection.createStatement();
+			 ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table.getTableName())) {
+			return resultSet.next() ? resultSet.getLong(1) : 0;
+		} catch (SQLException e) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't count rows of table " + table.getTableName(), e);
+			return -1;
+		} finally {
+			this.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Create the SQL statement for {@link #getAggregatedObjects(Table, String[], RowRequirement...)}. The values
+	 * of the requirements are left as parameters, so they must be bound in the same order as they were given.
+	 *
+	 * @param table Table to sum the values of
+	 * @param groupBy Columns to group the rows by
+	 * @param requirements Requirements that rows should meet to be counted
+	 * @return a SQL statement with one parameter per requirement.
+	 * @throws IllegalArgumentException if a column is not part of the table.
+	 */
+	protected String createAggregateStatement(final Table table, final String[] groupBy,
+			final RowRequirement... requirements) throws IllegalArgumentException {
+		getKnownColumn(table, "value");
+
+		StringBuilder columns = new StringBuilder();
+
+		for (String columnName : groupBy) {
+			columns.append(columns.length() == 0 ? "" : ", ").append(getKnownColumn(table, columnName)
+					.getColumnName());
+		}
+
+		StringBuilder builder = new StringBuilder("SELECT ").append(columns).append(columns.length() == 0 ? "" : ", ")
+				.append("SUM(value) AS value FROM ").append(table.getTableName());
+
+		this.appendRequirements(builder, table, requirements);
+
+		if (columns.length() > 0) {
+			builder.append(" GROUP BY ").append(columns);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Read the result of the statement created by
+	 * {@link #createAggregateStatement(Table, String[], RowRequirement...)}.
+	 *
+	 * @param resultSet Result of the statement
+	 * @param table Table that was summed
+	 * @param groupBy Columns the rows were grouped by
+	 * @return a query per group with the columns of the group and the sum in the 'value' column.
+	 * @throws SQLException if the result could not be read.
+	 */
+	protected List<Query> readAggregatedObjects(ResultSet resultSet, final Table table, final String[] groupBy)
+			throws SQLException {
+		List<Query> result = new ArrayList<>();
+
+		while (resultSet.next()) {
+			Query query = new Query();
+
+			for (int i = 0; i < groupBy.length; i++) {
+				Object columnValue = BinaryUUIDs.readValue(resultSet.getObject(i + 1));
+
+				if (columnValue != null) {
+					query.setValue(groupBy[i], columnValue);
+				}
+			}
+
+			// SUM() is NULL when there are no rows to sum.
+			query.setValue("value", resultSet.getDouble(groupBy.length + 1));
+
+			result.add(dictionary.decode(table, query));
+		}
+
+		return result;
+	}
+
 	/**
 	 * Instead of updating one single row, you can also perform a batch of updates.
-	 * This can drastically improve update time. See {@link #setBatchObjects(Table, List, SET_OPERATION)} for more
+	 * This can drastically improve update time. See {@link #setBatchObjects(Map, SET_OPERATION, List)} for more
 	 * info.
 	 */
-	public abstract void setBatchObjects(final Table table, final List<Query> queries, SET_OPERATION mode);
+	public void setBatchObjects(final Table table, final List<Query> queries, SET_OPERATION mode) {
+		this.setBatchObjects(Collections.singletonMap(table, queries), mode, Collections.emptyList());
+	}
+
+	/**
+	 * Write rows to several tables in a single transaction. The given statements are executed in the same
+	 * transaction, so they are only committed if all rows were written. This is used by
+	 * {@link me.staartvin.statz.jobs.JobManager} to store the checkpoint of a job together with the rows of that
+	 * checkpoint.
+	 *
+	 * @param batches    Rows to write per table
+	 * @param mode       Whether values are added to or replace the values in the database
+	 * @param statements Statements that are executed after the rows are written
+	 * @return true if the rows and statements were committed, false if nothing was written.
+	 */
+	public boolean setBatchObjects(final Map<Table, List<Query>> batches, SET_OPERATION mode,
+			List<String> statements) {
+		final List<String> updates = new ArrayList<>();
+
+		for (Map.Entry<Table, List<Query>> batch : batches.entrySet()) {
+			try {
+				updates.addAll(this.createWriteStatements(batch.getKey(), batch.getValue(), mode));
+			} catch (final SQLException ex) {
+				plugin.getLogger().log(Level.SEVERE, "Couldn't encode rows of table " + batch.getKey().getTableName(),
+						ex);
+				return false;
+			}
+		}
+
+		// Statements that should be committed together with the rows, such as the checkpoint of a job.
+		updates.addAll(statements);
+
+		if (updates.isEmpty()) {
+			return true;
+		}
+
+		Connection connection = this.getConnection();
+
+		if (connection == null) {
+			plugin.getLogger().warning("Statz is not connected to your database properly!");
+			return false;
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			// Write the whole batch in a single transaction.
+			connection.setAutoCommit(false);
+
+			for (String update : updates) {
+				statement.addBatch(update);
+			}
+
+			statement.executeBatch();
+
+			connection.commit();
+
+			return true;
+		} catch (SQLException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't execute " + dialect.getName() + " statement:", ex);
+
+			// Do not keep a part of the batch.
+			try {
+				connection.rollback();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+
+			this.releaseConnection(connection);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Create the statements that write rows to a table. Names are replaced by their ids for tables that are encoded
+	 * (see {@link Dictionary}), and uuids by their bytes for tables that store binary uuids.
+	 *
+	 * @param table Table to write to
+	 * @param rows  Rows to write
+	 * @param mode  Whether values are added to or replace the values in the database
+	 * @return the statements that write the rows.
+	 * @throws SQLException if the names of the rows could not be encoded.
+	 */
+	protected List<String> createWriteStatements(final Table table, final List<Query> rows, SET_OPERATION mode)
+			throws SQLException {
+		List<Map<String, String>> literals = new ArrayList<>(rows.size());
+
+		for (Query row : dictionary.encode(table, rows)) {
+			Map<String, String> rowLiterals = new LinkedHashMap<>();
+
+			for (Map.Entry<String, Object> column : row.getEntrySet()) {
+				// Binary uuids are written as a literal of their bytes.
+				String uuidLiteral = binaryUUIDs.getLiteral(table, column.getKey(), column.getValue());
+
+				rowLiterals.put(column.getKey(), uuidLiteral != null ? uuidLiteral
+						: dialect.toLiteral(column.getValue()));
+			}
+
+			literals.add(rowLiterals);
+		}
+
+		return dialect.createWriteStatements(table, literals, mode);
+	}
 
 	/**
 	 * The mode of operation when setting objects in the database.
@@ -187,7 +814,101 @@ public abstract class DatabaseConnector {
 	 * Removes all data in the database of the given UUID.
 	 * @param uuid UUID to remove data of.
 	 */
-	public abstract void purgeData(UUID uuid);
+	public void purgeData(final UUID uuid) {
+		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+			try {
+				// Other servers should know that the data of this player changed.
+				synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+					plugin.getArchiveManager().purgePlayers(Collections.singletonList(uuid),
+							plugin.getCacheSnapshotManager().withFlushEpochStatement(Collections.emptyList()));
+					plugin.getCacheSnapshotManager().onFlushed(Collections.singletonList(uuid));
+				}
+			} catch (SQLException e) {
+				plugin.getLogger().log(Level.SEVERE, "Couldn't remove data of " + uuid, e);
+			}
+		});
+	}
+
+	/**
+	 * Remove all data of a group of players. Unlike {@link #purgeData(UUID)}, this runs on the calling thread and
+	 * removes the players with a single statement per table, in one transaction. Callers should keep the number of
+	 * players limited, as every uuid is a parameter of the statements.
+	 *
+	 * @param uuids UUIDs of the players to remove data of
+	 * @return the number of rows that were removed.
+	 * @throws SQLException if the data could not be removed. No data is removed in that case.
+	 */
+	public int purgeData(final List<UUID> uuids) throws SQLException {
+		return this.purgeData(uuids, Collections.emptyList());
+	}
+
+	/**
+	 * Remove all data of a group of players like {@link #purgeData(List)}, and perform other statements in the same
+	 * transaction, e.g. to store the removed data somewhere else.
+	 *
+	 * @param uuids UUIDs of the players to remove data of
+	 * @param statements Statements to perform before the data is removed
+	 * @return the number of rows that were removed.
+	 * @throws SQLException if the data could not be removed or a statement failed. Nothing is changed in that case.
+	 */
+	public int purgeData(final List<UUID> uuids, final List<String> statements) throws SQLException {
+		if (uuids.isEmpty() && statements.isEmpty()) {
+			return 0;
+		}
+
+		Connection connection = this.getConnection();
+
+		if (connection == null) {
+			throw new SQLException("Statz is not connected to the database.");
+		}
+
+		StringBuilder parameters = new StringBuilder();
+
+		for (int i = 0; i < uuids.size(); i++) {
+			parameters.append(i == 0 ? "?" : ", ?");
+		}
+
+		Set<String> purgedTables = new HashSet<>();
+		int deletedRows = 0;
+
+		try {
+			connection.setAutoCommit(false);
+
+			try (Statement statement = connection.createStatement()) {
+				for (String sql : statements) {
+					statement.executeUpdate(sql);
+				}
+			}
+
+			for (Table table : this.getTables()) {
+				// The list of tables can contain the same table more than once.
+				if (uuids.isEmpty() || table.getColumn("uuid") == null || !purgedTables.add(table.getTableName())) {
+					continue;
+				}
+
+				try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table.getTableName() +
+						" WHERE uuid IN (" + parameters + ")")) {
+					for (int i = 0; i < uuids.size(); i++) {
+						delete.setObject(i + 1, binaryUUIDs.getParameterValue(table, "uuid",
+								uuids.get(i).toString()));
+					}
+
+					deletedRows += delete.executeUpdate();
+				}
+			}
+
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+
+			this.releaseConnection(connection);
+		}
+
+		return deletedRows;
+	}
 
     /**
      * Send a specific query (as a string) to the database. It is not recommended to use this method to obtain data
@@ -0,0 +1,138 @@
+package me.staartvin.statz.database;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of threads that is used to run requests against the database. Since the queue is bounded, a flood
+ * of requests cannot take down the server: requests that do not fit in the queue are completed exceptionally with a
+ * {@link RejectedExecutionException}.
+ * <br>
+ * <br>
+ * Requests can be coalesced by giving them a key. When a request with the same key is still running, the future of
+ * the running request is returned instead of starting a new one.
+ */
+public class DatabaseExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    // Requests that are currently running, by their key
+    private final ConcurrentHashMap<Object, CompletableFuture<?>> runningRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new executor.
+     *
+     * @param threads   Number of threads that can access the database at the same time
+     * @param queueSize Number of requests that can wait for a thread
+     * @throws IllegalArgumentException if the number of threads or the queue size is smaller than 1.
+     */
+    public DatabaseExecutor(int threads, int queueSize) throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be at least 1.");
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "Statz database thread #" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run a request on one of the database threads.
+     *
+     * @param request Request to run
+     * @param <T>     Type of the result
+     * @return a future that is completed with the result of the request.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(request.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Run a request on one of the database threads, unless a request with the same key is still running. In that
+     * case, the future of the running request is returned.
+     *
+     * @param key     Key that identifies the request, e.g. the UUID of a player
+     * @param request Request to run
+     * @param <T>     Type of the result
+     * @return a future that is completed with the result of the (running) request.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> supplyCoalesced(Object key, Supplier<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        CompletableFuture<?> running = runningRequests.putIfAbsent(key, future);
+
+        if (running != null) {
+            return (CompletableFuture<T>) running;
+        }
+
+        // Forget the request once it is done, so the next request for the same key fetches fresh data.
+        future.whenComplete((result, error) -> runningRequests.remove(key, future));
+
+        this.supply(request).whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Get the request that is running for the given key.
+     *
+     * @param key Key that identifies the request
+     * @param <T> Type of the result
+     * @return the future of the running request or null if there is no request running for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getRunningRequest(Object key) {
+        return (CompletableFuture<T>) runningRequests.get(key);
+    }
+
+    /**
+     * Stop accepting new requests and wait a short while for running requests to finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
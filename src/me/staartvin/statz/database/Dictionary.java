@@ -0,0 +1,543 @@
+package me.staartvin.statz.database;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Columns such as 'world', 'block' and 'mob' store the same few names over and over again. When dictionary
+ * encoding is enabled, these names are stored once in a dictionary table per dimension (e.g. all materials) and the
+ * tables of the statistics only store the small integer id of a name.
+ * <br>
+ * <br>
+ * Encoding is done when data is written to or read from the database, so {@link Query} objects and the API always
+ * use names. A table is only encoded after it has been converted by
+ * {@link me.staartvin.statz.patches.DictionaryEncodingPatch}. The names and ids that are known are kept in memory in
+ * both directions. Names and ids that are not in the dictionary are remembered for a short while, so looking them up
+ * again does not query the database every time.
+ */
+public class Dictionary {
+
+    /**
+     * Table that holds the names of the tables that have been converted.
+     */
+    public static final String ENCODED_TABLES_TABLE = DatabaseConnector.prefix + "dictionary_tables";
+
+    // Dimension that the values of a column belong to, by the name of the column
+    private static final Map<String, String> DIMENSIONS = new HashMap<>();
+
+    static {
+        DIMENSIONS.put("world", "world");
+        DIMENSIONS.put("mob", "mob");
+        DIMENSIONS.put("cause", "cause");
+        DIMENSIONS.put("movetype", "movetype");
+
+        for (String column : Arrays.asList("block", "item", "foodeaten", "weapon", "caught", "trade")) {
+            DIMENSIONS.put(column, "material");
+        }
+    }
+
+    // Number of names and ids that are remembered to not be in the dictionary
+    private static final int MAX_MISSES = 1024;
+
+    // Time after which a name or id that was not in the dictionary is looked up again, as another server that uses
+    // the same database may have added it.
+    private static final long MISS_EXPIRY = TimeUnit.MINUTES.toMillis(1);
+
+    private final Statz plugin;
+    private final DatabaseConnector connector;
+
+    // Time at which names and ids were found to not be in the dictionary, by their key. Guarded by itself.
+    private final Map<String, Long> misses = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return this.size() > MAX_MISSES;
+        }
+    };
+
+    // Names of the tables that are encoded
+    private volatile Set<String> encodedTables = ConcurrentHashMap.newKeySet();
+
+    // Id of every name, per dimension
+    private volatile Map<String, Map<String, Integer>> ids = new ConcurrentHashMap<>();
+
+    // Name of every id, per dimension
+    private volatile Map<String, Map<Integer, String>> names = new ConcurrentHashMap<>();
+
+    public Dictionary(Statz plugin, DatabaseConnector connector) {
+        this.plugin = plugin;
+        this.connector = connector;
+    }
+
+    /**
+     * Get the dimension of the values of a column.
+     *
+     * @param columnName Name of the column
+     * @return the dimension of the column or null if the column is not encoded.
+     */
+    public static String getDimension(String columnName) {
+        return DIMENSIONS.get(columnName.toLowerCase());
+    }
+
+    /**
+     * Get the name of the table that stores the names of a dimension.
+     *
+     * @param dimension Dimension of the names
+     * @return name of the dictionary table.
+     */
+    public static String getTableName(String dimension) {
+        return DatabaseConnector.prefix + "dictionary_" + dimension;
+    }
+
+    /**
+     * Get all dimensions that are encoded.
+     *
+     * @return names of the dimensions.
+     */
+    public static Set<String> getDimensions() {
+        return Collections.unmodifiableSet(new HashSet<>(DIMENSIONS.values()));
+    }
+
+    /**
+     * Get the columns of a table that are encoded when the table is converted.
+     *
+     * @param table Table to check
+     * @return names of the columns that belong to a dimension.
+     */
+    public static List<String> getEncodedColumns(Table table) {
+        List<String> columns = new ArrayList<>();
+
+        table.getColumns().forEach(column -> {
+            if (getDimension(column.getColumnName()) != null) {
+                columns.add(column.getColumnName());
+            }
+        });
+
+        return columns;
+    }
+
+    /**
+     * Load the names of the tables that are encoded and all names of the dictionaries. If the database has not been
+     * converted, nothing is loaded and no table is encoded. The dictionary can be used while it is loaded again.
+     * <br>
+     * <br>
+     * Names and tables are only added to the dictionary while holding its lock, so nothing that is added while the
+     * dictionary is loaded is lost when the loaded maps replace the current ones.
+     */
+    public synchronized void load() {
+        Set<String> loadedTables = ConcurrentHashMap.newKeySet();
+        Map<String, Map<String, Integer>> loadedIds = new ConcurrentHashMap<>();
+        Map<String, Map<Integer, String>> loadedNames = new ConcurrentHashMap<>();
+
+        Connection connection = connector.getConnection();
+
+        if (connection == null) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT table_name FROM " + ENCODED_TABLES_TABLE)) {
+                while (resultSet.next()) {
+                    loadedTables.add(resultSet.getString(1).toLowerCase());
+                }
+            }
+
+            for (String dimension : getDimensions()) {
+                Map<String, Integer> dimensionIds = new ConcurrentHashMap<>();
+                Map<Integer, String> dimensionNames = new ConcurrentHashMap<>();
+
+                try (ResultSet resultSet = statement.executeQuery("SELECT id, name FROM " + getTableName(dimension))) {
+                    while (resultSet.next()) {
+                        dimensionIds.put(resultSet.getString(2), resultSet.getInt(1));
+                        dimensionNames.put(resultSet.getInt(1), resultSet.getString(2));
+                    }
+                }
+
+                loadedIds.put(dimension, dimensionIds);
+                loadedNames.put(dimension, dimensionNames);
+            }
+        } catch (SQLException e) {
+            // The database has not been converted.
+            loadedTables.clear();
+        } finally {
+            connector.releaseConnection(connection);
+        }
+
+        ids = loadedIds;
+        names = loadedNames;
+        encodedTables = loadedTables;
+
+        synchronized (misses) {
+            misses.clear();
+        }
+
+        if (!encodedTables.isEmpty()) {
+            plugin.debugMessage("Loaded dictionary for " + encodedTables.size() + " encoded tables.");
+        }
+    }
+
+    /**
+     * Check whether the values of a table are encoded.
+     *
+     * @param table Table to check
+     * @return true if the table stores ids instead of names.
+     */
+    public boolean isEncoded(Table table) {
+        return table != null && encodedTables.contains(table.getTableName().toLowerCase());
+    }
+
+    /**
+     * Mark a table as encoded, after its names have been replaced by ids.
+     *
+     * @param table Table that was converted
+     */
+    public synchronized void setEncoded(Table table) {
+        encodedTables.add(table.getTableName().toLowerCase());
+    }
+
+    /**
+     * Get the id of a name, adding the name to the dictionary if it does not have an id yet.
+     *
+     * @param dimension Dimension of the name
+     * @param name      Name to get the id of
+     * @return the id of the name.
+     * @throws SQLException if the name could not be added to the dictionary.
+     */
+    public int intern(String dimension, String name) throws SQLException {
+        Integer id = ids.getOrDefault(dimension, Collections.emptyMap()).get(name);
+
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.getOrDefault(dimension, Collections.emptyMap()).get(name);
+
+            if (id != null) {
+                return id;
+            }
+
+            Connection connection = connector.getConnection();
+
+            if (connection == null) {
+                throw new SQLException("Statz is not connected to the database.");
+            }
+
+            SQLException insertError = null;
+
+            try {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + getTableName(dimension)
+                        + " (name) VALUES (?)")) {
+                    insert.setString(1, name);
+                    insert.executeUpdate();
+                } catch (SQLException e) {
+                    // Another server that uses the same database may have added the name already, which is checked
+                    // below.
+                    insertError = e;
+                }
+
+                try (PreparedStatement select = connection.prepareStatement("SELECT id FROM " +
+                        getTableName(dimension) + " WHERE name = ?")) {
+                    select.setString(1, name);
+
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw insertError != null ? insertError : new SQLException("Could not add '" + name +
+                                    "' to dictionary " + dimension);
+                        }
+
+                        id = resultSet.getInt(1);
+                    }
+                }
+            } finally {
+                connector.releaseConnection(connection);
+            }
+
+            this.remember(dimension, id, name);
+
+            return id;
+        }
+    }
+
+    /**
+     * Get the name of an id.
+     *
+     * @param dimension Dimension of the id
+     * @param id        Id to get the name of
+     * @return the name or null if the id is not in the dictionary.
+     */
+    public String getName(String dimension, int id) {
+        String name = names.getOrDefault(dimension, Collections.emptyMap()).get(id);
+
+        String missKey = getMissKey(dimension, id);
+
+        if (name != null || this.isMiss(missKey)) {
+            return name;
+        }
+
+        // The name may have been added by another server that uses the same database.
+        Connection connection = connector.getConnection();
+
+        if (connection == null) {
+            return null;
+        }
+
+        try (PreparedStatement select = connection.prepareStatement("SELECT name FROM " + getTableName(dimension)
+                + " WHERE id = ?")) {
+            select.setInt(1, id);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next()) {
+                    name = resultSet.getString(1);
+                } else {
+                    this.addMiss(missKey);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not look up id " + id + " of dictionary " + dimension, e);
+        } finally {
+            connector.releaseConnection(connection);
+        }
+
+        // Remember the name after the connection is released, as the dictionary may be loading with its lock held.
+        if (name != null) {
+            this.remember(dimension, id, name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Replace the names in the rows that are written to a table by their ids.
+     *
+     * @param table   Table the rows are written to
+     * @param queries Rows to write
+     * @return the encoded rows, or the given rows if the table is not encoded.
+     * @throws SQLException if a name could not be added to the dictionary.
+     */
+    public List<Query> encode(Table table, List<Query> queries) throws SQLException {
+        if (!this.isEncoded(table)) {
+            return queries;
+        }
+
+        List<Query> encodedQueries = new ArrayList<>(queries.size());
+
+        for (Query query : queries) {
+            encodedQueries.add(this.encode(table, query));
+        }
+
+        return encodedQueries;
+    }
+
+    /**
+     * Replace the names in a row that is written to a table by their ids.
+     *
+     * @param table Table the row is written to
+     * @param query Row to write
+     * @return the encoded row, or the given row if the table is not encoded.
+     * @throws SQLException if a name could not be added to the dictionary.
+     */
+    public Query encode(Table table, Query query) throws SQLException {
+        if (!this.isEncoded(table)) {
+            return query;
+        }
+
+        Query encodedQuery = new Query(query.getData());
+
+        for (Map.Entry<String, Object> entry : query.getEntrySet()) {
+            String dimension = getDimension(entry.getKey());
+
+            if (dimension != null) {
+                encodedQuery.setValue(entry.getKey(), this.intern(dimension, entry.getValue().toString()));
+            }
+        }
+
+        return encodedQuery;
+    }
+
+    /**
+     * Get the value that a requirement should be compared to in the database.
+     *
+     * @param table       Table the requirement is checked on
+     * @param requirement Requirement to check
+     * @return the id of the value of the requirement if the column is encoded, or the value itself otherwise.
+     */
+    public String getComparedValue(Table table, RowRequirement requirement) {
+        String dimension = getDimension(requirement.getColumnName());
+
+        if (dimension == null || !this.isEncoded(table)) {
+            return requirement.getColumnValue();
+        }
+
+        Integer id = this.getId(dimension, requirement.getColumnValue());
+
+        // Ids are never negative, so an unknown name matches no rows.
+        return id == null ? "-1" : id.toString();
+    }
+
+    /**
+     * Get the id of a name, without adding the name to the dictionary.
+     *
+     * @param dimension Dimension of the name
+     * @param name      Name to get the id of
+     * @return the id of the name or null if the name is not in the dictionary.
+     */
+    public Integer getId(String dimension, String name) {
+        Integer id = ids.getOrDefault(dimension, Collections.emptyMap()).get(name);
+
+        String missKey = getMissKey(dimension, name);
+
+        if (id != null || this.isMiss(missKey)) {
+            return id;
+        }
+
+        // The name may have been added by another server that uses the same database.
+        Connection connection = connector.getConnection();
+
+        if (connection == null) {
+            return null;
+        }
+
+        try (PreparedStatement select = connection.prepareStatement("SELECT id FROM " + getTableName(dimension)
+                + " WHERE name = ?")) {
+            select.setString(1, name);
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next()) {
+                    id = resultSet.getInt(1);
+                } else {
+                    this.addMiss(missKey);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not look up '" + name + "' in dictionary " + dimension, e);
+        } finally {
+            connector.releaseConnection(connection);
+        }
+
+        if (id != null) {
+            this.remember(dimension, id, name);
+        }
+
+        return id;
+    }
+
+    /**
+     * Replace the conditions of a selection on encoded columns by conditions on their ids. Ranges, prefixes and
+     * sorting on encoded columns are done on the names in the dictionary tables.
+     *
+     * @param selection Selection to encode
+     * @return the encoded selection, or the given selection if its table is not encoded.
+     */
+    public Selection encode(Selection selection) {
+        if (!this.isEncoded(selection.getTable())) {
+            return selection;
+        }
+
+        Selection encodedSelection = selection;
+
+        for (String column : getEncodedColumns(selection.getTable())) {
+            String dimension = getDimension(column);
+
+            encodedSelection = encodedSelection.withEncodedColumn(column, getTableName(dimension),
+                    name -> this.getId(dimension, name));
+        }
+
+        return encodedSelection;
+    }
+
+    /**
+     * Replace the ids in a row that was read from a table by their names.
+     *
+     * @param table Table the row was read from
+     * @param query Row that was read, is changed by this method
+     * @return the given row.
+     */
+    public Query decode(Table table, Query query) {
+        if (!this.isEncoded(table)) {
+            return query;
+        }
+
+        for (Map.Entry<String, Object> entry : new ArrayList<>(query.getEntrySet())) {
+            String dimension = getDimension(entry.getKey());
+
+            if (dimension == null) {
+                continue;
+            }
+
+            try {
+                String name = this.getName(dimension, Integer.parseInt(entry.getValue().toString()));
+
+                if (name != null) {
+                    query.setValue(entry.getKey(), name);
+                }
+            } catch (NumberFormatException e) {
+                // The value is not an id, so leave it as it is.
+            }
+        }
+
+        return query;
+    }
+
+    private synchronized void remember(String dimension, int id, String name) {
+        ids.computeIfAbsent(dimension, key -> new ConcurrentHashMap<>()).put(name, id);
+        names.computeIfAbsent(dimension, key -> new ConcurrentHashMap<>()).put(id, name);
+
+        synchronized (misses) {
+            misses.remove(getMissKey(dimension, name));
+            misses.remove(getMissKey(dimension, id));
+        }
+    }
+
+    private static String getMissKey(String dimension, String name) {
+        return "name:" + dimension + ":" + name;
+    }
+
+    private static String getMissKey(String dimension, int id) {
+        return "id:" + dimension + ":" + id;
+    }
+
+    // Check whether a name or id was recently found to not be in the dictionary.
+    private boolean isMiss(String missKey) {
+        synchronized (misses) {
+            Long missTime = misses.get(missKey);
+
+            if (missTime == null) {
+                return false;
+            }
+
+            if (System.currentTimeMillis() - missTime < MISS_EXPIRY) {
+                return true;
+            }
+
+            misses.remove(missKey);
+            return false;
+        }
+    }
+
+    private void addMiss(String missKey) {
+        synchronized (misses) {
+            misses.put(missKey, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package me.staartvin.statz.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.dialect.H2Dialect;
+import me.staartvin.statz.patches.AddPlayerIndexesPatch;
+import org.bukkit.ChatColor;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Stores the data of Statz in an embedded H2 database in the plugin folder. Unlike SQLite, H2 lets readers and
+ * writers use the database at the same time (MVCC), so connections are pooled like they are for MySQL. The tables
+ * use the same layout as the MySQL tables.
+ * <br>
+ * <br>
+ * H2 databases are always created with the current tables and indexes, so patches are not applied to them.
+ * Dictionary encoding and binary uuids are not supported. The H2 driver is bundled in the jar of Statz.
+ */
+public class H2Connector extends DatabaseConnector {
+
+    private final Statz plugin;
+
+    private volatile HikariDataSource dataSource = null;
+
+    // Whether the pool was closed, after which no new pool is opened. Guarded by this.
+    private boolean closed = false;
+
+    public H2Connector(final Statz instance) {
+        super(instance, new H2Dialect());
+        plugin = instance;
+    }
+
+    // Path of the database, without the extension that H2 adds.
+    private File getDatabaseFile() {
+        return new File(plugin.getDataFolder(), databaseName);
+    }
+
+    private synchronized void setupDatabaseConnection() {
+        // Another thread may have set up the connection already, or Statz is being disabled.
+        if (dataSource != null || closed) {
+            return;
+        }
+
+        HikariConfig config = new HikariConfig();
+
+        // 'value' is a keyword in H2, but it is the name of a column in almost every table.
+        config.setJdbcUrl("jdbc:h2:file:" + this.getDatabaseFile().getAbsolutePath() + ";NON_KEYWORDS=VALUE");
+        config.setDriverClassName("org.h2.Driver");
+        config.setUsername("sa");
+        config.setPassword("");
+
+        this.dataSource = new HikariDataSource(config);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        // Close the connections of the pool, so H2 writes the database to disk and releases its file lock.
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() {
+
+        if (dataSource == null) {
+            setupDatabaseConnection();
+        }
+
+        HikariDataSource source = dataSource;
+        long waitStart = System.nanoTime();
+
+        // The pool was closed, as Statz is being disabled, and is not opened again.
+        if (source == null) {
+            return null;
+        }
+
+        try {
+            return source.getConnection();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            plugin.getMetricsManager().recordConnectionWait(System.nanoTime() - waitStart);
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void loadDatabase() {
+        try (Connection connection = getConnection()) {
+
+            if (connection == null) {
+                plugin.debugMessage(ChatColor.RED + "I could not open the H2 database!");
+                return;
+            }
+
+            try (Statement s = connection.createStatement()) {
+                // Run all statements to create tables
+                for (final String statement : createTablesStatement()) {
+                    s.executeUpdate(statement);
+                }
+
+                // Patches are not applied to H2, so the indexes that AddPlayerIndexesPatch adds are created here.
+                for (Table table : this.getTables()) {
+                    if (table.getColumn("uuid") == null) {
+                        continue;
+                    }
+
+                    for (Map.Entry<String, String> index : AddPlayerIndexesPatch.getRequiredIndexes(table)
+                            .entrySet()) {
+                        s.executeUpdate("CREATE INDEX IF NOT EXISTS " + index.getKey() + " ON " +
+                                table.getTableName() + " (" + index.getValue() + ")");
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
+
+        if (plugin.getConfigHandler().isDictionaryEncodingEnabled() || plugin.getConfigHandler()
+                .isBinaryUUIDsEnabled()) {
+            plugin.getLogger().warning("Dictionary encoding and binary uuids are not supported by H2, so they " +
+                    "are not used.");
+        }
+
+        initialize();
+    }
+
+    @Override
+    protected int forEachRow(Selection selection, Consumer<Query> consumer) {
+        try (Connection connection = getConnection()) {
+
+            if (connection == null) {
+                plugin.getLogger().warning("Statz is not connected to your database properly!");
+                return -1;
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement(selection.toSQL())) {
+                this.bindParameters(ps, selection);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    return new RowReader(rs).forEach(consumer);
+                }
+            }
+        } catch (final SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't execute H2 statement:", ex);
+            return -1;
+        }
+    }
+
+    @Override
+    public void loadTables() {
+        MySQLConnector.loadTables(this);
+    }
+
+    @Override
+    public ResultSet sendQuery(final String query, final boolean wantResult) throws SQLException {
+        Connection conn = getConnection();
+        ResultSet resultSet = null;
+
+        try {
+            PreparedStatement ps = conn.prepareStatement(query);
+
+            // If we need the result, store it.
+            if (wantResult) {
+                resultSet = ps.executeQuery();
+            } else { // We do not need the result, so just update the database.
+                ps.executeUpdate();
+            }
+        } catch (final SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't execute H2 statement:", ex);
+
+            throw ex;
+        } finally {
+            // The connection is needed to read the result set, so it is only closed if there is none.
+            if (!wantResult) {
+                this.releaseConnection(conn);
+            }
+        }
+
+        return resultSet;
+    }
+
+    @Override
+    public List<ResultSet> sendQueries(final List<String> queries, boolean wantResult) throws SQLException {
+        Connection conn = getConnection();
+        List<ResultSet> resultSets = wantResult ? new ArrayList<>() : null;
+
+        try {
+            for (String query : queries) {
+                PreparedStatement ps = conn.prepareStatement(query);
+
+                if (wantResult) {
+                    resultSets.add(ps.executeQuery());
+                } else { // We do not care about result sets, so just perform an update to the database.
+                    ps.executeUpdate();
+                }
+            }
+        } catch (final SQLException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't execute H2 statement:", ex);
+
+            throw ex;
+        } finally {
+            if (!wantResult) {
+                this.releaseConnection(conn);
+            }
+        }
+
+        return resultSets;
+    }
+
+    @Override
+    public boolean createBackup(String identifier) {
+        File backupFile = new File(this.getDatabaseFile().getAbsolutePath() + "-" + identifier + ".zip");
+        Connection connection = getConnection();
+
+        if (connection == null) {
+            return false;
+        }
+
+        // H2 writes a consistent copy of the database while it is being used.
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("BACKUP TO '" + backupFile.getAbsolutePath().replace("'", "''") + "'");
+
+            return true;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not make a backup of the H2 database", e);
+            return false;
+        } finally {
+            this.releaseConnection(connection);
+        }
+    }
+}
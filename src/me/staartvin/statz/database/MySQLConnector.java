@@ -2,22 +2,21 @@ package me.staartvin.statz.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Column;
 import me.staartvin.statz.database.datatype.Query;
-import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
 import me.staartvin.statz.database.datatype.Table;
 import me.staartvin.statz.database.datatype.Table.SQLDataType;
 import me.staartvin.statz.database.datatype.mysql.MySQLTable;
+import me.staartvin.statz.database.dialect.MySQLDialect;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import org.bukkit.ChatColor;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class MySQLConnector extends DatabaseConnector {
@@ -27,10 +26,13 @@ public class MySQLConnector extends DatabaseConnector {
     private String password = "";
     private String username = "root";
 
-    private HikariDataSource dataSource = null;
+    private volatile HikariDataSource dataSource = null;
+
+    // Whether the pool was closed, after which no new pool is opened. Guarded by this.
+    private boolean closed = false;
 
     public MySQLConnector(final Statz instance) {
-        super(instance);
+        super(instance, new MySQLDialect());
         plugin = instance;
 
         // Load info from config
@@ -44,7 +46,12 @@ public class MySQLConnector extends DatabaseConnector {
         DatabaseConnector.databaseName = plugin.getConfigHandler().getMySQLDatabase();
     }
 
-    private void setupDatabaseConnection() {
+    private synchronized void setupDatabaseConnection() {
+        // Another thread may have set up the connection already, or the pool was closed.
+        if (dataSource != null || closed) {
+            return;
+        }
+
         HikariConfig config = new HikariConfig();
 
         config.setJdbcUrl("jdbc:mysql://" + this.hostname + "/" + DatabaseConnector.databaseName);
@@ -73,198 +80,132 @@ public class MySQLConnector extends DatabaseConnector {
             setupDatabaseConnection();
         }
 
+        HikariDataSource source = dataSource;
+        long waitStart = System.nanoTime();
+
+        // The pool was closed and is not opened again.
+        if (source == null) {
+            return null;
+        }
+
         try {
-            return dataSource.getConnection();
+            return source.getConnection();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            plugin.getMetricsManager().recordConnectionWait(System.nanoTime() - waitStart);
         }
 
         return null;
     }
 
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    /**
+     * Get statistics about the connection pool, such as the number of active and idle connections.
+     *
+     * @return statistics of the connection pool or null if no connection has been set up yet.
+     */
+    public HikariPoolMXBean getPoolStatistics() {
+        HikariDataSource source = dataSource;
+
+        if (source == null) {
+            return null;
+        }
+
+        return source.getHikariPoolMXBean();
+    }
+
     /*
      * (non-Javadoc)
      *
      * @see me.staartvin.statz.database.Database#load()
      */
     @Override
-    public void load() {
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection connection = getConnection()) {
-
-                // Did not properly connect to database
-                if (connection == null) {
-                    plugin.debugMessage(ChatColor.RED + "I could not connect to your database! Are your credentials " +
-                            "correct?");
-                    return;
-                }
+    protected void loadDatabase() {
+        try (Connection connection = getConnection()) {
 
-                int existingTables = 0;
+            // Did not properly connect to database
+            if (connection == null) {
+                plugin.debugMessage(ChatColor.RED + "I could not connect to your database! Are your credentials " +
+                        "correct?");
+                return;
+            }
 
+            int existingTables = 0;
 
-                final Statement s = connection.createStatement();
 
-                // Run all statements to create tables
-                for (final String statement : createTablesStatement()) {
-                    s.executeUpdate(statement);
-                }
+            final Statement s = connection.createStatement();
 
-                s.close();
-            } catch (final SQLException e) {
-                e.printStackTrace();
+            // Run all statements to create tables
+            for (final String statement : createTablesStatement()) {
+                s.executeUpdate(statement);
             }
 
-            initialize();
+            s.close();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
 
-            // Apply patches
-            plugin.getPatchManager().applyPatches();
-        });
+        initialize();
+
+        // Apply patches
+        plugin.getPatchManager().applyPatches();
     }
 
     @Override
-    public List<Query> getObjects(Table table, RowRequirement... requirements) {
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-
-        final List<Query> results = new ArrayList<>();
-
-        if (table == null) {
-            plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
-            return results;
-        }
+    protected int forEachRow(Selection selection, Consumer<Query> consumer) {
+        return this.forEachRow(selection, consumer, false);
+    }
 
+    @Override
+    protected int forEachRow(Selection selection, Consumer<Query> consumer, boolean stream) {
         try (Connection connection = getConnection()) {
 
             if (connection == null) {
                 plugin.getLogger().warning("Statz is not connected to your database properly!");
-                return new ArrayList<>();
+                return -1;
             }
 
-            // Create SQL query to retrieve data
-            if (requirements == null || requirements.length == 0) {
-                // No requirements, so we can grab all data in the table.
-                ps = connection.prepareStatement("SELECT * FROM " + table.getTableName());
-            } else {
-                // We have requirements, so we need to filter the data using WHERE clause of SQL.
-                StringBuilder builder = new StringBuilder(String.format("SELECT * FROM %s WHERE ", table.getTableName
-                        ()));
-
-                // Create a SQL WHERE string.
-                for (int i = 0; i < requirements.length; i++) {
-                    RowRequirement requirement = requirements[i];
-                    if (i == requirements.length - 1) {
-                        builder.append(String.format("%s = '%s';", requirement.getColumnName(), requirement
-                                .getColumnValue()));
-                    } else {
-                        builder.append(String.format("%s = '%s' AND ", requirement.getColumnName(), requirement
-                                .getColumnValue()));
-                    }
-                }
-
-                ps = connection.prepareStatement(builder.toString());
-            }
+            // Prepared statements are cached per connection by the driver (see cachePrepStmts).
+            try (PreparedStatement ps = connection.prepareStatement(selection.toSQL())) {
+                this.bindParameters(ps, selection);
 
-            rs = ps.executeQuery();
-            while (rs.next()) {
-
-                final HashMap<String, Object> result = new HashMap<>();
-
-                // Populate hashmap
-                for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-                    final String columnName = rs.getMetaData().getColumnName(i + 1);
-                    final Object value = rs.getObject(i + 1);
-
-                    // Put value in hashmap if not null, otherwise just put
-                    // empty string
-                    result.put(columnName, (value != null ? value : ""));
+                // Let the driver stream the rows instead of loading the whole result into memory first.
+                if (stream) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
                 }
 
-                results.add(new Query(result));
+                try (ResultSet rs = ps.executeQuery()) {
+                    return new RowReader(rs).forEach(consumer);
+                }
             }
         } catch (final SQLException ex) {
             plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-            return results;
+            return -1;
         }
+    }
 
-        return results;
+    @Override
+    public void loadTables() {
+        loadTables(this);
     }
 
     /**
-     * This function creates multiple strings in 'SQL style' to create the
-     * proper tables. <br>
-     * It looks at the tables that are loaded in memory and dynamically creates
-     * proper SQL statements.
+     * Add the tables of Statz to a connector, using the MySQL column types. Other engines that understand these types
+     * use the same tables.
      *
-     * @return SQL statements that will create the necessary tables when run.
+     * @param connector Connector to add the tables to
      */
-    public List<String> createTablesStatement() {
-        // Returns a list of statements that need to be run to create the
-        // tables.
-
-        final List<String> statements = new ArrayList<String>();
-
-        for (final Table table : this.getTables()) {
-            StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (");
-
-            // For each column in the table, add it to the table.
-            for (final Column column : table.getColumns()) {
-
-                if (column.getDataType().equals(SQLDataType.INT)) {
-                    statement.append("" + column.getColumnName() + " BIGINT");
-                } else if (column.getDataType().equals(SQLDataType.TEXT)) {
-                    statement.append("" + column.getColumnName() + " VARCHAR(100)");
-                } else if (column.getDataType().equals(SQLDataType.DOUBLE)) {
-                    statement.append("" + column.getColumnName() + " DECIMAL(20,10)");
-                } else {
-                    statement.append("" + column.getColumnName() + " " + column.getDataType().toString());
-                }
-
-                if (column.isPrimaryKey()) {
-                    statement.append(" PRIMARY KEY");
-                }
-
-                if (column.isAutoIncrement()) {
-                    statement.append(" AUTO_INCREMENT");
-                }
-
-                if (column.isNotNull()) {
-                    statement.append(" NOT NULL");
-                }
-
-                if (column.isUnique()) {
-                    statement.append(" UNIQUE");
-                }
-
-                statement.append(",");
-
-            }
-
-            if (!table.getUniqueMatched().isEmpty()) {
-
-                statement.append("UNIQUE (");
-
-                for (Column matched : table.getUniqueMatched()) {
-                    statement.append(matched.getColumnName() + ",");
-                }
-
-                // Remove last comma
-                statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
-            } else {
-                statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-            }
-
-            statement.append(");");
-
-            statements.add(statement.toString());
-
-            plugin.debugMessage(ChatColor.GREEN + "Loaded table '" + table.getTableName() + "'");
-        }
-
-        return statements;
-    }
-
-    @Override
-    public void loadTables() {
+    static void loadTables(DatabaseConnector connector) {
         // UUID table to look up uuid of players
         MySQLTable newTable = new MySQLTable(PlayerStat.PLAYERS.getTableName());
 
@@ -279,7 +220,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addColumn(uuid); // UUID of the player
         newTable.addColumn("playerName", false, SQLDataType.TEXT); // Name of
         // player
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player join this server?
@@ -291,7 +232,7 @@ public class MySQLConnector extends DatabaseConnector {
         // did the player
         // join.
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player die?
@@ -307,7 +248,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched("uuid");
         newTable.addUniqueMatched("world");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player catch an item and what type?
@@ -328,7 +269,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched("world");
         newTable.addUniqueMatched("caught");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // What block did a player place and how many times?
@@ -349,7 +290,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(block);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // What block did a player break and how many times?
@@ -369,7 +310,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(block);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // What mobs did a player kill?
@@ -392,7 +333,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched(weapon);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // What players did a player kill?
@@ -412,7 +353,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(playerKilled);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How long did a player play (in minutes)?
@@ -429,7 +370,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // What food did a player eat?
@@ -449,7 +390,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(foodEaten);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How much damage has a player taken?
@@ -469,7 +410,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(cause);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many sheep did a player shear?
@@ -486,7 +427,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How far and in what way has a player travelled?
@@ -506,7 +447,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(moveType);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How far and in what way has a player travelled?
@@ -526,7 +467,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(item);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How much XP did a player gain?
@@ -543,7 +484,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player vote for this server?
@@ -559,7 +500,7 @@ public class MySQLConnector extends DatabaseConnector {
 
         newTable.addUniqueMatched(uuid);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many arrows did a player shoot?
@@ -576,7 +517,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player enter a bed?
@@ -593,7 +534,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player perform a command?
@@ -614,7 +555,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched("command");
         newTable.addUniqueMatched("arguments");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player get kicked?
@@ -633,7 +574,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched("reason");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many tools did a player break?
@@ -652,7 +593,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched("item");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many eggs did a player throw?
@@ -669,7 +610,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player switch worlds?
@@ -688,7 +629,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched("destWorld");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player fill a bucket?
@@ -705,7 +646,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player empty a bucket?
@@ -722,7 +663,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(uuid);
         newTable.addUniqueMatched(world);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many items did a player drop?
@@ -742,7 +683,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched(item);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many items did a player pick up?
@@ -762,7 +703,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched(item);
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player teleport?
@@ -783,7 +724,7 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched("destWorld");
         newTable.addUniqueMatched("cause");
 
-        this.addTable(newTable);
+        connector.addTable(newTable);
 
         // ----------------------------------------------------------
         // How many times did a player trade with villagers?
@@ -802,76 +743,8 @@ public class MySQLConnector extends DatabaseConnector {
         newTable.addUniqueMatched(world);
         newTable.addUniqueMatched("trade");
 
-        this.addTable(newTable);
-
-    }
-
-    @Override
-    public void setObjects(final Table table, final Query results, final SET_OPERATION mode) {
-        // Run SQLite query async to not disturb the main Server thread
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-            public void run() {
-                StringBuilder columnNames = new StringBuilder("(");
-
-                StringBuilder resultNames = new StringBuilder("(");
-
-                for (final Entry<String, Object> result : results.getEntrySet()) {
-                    columnNames.append(result.getKey() + ",");
-
-                    try {
-                        // Try to check if it is an integer
-                        Integer.parseInt(result.getValue().toString());
-                        resultNames.append(result.getValue() + ",");
-                    } catch (final NumberFormatException e) {
-
-                        try {
-                            // Try to check if it is an double
-                            Double.parseDouble(result.getValue().toString());
-                            resultNames.append(result.getValue().toString() + ",");
-                        } catch (NumberFormatException ev) {
-                            resultNames.append("'" + result.getValue().toString().replace("'", "''") + "',");
-                        }
-                    }
-
-                }
-
-                // Remove last comma
-                columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-                resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
-
-                String update = "INSERT INTO " + table.getTableName() + " " + columnNames.toString() + " VALUES "
-                        + resultNames;
-
-                String onDuplicate = "";
-
-                if (results.hasColumn("value")) {
-                    if (mode == SET_OPERATION.OVERRIDE) {
-                        // Override current value
-                        onDuplicate = " ON DUPLICATE KEY UPDATE value=" + results.getValue();
-                    } else {
-                        // Add to current value
-                        onDuplicate = " ON DUPLICATE KEY UPDATE value=value+" + results.getValue();
-                    }
-
-                } else {
-                    onDuplicate = " ON DUPLICATE KEY UPDATE playerName='" + results.getValue("playerName") + "'";
-                }
-
-                update += onDuplicate;
+        connector.addTable(newTable);
 
-                try (Connection conn = getConnection()) {
-                    PreparedStatement ps = null;
-
-                    ps = conn.prepareStatement(update);
-                    ps.executeUpdate();
-
-                    return;
-                } catch (final SQLException ex) {
-                    plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-                }
-            }
-        });
     }
 
     public String getUsername() {
@@ -886,108 +759,6 @@ public class MySQLConnector extends DatabaseConnector {
         return hostname;
     }
 
-    @Override
-    public void setBatchObjects(final Table table, final List<Query> queries, SET_OPERATION mode) {
-        // Run SQLite query async to not disturb the main Server thread
-
-        Statement stmt = null;
-
-        try (Connection conn = getConnection()) {
-            stmt = conn.createStatement();
-
-            for (Query query : queries) {
-                StringBuilder columnNames = new StringBuilder("(");
-
-                StringBuilder resultNames = new StringBuilder("(");
-
-                for (final Entry<String, Object> result : query.getEntrySet()) {
-                    columnNames.append(result.getKey() + ",");
-
-                    try {
-                        // Try to check if it is an integer
-                        Integer.parseInt(result.getValue().toString());
-                        resultNames.append(result.getValue() + ",");
-                    } catch (final NumberFormatException e) {
-
-                        try {
-                            // Try to check if it is an double
-                            Double.parseDouble(result.getValue().toString());
-                            resultNames.append(result.getValue() + ",");
-                        } catch (NumberFormatException ev) {
-                            resultNames.append("'" + result.getValue().toString().replace("'", "''") + "',");
-                        }
-                    }
-
-                }
-
-                // Remove last comma
-                columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-                resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
-
-                String update = "INSERT INTO " + table.getTableName() + " " + columnNames.toString() + " VALUES "
-                        + resultNames;
-
-                String onDuplicate = "";
-
-                if (query.hasColumn("value")) {
-                    if (mode == SET_OPERATION.OVERRIDE) {
-                        // Override current value
-                        onDuplicate = " ON DUPLICATE KEY UPDATE value=" + query.getValue();
-                    } else {
-                        // Add to current value
-                        onDuplicate = " ON DUPLICATE KEY UPDATE value=value+" + query.getValue();
-                    }
-                } else {
-                    onDuplicate = " ON DUPLICATE KEY UPDATE playerName='" + query.getValue("playerName") + "'";
-                }
-
-                update += onDuplicate;
-
-                stmt.addBatch(update);
-            }
-
-            stmt.executeBatch();
-
-            if (!conn.getAutoCommit()) {
-                conn.commit();
-            }
-
-        } catch (BatchUpdateException b) {
-            plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", b);
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-        } finally {
-            if (stmt != null) {
-                try {
-                    stmt.close();
-                } catch (SQLException e) {
-
-                    e.printStackTrace();
-                }
-            }
-        }
-    }
-
-    @Override
-    public void purgeData(final UUID uuid) {
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-            public void run() {
-
-                try (Connection conn = getConnection()) {
-                    for (Table table : getTables()) {
-                        String update = "DELETE FROM " + table.getTableName() + " WHERE uuid='" + uuid.toString() + "'";
-
-                        PreparedStatement ps = conn.prepareStatement(update);
-                        ps.executeUpdate();
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
-    }
-
     @Override
     public ResultSet sendQuery(final String query, final boolean wantResult) throws SQLException {
 
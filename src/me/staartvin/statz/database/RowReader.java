@@ -0,0 +1,79 @@
+package me.staartvin.statz.database;
+
+import me.staartvin.statz.database.datatype.Query;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Reads the rows of a {@link ResultSet} as {@link Query} objects. The names of the columns are looked up once when
+ * the reader is created, instead of for every row.
+ * <br>
+ * <br>
+ * Rows can be handed to a {@link Consumer} one at a time (see {@link #forEach(Consumer)}), so a large result does
+ * not have to be kept in memory as a whole.
+ */
+public class RowReader {
+
+    private final ResultSet resultSet;
+
+    // Lowercase names of the columns, by their index in the result (starting at 0)
+    private final String[] columnNames;
+
+    public RowReader(ResultSet resultSet) throws SQLException {
+        this.resultSet = resultSet;
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+
+        columnNames = new String[metaData.getColumnCount()];
+
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = metaData.getColumnName(i + 1).toLowerCase();
+        }
+    }
+
+    /**
+     * Move to the next row of the result and read it.
+     *
+     * @return the next row or null if there are no more rows.
+     * @throws SQLException if the row could not be read.
+     */
+    public Query next() throws SQLException {
+        if (!resultSet.next()) {
+            return null;
+        }
+
+        Query query = new Query();
+
+        for (int i = 0; i < columnNames.length; i++) {
+            Object value = BinaryUUIDs.readValue(resultSet.getObject(i + 1));
+
+            // Put value in query if not null, otherwise just put empty string
+            query.setValue(columnNames[i], value != null ? value : "");
+        }
+
+        return query;
+    }
+
+    /**
+     * Read all remaining rows of the result and pass them to a consumer, one at a time.
+     *
+     * @param consumer Consumer of the rows
+     * @return the number of rows that were read.
+     * @throws SQLException if a row could not be read.
+     */
+    public int forEach(Consumer<Query> consumer) throws SQLException {
+        int count = 0;
+
+        Query query;
+
+        while ((query = this.next()) != null) {
+            consumer.accept(query);
+            count++;
+        }
+
+        return count;
+    }
+}
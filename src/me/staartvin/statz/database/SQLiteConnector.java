@@ -3,10 +3,10 @@ package me.staartvin.statz.database;
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Column;
 import me.staartvin.statz.database.datatype.Query;
-import me.staartvin.statz.database.datatype.RowRequirement;
-import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Selection;
 import me.staartvin.statz.database.datatype.Table.SQLDataType;
 import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
+import me.staartvin.statz.database.dialect.SQLiteDialect;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import org.bukkit.ChatColor;
 
@@ -15,10 +15,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.UUID;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class SQLiteConnector extends DatabaseConnector {
@@ -27,8 +27,30 @@ public class SQLiteConnector extends DatabaseConnector {
     private Connection connection;
     private File databaseFile;
 
+    // Number of statements that are kept prepared on the connection
+    private static final int MAX_PREPARED_STATEMENTS = 64;
+
+    // Statements that have been prepared on the connection, by their SQL, from least to most recently used. Guarded
+    // by this.
+    private final Map<String, PreparedStatement> preparedStatements = new LinkedHashMap<String, PreparedStatement>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= MAX_PREPARED_STATEMENTS) {
+                return false;
+            }
+
+            evictedStatements.add(eldest.getValue());
+            return true;
+        }
+    };
+    private Connection preparedStatementsConnection;
+
+    // Statements that were removed from the cache, but may still be used by a thread. Guarded by this.
+    private final List<PreparedStatement> evictedStatements = new ArrayList<>();
+
     public SQLiteConnector(final Statz instance) {
-        super(instance);
+        super(instance, new SQLiteDialect());
         plugin = instance;
     }
 
@@ -47,7 +69,7 @@ public class SQLiteConnector extends DatabaseConnector {
             e1.printStackTrace();
         }
 
-        databaseFile = new File(plugin.getDataFolder(), databaseName + ".db");
+        databaseFile = this.getDatabaseFile();
         if (!databaseFile.exists()) {
             plugin.debugMessage(ChatColor.YELLOW + "Database not found! Creating one for you.");
             try {
@@ -72,177 +94,145 @@ public class SQLiteConnector extends DatabaseConnector {
         return connection;
     }
 
+    /**
+     * Get the file of the SQLite database.
+     *
+     * @return the database file, which may not exist yet.
+     */
+    protected File getDatabaseFile() {
+        return new File(plugin.getDataFolder(), databaseName + ".db");
+    }
+
+    @Override
+    public void releaseConnection(Connection connection) {
+        // The connection to SQLite is shared, so it is never closed.
+    }
+
     /* (non-Javadoc)
      * @see me.staartvin.statz.database.Database#load()
      */
     @Override
-    public void load() {
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-            public void run() {
-                connection = getConnection();
+    protected void loadDatabase() {
+        connection = getConnection();
 
-                try {
-                    final Statement s = connection.createStatement();
+        try {
+            final Statement s = connection.createStatement();
 
-                    // Run all statements to create tables
-                    for (final String statement : createTablesStatement()) {
-                        s.executeUpdate(statement);
-                    }
+            // Run all statements to create tables
+            for (final String statement : createTablesStatement()) {
+                s.executeUpdate(statement);
+            }
 
-                    s.close();
-                } catch (final SQLException e) {
-                    e.printStackTrace();
-                }
+            s.close();
+        } catch (final SQLException e) {
+            e.printStackTrace();
+        }
 
-                initialize();
+        initialize();
 
-                // Apply patches
-                plugin.getPatchManager().applyPatches();
-            }
-        });
+        // Apply patches
+        plugin.getPatchManager().applyPatches();
     }
 
     @Override
-    public List<Query> getObjects(Table table, RowRequirement... requirements) {
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-
-        final List<Query> results = new ArrayList<>();
-
+    protected int forEachRow(Selection selection, Consumer<Query> consumer) {
         try {
-            connection = getConnection();
-
-            // Create SQL query to retrieve data
-            if (requirements == null || requirements.length == 0) {
-                // No requirements, so we can grab all data in the table.
-                ps = connection.prepareStatement("SELECT * FROM " + table.getTableName() + ";");
-            } else {
-                // We have requirements, so we need to filter the data using WHERE clause of SQL.
-                StringBuilder builder = new StringBuilder(String.format("SELECT * FROM %s WHERE ", table.getTableName
-                        ()));
-
-                // Create a SQL WHERE string.
-                for (int i = 0; i < requirements.length; i++) {
-                    RowRequirement requirement = requirements[i];
-                    if (i == requirements.length - 1) {
-                        builder.append(String.format("%s = '%s';", requirement.getColumnName(), requirement
-                                .getColumnValue()));
-                    } else {
-                        builder.append(String.format("%s = '%s' AND ", requirement.getColumnName(), requirement
-                                .getColumnValue()));
+            while (true) {
+                PreparedStatement ps = this.getPreparedStatement(selection.toSQL());
+
+                // A cached statement can only be used by one thread at a time.
+                synchronized (ps) {
+                    // Another thread closed the statement after it was removed from the cache, so prepare it again.
+                    if (ps.isClosed()) {
+                        continue;
                     }
-                }
-
-                ps = connection.prepareStatement(builder.toString());
-            }
-
-
-            rs = ps.executeQuery();
-            while (rs.next()) {
 
-                final HashMap<String, Object> result = new HashMap<>();
+                    this.bindParameters(ps, selection);
 
-                // Populate hashmap
-                for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-                    final String columnName = rs.getMetaData().getColumnName(i + 1);
-                    final Object value = rs.getObject(i + 1);
-
-                    // Put value in hashmap if not null, otherwise just put
-                    // empty string
-                    result.put(columnName, (value != null ? value : ""));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return new RowReader(rs).forEach(consumer);
+                    }
                 }
-
-                results.add(new Query(result));
             }
-
-
         } catch (final SQLException ex) {
             plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-            return results;
+            return -1;
         } finally {
-            try {
-                if (ps != null)
-                    ps.close();
-            } catch (final SQLException ex) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to close SQLite connection: ", ex);
-            }
+            this.closeEvictedStatements();
         }
-        return results;
     }
 
-    /**
-     * This function creates multiple strings in 'SQL style' to create the
-     * proper tables.
-     * <br>
-     * It looks at the tables that are loaded in memory and dynamically creates
-     * proper SQL statements.
-     *
-     * @return SQL statements that will create the necessary tables when run.
-     */
-    public List<String> createTablesStatement() {
-        // Returns a list of statements that need to be run to create the tables.
+    @Override
+    public void close() {
+        Connection openConnection;
 
-        final List<String> statements = new ArrayList<String>();
+        synchronized (this) {
+            evictedStatements.addAll(preparedStatements.values());
+            preparedStatements.clear();
+            preparedStatementsConnection = null;
 
-        for (final Table table : this.getTables()) {
-            StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (");
+            openConnection = connection;
+            connection = null;
+        }
 
-            // For each column in the table, add it to the table.
-            for (final Column column : table.getColumns()) {
+        this.closeEvictedStatements();
 
-                if (column.getDataType().equals(SQLDataType.INT)) {
-                    statement.append("'" + column.getColumnName() + "' INTEGER");
-                } else {
-                    statement.append("'" + column.getColumnName() + "' " + column.getDataType().toString());
-                }
+        if (openConnection == null) {
+            return;
+        }
 
-                if (column.isPrimaryKey()) {
-                    statement.append(" PRIMARY KEY");
-                }
+        try {
+            openConnection.close();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Couldn't close SQLite connection:", e);
+        }
+    }
 
-                if (column.isAutoIncrement()) {
-                    statement.append(" AUTOINCREMENT");
-                }
+    // Close the statements that were removed from the cache, once no thread is using them anymore.
+    private void closeEvictedStatements() {
+        List<PreparedStatement> statements;
 
-                if (column.isNotNull()) {
-                    statement.append(" NOT NULL");
-                }
+        synchronized (this) {
+            statements = new ArrayList<>(evictedStatements);
+            evictedStatements.clear();
+        }
 
-                if (column.isUnique()) {
-                    statement.append(" UNIQUE");
+        for (PreparedStatement statement : statements) {
+            synchronized (statement) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.WARNING, "Couldn't close SQLite statement:", e);
                 }
-
-                statement.append(",");
-
             }
+        }
+    }
 
-			/*if (table.getPrimaryKey() == null) {
-                // Remove last comma
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-			}*/
-
-            if (!table.getUniqueMatched().isEmpty()) {
-
-                statement.append("UNIQUE (");
-
-                for (Column matched : table.getUniqueMatched()) {
-                    statement.append(matched.getColumnName() + ",");
-                }
-
-                // Remove last comma
-                statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
-            } else {
-                statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-            }
+    /**
+     * Get a prepared statement for the given SQL. As SQLite uses a single connection, statements are prepared only
+     * once and reused afterwards. Only the statements that were used most recently are kept.
+     *
+     * @param sql SQL of the statement
+     * @return a prepared statement on the current connection.
+     * @throws SQLException if the statement could not be prepared.
+     */
+    private synchronized PreparedStatement getPreparedStatement(String sql) throws SQLException {
+        Connection currentConnection = getConnection();
 
-            statement.append(");");
+        // Statements of an old connection cannot be used anymore.
+        if (currentConnection != preparedStatementsConnection) {
+            preparedStatements.clear();
+            preparedStatementsConnection = currentConnection;
+        }
 
-            statements.add(statement.toString());
+        PreparedStatement statement = preparedStatements.get(sql);
 
-            plugin.debugMessage(ChatColor.GREEN + "Loaded table '" + table.getTableName() + "'");
+        if (statement == null || statement.isClosed()) {
+            statement = currentConnection.prepareStatement(sql);
+            preparedStatements.put(sql, statement);
         }
 
-        return statements;
+        return statement;
     }
 
     @Override
@@ -797,230 +787,6 @@ public class SQLiteConnector extends DatabaseConnector {
 
     }
 
-    @Override
-    public void setObjects(final Table table, final Query results, final SET_OPERATION mode) {
-        // Run SQLite query async to not disturb the main Server thread
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-            @SuppressWarnings("resource")
-            public void run() {
-                Connection conn = null;
-                PreparedStatement ps = null;
-
-                StringBuilder columnNames = new StringBuilder("(");
-
-                StringBuilder resultNames = new StringBuilder("(");
-
-                StringBuilder updateWhere = new StringBuilder();
-
-                for (final Entry<String, Object> result : results.getEntrySet()) {
-                    columnNames.append(result.getKey() + ",");
-
-                    // DO NOT add for value column
-                    if (!result.getKey().equalsIgnoreCase("value")) {
-                        updateWhere.append(result.getKey() + "=");
-                    }
-
-                    try {
-                        // Try to check if it is an integer
-                        Integer.parseInt(result.getValue().toString());
-                        resultNames.append(result.getValue() + ",");
-
-                        if (!result.getKey().equalsIgnoreCase("value")) {
-                            updateWhere.append(result.getValue() + " AND ");
-                        }
-
-                    } catch (final NumberFormatException e) {
-                        resultNames.append("'" + result.getValue().toString().replace("'", "''") + "',");
-
-                        if (!result.getKey().equalsIgnoreCase("value")) {
-                            updateWhere.append("'" + result.getValue().toString().replace("'", "''") + "' AND ");
-                        }
-                    }
-
-                }
-
-                // Remove last comma
-                columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-                resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
-                updateWhere = new StringBuilder(updateWhere.substring(0, updateWhere.lastIndexOf("AND")));
-
-                String update;
-                String updateTwo = null;
-
-                if (mode == SET_OPERATION.OVERRIDE || !results.hasColumn("value")) {
-                    // Override value
-                    update = "INSERT OR REPLACE INTO " + table.getTableName() + " " + columnNames.toString()
-                            + " VALUES " + resultNames;
-                } else {
-                    // Add value
-                    update = "UPDATE " + table.getTableName() + " SET value=value + " + results.getValue() + " WHERE "
-                            + updateWhere.toString() + ";";
-                    updateTwo = "INSERT OR IGNORE INTO " + table.getTableName() + " " + columnNames.toString()
-                            + " VALUES " + resultNames + ";";
-                }
-
-                try {
-                    conn = getConnection();
-                    ps = conn.prepareStatement(update);
-                    ps.executeUpdate();
-
-                    if (updateTwo != null) {
-                        ps = conn.prepareStatement(updateTwo);
-                        ps.executeUpdate();
-                    }
-
-                    return;
-                } catch (final SQLException ex) {
-                    plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-                } finally {
-                    try {
-                        if (ps != null)
-                            ps.close();
-                    } catch (final SQLException ex) {
-                        plugin.getLogger().log(Level.SEVERE, "Failed to close SQLite connection: ", ex);
-                    }
-                }
-            }
-        });
-    }
-
-    @Override
-    public void setBatchObjects(final Table table, final List<Query> queries, SET_OPERATION mode) {
-        // Run SQLite query async to not disturb the main Server thread
-
-        Connection conn = getConnection();
-        Statement stmt = null;
-
-        try {
-            stmt = conn.createStatement();
-
-            for (Query query : queries) {
-                StringBuilder columnNames = new StringBuilder("(");
-
-                StringBuilder resultNames = new StringBuilder("(");
-
-                StringBuilder updateWhere = new StringBuilder();
-
-                for (final Entry<String, Object> result : query.getEntrySet()) {
-                    columnNames.append(result.getKey() + ",");
-
-                    // DO NOT add for value column
-                    if (!result.getKey().equalsIgnoreCase("value")) {
-                        updateWhere.append(result.getKey() + "=");
-                    }
-
-                    try {
-                        // Try to check if it is an integer
-                        Double.parseDouble(result.getValue().toString());
-                        resultNames.append(result.getValue().toString() + ",");
-
-                        if (!result.getKey().equalsIgnoreCase("value")) {
-                            updateWhere.append(result.getValue().toString() + " AND ");
-                        }
-                    } catch (final NumberFormatException e) {
-                        resultNames.append("'" + result.getValue().toString().replace("'", "''") + "',");
-
-                        if (!result.getKey().equalsIgnoreCase("value")) {
-                            updateWhere.append("'" + result.getValue().toString().replace("'", "''") + "' AND ");
-                        }
-                    }
-
-                }
-
-                // Remove last comma
-                columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-                resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
-                updateWhere = new StringBuilder(updateWhere.substring(0, updateWhere.lastIndexOf("AND")));
-
-                String update;
-                String updateTwo = null;
-
-                if (mode == SET_OPERATION.OVERRIDE || !query.hasColumn("value")) {
-                    // Override value
-                    update = "INSERT OR REPLACE INTO " + table.getTableName() + " " + columnNames.toString()
-                            + " VALUES " + resultNames;
-                } else {
-                    // Add value
-                    update = "UPDATE " + table.getTableName() + " SET value=value + " + query.getValue() + " WHERE "
-                            + updateWhere.toString() + ";";
-                    updateTwo = "INSERT OR IGNORE INTO " + table.getTableName() + " " + columnNames.toString()
-                            + " VALUES " + resultNames + ";";
-                }
-
-                stmt.addBatch(update);
-                if (updateTwo != null) {
-                    stmt.addBatch(updateTwo);
-                }
-            }
-
-            @SuppressWarnings("unused")
-            int[] updateCounts = stmt.executeBatch();
-
-            if (!conn.getAutoCommit()) {
-                conn.commit();
-            }
-
-        } catch (BatchUpdateException b) {
-            plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", b);
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-        } finally {
-            if (stmt != null) {
-                try {
-                    stmt.close();
-                } catch (SQLException e) {
-
-                    e.printStackTrace();
-                }
-            }
-            try {
-                conn.setAutoCommit(true);
-            } catch (SQLException e) {
-
-                e.printStackTrace();
-            }
-        }
-    }
-
-    @Override
-    public void purgeData(final UUID uuid) {
-
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-            public void run() {
-
-                Connection conn = null;
-                PreparedStatement ps = null;
-
-                conn = getConnection();
-
-                for (Table table : getTables()) {
-                    String update = "DELETE FROM " + table.getTableName() + " WHERE uuid='" + uuid.toString() + "'";
-
-                    try {
-                        ps = conn.prepareStatement(update);
-                        ps.executeUpdate();
-
-                    } catch (final SQLException ex) {
-                        plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-                    } finally {
-                        try {
-                            if (ps != null)
-                                ps.close();
-                            //if (conn != null)
-                            //conn.close();
-                        } catch (final SQLException ex) {
-                            plugin.getLogger().log(Level.SEVERE, "Failed to close SQLite connection: ", ex);
-                        }
-                    }
-                }
-
-            }
-        });
-    }
-
-
     @Override
     public ResultSet sendQuery(final String query, final boolean wantResult) throws SQLException {
 
@@ -0,0 +1,522 @@
+package me.staartvin.statz.database;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.dialect.SQLDialect;
+import me.staartvin.statz.database.segment.PlayerRows;
+import me.staartvin.statz.database.segment.RowChange;
+import me.staartvin.statz.database.segment.SegmentLog;
+import org.bukkit.ChatColor;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Stores the statistics of Statz in a {@link SegmentLog} in the 'segments' folder of the plugin. Saving only
+ * appends the changes to the log, and the rows of a player are read from a single place once the log has been
+ * compacted.
+ * <br>
+ * <br>
+ * Data that is not a statistic, such as the checkpoints of jobs and the archive, is stored in a small SQLite
+ * database next to the log. Batches that have to be committed together with statements on that database are
+ * confirmed in a table of that database, so a batch is only applied if its statements were committed too.
+ * <br>
+ * <br>
+ * The log is looked up by player, so selections that are not restricted to a set of players read the rows of
+ * every player. Dictionary encoding and binary uuids are not supported.
+ */
+public class SegmentConnector extends SQLiteConnector {
+
+    // Sequence numbers of the batches that were committed together with SQLite statements
+    private static final String BATCHES_TABLE = DatabaseConnector.prefix + "segment_batches";
+
+    // How often (in ticks) Statz checks whether the log should be compacted
+    private static final long COMPACTION_CHECK_INTERVAL = 20 * 60;
+
+    private final Statz plugin;
+
+    private volatile SegmentLog log = null;
+
+    public SegmentConnector(final Statz instance) {
+        super(instance);
+        plugin = instance;
+    }
+
+    private File getSegmentFolder() {
+        return new File(plugin.getDataFolder(), "segments");
+    }
+
+    @Override
+    protected File getDatabaseFile() {
+        return new File(this.getSegmentFolder(), databaseName + ".db");
+    }
+
+    @Override
+    protected void loadDatabase() {
+        Connection connection = getConnection();
+
+        if (connection == null) {
+            plugin.debugMessage(ChatColor.RED + "I could not open the database of the segment log!");
+            return;
+        }
+
+        Set<Long> confirmedBatches = new HashSet<>();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + BATCHES_TABLE + " (sequence BIGINT NOT " +
+                    "NULL, PRIMARY KEY (sequence))");
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT sequence FROM " + BATCHES_TABLE)) {
+                while (resultSet.next()) {
+                    confirmedBatches.add(resultSet.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load the batches of the segment log", e);
+            return;
+        }
+
+        SegmentLog segmentLog = new SegmentLog(this.getSegmentFolder(),
+                plugin.getConfigHandler().getSegmentSize());
+
+        try {
+            segmentLog.open(confirmedBatches::contains);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not open the segment log", e);
+            return;
+        }
+
+        log = segmentLog;
+
+        if (plugin.getConfigHandler().isDictionaryEncodingEnabled() || plugin.getConfigHandler()
+                .isBinaryUUIDsEnabled()) {
+            plugin.getLogger().warning("Dictionary encoding and binary uuids are not supported by the segment " +
+                    "log, so they are not used.");
+        }
+
+        initialize();
+
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::compactIfNeeded,
+                COMPACTION_CHECK_INTERVAL, COMPACTION_CHECK_INTERVAL);
+    }
+
+    @Override
+    public void close() {
+        SegmentLog segmentLog = log;
+
+        log = null;
+
+        if (segmentLog != null) {
+            try {
+                segmentLog.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not close the segment log", e);
+            }
+        }
+
+        super.close();
+    }
+
+    // Merge the changes in the log once enough of them have been written.
+    private void compactIfNeeded() {
+        SegmentLog segmentLog = log;
+        long threshold = plugin.getConfigHandler().getSegmentCompactionThreshold();
+
+        if (segmentLog == null || segmentLog.getUncompactedBytes() < threshold) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+            segmentLog.compact(this::removeConfirmedBatches);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not compact the segment log", e);
+            return;
+        }
+
+        plugin.debugMessage(ChatColor.GREEN + "Compacted the segment log in " + (System.currentTimeMillis() -
+                startTime) + " ms");
+    }
+
+    // Batches that have been compacted are not read from the deltas anymore, so their confirmation is not needed.
+    private void removeConfirmedBatches(long lastSequence) {
+        Connection connection = getConnection();
+
+        // The confirmations are removed after the next compaction instead.
+        if (connection == null) {
+            plugin.getLogger().warning("Could not remove the compacted batches of the segment log, as Statz is not " +
+                    "connected to the database.");
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM " + BATCHES_TABLE + " WHERE sequence <= " + lastSequence);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not remove the compacted batches of the segment log", e);
+        }
+    }
+
+    // Commit statements on the SQLite database together with a batch of the log.
+    private void confirmBatch(long sequence, List<String> statements) throws SQLException {
+        Connection connection = getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+
+            for (String sql : statements) {
+                statement.executeUpdate(sql);
+            }
+
+            statement.executeUpdate("INSERT INTO " + BATCHES_TABLE + " (sequence) VALUES (" + sequence + ")");
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Get the log, or log a warning if it has not been opened.
+     */
+    private SegmentLog getLog() {
+        SegmentLog segmentLog = log;
+
+        if (segmentLog == null) {
+            plugin.getLogger().warning("Statz is not connected to your database properly!");
+        }
+
+        return segmentLog;
+    }
+
+    // Read the rows of a table per player. Only the given players are read, or all players if it is null.
+    private Map<UUID, List<Query>> readRows(SegmentLog segmentLog, Table table, List<Object> uuids)
+            throws IOException {
+        List<UUID> players = new ArrayList<>();
+
+        if (uuids == null) {
+            players.addAll(segmentLog.getPlayers());
+        } else {
+            for (Object uuid : uuids) {
+                try {
+                    players.add(UUID.fromString(uuid.toString()));
+                } catch (IllegalArgumentException e) {
+                    // No player has this uuid.
+                }
+            }
+        }
+
+        Map<UUID, List<Query>> rows = new LinkedHashMap<>();
+
+        for (UUID uuid : players) {
+            PlayerRows playerRows = segmentLog.read(uuid);
+            List<Query> tableRows = new ArrayList<>();
+
+            for (RowChange row : playerRows.getRows(table.getTableName())) {
+                Query query = new Query(uuid);
+
+                for (Map.Entry<String, String> column : row.getColumns().entrySet()) {
+                    query.setValue(column.getKey(), column.getValue());
+                }
+
+                tableRows.add(query);
+            }
+
+            if (!tableRows.isEmpty()) {
+                rows.put(uuid, tableRows);
+            }
+        }
+
+        return rows;
+    }
+
+    @Override
+    protected int forEachRow(Selection selection, Consumer<Query> consumer) {
+        SegmentLog segmentLog = this.getLog();
+
+        if (segmentLog == null) {
+            return -1;
+        }
+
+        List<Query> rows = new ArrayList<>();
+
+        try {
+            for (List<Query> playerRows : this.readRows(segmentLog, selection.getTable(),
+                    selection.getAllowedValues("uuid")).values()) {
+                rows.addAll(playerRows);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't read the segment log:", e);
+            return -1;
+        }
+
+        List<Query> selected = selection.apply(rows);
+
+        selected.forEach(consumer);
+
+        return selected.size();
+    }
+
+    @Override
+    public Map<UUID, Double> getTotalsPerPlayer(final Table table, final RowRequirement... requirements)
+            throws IllegalArgumentException {
+        Map<UUID, Double> totals = new LinkedHashMap<>();
+
+        if (table == null) {
+            plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+            return totals;
+        }
+
+        Selection selection = new Selection(table).where(requirements);
+
+        this.forEachRow(selection, row -> totals.merge(row.getUUID(), row.getValue(), Double::sum));
+
+        List<Map.Entry<UUID, Double>> ordered = new ArrayList<>(totals.entrySet());
+
+        ordered.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+
+        Map<UUID, Double> orderedTotals = new LinkedHashMap<>();
+
+        for (Map.Entry<UUID, Double> total : ordered) {
+            orderedTotals.put(total.getKey(), total.getValue());
+        }
+
+        return orderedTotals;
+    }
+
+    @Override
+    public List<Query> getAggregatedObjects(final Table table, final String[] groupBy,
+                                            final RowRequirement... requirements) throws IllegalArgumentException {
+        if (table == null) {
+            plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+            return new ArrayList<>();
+        }
+
+        for (String columnName : groupBy) {
+            if (table.getColumn(columnName) == null) {
+                throw new IllegalArgumentException(String.format("Table '%s' does not have a column '%s'",
+                        table.getTableName(), columnName));
+            }
+        }
+
+        if (table.getColumn("value") == null) {
+            throw new IllegalArgumentException(String.format("Table '%s' does not have a column 'value'",
+                    table.getTableName()));
+        }
+
+        Map<List<Object>, Query> groups = new LinkedHashMap<>();
+
+        this.forEachRow(new Selection(table).where(requirements), row -> {
+            List<Object> key = new ArrayList<>();
+
+            for (String columnName : groupBy) {
+                key.add(row.getValue(columnName));
+            }
+
+            Query group = groups.computeIfAbsent(key, k -> {
+                Query query = new Query();
+
+                for (String columnName : groupBy) {
+                    if (row.hasColumn(columnName)) {
+                        query.setValue(columnName, row.getValue(columnName));
+                    }
+                }
+
+                query.setValue("value", 0.0);
+
+                return query;
+            });
+
+            group.setValue("value", group.getValue() + row.getValue());
+        });
+
+        // Like SUM() in SQL, the total of no rows is a single row.
+        if (groups.isEmpty() && groupBy.length == 0) {
+            Query total = new Query();
+
+            total.setValue("value", 0.0);
+
+            return Collections.singletonList(total);
+        }
+
+        return new ArrayList<>(groups.values());
+    }
+
+    @Override
+    public long countObjects(final Table table) {
+        SegmentLog segmentLog = this.getLog();
+
+        if (segmentLog == null) {
+            return -1;
+        }
+
+        long count = 0;
+
+        try {
+            for (UUID uuid : segmentLog.getPlayers()) {
+                count += segmentLog.read(uuid).getRows(table.getTableName()).size();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't count rows of table " + table.getTableName(), e);
+            return -1;
+        }
+
+        return count;
+    }
+
+    @Override
+    public boolean setBatchObjects(final Map<Table, List<Query>> batches, SET_OPERATION mode,
+                                   List<String> statements) {
+        SegmentLog segmentLog = this.getLog();
+
+        if (segmentLog == null) {
+            return false;
+        }
+
+        Map<UUID, List<RowChange>> changes = new LinkedHashMap<>();
+
+        for (Map.Entry<Table, List<Query>> batch : batches.entrySet()) {
+            for (Query row : batch.getValue()) {
+                UUID uuid;
+
+                try {
+                    uuid = row.getUUID();
+                } catch (IllegalArgumentException e) {
+                    uuid = null;
+                }
+
+                // Rows are stored per player, so rows without a player cannot be stored.
+                if (uuid == null) {
+                    plugin.debugMessage(ChatColor.RED + "Skipped a row of " + batch.getKey().getTableName() +
+                            " without a valid uuid");
+                    continue;
+                }
+
+                changes.computeIfAbsent(uuid, k -> new ArrayList<>()).add(toChange(batch.getKey(), row, mode));
+            }
+        }
+
+        if (changes.isEmpty() && statements.isEmpty()) {
+            return true;
+        }
+
+        try {
+            segmentLog.write(changes, Collections.emptyList(), statements.isEmpty() ? null :
+                    sequence -> this.confirmBatch(sequence, statements));
+
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Couldn't write to the segment log:", e);
+            return false;
+        }
+    }
+
+    /**
+     * Turn a row into a change of the log. The key columns of the row come first. The uuid is stored by the log
+     * itself and ids that the database would generate are not stored at all.
+     */
+    private static RowChange toChange(Table table, Query row, SET_OPERATION mode) {
+        List<String> writtenColumns = new ArrayList<>();
+
+        for (Map.Entry<String, Object> column : row.getEntrySet()) {
+            Column tableColumn = table.getColumn(column.getKey());
+
+            if (tableColumn == null || !tableColumn.isAutoIncrement()) {
+                writtenColumns.add(column.getKey());
+            }
+        }
+
+        Map<String, String> columns = new LinkedHashMap<>();
+
+        for (String keyColumn : SQLDialect.getKeyColumns(table, writtenColumns)) {
+            columns.put(keyColumn, row.getValue(keyColumn).toString());
+        }
+
+        columns.remove("uuid");
+
+        int keyCount = columns.size();
+
+        for (String column : writtenColumns) {
+            if (!column.equals("uuid")) {
+                columns.putIfAbsent(column, row.getValue(column).toString());
+            }
+        }
+
+        return new RowChange(table.getTableName(), mode == SET_OPERATION.ADD && columns.containsKey("value"),
+                keyCount, columns);
+    }
+
+    @Override
+    public int purgeData(final List<UUID> uuids, final List<String> statements) throws SQLException {
+        SegmentLog segmentLog = log;
+
+        if (segmentLog == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        if (uuids.isEmpty() && statements.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            int deletedRows = 0;
+
+            for (UUID uuid : uuids) {
+                PlayerRows rows = segmentLog.read(uuid);
+
+                for (String table : rows.getTables()) {
+                    deletedRows += rows.getRows(table).size();
+                }
+            }
+
+            segmentLog.write(Collections.emptyMap(), uuids, statements.isEmpty() ? null :
+                    sequence -> this.confirmBatch(sequence, statements));
+
+            return deletedRows;
+        } catch (IOException e) {
+            throw new SQLException("Couldn't remove data from the segment log", e);
+        }
+    }
+
+    @Override
+    public boolean createBackup(String identifier) {
+        SegmentLog segmentLog = log;
+
+        if (segmentLog == null || !super.createBackup(identifier)) {
+            return false;
+        }
+
+        try {
+            segmentLog.backup(new File(plugin.getDataFolder(), "segments-" + identifier));
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not make a backup of the segment log", e);
+            return false;
+        }
+    }
+}
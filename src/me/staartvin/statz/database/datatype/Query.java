@@ -20,6 +20,9 @@ public class Query {
     // Store what specification this query adheres to.
     private Class<? extends PlayerStatSpecification> specification;
 
+    // The uuid column, parsed the last time getUUID() was called.
+    private ParsedUUID parsedUUID;
+
     public Query(Map<String, Object> data) {
         this.setData(data);
     }
@@ -29,7 +32,10 @@ public class Query {
     }
 
     public Query(UUID uuid) {
-        this.setValue("uuid", uuid.toString());
+        String text = uuid.toString();
+
+        this.setValue("uuid", text);
+        this.parsedUUID = new ParsedUUID(text, uuid);
     }
 
     /**
@@ -346,11 +352,21 @@ public class Query {
      * @return uuid of the player for this Query or null if the UUID was not found.
      */
     public UUID getUUID() {
-        if (!hasColumn("uuid")) {
+        Object text = data.get("uuid");
+
+        if (text == null) {
             return null;
         }
 
-        return UUID.fromString(this.getValue("uuid").toString());
+        // Only parse the uuid again when the column was changed.
+        ParsedUUID parsed = parsedUUID;
+
+        if (parsed == null || !parsed.text.equals(text)) {
+            parsed = new ParsedUUID(text.toString(), UUID.fromString(text.toString()));
+            parsedUUID = parsed;
+        }
+
+        return parsed.uuid;
     }
 
     /**
@@ -428,7 +444,8 @@ public class Query {
 
     /**
      * Check whether this query meets a given requirement. A query matches a requirement when it has the column
-     * specified in the requirement and the value of that column specified in the requirement.
+     * specified in the requirement and the value of that column specified in the requirement. Values are compared
+     * by their text, so a column that holds a number or an enum matches a requirement with the same text.
      *
      * @param requirement Requirement to validate
      * @return true if the requirement is met by this query, false otherwise.
@@ -450,7 +467,7 @@ public class Query {
         }
 
         // This query does not have the same value as specified by the requirement, so it does not meet the requirement.
-        return this.getValue(requirement.getColumnName()).equals(requirement.getColumnValue());
+        return this.getValue(requirement.getColumnName()).toString().equals(requirement.getColumnValue());
     }
 
     /**
@@ -478,4 +495,17 @@ public class Query {
     public void setSpecification(Class<? extends PlayerStatSpecification> specification) {
         this.specification = specification;
     }
+
+    /**
+     * A uuid together with the text it was parsed from, so both can be replaced at once.
+     */
+    private static class ParsedUUID {
+        private final String text;
+        private final UUID uuid;
+
+        private ParsedUUID(String text, UUID uuid) {
+            this.text = text;
+            this.uuid = uuid;
+        }
+    }
 }
@@ -0,0 +1,620 @@
+package me.staartvin.statz.database.datatype;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A description of the rows and columns that should be retrieved from a table. A selection can filter rows on
+ * equality, on a set of values (IN), on a range and on a prefix, only retrieve some of the columns, and sort and
+ * limit the rows. For example, to get the ten largest numbers of zombies or skeletons that were killed:
+ * <br>
+ * <br>
+ * <code>new Selection(table).columns("uuid", "value").whereIn("mob", Arrays.asList("ZOMBIE", "SKELETON"))
+ * .orderBy("value", true).limit(10);</code>
+ * <br>
+ * <br>
+ * A selection is turned into SQL by {@link #toSQL()}. All values are passed as parameters (see
+ * {@link #getParameters()}), so they never need to be escaped. Column names cannot be passed as parameters, so only
+ * columns of the table are accepted. Selections with the same shape (the same columns and kinds of filters, but
+ * possibly different values) share the same SQL statement, which is only created once. The number of parameters of
+ * an IN filter is rounded up to a power of two by repeating its last value, so lists of many different sizes share a
+ * few statements.
+ */
+public class Selection {
+
+    // Number of SQL statements that are kept, so selections of many different shapes cannot fill the memory
+    private static final int MAX_COMPILED_STATEMENTS = 256;
+
+    // SQL statements that have been created, by the shape of their selection, from least to most recently used
+    private static final Map<String, String> compiledStatements = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_COMPILED_STATEMENTS;
+                }
+            });
+
+    private final Table table;
+
+    private final List<String> columns = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+
+    private String orderColumn;
+    private boolean descending;
+    private int limit = -1;
+
+    // Column that the database adds to every row, or null if it is not retrieved.
+    private String rowIdColumn;
+
+    // Dictionary table of every encoded column whose values are compared or sorted, by the name of the column
+    private final Map<String, String> dictionaryJoins = new LinkedHashMap<>();
+
+    public Selection(Table table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Table cannot be null.");
+        }
+
+        this.table = table;
+    }
+
+    /**
+     * Only retrieve the given columns. If this method is not called, all columns are retrieved.
+     *
+     * @param columnNames Names of the columns to retrieve
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have one of the columns.
+     */
+    public Selection columns(String... columnNames) throws IllegalArgumentException {
+        for (String columnName : columnNames) {
+            columns.add(getColumnName(columnName));
+        }
+
+        return this;
+    }
+
+    /**
+     * Also retrieve a column that the database adds to every row, such as the rowid of SQLite (see
+     * {@link me.staartvin.statz.database.dialect.SQLDialect#getRowIdColumn()}). The column can then be used in
+     * conditions and to sort the rows, like a column of the table.
+     *
+     * @param columnName Name of the column
+     * @return this selection.
+     * @throws IllegalArgumentException if the name is null or the table has a column with the same name.
+     */
+    public Selection withRowId(String columnName) throws IllegalArgumentException {
+        if (columnName == null || table.getColumn(columnName) != null) {
+            throw new IllegalArgumentException(String.format("'%s' cannot be used as row id of table '%s'",
+                    columnName, table.getTableName()));
+        }
+
+        this.rowIdColumn = columnName;
+        return this;
+    }
+
+    /**
+     * Only retrieve rows that meet all given requirements.
+     *
+     * @param requirements Requirements that rows should meet, see {@link RowRequirement}
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have a column of one of the requirements.
+     */
+    public Selection where(RowRequirement... requirements) throws IllegalArgumentException {
+        if (requirements == null) {
+            return this;
+        }
+
+        for (RowRequirement requirement : requirements) {
+            this.whereEquals(requirement.getColumnName(), requirement.getColumnValue());
+        }
+
+        return this;
+    }
+
+    /**
+     * Only retrieve rows where a column has the given value.
+     *
+     * @param columnName Name of the column
+     * @param value      Value the column should have
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column.
+     */
+    public Selection whereEquals(String columnName, Object value) throws IllegalArgumentException {
+        conditions.add(new Condition(getColumnName(columnName), ConditionType.EQUALS,
+                Collections.singletonList(value)));
+        return this;
+    }
+
+    /**
+     * Only retrieve rows where a column has one of the given values.
+     *
+     * @param columnName Name of the column
+     * @param values     Values the column may have, cannot be empty
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column or no values are given.
+     */
+    public Selection whereIn(String columnName, Collection<?> values) throws IllegalArgumentException {
+        if (values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("At least one value is required.");
+        }
+
+        conditions.add(new Condition(getColumnName(columnName), ConditionType.IN, new ArrayList<>(values)));
+        return this;
+    }
+
+    /**
+     * Only retrieve rows where the value of a column lies in the given range.
+     *
+     * @param columnName Name of the column
+     * @param minimum    Lowest value that is allowed (inclusive), or null if there is no lower bound
+     * @param maximum    Highest value that is allowed (inclusive), or null if there is no upper bound
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column.
+     */
+    public Selection whereBetween(String columnName, Object minimum, Object maximum) throws
+            IllegalArgumentException {
+        String name = getColumnName(columnName);
+
+        if (minimum != null) {
+            conditions.add(new Condition(name, ConditionType.AT_LEAST, Collections.singletonList(minimum)));
+        }
+
+        if (maximum != null) {
+            conditions.add(new Condition(name, ConditionType.AT_MOST, Collections.singletonList(maximum)));
+        }
+
+        return this;
+    }
+
+    /**
+     * Only retrieve rows where the value of a column is larger than the given value. Together with
+     * {@link #orderBy(String, boolean)} on the same column, this allows reading a table in parts, where each part
+     * starts after the last row of the previous part.
+     *
+     * @param columnName Name of the column
+     * @param value      Value the column should be larger than (exclusive)
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column.
+     */
+    public Selection whereAfter(String columnName, Object value) throws IllegalArgumentException {
+        conditions.add(new Condition(getColumnName(columnName), ConditionType.AFTER,
+                Collections.singletonList(value)));
+        return this;
+    }
+
+    /**
+     * Only retrieve rows where the value of a column starts with the given text. Note that, depending on the
+     * database, this may not be case-sensitive.
+     *
+     * @param columnName Name of the column
+     * @param prefix     Text the value should start with
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column.
+     */
+    public Selection whereStartsWith(String columnName, String prefix) throws IllegalArgumentException {
+        conditions.add(new Condition(getColumnName(columnName), ConditionType.PREFIX,
+                Collections.singletonList(prefix)));
+        return this;
+    }
+
+    /**
+     * Sort the rows by a column.
+     *
+     * @param columnName Name of the column
+     * @param descending Whether to sort from the highest to the lowest value
+     * @return this selection.
+     * @throws IllegalArgumentException if the table does not have the column.
+     */
+    public Selection orderBy(String columnName, boolean descending) throws IllegalArgumentException {
+        this.orderColumn = getColumnName(columnName);
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Retrieve at most the given number of rows.
+     *
+     * @param limit Maximum number of rows
+     * @return this selection.
+     * @throws IllegalArgumentException if the limit is negative.
+     */
+    public Selection limit(int limit) throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Get the table that rows are selected from.
+     *
+     * @return the table of this selection.
+     */
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * Get the SQL statement that retrieves the rows of this selection. The statement contains a parameter for
+     * every value, see {@link #getParameters()}.
+     *
+     * @return a SQL statement.
+     */
+    public String toSQL() {
+        return compiledStatements.computeIfAbsent(this.getShape(), shape -> this.createSQL());
+    }
+
+    /**
+     * Get the values that should be bound to the parameters of {@link #toSQL()}, in order.
+     *
+     * @return a list of values.
+     */
+    public List<Object> getParameters() {
+        List<Object> parameters = new ArrayList<>();
+
+        for (Condition condition : conditions) {
+            if (condition.type == ConditionType.PREFIX) {
+                // Make sure wildcards in the prefix are matched literally.
+                parameters.add(condition.values.get(0).toString().replace("!", "!!").replace("%", "!%")
+                        .replace("_", "!_") + "%");
+            } else {
+                parameters.addAll(condition.getBoundValues());
+            }
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Get the values that a column must have, if this selection only retrieves rows where the column is equal to
+     * one of a set of values. A storage engine can use this to look up the rows directly instead of checking every
+     * row.
+     *
+     * @param columnName Name of the column
+     * @return the values the column may have, or null if the selection does not restrict the column to a set of
+     * values.
+     */
+    public List<Object> getAllowedValues(String columnName) {
+        for (Condition condition : conditions) {
+            if (condition.columnName.equalsIgnoreCase(columnName) && (condition.type == ConditionType.EQUALS ||
+                    condition.type == ConditionType.IN)) {
+                return Collections.unmodifiableList(condition.values);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Apply this selection to rows that are held in memory instead of in a database. Rows that do not meet all
+     * conditions are removed, after which the rows are sorted and limited and only the selected columns are kept.
+     * Values are compared as numbers if both are numbers, and as text otherwise.
+     *
+     * @param rows Rows to select from
+     * @return the selected rows.
+     */
+    public List<Query> apply(Collection<Query> rows) {
+        List<Query> selected = new ArrayList<>();
+
+        for (Query row : rows) {
+            if (conditions.stream().allMatch(condition -> condition.test(row.getValue(condition.columnName)))) {
+                selected.add(row);
+            }
+        }
+
+        if (orderColumn != null) {
+            Comparator<Query> order = (a, b) -> compareValues(a.getValue(orderColumn), b.getValue(orderColumn));
+
+            selected.sort(descending ? order.reversed() : order);
+        }
+
+        if (limit >= 0 && selected.size() > limit) {
+            selected = new ArrayList<>(selected.subList(0, limit));
+        }
+
+        if (columns.isEmpty()) {
+            return selected;
+        }
+
+        List<Query> projected = new ArrayList<>(selected.size());
+
+        for (Query row : selected) {
+            Query projectedRow = new Query();
+
+            for (String column : columns) {
+                if (row.hasColumn(column)) {
+                    projectedRow.setValue(column, row.getValue(column));
+                }
+            }
+
+            projected.add(projectedRow);
+        }
+
+        return projected;
+    }
+
+    // Compare two values like a database would: as numbers if both are numbers, and as text otherwise.
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            // Missing values come first, like NULL does in an ascending order.
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+
+        try {
+            return Double.compare(Double.parseDouble(a.toString()), Double.parseDouble(b.toString()));
+        } catch (NumberFormatException e) {
+            return a.toString().compareTo(b.toString());
+        }
+    }
+
+    /**
+     * Create a copy of this selection for a table where a column does not store values, but a code for every value
+     * (see {@link me.staartvin.statz.database.Dictionary}). Conditions on the column that compare with one or more
+     * values are replaced by conditions on the codes of those values. Ranges, prefixes and sorting compare the
+     * values themselves, so the table of codes is joined and they are applied to the values in that table.
+     *
+     * @param columnName      Name of the column that stores codes
+     * @param dictionaryTable Name of the table that holds the code (column 'id') of every value (column 'name')
+     * @param codes           Gives the code of a value, or null if the value has no code
+     * @return a new selection that can be run on the encoded column.
+     */
+    public Selection withEncodedColumn(String columnName, String dictionaryTable, Function<String, Integer> codes) {
+        Selection copy = this.copyWithoutConditions();
+
+        for (Condition condition : conditions) {
+            if (!condition.columnName.equalsIgnoreCase(columnName)) {
+                copy.conditions.add(condition);
+                continue;
+            }
+
+            if (condition.type != ConditionType.EQUALS && condition.type != ConditionType.IN) {
+                copy.conditions.add(condition);
+                copy.dictionaryJoins.put(condition.columnName, dictionaryTable);
+                continue;
+            }
+
+            List<Integer> matchingCodes = new ArrayList<>();
+
+            for (Object value : condition.values) {
+                Integer code = value == null ? null : codes.apply(value.toString());
+
+                if (code != null) {
+                    matchingCodes.add(code);
+                }
+            }
+
+            // Codes are never negative, so no row will match if no values match.
+            if (matchingCodes.isEmpty()) {
+                matchingCodes.add(-1);
+            }
+
+            copy.conditions.add(new Condition(condition.columnName, matchingCodes.size() == 1 ?
+                    ConditionType.EQUALS : ConditionType.IN, matchingCodes));
+        }
+
+        if (orderColumn != null && orderColumn.equalsIgnoreCase(columnName)) {
+            copy.dictionaryJoins.put(orderColumn, dictionaryTable);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Create a copy of this selection where the values that a column is compared to are converted, for a column
+     * that stores values in another format than they are given in (e.g. bytes instead of text). Prefix conditions
+     * are not converted.
+     *
+     * @param columnName Name of the column
+     * @param conversion Conversion of a value to the format of the column
+     * @return a new selection with the converted values.
+     */
+    public Selection withConvertedValues(String columnName, Function<Object, Object> conversion) {
+        Selection copy = this.copyWithoutConditions();
+
+        for (Condition condition : conditions) {
+            if (!condition.columnName.equalsIgnoreCase(columnName) || condition.type == ConditionType.PREFIX) {
+                copy.conditions.add(condition);
+                continue;
+            }
+
+            List<Object> convertedValues = new ArrayList<>(condition.values.size());
+
+            for (Object value : condition.values) {
+                convertedValues.add(conversion.apply(value));
+            }
+
+            copy.conditions.add(new Condition(condition.columnName, condition.type, convertedValues));
+        }
+
+        return copy;
+    }
+
+    private Selection copyWithoutConditions() {
+        Selection copy = new Selection(table);
+
+        copy.columns.addAll(columns);
+        copy.orderColumn = orderColumn;
+        copy.descending = descending;
+        copy.limit = limit;
+        copy.rowIdColumn = rowIdColumn;
+        copy.dictionaryJoins.putAll(dictionaryJoins);
+
+        return copy;
+    }
+
+    // The shape of a selection determines its SQL statement, but not the values of the parameters.
+    private String getShape() {
+        StringBuilder shape = new StringBuilder(table.getTableName()).append('|').append(columns).append('|');
+
+        for (Condition condition : conditions) {
+            shape.append(condition.columnName).append(condition.getOperator()).append(',');
+        }
+
+        return shape.append('|').append(orderColumn).append(descending).append('|').append(limit).append('|')
+                .append(rowIdColumn).append('|').append(dictionaryJoins).toString();
+    }
+
+    private String createSQL() {
+        // Columns of the table are qualified when other tables are joined, as those have columns with the same names.
+        String prefix = dictionaryJoins.isEmpty() ? "" : "t.";
+        List<String> joinedColumns = new ArrayList<>(dictionaryJoins.keySet());
+        StringBuilder builder = new StringBuilder("SELECT ");
+
+        if (columns.isEmpty()) {
+            builder.append(prefix).append("*");
+        } else {
+            builder.append(columns.stream().map(column -> prefix + column).collect(Collectors.joining(", ")));
+        }
+
+        if (rowIdColumn != null) {
+            builder.append(", ").append(prefix).append(rowIdColumn);
+        }
+
+        builder.append(" FROM ").append(table.getTableName());
+
+        if (!dictionaryJoins.isEmpty()) {
+            builder.append(" t");
+        }
+
+        for (int i = 0; i < joinedColumns.size(); i++) {
+            // Rows with a code that is not in the dictionary are kept, like rows with a NULL value.
+            builder.append(" LEFT JOIN ").append(dictionaryJoins.get(joinedColumns.get(i))).append(" d").append(i)
+                    .append(" ON d").append(i).append(".id = t.").append(joinedColumns.get(i));
+        }
+
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            int join = joinedColumns.indexOf(condition.columnName);
+
+            builder.append(i == 0 ? " WHERE " : " AND ");
+
+            // Codes are compared in the table itself, values are compared in the dictionary.
+            if (join >= 0 && condition.type != ConditionType.EQUALS && condition.type != ConditionType.IN) {
+                builder.append("d").append(join).append(".name");
+            } else {
+                builder.append(prefix).append(condition.columnName);
+            }
+
+            builder.append(condition.getOperator());
+        }
+
+        if (orderColumn != null) {
+            int join = joinedColumns.indexOf(orderColumn);
+
+            builder.append(" ORDER BY ").append(join >= 0 ? "d" + join + ".name" : prefix + orderColumn)
+                    .append(descending ? " DESC" : " ASC");
+        }
+
+        if (limit >= 0) {
+            builder.append(" LIMIT ").append(limit);
+        }
+
+        return builder.toString();
+    }
+
+    // Only use names of columns we know, as they cannot be passed as a parameter.
+    private String getColumnName(String columnName) throws IllegalArgumentException {
+        if (rowIdColumn != null && rowIdColumn.equalsIgnoreCase(columnName)) {
+            return rowIdColumn;
+        }
+
+        Column column = columnName == null ? null : table.getColumn(columnName);
+
+        if (column == null) {
+            throw new IllegalArgumentException(String.format("Table '%s' does not have a column '%s'",
+                    table.getTableName(), columnName));
+        }
+
+        return column.getColumnName();
+    }
+
+    private enum ConditionType {
+        EQUALS, IN, AT_LEAST, AT_MOST, AFTER, PREFIX
+    }
+
+    private static class Condition {
+
+        private final String columnName;
+        private final ConditionType type;
+        private final List<?> values;
+
+        private Condition(String columnName, ConditionType type, List<?> values) {
+            this.columnName = columnName;
+            this.type = type;
+            this.values = values;
+        }
+
+        // Values that are bound to the parameters of the condition. An IN list is padded to a power of two with its
+        // last value, which does not change the rows it matches.
+        private List<?> getBoundValues() {
+            int parameterCount = Integer.highestOneBit(values.size());
+
+            if (type != ConditionType.IN || parameterCount == values.size()) {
+                return values;
+            }
+
+            List<Object> boundValues = new ArrayList<>(values);
+
+            while (boundValues.size() < parameterCount * 2) {
+                boundValues.add(values.get(values.size() - 1));
+            }
+
+            return boundValues;
+        }
+
+        private String getOperator() {
+            switch (type) {
+                case IN:
+                    StringBuilder operator = new StringBuilder(" IN (");
+
+                    for (int i = 0; i < this.getBoundValues().size(); i++) {
+                        operator.append(i == 0 ? "?" : ", ?");
+                    }
+
+                    return operator.append(")").toString();
+                case AT_LEAST:
+                    return " >= ?";
+                case AT_MOST:
+                    return " <= ?";
+                case AFTER:
+                    return " > ?";
+                case PREFIX:
+                    return " LIKE ? ESCAPE '!'";
+                default:
+                    return " = ?";
+            }
+        }
+
+        // Check the condition against the value of a row that is held in memory.
+        private boolean test(Object value) {
+            // Like NULL in a database, a missing value never meets a condition.
+            if (value == null) {
+                return false;
+            }
+
+            Object bound = values.get(0);
+
+            switch (type) {
+                case EQUALS:
+                case IN:
+                    return values.stream().anyMatch(allowed -> allowed != null && compareValues(value, allowed) == 0);
+                case AT_LEAST:
+                    return compareValues(value, bound) >= 0;
+                case AT_MOST:
+                    return compareValues(value, bound) <= 0;
+                case AFTER:
+                    return compareValues(value, bound) > 0;
+                default:
+                    return value.toString().toLowerCase().startsWith(bound.toString().toLowerCase());
+            }
+        }
+    }
+}
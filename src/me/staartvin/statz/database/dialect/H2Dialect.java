@@ -0,0 +1,100 @@
+package me.staartvin.statz.database.dialect;
+
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dialect of H2. Rows are written with MERGE statements. A MERGE fails if two of its rows have the same key, so
+ * every row is written by its own statement.
+ */
+public class H2Dialect extends SQLDialect {
+
+    @Override
+    public String getName() {
+        return "H2";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return true;
+    }
+
+    @Override
+    public String getBinaryType() {
+        return "BLOB";
+    }
+
+    @Override
+    public String getRowIdColumn() {
+        return "_ROWID_";
+    }
+
+    @Override
+    protected String getColumnType(Column column) {
+        // Use the same types as MySQL, so data can be moved between them without losing precision.
+        if (column.getDataType() == SQLDataType.INT) {
+            return "BIGINT";
+        } else if (column.getDataType() == SQLDataType.TEXT) {
+            return "VARCHAR(100)";
+        } else if (column.getDataType() == SQLDataType.DOUBLE) {
+            return "DECIMAL(20,10)";
+        }
+
+        return column.getDataType().toString();
+    }
+
+    @Override
+    protected String getAutoIncrement() {
+        return "AUTO_INCREMENT";
+    }
+
+    @Override
+    protected String createReplace(String tableName, List<String> keyColumns, List<String> columns,
+                                   List<List<String>> rows) {
+        StringBuilder statement = new StringBuilder("MERGE INTO ").append(tableName).append(" ")
+                .append(list(columns)).append(" KEY ").append(list(keyColumns)).append(" VALUES ");
+
+        for (int i = 0; i < rows.size(); i++) {
+            statement.append(i == 0 ? "" : ", ").append(list(rows.get(i)));
+        }
+
+        return statement.toString();
+    }
+
+    @Override
+    protected String createAdd(String tableName, List<String> keyColumns, List<String> columns,
+                               List<List<String>> rows) {
+        List<String> conditions = new ArrayList<>();
+        List<String> sourceColumns = new ArrayList<>();
+        List<String> sourceRows = new ArrayList<>();
+
+        for (String column : keyColumns) {
+            conditions.add("t." + column + " = s." + column);
+        }
+
+        for (String column : columns) {
+            sourceColumns.add("s." + column);
+        }
+
+        for (List<String> row : rows) {
+            sourceRows.add(list(row));
+        }
+
+        return "MERGE INTO " + tableName + " t USING (VALUES " + String.join(", ", sourceRows) + ") AS s " +
+                list(columns) + " ON " + String.join(" AND ", conditions) + " WHEN MATCHED THEN UPDATE SET value = " +
+                "t.value + s.value WHEN NOT MATCHED THEN INSERT " + list(columns) + " VALUES " + list(sourceColumns);
+    }
+}
@@ -0,0 +1,99 @@
+package me.staartvin.statz.database.dialect;
+
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dialect of MySQL (and MariaDB). Rows are written with INSERT ... ON DUPLICATE KEY UPDATE, so many rows can be
+ * written by a single statement.
+ */
+public class MySQLDialect extends SQLDialect {
+
+    @Override
+    public String getName() {
+        return "MySQL";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        // MariaDB reports its own version (10.2 and newer support window functions).
+        return this.isAtLeastVersion(8, 0);
+    }
+
+    @Override
+    public String getBinaryType() {
+        return "LONGBLOB";
+    }
+
+    @Override
+    public String getRowIdColumn() {
+        return null;
+    }
+
+    @Override
+    protected String getColumnType(Column column) {
+        if (column.getDataType() == SQLDataType.INT) {
+            return "BIGINT";
+        } else if (column.getDataType() == SQLDataType.TEXT) {
+            return "VARCHAR(100)";
+        } else if (column.getDataType() == SQLDataType.DOUBLE) {
+            return "DECIMAL(20,10)";
+        }
+
+        return column.getDataType().toString();
+    }
+
+    @Override
+    protected String getAutoIncrement() {
+        return "AUTO_INCREMENT";
+    }
+
+    @Override
+    protected String createReplace(String tableName, List<String> keyColumns, List<String> columns,
+                                   List<List<String>> rows) {
+        List<String> updates = new ArrayList<>();
+
+        for (String column : columns) {
+            if (!keyColumns.contains(column)) {
+                updates.add(column + "=VALUES(" + column + ")");
+            }
+        }
+
+        // The statement needs at least one column to update.
+        if (updates.isEmpty()) {
+            updates.add(columns.get(0) + "=VALUES(" + columns.get(0) + ")");
+        }
+
+        return createInsert(tableName, columns, rows) + " ON DUPLICATE KEY UPDATE " + String.join(", ", updates);
+    }
+
+    @Override
+    protected String createAdd(String tableName, List<String> keyColumns, List<String> columns,
+                               List<List<String>> rows) {
+        return createInsert(tableName, columns, rows) + " ON DUPLICATE KEY UPDATE value=value+VALUES(value)";
+    }
+
+    private static String createInsert(String tableName, List<String> columns, List<List<String>> rows) {
+        StringBuilder statement = new StringBuilder("INSERT INTO ").append(tableName).append(" ")
+                .append(list(columns)).append(" VALUES ");
+
+        for (int i = 0; i < rows.size(); i++) {
+            statement.append(i == 0 ? "" : ", ").append(list(rows.get(i)));
+        }
+
+        return statement.toString();
+    }
+}
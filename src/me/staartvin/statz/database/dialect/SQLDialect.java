@@ -0,0 +1,380 @@
+package me.staartvin.statz.database.dialect;
+
+import me.staartvin.statz.database.DatabaseConnector.SET_OPERATION;
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes how a database engine writes SQL and what it supports. A {@link me.staartvin.statz.database
+ * .DatabaseConnector} uses its dialect to create tables and to write rows, so the SQL that is the same for every
+ * engine is only built in one place.
+ * <br>
+ * <br>
+ * Rows are given to the dialect as a map of column names to SQL literals (see {@link #toLiteral(Object)}), in the
+ * order the columns should be written.
+ */
+public abstract class SQLDialect {
+
+    // Number of rows that are written by a single statement if the dialect supports multi-row inserts
+    private static final int ROWS_PER_STATEMENT = 500;
+
+    // Version of the database that is connected, 0 if it is not known yet.
+    private volatile int majorVersion, minorVersion;
+
+    /**
+     * Get the name of the database engine, e.g. for log messages.
+     *
+     * @return name of the engine.
+     */
+    public abstract String getName();
+
+    /**
+     * Check whether the engine can insert a row or update the existing row with the same key in a single
+     * statement. If not, a row is added with an update and an insert that is ignored if the row already exists.
+     *
+     * @return true if upserts are supported.
+     */
+    public abstract boolean supportsUpsert();
+
+    /**
+     * Check whether the engine can write several rows with a single upsert, which saves a round trip per row.
+     *
+     * @return true if multi-row inserts are supported.
+     */
+    public abstract boolean supportsMultiRowInsert();
+
+    /**
+     * Check whether the connected database supports window functions, such as RANK() OVER (...). This depends on
+     * the version of the database, so it is only known after Statz has connected to it.
+     *
+     * @return true if window functions can be used.
+     */
+    public abstract boolean supportsWindowFunctions();
+
+    /**
+     * Get the type of a column that stores binary data of any size.
+     *
+     * @return name of the type.
+     */
+    public abstract String getBinaryType();
+
+    /**
+     * Get the name of a column that the engine adds to every row of a table, with a different value for every row.
+     * It can be used to read a table in order when the table has no unique column of its own.
+     *
+     * @return name of the column, or null if the engine does not add such a column.
+     */
+    public abstract String getRowIdColumn();
+
+    /**
+     * Get the type of a column in a CREATE TABLE statement.
+     *
+     * @param column Column to get the type of
+     * @return name of the type.
+     */
+    protected abstract String getColumnType(Column column);
+
+    /**
+     * Get the keyword that makes a column generate its own values.
+     *
+     * @return the auto increment keyword.
+     */
+    protected abstract String getAutoIncrement();
+
+    /**
+     * Create a statement that inserts rows, or replaces the rows that have the same key.
+     *
+     * @param tableName  Name of the table
+     * @param keyColumns Columns that identify a row
+     * @param columns    Columns that are written
+     * @param rows       Literals of the rows, in the order of the columns
+     * @return the statement.
+     */
+    protected abstract String createReplace(String tableName, List<String> keyColumns, List<String> columns,
+                                            List<List<String>> rows);
+
+    /**
+     * Create a statement that inserts rows, or adds their 'value' to the rows that have the same key. This is only
+     * used if {@link #supportsUpsert()} is true.
+     *
+     * @param tableName  Name of the table
+     * @param keyColumns Columns that identify a row
+     * @param columns    Columns that are written, including 'value'
+     * @param rows       Literals of the rows, in the order of the columns
+     * @return the statement.
+     */
+    protected String createAdd(String tableName, List<String> keyColumns, List<String> columns,
+                               List<List<String>> rows) {
+        throw new UnsupportedOperationException(this.getName() + " does not support upserts.");
+    }
+
+    /**
+     * Create a statement that inserts a row, unless a row with the same key already exists. This is only used if
+     * {@link #supportsUpsert()} is false.
+     *
+     * @param tableName Name of the table
+     * @param columns   Columns that are written
+     * @param values    Literals of the row, in the order of the columns
+     * @return the statement.
+     */
+    protected String createInsertIgnore(String tableName, List<String> columns, List<String> values) {
+        throw new UnsupportedOperationException(this.getName() + " does not support ignoring inserts.");
+    }
+
+    /**
+     * Get the name of a column as it is written in a CREATE TABLE statement.
+     *
+     * @param column Column to get the name of
+     * @return the name of the column.
+     */
+    protected String getColumnDefinitionName(Column column) {
+        return column.getColumnName();
+    }
+
+    /**
+     * Store the version of the database that is connected, see {@link #supportsWindowFunctions()}.
+     *
+     * @param majorVersion Major version of the database
+     * @param minorVersion Minor version of the database
+     */
+    public void setDatabaseVersion(int majorVersion, int minorVersion) {
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+    }
+
+    /**
+     * Check whether the connected database has at least the given version.
+     *
+     * @param major Major version
+     * @param minor Minor version
+     * @return true if the version of the database is known and at least the given version.
+     */
+    protected boolean isAtLeastVersion(int major, int minor) {
+        return majorVersion > major || (majorVersion == major && minorVersion >= minor);
+    }
+
+    /**
+     * Create a statement that creates a table if it does not exist yet.
+     *
+     * @param table Table to create
+     * @return the statement.
+     */
+    public String createTableStatement(Table table) {
+        StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (");
+
+        for (Column column : table.getColumns()) {
+            statement.append(this.getColumnDefinitionName(column)).append(" ").append(this.getColumnType(column));
+
+            if (column.isPrimaryKey()) {
+                statement.append(" PRIMARY KEY");
+            }
+
+            if (column.isAutoIncrement()) {
+                statement.append(" ").append(this.getAutoIncrement());
+            }
+
+            if (column.isNotNull()) {
+                statement.append(" NOT NULL");
+            }
+
+            if (column.isUnique()) {
+                statement.append(" UNIQUE");
+            }
+
+            statement.append(",");
+        }
+
+        if (!table.getUniqueMatched().isEmpty()) {
+            statement.append("UNIQUE (");
+
+            for (Column matched : table.getUniqueMatched()) {
+                statement.append(matched.getColumnName()).append(",");
+            }
+
+            statement.setCharAt(statement.length() - 1, ')');
+        } else {
+            statement.setLength(statement.length() - 1);
+        }
+
+        return statement.append(");").toString();
+    }
+
+    /**
+     * Create the statements that write rows to a table.
+     *
+     * @param table Table to write to
+     * @param rows  Literals of the rows per column (see {@link #toLiteral(Object)})
+     * @param mode  Whether the 'value' of a row replaces or is added to the value of an existing row
+     * @return the statements, in the order they should be performed.
+     */
+    public List<String> createWriteStatements(Table table, List<Map<String, String>> rows, SET_OPERATION mode) {
+        List<String> statements = new ArrayList<>();
+
+        // Rows with the same columns can be written by the same statement.
+        Map<String, RowGroup> groups = new LinkedHashMap<>();
+
+        for (Map<String, String> row : rows) {
+            if (row.isEmpty()) {
+                continue;
+            }
+
+            boolean add = mode == SET_OPERATION.ADD && row.containsKey("value");
+            List<String> columns = new ArrayList<>(row.keySet());
+            List<String> values = new ArrayList<>(row.values());
+
+            if (add && !this.supportsUpsert()) {
+                // Add to the existing row, and insert the row if it did not exist yet.
+                statements.add(this.createUpdate(table.getTableName(), row));
+                statements.add(this.createInsertIgnore(table.getTableName(), columns, values));
+                continue;
+            }
+
+            if (!this.supportsMultiRowInsert()) {
+                statements.add(this.createStatement(table, add, columns, Collections.singletonList(values)));
+                continue;
+            }
+
+            groups.computeIfAbsent(add + " " + columns, k -> new RowGroup(add, columns)).rows.add(values);
+        }
+
+        for (RowGroup group : groups.values()) {
+            for (int start = 0; start < group.rows.size(); start += ROWS_PER_STATEMENT) {
+                statements.add(this.createStatement(table, group.add, group.columns, group.rows.subList(start,
+                        Math.min(start + ROWS_PER_STATEMENT, group.rows.size()))));
+            }
+        }
+
+        return statements;
+    }
+
+    /**
+     * Create a statement that inserts a row, or replaces the row with the same key.
+     *
+     * @param tableName  Name of the table
+     * @param keyColumns Columns that identify a row
+     * @param row        Literals of the row per column
+     * @return the statement.
+     */
+    public String createReplaceStatement(String tableName, List<String> keyColumns, Map<String, String> row) {
+        return this.createReplace(tableName, keyColumns, new ArrayList<>(row.keySet()),
+                Collections.singletonList(new ArrayList<>(row.values())));
+    }
+
+    /**
+     * Turn a value into an SQL literal. Numbers are written as they are, all other values as an escaped string.
+     *
+     * @param value Value to convert
+     * @return the literal of the value.
+     */
+    public String toLiteral(Object value) {
+        String text = value.toString();
+
+        try {
+            double number = Double.parseDouble(text);
+
+            // Text like 'NaN' or 'Infinity' is not a number in SQL.
+            if (!Double.isNaN(number) && !Double.isInfinite(number)) {
+                return text;
+            }
+        } catch (NumberFormatException e) {
+            // Not a number, so write it as text.
+        }
+
+        return "'" + text.replace("'", "''") + "'";
+    }
+
+    private String createStatement(Table table, boolean add, List<String> columns, List<List<String>> rows) {
+        List<String> keyColumns = getKeyColumns(table, columns);
+
+        return add ? this.createAdd(table.getTableName(), keyColumns, columns, rows)
+                : this.createReplace(table.getTableName(), keyColumns, columns, rows);
+    }
+
+    /**
+     * Add the 'value' of a row to the existing row that has the same values for all other columns.
+     */
+    private String createUpdate(String tableName, Map<String, String> row) {
+        StringBuilder where = new StringBuilder();
+
+        for (Map.Entry<String, String> column : row.entrySet()) {
+            if (!column.getKey().equalsIgnoreCase("value")) {
+                where.append(where.length() == 0 ? "" : " AND ").append(column.getKey()).append("=")
+                        .append(column.getValue());
+            }
+        }
+
+        return "UPDATE " + tableName + " SET value=value + " + row.get("value") + (where.length() == 0 ? "" :
+                " WHERE " + where) + ";";
+    }
+
+    /**
+     * Get the columns that identify a row of a table. These are the columns that must be unique together, or the
+     * unique columns if the table has none. Only columns that are written are returned; if none of them is a key,
+     * all written columns except 'value' identify the row.
+     *
+     * @param table   Table of the row
+     * @param columns Columns that are written
+     * @return the key columns.
+     */
+    public static List<String> getKeyColumns(Table table, Collection<String> columns) {
+        List<String> keyColumns = new ArrayList<>();
+
+        for (Column column : table.getUniqueMatched()) {
+            addIfWritten(keyColumns, columns, column.getColumnName());
+        }
+
+        if (keyColumns.isEmpty()) {
+            for (Column column : table.getColumns()) {
+                if (column.isUnique() || (column.isPrimaryKey() && !column.isAutoIncrement())) {
+                    addIfWritten(keyColumns, columns, column.getColumnName());
+                }
+            }
+        }
+
+        if (keyColumns.isEmpty()) {
+            for (String column : columns) {
+                if (!column.equalsIgnoreCase("value")) {
+                    keyColumns.add(column);
+                }
+            }
+        }
+
+        return keyColumns;
+    }
+
+    private static void addIfWritten(List<String> keyColumns, Collection<String> columns, String columnName) {
+        for (String column : columns) {
+            if (column.equalsIgnoreCase(columnName)) {
+                keyColumns.add(column);
+                return;
+            }
+        }
+    }
+
+    // Rows that have the same columns and are written the same way
+    private static class RowGroup {
+
+        private final boolean add;
+        private final List<String> columns;
+        private final List<List<String>> rows = new ArrayList<>();
+
+        private RowGroup(boolean add, List<String> columns) {
+            this.add = add;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Join values with a comma and put them between brackets.
+     */
+    protected static String list(List<String> values) {
+        return "(" + String.join(", ", values) + ")";
+    }
+}
@@ -0,0 +1,80 @@
+package me.staartvin.statz.database.dialect;
+
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+
+import java.util.List;
+
+/**
+ * Dialect of SQLite. Older versions of SQLite cannot update a row when an insert conflicts with it, so values are
+ * added with an update followed by an INSERT OR IGNORE.
+ */
+public class SQLiteDialect extends SQLDialect {
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return this.isAtLeastVersion(3, 8);
+    }
+
+    @Override
+    public boolean supportsWindowFunctions() {
+        return this.isAtLeastVersion(3, 25);
+    }
+
+    @Override
+    public String getBinaryType() {
+        return "BLOB";
+    }
+
+    @Override
+    public String getRowIdColumn() {
+        return "rowid";
+    }
+
+    @Override
+    protected String getColumnType(Column column) {
+        if (column.getDataType() == SQLDataType.INT) {
+            return "INTEGER";
+        }
+
+        return column.getDataType().toString();
+    }
+
+    @Override
+    protected String getAutoIncrement() {
+        return "AUTOINCREMENT";
+    }
+
+    @Override
+    protected String getColumnDefinitionName(Column column) {
+        return "'" + column.getColumnName() + "'";
+    }
+
+    @Override
+    protected String createReplace(String tableName, List<String> keyColumns, List<String> columns,
+                                   List<List<String>> rows) {
+        StringBuilder statement = new StringBuilder("INSERT OR REPLACE INTO ").append(tableName).append(" ")
+                .append(list(columns)).append(" VALUES ");
+
+        for (int i = 0; i < rows.size(); i++) {
+            statement.append(i == 0 ? "" : ", ").append(list(rows.get(i)));
+        }
+
+        return statement.toString();
+    }
+
+    @Override
+    protected String createInsertIgnore(String tableName, List<String> columns, List<String> values) {
+        return "INSERT OR IGNORE INTO " + tableName + " " + list(columns) + " VALUES " + list(values) + ";";
+    }
+}
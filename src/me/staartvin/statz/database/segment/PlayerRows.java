@@ -0,0 +1,97 @@
+package me.staartvin.statz.database.segment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * All rows of a single player in a {@link SegmentLog}, per table. The rows are built by applying the changes of the
+ * player in the order they were written.
+ */
+public class PlayerRows {
+
+    // Rows per table, by their key
+    private final Map<String, Map<List<String>, RowChange>> tables = new LinkedHashMap<>();
+
+    /**
+     * Apply a change to the rows of the player.
+     *
+     * @param change Change to apply
+     */
+    public void apply(RowChange change) {
+        Map<List<String>, RowChange> rows = tables.computeIfAbsent(change.getTable(), k -> new LinkedHashMap<>());
+        List<String> key = change.getKey();
+        RowChange row = rows.get(key);
+
+        if (row == null) {
+            rows.put(key, change.toStoredRow());
+        } else {
+            row.merge(change);
+        }
+    }
+
+    /**
+     * Get the rows of a table.
+     *
+     * @param table Name of the table
+     * @return the rows of the player in the table, or an empty list if there are none.
+     */
+    public List<RowChange> getRows(String table) {
+        Map<List<String>, RowChange> rows = tables.get(table);
+
+        return rows == null ? Collections.emptyList() : new ArrayList<>(rows.values());
+    }
+
+    /**
+     * Get the names of the tables the player has rows in.
+     *
+     * @return the names of the tables.
+     */
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    public boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    void write(DataOutputStream output) throws IOException {
+        List<RowChange> rows = new ArrayList<>();
+
+        for (Map<List<String>, RowChange> tableRows : tables.values()) {
+            rows.addAll(tableRows.values());
+        }
+
+        writeRows(output, rows);
+    }
+
+    static void writeRows(DataOutputStream output, List<RowChange> rows) throws IOException {
+        output.writeInt(rows.size());
+
+        for (RowChange row : rows) {
+            row.write(output);
+        }
+    }
+
+    static List<RowChange> readRows(DataInputStream input) throws IOException {
+        int rowCount = input.readInt();
+
+        if (rowCount < 0) {
+            throw new IOException("Invalid number of rows: " + rowCount);
+        }
+
+        List<RowChange> rows = new ArrayList<>(Math.min(rowCount, 1024));
+
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(RowChange.read(input));
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,136 @@
+package me.staartvin.statz.database.segment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A row of a table that is written to a {@link SegmentLog}. The first columns of a row are its key columns, which
+ * identify the row among the rows of the same player and table. A change either replaces the columns of the row
+ * with the same key, or adds its 'value' to the value of that row.
+ */
+public class RowChange {
+
+    private final String table;
+    private final boolean add;
+    private final int keyCount;
+    private final LinkedHashMap<String, String> columns;
+
+    /**
+     * Create a change of a row.
+     *
+     * @param table    Name of the table
+     * @param add      Whether the 'value' of the row is added to the existing value instead of replacing it
+     * @param keyCount Number of columns (at the start of the row) that identify the row
+     * @param columns  Values of the row per column, starting with the key columns
+     * @throws IllegalArgumentException if there are fewer columns than key columns.
+     */
+    public RowChange(String table, boolean add, int keyCount, Map<String, String> columns)
+            throws IllegalArgumentException {
+        if (keyCount < 0 || keyCount > columns.size()) {
+            throw new IllegalArgumentException("Invalid number of key columns: " + keyCount);
+        }
+
+        this.table = table;
+        this.add = add;
+        this.keyCount = keyCount;
+        this.columns = new LinkedHashMap<>(columns);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public boolean isAdd() {
+        return add;
+    }
+
+    /**
+     * Get the values of the row per column, starting with the key columns.
+     *
+     * @return the columns of the row.
+     */
+    public Map<String, String> getColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Get the key of the row, which consists of the names and values of its key columns.
+     *
+     * @return the key of the row.
+     */
+    List<String> getKey() {
+        List<String> key = new ArrayList<>(keyCount * 2);
+
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            if (key.size() == keyCount * 2) {
+                break;
+            }
+
+            key.add(column.getKey());
+            key.add(column.getValue());
+        }
+
+        return key;
+    }
+
+    /**
+     * Apply a later change of the same row to this row.
+     */
+    void merge(RowChange change) {
+        for (Map.Entry<String, String> column : change.columns.entrySet()) {
+            String current = columns.get(column.getKey());
+
+            if (change.add && column.getKey().equals("value") && current != null) {
+                columns.put("value", String.valueOf(Double.parseDouble(current) + Double.parseDouble(column
+                        .getValue())));
+            } else {
+                columns.put(column.getKey(), column.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get a copy of this change that replaces the row instead of adding to it, which is how rows are stored after
+     * all their changes have been merged.
+     */
+    RowChange toStoredRow() {
+        return new RowChange(table, false, keyCount, columns);
+    }
+
+    void write(DataOutputStream output) throws IOException {
+        output.writeUTF(table);
+        output.writeBoolean(add);
+        output.writeInt(keyCount);
+        output.writeInt(columns.size());
+
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            output.writeUTF(column.getKey());
+            output.writeUTF(column.getValue());
+        }
+    }
+
+    static RowChange read(DataInputStream input) throws IOException {
+        String table = input.readUTF();
+        boolean add = input.readBoolean();
+        int keyCount = input.readInt();
+        int columnCount = input.readInt();
+
+        LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+
+        for (int i = 0; i < columnCount; i++) {
+            columns.put(input.readUTF(), input.readUTF());
+        }
+
+        try {
+            return new RowChange(table, add, keyCount, columns);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
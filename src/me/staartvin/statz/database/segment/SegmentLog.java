@@ -0,0 +1,1044 @@
+package me.staartvin.statz.database.segment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * A storage engine for the rows of players that only appends to its files. Changes are written as records to
+ * memory-mapped delta segments, so a write is a sequential copy to memory. An index in memory keeps, per player,
+ * where the rows of the player are stored.
+ * <br>
+ * <br>
+ * Once enough changes have been written, {@link #compact(LongConsumer)} merges all changes into a new snapshot
+ * segment, where all rows of a player are stored next to each other. Loading a player that has not changed since
+ * then is a single read. Compaction runs next to reads and writes; the old files are only removed once the new
+ * snapshot is complete.
+ * <br>
+ * <br>
+ * Every record is stored with its length and a CRC32 checksum. Changes are written in batches that end with a commit
+ * record, so a batch that was interrupted by a crash is ignored when the log is opened again.
+ */
+public class SegmentLog {
+
+    private static final String DELTA_PREFIX = "deltas-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String EXTENSION = ".seg";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final int SNAPSHOT_MAGIC = 0x53545A53;
+    private static final int FORMAT_VERSION = 1;
+
+    // Magic number, version, last compacted segment and last compacted sequence
+    private static final int SNAPSHOT_HEADER_SIZE = 20;
+
+    // Length and checksum that precede every record
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final byte ROWS_RECORD = 1;
+    private static final byte PURGE_RECORD = 2;
+    private static final byte COMMIT_RECORD = 3;
+
+    private final File directory;
+    private final int segmentSize;
+
+    // Guards the index, the segments and the snapshot. Writing records and swapping files take the write lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Only one batch is written, or one step of a compaction is done, at a time.
+    private final Object appendLock = new Object();
+
+    // Only one compaction runs at a time.
+    private final Object compactionLock = new Object();
+
+    private final Map<UUID, PlayerLocation> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+
+    private File snapshotFile;
+    private FileChannel snapshotChannel;
+    private int snapshotGeneration;
+
+    private long nextSequence = 1;
+    private long compactedSequence;
+    private long uncompactedBytes;
+
+    // Purges that happen during a compaction are marked with the epoch of the compaction.
+    private int compactionEpoch;
+    private boolean compacting;
+
+    private boolean open;
+
+    /**
+     * Create a log that stores its files in a directory.
+     *
+     * @param directory   Directory of the segment files
+     * @param segmentSize Size of a delta segment in bytes
+     * @throws IllegalArgumentException if the segment size is too small.
+     */
+    public SegmentLog(File directory, int segmentSize) throws IllegalArgumentException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("A segment should be at least 4096 bytes.");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Work that is done after the records of a batch have been written, before its changes become visible. If the
+     * work fails, the batch is never applied. Only batches that are confirmed are applied when the log is opened.
+     */
+    public interface Confirmation {
+
+        /**
+         * Confirm a batch.
+         *
+         * @param sequence Sequence number of the batch
+         * @throws Exception if the batch could not be confirmed.
+         */
+        void confirm(long sequence) throws Exception;
+    }
+
+    /**
+     * Open the log and build the index of the players from the files in the directory.
+     *
+     * @param isConfirmed Check whether a batch that needed a {@link Confirmation} was confirmed
+     * @throws IOException if the files could not be read, or the snapshot is damaged.
+     */
+    public void open(LongPredicate isConfirmed) throws IOException {
+        synchronized (appendLock) {
+            lock.writeLock().lock();
+
+            try {
+                this.openFiles(isConfirmed);
+                open = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of changes. Purges are applied before the changes, so a player can be purged and get new rows
+     * in the same batch.
+     *
+     * @param changes      Changes per player
+     * @param purged       Players whose rows are removed
+     * @param confirmation Work to do before the batch becomes visible, or null if there is none
+     * @return the sequence number of the batch.
+     * @throws IOException if the batch could not be written or confirmed. None of its changes are visible then.
+     */
+    public long write(Map<UUID, List<RowChange>> changes, Collection<UUID> purged, Confirmation confirmation)
+            throws IOException {
+        synchronized (appendLock) {
+            List<Map.Entry<UUID, Long>> written = new ArrayList<>();
+            long sequence;
+
+            lock.writeLock().lock();
+
+            try {
+                this.checkOpen();
+
+                sequence = nextSequence++;
+
+                Set<Segment> touchedSegments = new LinkedHashSet<>();
+
+                for (UUID uuid : purged) {
+                    this.append(createRecord(PURGE_RECORD, sequence, uuid, null, false), touchedSegments);
+                    written.add(new AbstractMap.SimpleEntry<>(uuid, -1L));
+                }
+
+                for (Map.Entry<UUID, List<RowChange>> change : changes.entrySet()) {
+                    if (change.getValue().isEmpty()) {
+                        continue;
+                    }
+
+                    long position = this.append(createRecord(ROWS_RECORD, sequence, change.getKey(),
+                            change.getValue(), false), touchedSegments);
+                    written.add(new AbstractMap.SimpleEntry<>(change.getKey(), position));
+                }
+
+                this.append(createRecord(COMMIT_RECORD, sequence, null, null, confirmation != null),
+                        touchedSegments);
+
+                for (Segment segment : touchedSegments) {
+                    segment.buffer.force();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (confirmation != null) {
+                try {
+                    confirmation.confirm(sequence);
+                } catch (Exception e) {
+                    // The records stay in the log, but are never applied.
+                    throw new IOException("Batch " + sequence + " could not be confirmed", e);
+                }
+            }
+
+            lock.writeLock().lock();
+
+            try {
+                for (Map.Entry<UUID, Long> change : written) {
+                    this.publish(change.getKey(), change.getValue());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            return sequence;
+        }
+    }
+
+    /**
+     * Read all rows of a player.
+     *
+     * @param uuid UUID of the player
+     * @return the rows of the player, which are empty if the player has no rows.
+     * @throws IOException if the rows could not be read or are damaged.
+     */
+    public PlayerRows read(UUID uuid) throws IOException {
+        lock.readLock().lock();
+
+        try {
+            this.checkOpen();
+
+            PlayerLocation location = index.get(uuid);
+
+            return location == null ? new PlayerRows() : this.readRows(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get all players that have rows in the log.
+     *
+     * @return the UUIDs of the players.
+     */
+    public List<UUID> getPlayers() {
+        lock.readLock().lock();
+
+        try {
+            List<UUID> players = new ArrayList<>(index.size());
+
+            for (Map.Entry<UUID, PlayerLocation> entry : index.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    players.add(entry.getKey());
+                }
+            }
+
+            return players;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of bytes that have been written to delta segments since the last compaction.
+     *
+     * @return the number of bytes that a compaction would merge.
+     */
+    public long getUncompactedBytes() {
+        lock.readLock().lock();
+
+        try {
+            return uncompactedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merge all changes into a new snapshot and remove the delta segments that were merged. Reads and writes can
+     * continue while the snapshot is written.
+     *
+     * @param onCompacted Called with the sequence number of the last merged batch once the old files are no longer
+     *                    used. Confirmations of batches up to that number are no longer needed.
+     * @throws IOException if the snapshot could not be written. The log is unchanged in that case.
+     */
+    public void compact(LongConsumer onCompacted) throws IOException {
+        synchronized (compactionLock) {
+            List<Map.Entry<UUID, PlayerLocation>> players = new ArrayList<>();
+            int sealedSegment;
+            long sealedSequence;
+            long sealedBytes;
+            int epoch;
+            int generation;
+
+            synchronized (appendLock) {
+                lock.writeLock().lock();
+
+                try {
+                    this.checkOpen();
+
+                    if (uncompactedBytes == 0) {
+                        return;
+                    }
+
+                    // New changes are written to a new segment, so the current segments do not change anymore.
+                    sealedSegment = activeSegment.id;
+                    activeSegment = this.createSegment(sealedSegment + 1, segmentSize);
+
+                    sealedSequence = nextSequence - 1;
+                    sealedBytes = uncompactedBytes;
+                    uncompactedBytes = 0;
+
+                    epoch = ++compactionEpoch;
+                    compacting = true;
+                    generation = snapshotGeneration + 1;
+
+                    for (Map.Entry<UUID, PlayerLocation> entry : index.entrySet()) {
+                        players.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().copy()));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            File temporaryFile = new File(directory, SNAPSHOT_PREFIX + format(generation) + TEMP_EXTENSION);
+            boolean compacted = false;
+
+            try {
+                Map<UUID, long[]> blocks = this.writeSnapshot(temporaryFile, players, sealedSegment, sealedSequence);
+
+                File newSnapshotFile = new File(directory, SNAPSHOT_PREFIX + format(generation) + EXTENSION);
+
+                Files.move(temporaryFile.toPath(), newSnapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+                FileChannel newSnapshotChannel = FileChannel.open(newSnapshotFile.toPath(), StandardOpenOption.READ);
+
+                synchronized (appendLock) {
+                    List<File> oldFiles = new ArrayList<>();
+                    FileChannel oldSnapshotChannel;
+
+                    lock.writeLock().lock();
+
+                    try {
+                        for (Map.Entry<UUID, PlayerLocation> player : players) {
+                            PlayerLocation location = index.get(player.getKey());
+
+                            // Players that were purged during the compaction keep only their newer changes.
+                            if (location == null || location.purgedEpoch == epoch) {
+                                continue;
+                            }
+
+                            long[] block = blocks.get(player.getKey());
+
+                            location.snapshotOffset = block == null ? -1 : block[0];
+                            location.snapshotLength = block == null ? 0 : (int) block[1];
+                            location.removeDeltasUpTo(sealedSegment);
+                        }
+
+                        this.endCompaction(epoch);
+
+                        oldSnapshotChannel = snapshotChannel;
+
+                        if (snapshotFile != null) {
+                            oldFiles.add(snapshotFile);
+                        }
+
+                        snapshotChannel = newSnapshotChannel;
+                        snapshotFile = newSnapshotFile;
+                        snapshotGeneration = generation;
+                        compactedSequence = sealedSequence;
+
+                        Iterator<Segment> mergedSegments = segments.headMap(sealedSegment, true).values().iterator();
+
+                        while (mergedSegments.hasNext()) {
+                            oldFiles.add(mergedSegments.next().file);
+                            mergedSegments.remove();
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+
+                    if (oldSnapshotChannel != null) {
+                        oldSnapshotChannel.close();
+                    }
+
+                    // Files that cannot be removed yet are removed when the log is opened again.
+                    for (File oldFile : oldFiles) {
+                        oldFile.delete();
+                    }
+
+                    onCompacted.accept(sealedSequence);
+                }
+
+                compacted = true;
+            } finally {
+                if (!compacted) {
+                    temporaryFile.delete();
+
+                    synchronized (appendLock) {
+                        lock.writeLock().lock();
+
+                        try {
+                            uncompactedBytes += sealedBytes;
+                            this.endCompaction(epoch);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the files of the log to another directory. Batches that are written during the copy may be left out of
+     * the copy, but are never partly in it.
+     *
+     * @param target Directory to copy the files to
+     * @throws IOException if a file could not be copied.
+     */
+    public void backup(File target) throws IOException {
+        // Compactions remove files, so none may run during the copy.
+        synchronized (compactionLock) {
+            List<File> files = new ArrayList<>();
+
+            lock.readLock().lock();
+
+            try {
+                this.checkOpen();
+
+                if (snapshotFile != null) {
+                    files.add(snapshotFile);
+                }
+
+                for (Segment segment : segments.values()) {
+                    files.add(segment.file);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            if (!target.isDirectory() && !target.mkdirs()) {
+                throw new IOException("Could not create directory " + target);
+            }
+
+            for (File file : files) {
+                Files.copy(file.toPath(), new File(target, file.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Get the sequence number of the last batch that was merged into the snapshot.
+     *
+     * @return the sequence number, or 0 if nothing has been merged yet.
+     */
+    public long getCompactedSequence() {
+        lock.readLock().lock();
+
+        try {
+            return compactedSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write all changes to disk and close the files of the log. A compaction that is running is finished first.
+     *
+     * @throws IOException if the snapshot could not be closed.
+     */
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (appendLock) {
+                lock.writeLock().lock();
+
+                try {
+                    if (!open) {
+                        return;
+                    }
+
+                    open = false;
+
+                    activeSegment.buffer.force();
+
+                    if (snapshotChannel != null) {
+                        snapshotChannel.close();
+                    }
+
+                    index.clear();
+                    segments.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void openFiles(LongPredicate isConfirmed) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            throw new IOException("Could not list the files of " + directory);
+        }
+
+        TreeMap<Integer, File> snapshots = new TreeMap<>();
+        TreeMap<Integer, File> deltaSegments = new TreeMap<>();
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (name.endsWith(TEMP_EXTENSION)) {
+                // A snapshot that was not finished.
+                file.delete();
+            } else if (getFileNumber(name, SNAPSHOT_PREFIX) >= 0) {
+                snapshots.put(getFileNumber(name, SNAPSHOT_PREFIX), file);
+            } else if (getFileNumber(name, DELTA_PREFIX) >= 0) {
+                deltaSegments.put(getFileNumber(name, DELTA_PREFIX), file);
+            }
+        }
+
+        int lastCompactedSegment = 0;
+
+        if (!snapshots.isEmpty()) {
+            // Older snapshots are left behind if a compaction could not remove them.
+            while (snapshots.size() > 1) {
+                snapshots.pollFirstEntry().getValue().delete();
+            }
+
+            snapshotGeneration = snapshots.firstKey();
+            snapshotFile = snapshots.firstEntry().getValue();
+            snapshotChannel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+
+            long[] header = this.loadSnapshot();
+
+            lastCompactedSegment = (int) header[0];
+            compactedSequence = header[1];
+        }
+
+        RecoveredBatch batch = new RecoveredBatch();
+        boolean damagedTail = false;
+
+        for (Map.Entry<Integer, File> deltaSegment : deltaSegments.entrySet()) {
+            if (deltaSegment.getKey() <= lastCompactedSegment) {
+                // The segment was merged into the snapshot, but could not be removed.
+                deltaSegment.getValue().delete();
+                continue;
+            }
+
+            Segment segment = this.createSegment(deltaSegment.getKey(), (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(deltaSegment.getValue().length(), FRAME_HEADER_SIZE)));
+
+            damagedTail = this.loadSegment(segment, batch, isConfirmed);
+            uncompactedBytes += segment.position;
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = this.createSegment(lastCompactedSegment + 1, segmentSize);
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+
+            // Remove what is left of a record that was not completely written, so it is not read as part of the
+            // records that are written after it.
+            if (damagedTail) {
+                for (int offset = activeSegment.position; offset < activeSegment.buffer.capacity(); offset++) {
+                    activeSegment.buffer.put(offset, (byte) 0);
+                }
+
+                activeSegment.buffer.force();
+            }
+        }
+
+        nextSequence = Math.max(compactedSequence, batch.maxSequence) + 1;
+    }
+
+    // Read the header of the snapshot and add the location of every player to the index.
+    private long[] loadSnapshot() throws IOException {
+        long size = snapshotFile.length();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile),
+                1 << 16))) {
+            if (size < SNAPSHOT_HEADER_SIZE || input.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Snapshot " + snapshotFile + " is not a snapshot of Statz");
+            }
+
+            int version = input.readInt();
+
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown snapshot format version " + version);
+            }
+
+            long[] header = {input.readInt(), input.readLong()};
+            long offset = SNAPSHOT_HEADER_SIZE;
+
+            while (offset + FRAME_HEADER_SIZE <= size) {
+                int length = input.readInt();
+
+                input.readInt();
+
+                if (length < 16 || offset + FRAME_HEADER_SIZE + length > size) {
+                    throw new IOException("Snapshot " + snapshotFile + " is damaged at offset " + offset);
+                }
+
+                PlayerLocation location = new PlayerLocation();
+
+                location.snapshotOffset = offset;
+                location.snapshotLength = FRAME_HEADER_SIZE + length;
+
+                // The checksum is checked when the player is read.
+                index.put(new UUID(input.readLong(), input.readLong()), location);
+
+                skipFully(input, length - 16);
+
+                offset += FRAME_HEADER_SIZE + length;
+            }
+
+            return header;
+        }
+    }
+
+    // Apply the committed batches of a delta segment to the index. Returns true if the segment ends with a damaged
+    // record.
+    private boolean loadSegment(Segment segment, RecoveredBatch batch, LongPredicate isConfirmed) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        boolean damaged = false;
+
+        while (offset + FRAME_HEADER_SIZE <= buffer.capacity()) {
+            byte[] payload = readFrame(buffer, offset);
+
+            if (payload == null) {
+                damaged = buffer.getInt(offset) != 0;
+                break;
+            }
+
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+                byte type = input.readByte();
+                long sequence = input.readLong();
+
+                batch.maxSequence = Math.max(batch.maxSequence, sequence);
+
+                if (sequence != batch.sequence) {
+                    // The previous batch was never committed.
+                    batch.changes.clear();
+                    batch.sequence = sequence;
+                }
+
+                if (type == ROWS_RECORD) {
+                    batch.changes.add(new AbstractMap.SimpleEntry<>(new UUID(input.readLong(), input.readLong()),
+                            position(segment.id, offset)));
+                } else if (type == PURGE_RECORD) {
+                    batch.changes.add(new AbstractMap.SimpleEntry<>(new UUID(input.readLong(), input.readLong()),
+                            -1L));
+                } else if (type == COMMIT_RECORD) {
+                    boolean needsConfirmation = input.readBoolean();
+
+                    if (!needsConfirmation || isConfirmed.test(sequence)) {
+                        for (Map.Entry<UUID, Long> change : batch.changes) {
+                            this.publish(change.getKey(), change.getValue());
+                        }
+                    }
+
+                    batch.changes.clear();
+                } else {
+                    damaged = true;
+                    break;
+                }
+            } catch (IOException e) {
+                damaged = true;
+                break;
+            }
+
+            offset += FRAME_HEADER_SIZE + payload.length;
+        }
+
+        segment.position = offset;
+
+        return damaged;
+    }
+
+    private Map<UUID, long[]> writeSnapshot(File file, List<Map.Entry<UUID, PlayerLocation>> players,
+                                            int lastSegment, long lastSequence) throws IOException {
+        Map<UUID, long[]> blocks = new HashMap<>();
+
+        try (FileOutputStream fileOutput = new FileOutputStream(file);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, 1 << 16))) {
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(lastSegment);
+            output.writeLong(lastSequence);
+
+            long offset = SNAPSHOT_HEADER_SIZE;
+
+            for (Map.Entry<UUID, PlayerLocation> player : players) {
+                PlayerRows rows;
+
+                lock.readLock().lock();
+
+                try {
+                    rows = this.readRows(player.getValue());
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                if (rows.isEmpty()) {
+                    continue;
+                }
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+                try (DataOutputStream block = new DataOutputStream(bytes)) {
+                    block.writeLong(player.getKey().getMostSignificantBits());
+                    block.writeLong(player.getKey().getLeastSignificantBits());
+                    rows.write(block);
+                }
+
+                byte[] payload = bytes.toByteArray();
+
+                output.writeInt(payload.length);
+                output.writeInt(checksum(payload, 0, payload.length));
+                output.write(payload);
+
+                blocks.put(player.getKey(), new long[]{offset, FRAME_HEADER_SIZE + payload.length});
+                offset += FRAME_HEADER_SIZE + payload.length;
+            }
+
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+
+        return blocks;
+    }
+
+    // Read the rows of a player from the snapshot and the delta segments. The read lock must be held.
+    private PlayerRows readRows(PlayerLocation location) throws IOException {
+        PlayerRows rows = new PlayerRows();
+
+        if (location.snapshotOffset >= 0) {
+            ByteBuffer block = ByteBuffer.allocate(location.snapshotLength);
+
+            while (block.hasRemaining()) {
+                if (snapshotChannel.read(block, location.snapshotOffset + block.position()) < 0) {
+                    throw new IOException("Snapshot " + snapshotFile + " ends unexpectedly");
+                }
+            }
+
+            byte[] payload = readFrame(block, 0);
+
+            if (payload == null) {
+                throw new IOException("Snapshot " + snapshotFile + " is damaged at offset " +
+                        location.snapshotOffset);
+            }
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+
+            // Skip the UUID of the player.
+            skipFully(input, 16);
+
+            for (RowChange row : PlayerRows.readRows(input)) {
+                rows.apply(row);
+            }
+        }
+
+        for (int i = 0; i < location.deltaCount; i++) {
+            long position = location.deltas[i];
+            Segment segment = segments.get(getSegmentId(position));
+            byte[] payload = segment == null ? null : readFrame(segment.buffer, getOffset(position));
+
+            if (payload == null) {
+                throw new IOException("Delta segment " + getSegmentId(position) + " is damaged at offset " +
+                        getOffset(position));
+            }
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+
+            // Skip the type, sequence number and UUID of the record.
+            skipFully(input, 25);
+
+            for (RowChange row : PlayerRows.readRows(input)) {
+                rows.apply(row);
+            }
+        }
+
+        return rows;
+    }
+
+    // Make a change of a batch visible. The write lock must be held.
+    private void publish(UUID uuid, long position) {
+        if (position >= 0) {
+            index.computeIfAbsent(uuid, k -> new PlayerLocation()).addDelta(position);
+            return;
+        }
+
+        if (!compacting) {
+            index.remove(uuid);
+            return;
+        }
+
+        // Remember that the player was purged, so the compaction does not bring back the old rows.
+        PlayerLocation location = index.computeIfAbsent(uuid, k -> new PlayerLocation());
+
+        location.snapshotOffset = -1;
+        location.deltaCount = 0;
+        location.purgedEpoch = compactionEpoch;
+    }
+
+    // The write lock must be held.
+    private void endCompaction(int epoch) {
+        compacting = false;
+
+        Iterator<PlayerLocation> locations = index.values().iterator();
+
+        while (locations.hasNext()) {
+            PlayerLocation location = locations.next();
+
+            if (location.purgedEpoch == epoch) {
+                location.purgedEpoch = -1;
+            }
+
+            if (location.isEmpty()) {
+                locations.remove();
+            }
+        }
+    }
+
+    // Append a record to the active segment and return its position. The write lock must be held.
+    private long append(byte[] payload, Set<Segment> touchedSegments) throws IOException {
+        int frameSize = FRAME_HEADER_SIZE + payload.length;
+
+        if (frameSize > segmentSize) {
+            throw new IOException("A record of " + frameSize + " bytes does not fit in a segment.");
+        }
+
+        if (activeSegment.position + frameSize > activeSegment.buffer.capacity()) {
+            activeSegment = this.createSegment(activeSegment.id + 1, segmentSize);
+        }
+
+        Segment segment = activeSegment;
+        int offset = segment.position;
+        ByteBuffer target = segment.buffer.duplicate();
+
+        target.position(offset + FRAME_HEADER_SIZE);
+        target.put(payload);
+
+        segment.buffer.putInt(offset + 4, checksum(payload, 0, payload.length));
+
+        // The length is written last, as a length of 0 marks the end of the records.
+        segment.buffer.putInt(offset, payload.length);
+
+        segment.position += frameSize;
+        uncompactedBytes += frameSize;
+        touchedSegments.add(segment);
+
+        return position(segment.id, offset);
+    }
+
+    private Segment createSegment(int id, int size) throws IOException {
+        File file = new File(directory, DELTA_PREFIX + format(id) + EXTENSION);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // The mapping stays valid after the file is closed.
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(id, file, buffer);
+
+            segments.put(id, segment);
+
+            return segment;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open) {
+            throw new IOException("The segment log is not open.");
+        }
+    }
+
+    private static byte[] createRecord(byte type, long sequence, UUID uuid, List<RowChange> rows,
+                                       boolean needsConfirmation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type);
+            output.writeLong(sequence);
+
+            if (type == COMMIT_RECORD) {
+                output.writeBoolean(needsConfirmation);
+            } else {
+                output.writeLong(uuid.getMostSignificantBits());
+                output.writeLong(uuid.getLeastSignificantBits());
+            }
+
+            if (type == ROWS_RECORD) {
+                PlayerRows.writeRows(output, rows);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    // Read the payload of the record at an offset, or null if there is no valid record.
+    private static byte[] readFrame(ByteBuffer buffer, int offset) {
+        if (offset + FRAME_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+
+        int length = buffer.getInt(offset);
+
+        if (length <= 0 || length > buffer.capacity() - offset - FRAME_HEADER_SIZE) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+
+        source.position(offset + FRAME_HEADER_SIZE);
+        source.get(payload);
+
+        return checksum(payload, 0, length) == buffer.getInt(offset + 4) ? payload : null;
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+
+        crc.update(data, offset, length);
+
+        return (int) crc.getValue();
+    }
+
+    private static void skipFully(DataInputStream input, int bytes) throws IOException {
+        input.readFully(new byte[bytes]);
+    }
+
+    private static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int getSegmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int getOffset(long position) {
+        return (int) position;
+    }
+
+    private static String format(int number) {
+        return String.format("%08d", number);
+    }
+
+    // Number of a file with the given prefix, or -1 if the file is not a segment with that prefix.
+    private static int getFileNumber(String name, String prefix) {
+        if (!name.startsWith(prefix) || !name.endsWith(EXTENSION)) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+
+        // End of the records in the segment
+        private int position;
+
+        private Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    // Where the rows of a player are stored: a block in the snapshot and the records written since.
+    private static class PlayerLocation {
+
+        private long snapshotOffset = -1;
+        private int snapshotLength;
+
+        private long[] deltas = new long[2];
+        private int deltaCount;
+
+        // Epoch of the compaction during which the player was purged, or -1
+        private int purgedEpoch = -1;
+
+        private void addDelta(long position) {
+            if (deltaCount == deltas.length) {
+                deltas = Arrays.copyOf(deltas, deltas.length * 2);
+            }
+
+            deltas[deltaCount++] = position;
+        }
+
+        private void removeDeltasUpTo(int segmentId) {
+            int kept = 0;
+
+            for (int i = 0; i < deltaCount; i++) {
+                if (getSegmentId(deltas[i]) > segmentId) {
+                    deltas[kept++] = deltas[i];
+                }
+            }
+
+            deltaCount = kept;
+        }
+
+        private boolean isEmpty() {
+            return snapshotOffset < 0 && deltaCount == 0;
+        }
+
+        private PlayerLocation copy() {
+            PlayerLocation copy = new PlayerLocation();
+
+            copy.snapshotOffset = snapshotOffset;
+            copy.snapshotLength = snapshotLength;
+            copy.deltas = Arrays.copyOf(deltas, Math.max(deltaCount, 2));
+            copy.deltaCount = deltaCount;
+
+            return copy;
+        }
+    }
+
+    // Changes of the batch that is being read while the log is opened
+    private static class RecoveredBatch {
+
+        private final List<Map.Entry<UUID, Long>> changes = new ArrayList<>();
+        private long sequence = -1;
+        private long maxSequence;
+    }
+}
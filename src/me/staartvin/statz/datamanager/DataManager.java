@@ -1,15 +1,21 @@
 package me.staartvin.statz.datamanager;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.BatchingLoader;
 import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.DatabaseExecutor;
+import me.staartvin.statz.database.H2Connector;
 import me.staartvin.statz.database.MySQLConnector;
 import me.staartvin.statz.database.SQLiteConnector;
+import me.staartvin.statz.database.SegmentConnector;
 import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
 import me.staartvin.statz.database.datatype.Table;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import me.staartvin.statz.language.DescriptionMatcher;
+import me.staartvin.statz.metrics.jfr.CacheLoadEvent;
 
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
@@ -43,18 +49,43 @@ import java.util.stream.Collectors;
  * {@link #setPlayerInfo(UUID, me.staartvin.statz.datamanager.player.PlayerStat, Query)} method. Note that the
  * update will be cached immediately and will be sent to the database after a while. Whenever you update the player's
  * data, the changes will immediately appear in the cache.
+ * <br>
+ * <br>
+ * <h2>Asynchronous requests</h2>
+ * Methods ending in <i>Async</i> run on a bounded pool of database threads and return a {@link CompletableFuture}.
+ * Concurrent loads of the same player share a single request, so it is cheap to call them often. These methods never
+ * block the calling thread and are therefore safe to use from the main thread.
  */
 public class DataManager {
 
     private final Statz plugin;
 
+    // Maximum number of players that are warmed up with a single query per table
+    private static final int WARM_UP_BATCH_SIZE = 100;
+
+    private final DatabaseExecutor databaseExecutor;
+
+    private final BatchingLoader<UUID, PlayerInfo> warmUpLoader;
+
     public DataManager(final Statz instance) {
         plugin = instance;
 
+        databaseExecutor = new DatabaseExecutor(instance.getConfigHandler().getDatabaseThreads(),
+                instance.getConfigHandler().getDatabaseQueueSize());
+
+        warmUpLoader = new BatchingLoader<>(databaseExecutor, uuids -> this.loadPlayerData(uuids),
+                WARM_UP_BATCH_SIZE);
+
         // Load SQL connector
         if (instance.getConfigHandler().isMySQLEnabled()) {
             instance.getLogger().info("Using MySQL database!");
             instance.setDatabaseConnector(new MySQLConnector(instance));
+        } else if (instance.getConfigHandler().isH2Enabled()) {
+            instance.getLogger().info("Using H2 database!");
+            instance.setDatabaseConnector(new H2Connector(instance));
+        } else if (instance.getConfigHandler().isSegmentLogEnabled()) {
+            instance.getLogger().info("Using segment log!");
+            instance.setDatabaseConnector(new SegmentConnector(instance));
         } else {
             instance.getLogger().info("Using SQLite database!");
             instance.setDatabaseConnector(new SQLiteConnector(instance));
@@ -106,10 +137,13 @@ public class DataManager {
         }
 
         if (!this.isPlayerLoaded(uuid, statType)) {
+            plugin.getMetricsManager().recordCacheMiss();
             return null;
         }
 
-        PlayerInfo info = this.getPlayerInfo(uuid);
+        plugin.getMetricsManager().recordCacheHit();
+
+        PlayerInfo info = plugin.getCachingManager().getCachedPlayerData(uuid);
 
         if (info == null) {
             return null;
@@ -128,6 +162,32 @@ public class DataManager {
         return newInfo;
     }
 
+    /**
+     * Get the cached data of a player, if the given statistic is loaded. Unlike
+     * {@link #getPlayerInfo(UUID, PlayerStat)}, this does not copy the data, so the running totals of the cache
+     * (see {@link PlayerInfo#getTotalValue(PlayerStat, RowRequirement...)}) can be used. The returned object is
+     * the cache itself and should not be modified.
+     *
+     * @param uuid     UUID of the player
+     * @param statType Type of statistic that should be loaded
+     * @return cached PlayerInfo object of the player or null if the statistic is not loaded.
+     * @throws IllegalArgumentException if the given uuid is null.
+     */
+    public PlayerInfo getCachedPlayerInfo(UUID uuid, PlayerStat statType) throws IllegalArgumentException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        if (!this.isPlayerLoaded(uuid, statType)) {
+            plugin.getMetricsManager().recordCacheMiss();
+            return null;
+        }
+
+        plugin.getMetricsManager().recordCacheHit();
+
+        return plugin.getCachingManager().getCachedPlayerData(uuid);
+    }
+
     /**
      * Get data of a player for a given statistic. This method will obtain 'fresh' data from the database, meaning
      * that it will ignore cached data. Hence, this method will block the thread it is ran on. It is therefore
@@ -149,6 +209,8 @@ public class DataManager {
             throw new IllegalArgumentException("UUID cannot be null.");
         }
 
+        this.restoreArchivedPlayer(uuid);
+
         Table table = DatabaseConnector.getTable(statType);
 
         List<Query> databaseRows = plugin.getDatabaseConnector().getObjects(table,
@@ -180,12 +242,18 @@ public class DataManager {
         PlayerInfo info = this.getPlayerInfo(uuid, statType);
 
         // There are no requirement, so we don't need to check any data.
-        if (requirements == null || requirements.length == 0) {
+        if (info == null || requirements == null || requirements.length == 0) {
             return info;
         }
 
-        // Remove query if it does not meet the given requirements.
-        info.getDataOfPlayerStat(statType).removeIf(query -> !query.meetsAllRequirements(Arrays.asList(requirements)));
+        PlayerInfo cachedInfo = plugin.getCachingManager().getCachedPlayerData(uuid);
+
+        if (cachedInfo == null) {
+            return info;
+        }
+
+        // Only keep the rows that meet the given requirements. They are looked up in the indexes of the cache.
+        info.setData(statType, cachedInfo.getRows(statType, requirements));
 
         return info;
     }
@@ -227,11 +295,41 @@ public class DataManager {
             throw new IllegalArgumentException("UUID cannot be null.");
         }
 
-        // Retrieve info from database.
-        PlayerInfo info = this.getFreshPlayerInfo(uuid, statType);
+        long loadStart = System.nanoTime();
 
-        // Put new data into cache.
-        plugin.getCachingManager().addCachedData(uuid, info);
+        CacheLoadEvent event = new CacheLoadEvent();
+        event.begin();
+
+        PlayerInfo snapshotInfo = plugin.getCacheSnapshotManager().takePlayer(uuid);
+
+        // The snapshot has all cached data of the player, so it is cached at once.
+        if (snapshotInfo != null) {
+            plugin.getCachingManager().addCachedData(uuid, snapshotInfo);
+        }
+
+        PlayerInfo info;
+
+        if (snapshotInfo != null && snapshotInfo.hasDataOfPlayerStat(statType)) {
+            info = new PlayerInfo(uuid);
+            info.setData(statType, snapshotInfo.getDataOfPlayerStat(statType));
+        } else {
+            // Retrieve info from database.
+            info = this.getFreshPlayerInfo(uuid, statType);
+
+            // Put new data into cache.
+            plugin.getCachingManager().addCachedData(uuid, info);
+        }
+
+        plugin.getMetricsManager().recordCacheLoad(System.nanoTime() - loadStart);
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.uuid = uuid.toString();
+            event.table = statType.getTableName();
+            event.rows = info.getDataOfPlayerStat(statType).size();
+            event.commit();
+        }
 
         return info;
     }
@@ -249,10 +347,23 @@ public class DataManager {
             throw new IllegalArgumentException("UUID cannot be null.");
         }
 
+        long loadStart = System.nanoTime();
+
+        CacheLoadEvent event = new CacheLoadEvent();
+        event.begin();
+
         PlayerInfo info = new PlayerInfo(uuid);
 
+        // Statistics that are in the cache snapshot do not have to be loaded from the database.
+        PlayerInfo snapshotInfo = plugin.getCacheSnapshotManager().takePlayer(uuid);
+
         // Load all data of a player
         for (PlayerStat statType : PlayerStat.values()) {
+            if (snapshotInfo != null && snapshotInfo.hasDataOfPlayerStat(statType)) {
+                info.setData(statType, snapshotInfo.getDataOfPlayerStat(statType));
+                continue;
+            }
+
             PlayerInfo freshPlayerInfo = getFreshPlayerInfo(uuid, statType);
 
             info.setData(statType, freshPlayerInfo.getDataOfPlayerStat(statType));
@@ -261,9 +372,341 @@ public class DataManager {
         // Put new data into cache.
         plugin.getCachingManager().registerCachedData(uuid, info);
 
+        plugin.getMetricsManager().recordCacheLoad(System.nanoTime() - loadStart);
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.uuid = uuid.toString();
+            event.table = "*";
+            event.rows = info.getRows().size();
+            event.commit();
+        }
+
         return info;
     }
 
+    /**
+     * Load all data of several players into the cache at once. Every table is read with a single query for all
+     * players, which is a lot cheaper than loading the players one by one. A statistic that could not be read is
+     * not cached, so it is loaded again when it is requested.
+     * Note that this method will block the thread it is on and so it should be run asynchronously.
+     *
+     * @param uuids UUIDs of the players
+     * @return the PlayerInfo data of every player that was loaded into the cache, by the uuid of the player.
+     * @throws IllegalArgumentException if the given collection or one of the uuids is null
+     */
+    public Map<UUID, PlayerInfo> loadPlayerData(Collection<UUID> uuids) throws IllegalArgumentException {
+        if (uuids == null || uuids.contains(null)) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        long loadStart = System.nanoTime();
+
+        Map<UUID, PlayerInfo> players = new LinkedHashMap<>();
+        Map<UUID, PlayerInfo> snapshots = new HashMap<>();
+
+        for (UUID uuid : uuids) {
+            this.restoreArchivedPlayer(uuid);
+
+            players.put(uuid, new PlayerInfo(uuid));
+
+            // Statistics that are in the cache snapshot do not have to be loaded from the database.
+            PlayerInfo snapshotInfo = plugin.getCacheSnapshotManager().takePlayer(uuid);
+
+            if (snapshotInfo != null) {
+                snapshots.put(uuid, snapshotInfo);
+            }
+        }
+
+        if (players.isEmpty()) {
+            return players;
+        }
+
+        for (PlayerStat statType : PlayerStat.values()) {
+            Table table = DatabaseConnector.getTable(statType);
+
+            if (table == null || table.getColumn("uuid") == null) {
+                continue;
+            }
+
+            // Rows of the players that are not in the snapshot
+            Map<UUID, List<Query>> rowsPerPlayer = new HashMap<>();
+
+            for (PlayerInfo info : players.values()) {
+                PlayerInfo snapshotInfo = snapshots.get(info.getUUID());
+
+                if (snapshotInfo != null && snapshotInfo.hasDataOfPlayerStat(statType)) {
+                    info.setData(statType, snapshotInfo.getDataOfPlayerStat(statType));
+                } else {
+                    rowsPerPlayer.put(info.getUUID(), new ArrayList<>());
+                }
+            }
+
+            if (rowsPerPlayer.isEmpty()) {
+                continue;
+            }
+
+            List<String> uuidStrings = rowsPerPlayer.keySet().stream().map(UUID::toString)
+                    .collect(Collectors.toList());
+
+            int rowCount = plugin.getDatabaseConnector().forEachObject(new Selection(table).whereIn("uuid",
+                    uuidStrings), row -> {
+                List<Query> rows = rowsPerPlayer.get(row.getUUID());
+
+                if (rows != null) {
+                    // Set specification of query, so we know how we can read data.
+                    row.setSpecification(statType.getSpecification());
+                    rows.add(row);
+                }
+            });
+
+            if (rowCount < 0) {
+                plugin.getLogger().warning("Could not load " + statType + " of " + rowsPerPlayer.size() +
+                        " players at once.");
+                continue;
+            }
+
+            for (Map.Entry<UUID, List<Query>> entry : rowsPerPlayer.entrySet()) {
+                players.get(entry.getKey()).setData(statType, entry.getValue());
+            }
+        }
+
+        // Put new data into cache.
+        for (PlayerInfo info : players.values()) {
+            plugin.getCachingManager().registerCachedData(info.getUUID(), info);
+        }
+
+        plugin.getMetricsManager().recordCacheLoad(System.nanoTime() - loadStart);
+
+        return players;
+    }
+
+    /**
+     * Load all data of a player into the cache without blocking the calling thread. If the data of the player is
+     * already being loaded, the running request is shared.
+     *
+     * @param uuid UUID of the player
+     * @return a future that is completed with the data that was loaded into the cache.
+     * @throws IllegalArgumentException if the given uuid is null
+     */
+    public CompletableFuture<PlayerInfo> loadPlayerDataAsync(UUID uuid) throws IllegalArgumentException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        return databaseExecutor.supplyCoalesced(uuid, () -> this.loadPlayerData(uuid));
+    }
+
+    /**
+     * Load the data of a player of a given statistic into the cache without blocking the calling thread. If the
+     * data of the player is already being loaded, the running request is shared.
+     *
+     * @param uuid     UUID of the player
+     * @param statType Type of statistic.
+     * @return a future that is completed with the data that was loaded into the cache.
+     * @throws IllegalArgumentException if the given uuid is null
+     */
+    public CompletableFuture<PlayerInfo> loadPlayerDataAsync(UUID uuid, PlayerStat statType) throws
+            IllegalArgumentException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        // All data of the player is already being loaded, so wait for that instead.
+        CompletableFuture<PlayerInfo> runningLoad = databaseExecutor.getRunningRequest(uuid);
+
+        if (runningLoad != null) {
+            return runningLoad;
+        }
+
+        return databaseExecutor.supplyCoalesced(Arrays.asList(uuid, statType),
+                () -> this.loadPlayerData(uuid, statType));
+    }
+
+    /**
+     * Load all data of a player into the cache without blocking the calling thread, like
+     * {@link #loadPlayerDataAsync(UUID)}. Players that are warmed up at the same time are loaded together with
+     * {@link #loadPlayerData(Collection)}, which is used to load players while they are logging in.
+     *
+     * @param uuid UUID of the player
+     * @return a future that is completed with the data that was loaded into the cache.
+     * @throws IllegalArgumentException if the given uuid is null
+     */
+    public CompletableFuture<PlayerInfo> warmUpPlayerAsync(UUID uuid) throws IllegalArgumentException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        // All data of the player is already being loaded, so wait for that instead.
+        CompletableFuture<PlayerInfo> runningLoad = databaseExecutor.getRunningRequest(uuid);
+
+        if (runningLoad != null) {
+            return runningLoad;
+        }
+
+        return warmUpLoader.load(uuid);
+    }
+
+    /**
+     * Get fresh data of a player for a given statistic without blocking the calling thread. See
+     * {@link #getFreshPlayerInfo(UUID, PlayerStat)}.
+     *
+     * @param uuid     UUID of the player.
+     * @param statType Type of statistic.
+     * @return a future that is completed with fresh player data.
+     * @throws IllegalArgumentException if the given uuid is null.
+     */
+    public CompletableFuture<PlayerInfo> getFreshPlayerInfoAsync(UUID uuid, PlayerStat statType) throws
+            IllegalArgumentException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        return databaseExecutor.supply(() -> this.getFreshPlayerInfo(uuid, statType));
+    }
+
+    /**
+     * Get the total value of a statistic of a player. If the statistic of the player is cached, the total is
+     * computed from the cache. Otherwise, the database computes the total, so only a single number has to be
+     * retrieved instead of all rows of the player. The player is not loaded into the cache.
+     * Note that this method may block the thread it is on and so it should be run asynchronously.
+     *
+     * @param uuid         UUID of the player
+     * @param statType     Type of statistic
+     * @param requirements Requirements that rows should meet to be counted. See {@link RowRequirement}.
+     * @return the total value of the rows that meet the requirements.
+     * @throws IllegalArgumentException if the given uuid is null or a requirement refers to an unknown column.
+     */
+    public double getTotal(UUID uuid, PlayerStat statType, RowRequirement... requirements) throws
+            IllegalArgumentException {
+        PlayerInfo info = this.getCachedPlayerInfo(uuid, statType);
+
+        if (info != null) {
+            return info.getTotalValue(statType, requirements);
+        }
+
+        this.restoreArchivedPlayer(uuid);
+
+        return plugin.getDatabaseConnector().getTotal(DatabaseConnector.getTable(statType),
+                withPlayer(uuid, requirements));
+    }
+
+    /**
+     * Get the total value of a statistic of a player without blocking the calling thread. See
+     * {@link #getTotal(UUID, PlayerStat, RowRequirement...)}. If the same total is already being computed, the
+     * running request is shared.
+     *
+     * @param uuid         UUID of the player
+     * @param statType     Type of statistic
+     * @param requirements Requirements that rows should meet to be counted.
+     * @return a future that is completed with the total value of the rows that meet the requirements.
+     * @throws IllegalArgumentException if the given uuid is null
+     */
+    public CompletableFuture<Double> getTotalAsync(UUID uuid, PlayerStat statType, RowRequirement... requirements)
+            throws IllegalArgumentException {
+        PlayerInfo info = this.getCachedPlayerInfo(uuid, statType);
+
+        if (info != null) {
+            return CompletableFuture.completedFuture(info.getTotalValue(statType, requirements));
+        }
+
+        return databaseExecutor.supplyCoalesced(Arrays.asList("total", uuid, statType, getKey(requirements)),
+                () -> this.getTotal(uuid, statType, requirements));
+    }
+
+    /**
+     * Get the total value of a statistic of a player per value of a column, e.g. the number of kills per mob type.
+     * Like {@link #getTotal(UUID, PlayerStat, RowRequirement...)}, the totals are computed by the database if the
+     * player is not cached. This method does not block the calling thread.
+     *
+     * @param uuid         UUID of the player
+     * @param statType     Type of statistic
+     * @param column       Column to group the totals by
+     * @param requirements Requirements that rows should meet to be counted.
+     * @return a future that is completed with the total per value of the column.
+     * @throws IllegalArgumentException if the given uuid is null
+     */
+    public CompletableFuture<Map<String, Double>> getTotalsPerValueAsync(UUID uuid, PlayerStat statType,
+                                                                         String column,
+                                                                         RowRequirement... requirements)
+            throws IllegalArgumentException {
+        PlayerInfo info = this.getCachedPlayerInfo(uuid, statType);
+
+        if (info != null) {
+            Map<String, Double> totals = new HashMap<>();
+
+            for (Query row : info.getRows(statType, requirements)) {
+                Object columnValue = row.getValue(column);
+
+                if (columnValue != null) {
+                    totals.merge(columnValue.toString(), row.getValue(), Double::sum);
+                }
+            }
+
+            return CompletableFuture.completedFuture(totals);
+        }
+
+        return databaseExecutor.supplyCoalesced(Arrays.asList("totals", uuid, statType, column.toLowerCase(),
+                getKey(requirements)), () -> {
+            Map<String, Double> totals = new HashMap<>();
+
+            this.restoreArchivedPlayer(uuid);
+
+            for (Query group : plugin.getDatabaseConnector().getAggregatedObjects(
+                    DatabaseConnector.getTable(statType), new String[]{column}, withPlayer(uuid, requirements))) {
+                Object columnValue = group.getValue(column);
+
+                if (columnValue != null) {
+                    totals.put(columnValue.toString(), group.getValue());
+                }
+            }
+
+            return totals;
+        });
+    }
+
+    // Archived players are moved back to the statistic tables before their rows are read.
+    private void restoreArchivedPlayer(UUID uuid) {
+        if (plugin.getArchiveManager() != null) {
+            plugin.getArchiveManager().restorePlayer(uuid);
+        }
+    }
+
+    private static RowRequirement[] withPlayer(UUID uuid, RowRequirement... requirements) {
+        if (uuid == null) {
+            throw new IllegalArgumentException("UUID cannot be null.");
+        }
+
+        RowRequirement[] result = new RowRequirement[requirements.length + 1];
+
+        result[0] = new RowRequirement("uuid", uuid.toString());
+        System.arraycopy(requirements, 0, result, 1, requirements.length);
+
+        return result;
+    }
+
+    private static List<String> getKey(RowRequirement... requirements) {
+        return Arrays.stream(requirements).map(requirement -> requirement.getColumnName().toLowerCase() + "="
+                + requirement.getColumnValue()).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the executor that is used to run asynchronous requests against the database.
+     *
+     * @return the database executor.
+     */
+    public DatabaseExecutor getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    /**
+     * Stop the threads that run asynchronous requests. Called when Statz is disabled.
+     */
+    public void shutdown() {
+        databaseExecutor.shutdown();
+    }
+
     /**
      * Update a player's data with a given query. Note that it may take a while before the data actually reaches the
      * database (due to the pooling system). Passing a query with new data means it will be added to the already
@@ -379,14 +822,30 @@ public class DataManager {
     public CompletableFuture<List<UUID>> getStoredPlayers() {
 
         return CompletableFuture.supplyAsync(() -> {
-            List<Query> rows =
-                    plugin.getDatabaseConnector().getObjects(DatabaseConnector.getTable(PlayerStat.PLAYERS));
+            Table table = DatabaseConnector.getTable(PlayerStat.PLAYERS);
 
-            if (rows == null) {
+            if (table == null) {
                 return new ArrayList<UUID>();
             }
 
-            return rows.stream().map(Query::getUUID).collect(Collectors.toList());
+            List<UUID> players = new ArrayList<>();
+
+            // We only need the UUIDs of the players, so don't keep the rows themselves.
+            plugin.getDatabaseConnector().forEachObject(new Selection(table).columns("uuid"),
+                    row -> players.add(row.getUUID()), true);
+
+            // Archived players are not in the table until they are restored.
+            if (plugin.getArchiveManager() != null) {
+                Set<UUID> storedPlayers = new HashSet<>(players);
+
+                for (UUID uuid : plugin.getArchiveManager().getArchivedPlayers()) {
+                    if (storedPlayers.add(uuid)) {
+                        players.add(uuid);
+                    }
+                }
+            }
+
+            return players;
         });
     }
 }
@@ -5,6 +5,7 @@ import me.staartvin.statz.database.datatype.RowRequirement;
 import me.staartvin.statz.util.StatzUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Statistics of a player recorded by Statz
@@ -13,6 +14,17 @@ import java.util.*;
  * Statistics of a player are stored in (key, value) pairs where a key is a PlayerStat object and a value is a list
  * of queries that represent the data retrieved from the database. Each {@link Query} object represents one row in
  * the database.
+ * <br>
+ * <br>
+ * For each statistic, a {@link StatAggregate} is kept that holds the total of the 'value' column, as well as the
+ * total per value of every other column. It is created the first time a total is requested and is kept up-to-date
+ * by {@link #applyDelta(PlayerStat, Query)}, so totals can be looked up without going over all rows.
+ * <br>
+ * <br>
+ * Rows can be filtered with {@link #getRows(PlayerStat, RowRequirement...)}. For every column that is filtered on, an
+ * index from the value of the column to the rows with that value is built and kept up-to-date. Lists of rows that
+ * are returned by this class cannot be modified and are never changed afterwards: changes to the data always
+ * replace the list instead.
  * <p>
  * Date created: 15:07:07
  * 17 apr. 2016
@@ -23,7 +35,13 @@ public class PlayerInfo {
 
     private UUID uuid;
 
-    private Map<PlayerStat, List<Query>> statistics = new HashMap<>();
+    private Map<PlayerStat, List<Query>> statistics = new ConcurrentHashMap<>();
+
+    // Running totals per statistic, created when they are first needed.
+    private final Map<PlayerStat, StatAggregate> aggregates = new EnumMap<>(PlayerStat.class);
+
+    // Rows per value of a column, per column and per statistic. Columns are indexed when they are first filtered on.
+    private final Map<PlayerStat, Map<String, Map<String, List<Query>>>> indexes = new EnumMap<>(PlayerStat.class);
 
     public PlayerInfo(final UUID uuid) {
         this.setUUID(uuid);
@@ -69,15 +87,17 @@ public class PlayerInfo {
      * data in the database. Note that each Query object represents one row in the database.
      *
      * @param statType Type of statistic to get data for.
-     * @return A list of {@link Query} objects that represent the rows in the database. If there is no data for the
-     * given type of statistic, an empty list will be returned.
+     * @return An unmodifiable list of {@link Query} objects that represent the rows in the database. If there is no
+     * data for the given type of statistic, an empty list will be returned.
      */
     public List<Query> getDataOfPlayerStat(PlayerStat statType) {
-        if (!this.hasDataOfPlayerStat(statType)) {
-            return new ArrayList<>();
+        List<Query> rows = statistics.get(statType);
+
+        if (rows == null) {
+            return Collections.emptyList();
         }
 
-        return statistics.get(statType);
+        return Collections.unmodifiableList(rows);
     }
 
     /**
@@ -175,20 +195,18 @@ public class PlayerInfo {
             return this.getTotalValue(statType);
         }
 
-        double value = 0;
-
-        List<Query> rows = this.getDataOfPlayerStat(statType);
-
-        if (rows.isEmpty())
-            return value;
-
-        for (Query row : rows) {
-            if (!row.meetsAllRequirements(Arrays.asList(reqs))) {
-                continue;
+        // A single requirement can be looked up in the aggregate.
+        if (reqs.length == 1 && reqs[0] != null && !reqs[0].getColumnName().equalsIgnoreCase("value")) {
+            synchronized (this) {
+                return this.getAggregate(statType).getTotal(reqs[0].getColumnName(), reqs[0].getColumnValue());
             }
+        }
 
-            // All conditions were met, so we add this value.
-            value += row.getDoubleValue("value");
+        double value = 0;
+
+        // All rows that are returned meet the requirements, so we add their values.
+        for (Query row : this.getRows(statType, reqs)) {
+            value += row.getValue();
         }
 
         return value;
@@ -211,7 +229,177 @@ public class PlayerInfo {
             throw new IllegalArgumentException("Given rows cannot be null");
         }
 
-        statistics.put(statType, rows);
+        synchronized (this) {
+            statistics.put(statType, rows);
+
+            // The rows have changed, so the aggregate and indexes need to be created again.
+            aggregates.remove(statType);
+            indexes.remove(statType);
+        }
+    }
+
+    /**
+     * Merge an update into the data of a statistic. If a row with the same columns (except for the 'value' column)
+     * already exists, the value of the update is added to it. Otherwise, the update is added as a new row.
+     * <br>
+     * <br>
+     * The list of rows is replaced instead of modified, so lists that were obtained earlier can still be read
+     * safely while updates are applied. The aggregate of the statistic is updated in place.
+     *
+     * @param statType Type of statistic.
+     * @param delta    Update to merge.
+     * @throws IllegalArgumentException if statistic is null or the update is null.
+     */
+    public synchronized void applyDelta(PlayerStat statType, Query delta) throws IllegalArgumentException {
+
+        if (statType == null) {
+            throw new IllegalArgumentException("Stat cannot be null.");
+        }
+
+        if (delta == null) {
+            throw new IllegalArgumentException("Delta cannot be null");
+        }
+
+        List<Query> rows = this.getDataOfPlayerStat(statType);
+        List<Query> updatedRows = new ArrayList<>(rows.size() + 1);
+
+        Query replacedRow = null;
+        Query updatedRow = delta;
+
+        for (Query row : rows) {
+            if (replacedRow == null && row.conflicts(delta)) {
+                replacedRow = row;
+                updatedRow = row.resolveConflict(delta);
+                updatedRows.add(updatedRow);
+            } else {
+                updatedRows.add(row);
+            }
+        }
+
+        if (replacedRow == null) {
+            updatedRows.add(delta);
+        }
+
+        statistics.put(statType, updatedRows);
+
+        StatAggregate aggregate = aggregates.get(statType);
+
+        if (aggregate != null) {
+            aggregate.add(delta);
+        }
+
+        Map<String, Map<String, List<Query>>> indexesOfStat = indexes.get(statType);
+
+        if (indexesOfStat != null) {
+            for (Map.Entry<String, Map<String, List<Query>>> index : indexesOfStat.entrySet()) {
+                this.updateIndex(index.getKey(), index.getValue(), replacedRow, updatedRow);
+            }
+        }
+    }
+
+    /**
+     * Replace a row in an index (or add it when it did not replace anything). The list of rows of the value is
+     * replaced, so lists that were returned earlier do not change.
+     */
+    private void updateIndex(String columnName, Map<String, List<Query>> index, Query replacedRow, Query updatedRow) {
+        Object columnValue = updatedRow.getValue(columnName);
+
+        if (columnValue == null) {
+            return;
+        }
+
+        List<Query> bucket = index.getOrDefault(columnValue.toString(), Collections.emptyList());
+        List<Query> updatedBucket = new ArrayList<>(bucket.size() + 1);
+
+        for (Query row : bucket) {
+            if (row != replacedRow) {
+                updatedBucket.add(row);
+            }
+        }
+
+        updatedBucket.add(updatedRow);
+
+        index.put(columnValue.toString(), updatedBucket);
+    }
+
+    /**
+     * Get the index of a column of a statistic, creating it if it does not exist yet. Callers must hold the lock of
+     * this object.
+     */
+    private Map<String, List<Query>> getIndex(PlayerStat statType, String columnName) {
+        return indexes.computeIfAbsent(statType, stat -> new HashMap<>()).computeIfAbsent(columnName, column -> {
+            Map<String, List<Query>> index = new HashMap<>();
+
+            for (Query row : this.getDataOfPlayerStat(statType)) {
+                Object columnValue = row.getValue(column);
+
+                if (columnValue != null) {
+                    index.computeIfAbsent(columnValue.toString(), value -> new ArrayList<>()).add(row);
+                }
+            }
+
+            return index;
+        });
+    }
+
+    /**
+     * Get all rows of a statistic that meet the given requirements. See the {@link RowRequirement} class for more
+     * info about requirements. The rows are looked up in an index of the column of one of the requirements, so
+     * only rows that meet that requirement have to be checked for the others.
+     *
+     * @param statType Type of statistic to get the rows for
+     * @param reqs     Requirements that the rows need to meet
+     * @return an unmodifiable list of rows that meet all requirements. If no requirements are given, all rows of
+     * the statistic are returned.
+     */
+    public synchronized List<Query> getRows(PlayerStat statType, RowRequirement... reqs) {
+        if (reqs == null || reqs.length == 0) {
+            return this.getDataOfPlayerStat(statType);
+        }
+
+        List<Query> candidates = null;
+
+        // Use the requirement that matches the fewest rows.
+        for (RowRequirement requirement : reqs) {
+            String columnName = requirement.getColumnName().toLowerCase();
+
+            // The value column changes all the time, so it is never indexed.
+            if (columnName.equals("value")) {
+                continue;
+            }
+
+            List<Query> rows = this.getIndex(statType, columnName).getOrDefault(requirement.getColumnValue(),
+                    Collections.emptyList());
+
+            if (candidates == null || rows.size() < candidates.size()) {
+                candidates = rows;
+            }
+        }
+
+        if (candidates == null) {
+            candidates = this.getDataOfPlayerStat(statType);
+        } else if (reqs.length == 1) {
+            return Collections.unmodifiableList(candidates);
+        }
+
+        List<Query> matchingRows = new ArrayList<>();
+        List<RowRequirement> requirements = Arrays.asList(reqs);
+
+        for (Query row : candidates) {
+            if (row.meetsAllRequirements(requirements)) {
+                matchingRows.add(row);
+            }
+        }
+
+        return Collections.unmodifiableList(matchingRows);
+    }
+
+    /**
+     * Get the aggregate of a statistic, creating it if it does not exist yet. Callers must hold the lock of this
+     * object.
+     */
+    private StatAggregate getAggregate(PlayerStat statType) {
+        return aggregates.computeIfAbsent(statType, stat -> new StatAggregate(this.getDataOfPlayerStat(stat)));
     }
 
     /**
@@ -231,7 +419,7 @@ public class PlayerInfo {
             throw new IllegalArgumentException("Row cannot be null");
         }
 
-        List<Query> rows = this.getDataOfPlayerStat(statType);
+        List<Query> rows = new ArrayList<>(this.getDataOfPlayerStat(statType));
 
         rows.add(row);
 
@@ -259,7 +447,7 @@ public class PlayerInfo {
             return;
         }
 
-        List<Query> rows = this.getDataOfPlayerStat(statType);
+        List<Query> rows = new ArrayList<>(this.getDataOfPlayerStat(statType));
 
         rows.remove(row);
 
@@ -272,14 +460,8 @@ public class PlayerInfo {
      *
      * @return the sum of the values of each row.
      */
-    public double getTotalValue(PlayerStat statType) {
-        double value = 0;
-
-        for (Query q : this.getDataOfPlayerStat(statType)) {
-            value += q.getValue();
-        }
-
-        return value;
+    public synchronized double getTotalValue(PlayerStat statType) {
+        return this.getAggregate(statType).getTotal();
     }
 
     /**
@@ -428,14 +610,11 @@ public class PlayerInfo {
      * Get all rows in this PlayerInfo object for the given statistic.
      *
      * @param statType Type of statistic to get the rows for
-     * @return a list of rows or an empty list if this object does not store info about the requested statistic.
+     * @return an unmodifiable list of rows or an empty list if this object does not store info about the requested
+     * statistic.
      */
     public List<Query> getRows(PlayerStat statType) {
-        if (!this.hasDataOfPlayerStat(statType)) {
-            return new ArrayList<>();
-        }
-
-        return this.statistics.get(statType);
+        return this.getDataOfPlayerStat(statType);
     }
 
     /**
@@ -0,0 +1,84 @@
+package me.staartvin.statz.datamanager.player;
+
+import me.staartvin.statz.database.datatype.Query;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running sums of the 'value' column of the rows of a single statistic of a player. Next to the total of all rows,
+ * the sum is kept for every value of every other column (e.g. per world, per mob or per block). This allows the
+ * total of a statistic with a single {@link me.staartvin.statz.database.datatype.RowRequirement} to be looked up
+ * without going over all rows. Values of columns are kept by their text, like
+ * {@link Query#meetsRequirement(me.staartvin.statz.database.datatype.RowRequirement)} compares them.
+ * <br>
+ * <br>
+ * An aggregate is owned by a {@link PlayerInfo} object, which keeps it in sync with its rows. It is not thread-safe
+ * on its own.
+ */
+public class StatAggregate {
+
+    private double total = 0;
+
+    // Sum of the 'value' column, per column name and per value of that column
+    private final Map<String, Map<String, Double>> rollups = new HashMap<>();
+
+    /**
+     * Create an aggregate of the given rows.
+     *
+     * @param rows Rows to aggregate
+     */
+    public StatAggregate(List<Query> rows) {
+        for (Query row : rows) {
+            this.add(row);
+        }
+    }
+
+    /**
+     * Add the value of a row to the aggregate. The row can also be a delta, i.e. an update that is merged into an
+     * existing row.
+     *
+     * @param row Row (or delta) to add
+     */
+    public void add(Query row) {
+        double value = row.getValue();
+
+        total += value;
+
+        for (Map.Entry<String, Object> entry : row.getEntrySet()) {
+            if (entry.getKey().equals("value") || entry.getValue() == null) {
+                continue;
+            }
+
+            rollups.computeIfAbsent(entry.getKey(), column -> new HashMap<>())
+                    .merge(entry.getValue().toString(), value, Double::sum);
+        }
+    }
+
+    /**
+     * Get the sum of the 'value' column of all rows.
+     *
+     * @return sum of all rows.
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the sum of the 'value' column of all rows that have the given value in the given column.
+     *
+     * @param columnName  Name of the column
+     * @param columnValue Value the column should have
+     * @return sum of the rows that have the given value or 0 if there are no such rows.
+     */
+    public double getTotal(String columnName, String columnValue) {
+        Map<String, Double> valuesOfColumn = rollups.get(columnName.toLowerCase());
+
+        if (valuesOfColumn == null) {
+            return 0;
+        }
+
+        return valuesOfColumn.getOrDefault(columnValue, 0.0);
+    }
+}
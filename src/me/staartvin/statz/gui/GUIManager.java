@@ -16,6 +16,8 @@ import org.bukkit.event.Listener;
 import org.bukkit.inventory.Inventory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 /**
  * This class manages the creation and deletion of GUIs. Statz can use GUI's to show data about players.
@@ -124,6 +126,29 @@ public class GUIManager implements Listener {
         return list;
     }
 
+    /**
+     * Show a GUI on the main thread once the data of a player is loaded. If the data could not be loaded, the
+     * viewer is told instead.
+     */
+    private void showWhenLoaded(CompletableFuture<PlayerInfo> loadedData, Player inventoryViewer, UUID targetUUID,
+                                Runnable showInventory) {
+        loadedData.whenComplete((info, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Could not load the data of " + targetUUID + " to show it to "
+                        + inventoryViewer.getName(), error);
+            }
+
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (error != null) {
+                    inventoryViewer.sendMessage(ChatColor.RED + "Could not load the statistics of this player.");
+                    return;
+                }
+
+                showInventory.run();
+            });
+        });
+    }
+
     /**
      * Show a GUI that shows all statistics. Each statistic is shown by an item and is able to be clicked by the player.
      *
@@ -137,8 +162,12 @@ public class GUIManager implements Listener {
 
         PlayerInfo data = plugin.getDataManager().getPlayerInfo(targetUUID);
 
+        // Load the data in the background and show the GUI once it is loaded.
         if (data == null) {
-            data = plugin.getDataManager().loadPlayerData(targetUUID);
+            this.showWhenLoaded(plugin.getDataManager().loadPlayerDataAsync(targetUUID), inventoryViewer,
+                    targetUUID, () -> this.showStatisticsOverviewInventory(inventoryViewer, targetUUID,
+                            targetPlayerName));
+            return;
         }
 
         int count = 0;
@@ -229,8 +258,12 @@ public class GUIManager implements Listener {
 
         PlayerInfo data = plugin.getDataManager().getPlayerInfo(targetUUID, statistic);
 
+        // Load the data in the background and show the GUI once it is loaded.
         if (data == null) {
-            data = plugin.getDataManager().loadPlayerData(targetUUID);
+            this.showWhenLoaded(plugin.getDataManager().loadPlayerDataAsync(targetUUID, statistic), inventoryViewer,
+                    targetUUID, () -> this.showSpecificStatisticInventory(inventoryViewer, targetUUID,
+                            targetPlayerName, statistic));
+            return;
         }
 
         List<Query> results = data.getRows();
@@ -1,676 +1,564 @@
 package me.staartvin.statz.importer;
 
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.jobs.BulkJob;
+import me.staartvin.statz.jobs.JobContext;
+import me.staartvin.statz.jobs.JobManager;
 import me.staartvin.statz.util.StatzUtil;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.Statistic;
 import org.bukkit.World;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.EntityType;
 import org.bukkit.event.entity.EntityDamageEvent;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Objects;
-import java.util.Optional;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class can import data into Statz' database from other plugins. Currently supports Stats3
  * (https://dev.bukkit.org/bukkit-plugins/lolmewnstats/)
+ * <br>
+ * <br>
+ * Statistics files of Minecraft are read in parallel, and every file is only read once. The imported rows are
+ * collected and written to the database in large batches, instead of one update at a time.
  *
  * @author Staartvin
  */
 public class ImportManager {
 
+    /**
+     * Name of the job that imports the statistics of Minecraft.
+     */
+    public static final String IMPORT_JOB_NAME = "import-minecraft";
+
+    // Number of rows that are written to the database in a single transaction
+    private static final int IMPORT_BATCH_SIZE = 5000;
+
     private final Statz plugin;
 
+    // Materials and mobs by their key in a statistics file (e.g. 'minecraft:stone')
+    private Map<String, Material> materialsByKey;
+    private Map<String, EntityType> entitiesByKey;
+
     public ImportManager(Statz plugin) {
         this.plugin = plugin;
     }
 
 
     /**
-     * Import statistics from the vanilla MC statistics data.
+     * Import statistics from the vanilla MC statistics data. The import runs as a job of the {@link JobManager}, so
+     * an import that was interrupted continues with the files that were not imported yet when it is started again.
      *
+     * @param sender Sender that the progress of the import is reported to
      * @return number of players that have been imported.
      */
-    public CompletableFuture<Integer> importFromVanilla() {
-        return CompletableFuture.supplyAsync(() -> {
-
-            int playersImported = 0;
-
-            // Loop over each world, try to read all files in that world
-            for (World world : Bukkit.getWorlds()) {
-                String worldName = world.getName();
-
-                File worldFolder = new File(world.getWorldFolder(), "stats");
+    public CompletableFuture<Integer> importFromVanilla(CommandSender sender) {
+        VanillaImportJob job = new VanillaImportJob();
 
-                // Check if the folder exists
-                if (!worldFolder.exists()) continue;
+        return plugin.getJobManager().startJob(job, sender).thenApply(rows -> job.importedPlayers.get());
+    }
 
-                // Get all files in this folder (each file is a player)
-                File[] playerFiles = worldFolder.listFiles();
+    /**
+     * Read the statistics file of a player and pass the rows to a writer.
+     *
+     * @return true if the file could be read, false otherwise.
+     */
+    private boolean importPlayer(ImportedPlayer player, ImportWriter writer) throws SQLException,
+            InterruptedException {
+        try {
+            player.statistics = VanillaStatistics.read(player.file);
+        } catch (IOException | ParseException e) {
+            plugin.debugMessage("Couldn't read statistics file '" + player.file.getName() + "' on world " +
+                    player.worldName);
+            return false;
+        }
 
-                if (playerFiles == null) continue;
+        // Every statistics file has a custom section, so the file is not valid without one.
+        if (!player.statistics.hasSection(VanillaStatistics.CUSTOM)) {
+            return false;
+        }
 
-                // Loop over each player file
-                for (File playerFile : playerFiles) {
-                    UUID uuid = null;
+        importJoins(player);
+        importDeaths(player);
+        importFishCaught(player);
+        importBlocksPlaced(player);
+        importBlocksBroken(player);
+        importMobsKilled(player);
+        importPlayersKilled(player);
+        importPlaytime(player);
+        importFoodEaten(player);
+        importDamageTaken(player);
+        importDistanceTravelled(player);
+        importItemsCrafted(player);
+        importArrowsShot(player);
+        importToolsBroken(player);
+        importBedsEntered(player);
+        importEggsThrown(player);
+        importItemsPickedUp(player);
+        importItemsDropped(player);
+        importVillageTrades(player);
 
-                    // Try to obtain the UUID of the player associated with the file
-                    try {
-                        uuid = UUID.fromString(
-                                playerFile.getName()
-                                        .replace("[Conflict]", "")
-                                        .replace(".json", "")
-                        );
-                    } catch (IllegalArgumentException e) {
-                        plugin.debugMessage("Couldn't read statistics file '" + playerFile.getName() +
-                                "' ¶on world" + world.getName());
-                        continue;
-                    }
+        writer.add(player.getCheckpoint(), player.rows);
 
-                    if (uuid == null) continue;
-
-                    // If we have a valid UUID, make sure to load the data.
-                    PlayerInfo info = new PlayerInfo(uuid);
-
-                    importJoins(info, worldName);
-                    importDeaths(info, worldName);
-                    importFishCaught(info, worldName);
-                    importBlocksPlaced(info, worldName);
-                    importBlocksBroken(info, worldName);
-                    importMobsKilled(info, worldName);
-                    importPlayersKilled(info, worldName);
-                    importPlaytime(info, worldName);
-                    importFoodEaten(info, worldName);
-                    importDamageTaken(info, worldName);
-                    importDistanceTravelled(info, worldName);
-                    importItemsCrafted(info, worldName);
-                    importArrowsShot(info, worldName);
-                    importToolsBroken(info, worldName);
-                    importBedsEntered(info, worldName);
-                    importEggsThrown(info, worldName);
-                    importItemsPickedUp(info, worldName);
-                    importItemsDropped(info, worldName);
-                    importVillageTrades(info, worldName);
-
-                    plugin.getDataManager().setPlayerInfo(info);
-                    playersImported++;
-                }
-            }
+        // The rows have been handed to the writer, so they do not need to be kept.
+        player.statistics = null;
+        player.rows = null;
 
-            return playersImported;
-        });
+        return true;
     }
 
-    private void importJoins(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long joins = (Long) getStatistic(object.get(), Statistic.LEAVE_GAME.getKey().toString())
-                .orElse(0L);
+    private void importJoins(ImportedPlayer player) {
+        long joins = getCustomStatistic(player, Statistic.LEAVE_GAME);
 
         if (joins <= 0) return;
 
-        playerInfo.addRow(PlayerStat.JOINS,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", joins));
+        player.addRow(PlayerStat.JOINS,
+                StatzUtil.makeQuery(player.uuid, "value", joins));
     }
 
-    private void importDeaths(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long deaths = (Long) getStatistic(object.get(), Statistic.DEATHS.getKey().toString())
-                .orElse(0L);
+    private void importDeaths(ImportedPlayer player) {
+        long deaths = getCustomStatistic(player, Statistic.DEATHS);
 
         if (deaths <= 0) return;
 
-        playerInfo.addRow(PlayerStat.DEATHS, StatzUtil.makeQuery(playerInfo.getUUID(),
-                "value", deaths, "world", worldName));
+        player.addRow(PlayerStat.DEATHS, StatzUtil.makeQuery(player.uuid,
+                "value", deaths, "world", player.worldName));
     }
 
-    private void importFishCaught(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long caught = (Long) getStatistic(object.get(), Statistic.FISH_CAUGHT.getKey().toString())
-                .orElse(0L);
+    private void importFishCaught(ImportedPlayer player) {
+        long caught = getCustomStatistic(player, Statistic.FISH_CAUGHT);
 
         if (caught <= 0) return;
 
-        playerInfo.addRow(PlayerStat.ITEMS_CAUGHT,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", caught, "world",
-                        worldName, "caught", Material.TROPICAL_FISH));
+        player.addRow(PlayerStat.ITEMS_CAUGHT,
+                StatzUtil.makeQuery(player.uuid, "value", caught, "world",
+                        player.worldName, "caught", Material.TROPICAL_FISH));
     }
 
-    private void importBlocksPlaced(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        Optional<JSONObject> placedSection = getUsedSection(playerInfo.getUUID(), worldName);
+    private void importBlocksPlaced(ImportedPlayer player) {
+        for (Map.Entry<String, Long> placed : player.statistics.getSection(VanillaStatistics.USED).entrySet()) {
+            Material material = materialsByKey.get(placed.getKey());
 
-        if (!placedSection.isPresent()) return;
+            if (material == null || !material.isBlock() || placed.getValue() <= 0) continue;
 
-        for (Material material : Material.values()) {
-            if (material.isBlock()) {
-
-                long placed = (Long) getStatistic(placedSection.get(), material.getKey().toString()).orElse(0L);
-
-                if (placed <= 0) continue;
-
-                playerInfo.addRow(PlayerStat.BLOCKS_PLACED,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", placed, "world",
-                                worldName, "block", material));
-            }
+            player.addRow(PlayerStat.BLOCKS_PLACED,
+                    StatzUtil.makeQuery(player.uuid, "value", placed.getValue(), "world",
+                            player.worldName, "block", material));
         }
     }
 
-    private void importBlocksBroken(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
+    private void importBlocksBroken(ImportedPlayer player) {
+        for (Map.Entry<String, Long> broken : player.statistics.getSection(VanillaStatistics.MINED).entrySet()) {
+            Material material = materialsByKey.get(broken.getKey());
 
-        Optional<JSONObject> minedSection = getMinedSection(playerInfo.getUUID(), worldName);
+            if (material == null || !material.isBlock() || broken.getValue() <= 0) continue;
 
-        if (!minedSection.isPresent()) return;
-
-        for (Material material : Material.values()) {
-            if (material.isBlock()) {
-
-                long broken = (Long) getStatistic(minedSection.get(), material.getKey().toString()).orElse(0L);
-
-                if (broken <= 0) continue;
-
-                playerInfo.addRow(PlayerStat.BLOCKS_BROKEN,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", broken, "world",
-                                worldName, "block", material));
-            }
+            player.addRow(PlayerStat.BLOCKS_BROKEN,
+                    StatzUtil.makeQuery(player.uuid, "value", broken.getValue(), "world",
+                            player.worldName, "block", material));
         }
     }
 
-    private void importMobsKilled(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        Optional<JSONObject> killedSection = getKilledSection(playerInfo.getUUID(), worldName);
-
-        if (!killedSection.isPresent()) return;
-
-        for (EntityType entityType : EntityType.values()) {
-
-            if (entityType.isSpawnable()) {
-                long killed = (Long) getStatistic(killedSection.get(), entityType.getKey().toString()).orElse(0L);
+    private void importMobsKilled(ImportedPlayer player) {
+        for (Map.Entry<String, Long> killed : player.statistics.getSection(VanillaStatistics.KILLED).entrySet()) {
+            EntityType entityType = entitiesByKey.get(killed.getKey());
 
-                if (killed <= 0) continue;
+            if (entityType == null || killed.getValue() <= 0) continue;
 
-                playerInfo.addRow(PlayerStat.KILLS_MOBS,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", killed, "world",
-                                worldName, "weapon", "HAND", "mob", entityType.toString()));
-            }
+            player.addRow(PlayerStat.KILLS_MOBS,
+                    StatzUtil.makeQuery(player.uuid, "value", killed.getValue(), "world",
+                            player.worldName, "weapon", "HAND", "mob", entityType.toString()));
         }
     }
 
-    private void importPlayersKilled(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long playersKilled = (Long) getStatistic(object.get(), Statistic.PLAYER_KILLS.getKey().toString())
-                .orElse(0L);
+    private void importPlayersKilled(ImportedPlayer player) {
+        long playersKilled = getCustomStatistic(player, Statistic.PLAYER_KILLS);
 
         if (playersKilled <= 0) return;
 
-        playerInfo.addRow(PlayerStat.KILLS_PLAYERS,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", playersKilled, "world",
-                        worldName, "playerKilled", "Notch"));
+        player.addRow(PlayerStat.KILLS_PLAYERS,
+                StatzUtil.makeQuery(player.uuid, "value", playersKilled, "world",
+                        player.worldName, "playerKilled", "Notch"));
     }
 
-    private void importPlaytime(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long ticksPlayed = (Long) getStatistic(object.get(), Statistic.PLAY_ONE_MINUTE.getKey().toString())
-                .orElse(0L);
+    private void importPlaytime(ImportedPlayer player) {
+        long ticksPlayed = getCustomStatistic(player, Statistic.PLAY_ONE_MINUTE);
 
         if (ticksPlayed <= 0) return;
 
-        playerInfo.addRow(PlayerStat.TIME_PLAYED,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", ticksPlayed / (20 * 60), "world",
-                        worldName));
+        player.addRow(PlayerStat.TIME_PLAYED,
+                StatzUtil.makeQuery(player.uuid, "value", ticksPlayed / (20 * 60), "world",
+                        player.worldName));
     }
 
-    private void importFoodEaten(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        Optional<JSONObject> foodSection = getUsedSection(playerInfo.getUUID(), worldName);
-
-        if (!foodSection.isPresent()) return;
-
-        for (Material material : Material.values()) {
-            if (material.isEdible()) {
-
-                long eaten = (Long) getStatistic(foodSection.get(), material.getKey().toString()).orElse(0L);
+    private void importFoodEaten(ImportedPlayer player) {
+        for (Map.Entry<String, Long> eaten : player.statistics.getSection(VanillaStatistics.USED).entrySet()) {
+            Material material = materialsByKey.get(eaten.getKey());
 
-                if (eaten <= 0) continue;
+            if (material == null || !material.isEdible() || eaten.getValue() <= 0) continue;
 
-                playerInfo.addRow(PlayerStat.FOOD_EATEN,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", eaten, "world",
-                                worldName, "foodEaten", material));
-            }
+            player.addRow(PlayerStat.FOOD_EATEN,
+                    StatzUtil.makeQuery(player.uuid, "value", eaten.getValue(), "world",
+                            player.worldName, "foodEaten", material));
         }
     }
 
-    private void importDamageTaken(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long damageTaken = (Long) getStatistic(object.get(), Statistic.DAMAGE_TAKEN.getKey().toString())
-                .orElse(0L);
+    private void importDamageTaken(ImportedPlayer player) {
+        long damageTaken = getCustomStatistic(player, Statistic.DAMAGE_TAKEN);
 
         if (damageTaken <= 0) return;
 
-        playerInfo.addRow(PlayerStat.DAMAGE_TAKEN,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", damageTaken, "world",
-                        worldName, "cause", EntityDamageEvent.DamageCause.ENTITY_ATTACK));
+        player.addRow(PlayerStat.DAMAGE_TAKEN,
+                StatzUtil.makeQuery(player.uuid, "value", damageTaken, "world",
+                        player.worldName, "cause", EntityDamageEvent.DamageCause.ENTITY_ATTACK));
     }
 
-    private void importDistanceTravelled(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
-
-        long moved = (Long) getStatistic(object.get(), Statistic.WALK_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
-
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType", "WALK"));
-        }
+    private void importDistanceTravelled(ImportedPlayer player) {
+        importDistance(player, Statistic.WALK_ONE_CM, "WALK");
+        importDistance(player, Statistic.SWIM_ONE_CM, "SWIM");
+        importDistance(player, Statistic.FLY_ONE_CM, "FLY WITH ELYTRA");
+        importDistance(player, Statistic.BOAT_ONE_CM, "BOAT");
+        importDistance(player, Statistic.MINECART_ONE_CM, "MINECART");
+        importDistance(player, Statistic.HORSE_ONE_CM, "HORSE");
+        importDistance(player, Statistic.PIG_ONE_CM, "PIG");
+    }
 
-        moved = (Long) getStatistic(object.get(), Statistic.SWIM_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+    private void importDistance(ImportedPlayer player, Statistic statistic, String moveType) {
+        long moved = getCustomStatistic(player, statistic) / 100L;
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "SWIM"));
-        }
+        if (moved <= 0) return;
 
-        moved = (Long) getStatistic(object.get(), Statistic.FLY_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+        player.addRow(PlayerStat.DISTANCE_TRAVELLED,
+                StatzUtil.makeQuery(player.uuid, "value", moved, "world",
+                        player.worldName, "moveType", moveType));
+    }
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "FLY WITH ELYTRA"));
-        }
+    private void importItemsCrafted(ImportedPlayer player) {
+        for (Map.Entry<String, Long> crafted : player.statistics.getSection(VanillaStatistics.CRAFTED).entrySet()) {
+            Material material = materialsByKey.get(crafted.getKey());
 
-        moved = (Long) getStatistic(object.get(), Statistic.BOAT_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+            if (material == null || !material.isItem() || crafted.getValue() <= 0) continue;
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "BOAT"));
+            player.addRow(PlayerStat.ITEMS_CRAFTED,
+                    StatzUtil.makeQuery(player.uuid, "value", crafted.getValue(), "world",
+                            player.worldName, "item", material));
         }
+    }
 
-        moved = (Long) getStatistic(object.get(), Statistic.MINECART_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+    private void importArrowsShot(ImportedPlayer player) {
+        long bowUsed = player.statistics.getStatistic(VanillaStatistics.USED, Material.BOW.getKey().toString());
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "MINECART"));
-        }
+        if (bowUsed <= 0) return;
 
-        moved = (Long) getStatistic(object.get(), Statistic.HORSE_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+        player.addRow(PlayerStat.ARROWS_SHOT,
+                StatzUtil.makeQuery(player.uuid, "value", bowUsed, "world",
+                        player.worldName));
+    }
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "HORSE"));
-        }
+    private void importBedsEntered(ImportedPlayer player) {
+        long bedsEntered = getCustomStatistic(player, Statistic.SLEEP_IN_BED);
 
-        moved = (Long) getStatistic(object.get(), Statistic.PIG_ONE_CM.getKey().toString())
-                .orElse(0L) / 100L;
+        if (bedsEntered <= 0) return;
 
-        if (moved > 0) {
-            playerInfo.addRow(PlayerStat.DISTANCE_TRAVELLED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", moved, "world",
-                            worldName, "moveType",
-                            "PIG"));
-        }
+        player.addRow(PlayerStat.ENTERED_BEDS,
+                StatzUtil.makeQuery(player.uuid, "value", bedsEntered, "world",
+                        player.worldName));
     }
 
-    private void importItemsCrafted(PlayerInfo playerInfo, String worldName) {
+    private void importToolsBroken(ImportedPlayer player) {
+        for (Map.Entry<String, Long> broken : player.statistics.getSection(VanillaStatistics.BROKEN).entrySet()) {
+            Material material = materialsByKey.get(broken.getKey());
 
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
+            if (material == null || !material.isItem() || broken.getValue() <= 0) continue;
 
-        if (!object.isPresent()) {
-            return;
+            player.addRow(PlayerStat.TOOLS_BROKEN,
+                    StatzUtil.makeQuery(player.uuid, "value", broken.getValue(), "world",
+                            player.worldName, "item", material));
         }
+    }
 
-        Optional<JSONObject> craftedSection = getCraftedSection(playerInfo.getUUID(), worldName);
+    private void importEggsThrown(ImportedPlayer player) {
+        long eggsThrown = player.statistics.getStatistic(VanillaStatistics.USED, Material.EGG.getKey().toString());
 
-        if (!craftedSection.isPresent()) return;
+        if (eggsThrown <= 0) return;
 
-        for (Material material : Material.values()) {
-            if (material.isItem()) {
+        player.addRow(PlayerStat.EGGS_THROWN,
+                StatzUtil.makeQuery(player.uuid, "value", eggsThrown, "world",
+                        player.worldName));
+    }
 
-                long itemsCrafted = (Long) getStatistic(craftedSection.get(), material.getKey().toString()).orElse(0L);
+    private void importItemsDropped(ImportedPlayer player) {
+        for (Map.Entry<String, Long> dropped : player.statistics.getSection(VanillaStatistics.DROPPED).entrySet()) {
+            Material material = materialsByKey.get(dropped.getKey());
 
-                if (itemsCrafted <= 0) continue;
+            if (material == null || dropped.getValue() <= 0) continue;
 
-                playerInfo.addRow(PlayerStat.ITEMS_CRAFTED,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", itemsCrafted, "world",
-                                worldName, "item", material));
-            }
+            player.addRow(PlayerStat.ITEMS_DROPPED,
+                    StatzUtil.makeQuery(player.uuid, "value", dropped.getValue(), "world",
+                            player.worldName, "item", material));
         }
     }
 
-    private void importArrowsShot(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
-        }
+    private void importItemsPickedUp(ImportedPlayer player) {
+        for (Map.Entry<String, Long> pickedUp : player.statistics.getSection(VanillaStatistics.PICKED_UP)
+                .entrySet()) {
+            Material material = materialsByKey.get(pickedUp.getKey());
 
-        Optional<JSONObject> usedSection = getUsedSection(playerInfo.getUUID(), worldName);
+            if (material == null || pickedUp.getValue() <= 0) continue;
 
-        if (!usedSection.isPresent()) return;
-
-        long bowUsed = (Long) getStatistic(usedSection.get(), Material.BOW.getKey().toString()).orElse(0L);
-
-        if (bowUsed <= 0) return;
-
-        playerInfo.addRow(PlayerStat.ARROWS_SHOT,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", bowUsed, "world",
-                        worldName));
-    }
-
-    private void importBedsEntered(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
-
-        if (!object.isPresent()) {
-            return;
+            player.addRow(PlayerStat.ITEMS_PICKED_UP,
+                    StatzUtil.makeQuery(player.uuid, "value", pickedUp.getValue(), "world",
+                            player.worldName, "item", material));
         }
+    }
 
-        long bedsEntered =
-                (Long) getStatistic(object.get(), Statistic.SLEEP_IN_BED.getKey().toString()).orElse(0L);
+    private void importVillageTrades(ImportedPlayer player) {
+        long traded = getCustomStatistic(player, Statistic.TRADED_WITH_VILLAGER);
 
-        if (bedsEntered <= 0) return;
+        if (traded <= 0) return;
 
-        playerInfo.addRow(PlayerStat.ENTERED_BEDS,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", bedsEntered, "world",
-                        worldName));
+        player.addRow(PlayerStat.VILLAGER_TRADES,
+                StatzUtil.makeQuery(player.uuid, "value", traded, "world",
+                        player.worldName, "trade", Material.STICK));
     }
 
-    private void importToolsBroken(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
+    private static long getCustomStatistic(ImportedPlayer player, Statistic statistic) {
+        return player.statistics.getStatistic(VanillaStatistics.CUSTOM, statistic.getKey().toString());
+    }
 
-        if (!object.isPresent()) {
+    /**
+     * Look up the key of every material and mob once, so a statistic can be matched by its key instead of going
+     * over all materials for every player.
+     */
+    private void loadKeys() {
+        if (materialsByKey != null) {
             return;
         }
 
-        Optional<JSONObject> brokenSection = getBrokenSection(playerInfo.getUUID(), worldName);
-
-        if (!brokenSection.isPresent()) return;
+        Map<String, Material> materials = new HashMap<>();
+        Map<String, EntityType> entities = new HashMap<>();
 
         for (Material material : Material.values()) {
-            if (material.isItem()) {
-
-                long broken = (Long) getStatistic(brokenSection.get(), material.getKey().toString()).orElse(0L);
-
-                if (broken <= 0) continue;
-
-                playerInfo.addRow(PlayerStat.TOOLS_BROKEN,
-                        StatzUtil.makeQuery(playerInfo.getUUID(), "value", broken, "world",
-                                worldName, "item", material));
+            // Legacy materials do not have a key.
+            if (!material.isLegacy()) {
+                materials.put(material.getKey().toString(), material);
             }
         }
-    }
-
-    private void importEggsThrown(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
 
-        if (!object.isPresent()) {
-            return;
+        for (EntityType entityType : EntityType.values()) {
+            if (entityType.isSpawnable()) {
+                entities.put(entityType.getKey().toString(), entityType);
+            }
         }
 
-        Optional<JSONObject> usedSection = getUsedSection(playerInfo.getUUID(), worldName);
-
-        if (!usedSection.isPresent()) return;
-
-        long eggsThrown = (Long) getStatistic(usedSection.get(), Material.EGG.getKey().toString()).orElse(0L);
+        entitiesByKey = entities;
+        materialsByKey = materials;
+    }
 
-        if (eggsThrown <= 0) return;
+    /**
+     * A statistics file of a player in a world, and the rows that are imported from it.
+     */
+    private static class ImportedPlayer {
 
-        playerInfo.addRow(PlayerStat.EGGS_THROWN,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", eggsThrown, "world",
-                        worldName));
-    }
+        private final UUID uuid;
+        private final String worldName;
+        private final File file;
 
-    private void importItemsDropped(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
+        private VanillaStatistics statistics;
+        private Map<PlayerStat, List<Query>> rows = new EnumMap<>(PlayerStat.class);
 
-        if (!object.isPresent()) {
-            return;
+        private ImportedPlayer(UUID uuid, String worldName, File file) {
+            this.uuid = uuid;
+            this.worldName = worldName;
+            this.file = file;
         }
 
-        Optional<JSONObject> droppedSection = getDroppedSection(playerInfo.getUUID(), worldName);
+        private void addRow(PlayerStat statType, Query row) {
+            rows.computeIfAbsent(statType, stat -> new ArrayList<>()).add(row);
+        }
 
-        if (!droppedSection.isPresent()) return;
+        // Name of the checkpoint that is stored once the rows of the file have been written
+        private String getCheckpoint() {
+            return "file:" + worldName + "/" + file.getName();
+        }
+    }
 
-        for (Material material : Material.values()) {
-            long dropped = (Long) getStatistic(droppedSection.get(), material.getKey().toString()).orElse(0L);
+    /**
+     * Imports the statistics files of all worlds. Every file is a checkpoint of the job, which is stored in the same
+     * transaction as the rows of the file, so files that have a checkpoint are skipped when the import continues.
+     */
+    private class VanillaImportJob implements BulkJob {
 
-            if (dropped <= 0) continue;
+        private final AtomicInteger importedPlayers = new AtomicInteger();
 
-            playerInfo.addRow(PlayerStat.ITEMS_DROPPED,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", dropped, "world",
-                            worldName, "item", material));
+        @Override
+        public String getName() {
+            return IMPORT_JOB_NAME;
         }
-    }
-
-    private void importItemsPickedUp(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
 
-        if (!object.isPresent()) {
-            return;
+        @Override
+        public String getDescription() {
+            return "Importing Minecraft statistics";
         }
 
-        Optional<JSONObject> pickedUpSection = getPickedUpSection(playerInfo.getUUID(), worldName);
+        @Override
+        public void run(JobContext context) throws Exception {
+            List<ImportedPlayer> players = new ArrayList<>();
 
-        if (!pickedUpSection.isPresent()) return;
+            // Loop over each world, try to read all files in that world
+            for (World world : Bukkit.getWorlds()) {
+                String worldName = world.getName();
 
-        for (Material material : Material.values()) {
+                File worldFolder = new File(world.getWorldFolder(), "stats");
 
-            long pickedUp = (Long) getStatistic(pickedUpSection.get(), material.getKey().toString()).orElse(0L);
+                // Check if the folder exists
+                if (!worldFolder.exists()) continue;
 
-            if (pickedUp <= 0) continue;
+                // Get all files in this folder (each file is a player)
+                File[] playerFiles = worldFolder.listFiles();
 
-            playerInfo.addRow(PlayerStat.ITEMS_PICKED_UP,
-                    StatzUtil.makeQuery(playerInfo.getUUID(), "value", pickedUp, "world",
-                            worldName, "item", material));
-        }
-    }
+                if (playerFiles == null) continue;
 
-    private void importVillageTrades(PlayerInfo playerInfo, String worldName) {
-        Optional<JSONObject> object = getCustomSection(playerInfo.getUUID(), worldName);
+                // Loop over each player file
+                for (File playerFile : playerFiles) {
+                    UUID uuid;
 
-        if (!object.isPresent()) {
-            return;
-        }
+                    // Try to obtain the UUID of the player associated with the file
+                    try {
+                        uuid = UUID.fromString(
+                                playerFile.getName()
+                                        .replace("[Conflict]", "")
+                                        .replace(".json", "")
+                        );
+                    } catch (IllegalArgumentException e) {
+                        plugin.debugMessage("Couldn't read statistics file '" + playerFile.getName() +
+                                "' on world " + world.getName());
+                        continue;
+                    }
 
-        long traded =
-                (Long) getStatistic(object.get(), Statistic.TRADED_WITH_VILLAGER.getKey().toString()).orElse(0L);
+                    players.add(new ImportedPlayer(uuid, worldName, playerFile));
+                }
+            }
 
-        if (traded <= 0) return;
+            context.addTotalWork(players.size());
 
-        playerInfo.addRow(PlayerStat.VILLAGER_TRADES,
-                StatzUtil.makeQuery(playerInfo.getUUID(), "value", traded, "world",
-                        worldName, "trade", Material.STICK));
-    }
+            loadKeys();
 
-    private Optional<JSONObject> getUserStatisticsFile(UUID uuid, String worldName)
-            throws IOException, ParseException {
-        Objects.requireNonNull(uuid);
-        Objects.requireNonNull(worldName);
+            ImportWriter writer = new ImportWriter(context);
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
-        World world = Bukkit.getWorld(worldName);
+            try {
+                // Read the files in parallel. Full batches are written by the thread that filled them.
+                pool.submit(() -> players.parallelStream().forEach(player -> {
+                    if (context.hasCheckpoint(player.getCheckpoint())) {
+                        // The file was imported before the import was interrupted.
+                        context.skipWork(1);
+                        return;
+                    }
 
-        if (world == null) return Optional.empty();
+                    try {
+                        if (importPlayer(player, writer)) {
+                            importedPlayers.incrementAndGet();
+                        }
+                    } catch (SQLException | InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
 
-        File worldFolder = new File(world.getWorldFolder(), "stats");
-        File playerStatistics = new File(worldFolder, uuid.toString() + ".json");
+                    context.completeWork(1);
+                })).get();
 
-        if (!playerStatistics.exists()) {
-            return Optional.empty();
+                writer.flush();
+            } finally {
+                pool.shutdown();
+            }
         }
+    }
 
-        JSONObject rootObject = (JSONObject) new JSONParser().parse(new FileReader(playerStatistics));
-
-        if (rootObject == null) return Optional.empty();
+    /**
+     * Collects imported rows and writes them to the database once there are {@link #IMPORT_BATCH_SIZE} rows. The
+     * rows of a batch are written in a single transaction, together with the checkpoints of the files they were
+     * read from.
+     */
+    private class ImportWriter {
 
-        if (rootObject.containsKey("stats")) {
-            return Optional.ofNullable((JSONObject) rootObject.get("stats"));
-        }
+        private final JobContext context;
 
-        return Optional.empty();
-    }
+        private Map<PlayerStat, List<Query>> pendingRows = new EnumMap<>(PlayerStat.class);
+        private Map<String, String> pendingCheckpoints = new HashMap<>();
+        private int pendingRowCount;
 
-    private Optional<JSONObject> getCustomSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:custom");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
+        private ImportWriter(JobContext context) {
+            this.context = context;
         }
-    }
 
-    private Optional<JSONObject> getMinedSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:mined");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+        private void add(String checkpoint, Map<PlayerStat, List<Query>> rows) throws SQLException,
+                InterruptedException {
+            Map<PlayerStat, List<Query>> batch = null;
+            Map<String, String> checkpoints = null;
 
-    private Optional<JSONObject> getUsedSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:used");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+            synchronized (this) {
+                for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+                    pendingRows.computeIfAbsent(entry.getKey(), stat -> new ArrayList<>()).addAll(entry.getValue());
+                    pendingRowCount += entry.getValue().size();
+                }
 
-    private Optional<JSONObject> getPickedUpSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:picked_up");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+                pendingCheckpoints.put(checkpoint, "done");
 
-    private Optional<JSONObject> getKilledBySection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:killed_by");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+                if (pendingRowCount >= IMPORT_BATCH_SIZE) {
+                    batch = pendingRows;
+                    checkpoints = pendingCheckpoints;
 
-    private Optional<JSONObject> getKilledSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:killed");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+                    this.clear();
+                }
+            }
 
-    private Optional<JSONObject> getCraftedSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:crafted");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
+            // Write outside of the lock, so other threads can keep reading files.
+            if (batch != null) {
+                this.write(batch, checkpoints);
+            }
         }
-    }
 
-    private Optional<JSONObject> getDroppedSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:dropped");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+        private void flush() throws SQLException, InterruptedException {
+            Map<PlayerStat, List<Query>> batch;
+            Map<String, String> checkpoints;
 
-    private Optional<JSONObject> getBrokenSection(UUID uuid, String worldName) {
-        try {
-            return getStatisticSubsection(getUserStatisticsFile(uuid, worldName).orElse(null), "minecraft:broken");
-        } catch (IOException | ParseException e) {
-            return Optional.empty();
-        }
-    }
+            synchronized (this) {
+                batch = pendingRows;
+                checkpoints = pendingCheckpoints;
 
-    private Optional<JSONObject> getStatisticSubsection(JSONObject statsSection, String path) {
-        if (statsSection == null) return Optional.empty();
+                this.clear();
+            }
 
-        return Optional.ofNullable((JSONObject) this.getStatistic(statsSection,
-                path).orElse(null));
-    }
+            this.write(batch, checkpoints);
+        }
 
-    private Optional<Object> getStatistic(JSONObject root, String path) {
-        if (root == null) return Optional.empty();
+        private void clear() {
+            pendingRows = new EnumMap<>(PlayerStat.class);
+            pendingCheckpoints = new HashMap<>();
+            pendingRowCount = 0;
+        }
 
-        if (!root.containsKey(path)) return Optional.empty();
+        private void write(Map<PlayerStat, List<Query>> batch, Map<String, String> checkpoints) throws
+                SQLException, InterruptedException {
+            context.write(batch, checkpoints);
 
-        return Optional.ofNullable(root.get(path));
+            plugin.debugMessage("Imported statistics files of " + checkpoints.size() + " players");
+        }
     }
-
 }
@@ -0,0 +1,173 @@
+package me.staartvin.statz.importer;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statistics of a player as stored by Minecraft in the 'stats' folder of a world. The file is read once with a
+ * streaming parser that only keeps the numbers of the 'stats' object, so no tree of JSON objects is built and the
+ * rest of the file is not read.
+ * <br>
+ * <br>
+ * Statistics are grouped in sections (e.g. 'minecraft:mined'), and each section maps a key (e.g.
+ * 'minecraft:stone') to a number.
+ */
+public class VanillaStatistics {
+
+    public static final String CUSTOM = "minecraft:custom";
+    public static final String MINED = "minecraft:mined";
+    public static final String USED = "minecraft:used";
+    public static final String CRAFTED = "minecraft:crafted";
+    public static final String BROKEN = "minecraft:broken";
+    public static final String PICKED_UP = "minecraft:picked_up";
+    public static final String DROPPED = "minecraft:dropped";
+    public static final String KILLED = "minecraft:killed";
+    public static final String KILLED_BY = "minecraft:killed_by";
+
+    private final Map<String, Map<String, Long>> sections = new HashMap<>();
+
+    /**
+     * Read the statistics file of a player.
+     *
+     * @param file File to read
+     * @return the statistics in the file.
+     * @throws IOException    if the file could not be read.
+     * @throws ParseException if the file is not valid JSON.
+     */
+    public static VanillaStatistics read(File file) throws IOException, ParseException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Read statistics in the format of a statistics file. The reader is not closed.
+     *
+     * @param reader Reader of the JSON text
+     * @return the statistics that were read.
+     * @throws IOException    if the text could not be read.
+     * @throws ParseException if the text is not valid JSON.
+     */
+    public static VanillaStatistics read(Reader reader) throws IOException, ParseException {
+        VanillaStatistics statistics = new VanillaStatistics();
+
+        new JSONParser().parse(reader, statistics.new StatisticsHandler());
+
+        return statistics;
+    }
+
+    /**
+     * Check whether the statistics contain a section.
+     *
+     * @param section Name of the section
+     * @return true if the section was in the file.
+     */
+    public boolean hasSection(String section) {
+        return sections.containsKey(section);
+    }
+
+    /**
+     * Get all statistics of a section.
+     *
+     * @param section Name of the section
+     * @return a map of each key to its number, or an empty map if the section was not in the file.
+     */
+    public Map<String, Long> getSection(String section) {
+        return Collections.unmodifiableMap(sections.getOrDefault(section, Collections.emptyMap()));
+    }
+
+    /**
+     * Get a single statistic.
+     *
+     * @param section Name of the section
+     * @param key     Key of the statistic in the section
+     * @return the number of the statistic or 0 if it was not in the file.
+     */
+    public long getStatistic(String section, String key) {
+        return sections.getOrDefault(section, Collections.emptyMap()).getOrDefault(key, 0L);
+    }
+
+    /**
+     * Receives the parts of the JSON text from the parser and only stores numbers that are found at
+     * stats.section.key.
+     */
+    private class StatisticsHandler implements ContentHandler {
+
+        // Keys of the entries that are currently open, from the root to the current entry
+        private final List<String> keys = new ArrayList<>();
+
+        // Number of objects and arrays that are currently open
+        private int depth;
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            depth++;
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            depth--;
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            keys.add(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            String key = keys.remove(keys.size() - 1);
+
+            // Stop reading once the stats object has been read.
+            return !(keys.isEmpty() && key.equals("stats"));
+        }
+
+        @Override
+        public boolean startArray() {
+            depth++;
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            depth--;
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (depth == 3 && keys.size() == 3 && keys.get(0).equals("stats") && value instanceof Number) {
+                sections.computeIfAbsent(keys.get(1), section -> new HashMap<>())
+                        .put(keys.get(2), ((Number) value).longValue());
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package me.staartvin.statz.jobs;
+
+/**
+ * A job that writes a large amount of data to the database of Statz, such as an import or a transfer. A job is run
+ * by the {@link JobManager}, which keeps track of its progress and stores its checkpoints.
+ * <br>
+ * <br>
+ * A job divides its work into parts that each have a checkpoint (e.g. a file or a range of rows of a table). The
+ * rows of a part are written together with its checkpoint (see {@link JobContext#write}), so a part is either
+ * written completely or not at all. When a job is interrupted (e.g. by a restart), it skips the parts that have a
+ * checkpoint when it is started again, so no value is added twice.
+ */
+public interface BulkJob {
+
+    /**
+     * Get the name of the job. Checkpoints are stored under this name, so a job continues the work of an earlier
+     * job with the same name.
+     *
+     * @return name of the job.
+     */
+    String getName();
+
+    /**
+     * Get a description of what the job does, which is shown when its progress is reported.
+     *
+     * @return a description of the job.
+     */
+    String getDescription();
+
+    /**
+     * Do the work of the job. This is called on a thread other than the main thread.
+     *
+     * @param context Context of the job, which gives access to its checkpoints
+     * @throws Exception if the job could not be finished. The checkpoints of the job are kept, so it can continue
+     *                   later.
+     */
+    void run(JobContext context) throws Exception;
+}
@@ -0,0 +1,277 @@
+package me.staartvin.statz.jobs;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.util.StatzUtil;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a {@link BulkJob} while it is running. It gives the job access to the checkpoints of earlier runs,
+ * writes rows together with new checkpoints, limits the number of rows that are written per second and keeps track
+ * of the progress of the job.
+ * <br>
+ * <br>
+ * All methods can be called from multiple threads at the same time.
+ */
+public class JobContext {
+
+    private final Statz plugin;
+    private final BulkJob job;
+    private final CommandSender sender;
+
+    // Position of every checkpoint of the job, by the name of the checkpoint
+    private final Map<String, String> checkpoints;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final AtomicLong totalWork = new AtomicLong();
+    private final AtomicLong completedWork = new AtomicLong();
+    private final AtomicLong skippedWork = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+
+    JobContext(Statz plugin, BulkJob job, CommandSender sender, Map<String, String> checkpoints) {
+        this.plugin = plugin;
+        this.job = job;
+        this.sender = sender;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Get the position that was stored with a checkpoint.
+     *
+     * @param checkpoint Name of the checkpoint
+     * @return the position of the checkpoint, or null if the job has not reached the checkpoint yet.
+     */
+    public String getCheckpoint(String checkpoint) {
+        return checkpoints.get(checkpoint);
+    }
+
+    /**
+     * Check whether the job has reached a checkpoint in this or an earlier run.
+     *
+     * @param checkpoint Name of the checkpoint
+     * @return true if the checkpoint has been stored.
+     */
+    public boolean hasCheckpoint(String checkpoint) {
+        return checkpoints.containsKey(checkpoint);
+    }
+
+    /**
+     * Add values to the database and store checkpoints in the same transaction. The rows are also added to loaded
+     * leaderboards and cached players, like the updates of the update pool. When the job writes rows faster than
+     * 'bulk jobs.rows per second', this method waits before it returns.
+     *
+     * @param rows        Rows to add per statistic
+     * @param checkpoints Checkpoints that are reached once the rows are written, with their position
+     * @throws SQLException         if the rows could not be written. The checkpoints are not stored in that case.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public void write(Map<PlayerStat, List<Query>> rows, Map<String, String> checkpoints) throws SQLException,
+            InterruptedException {
+        this.write(rows, Collections.emptyList(), checkpoints);
+    }
+
+    /**
+     * Add values to the database like {@link #write(Map, Map)}, and perform other statements in the same
+     * transaction, e.g. to copy rows of a table that does not belong to a statistic.
+     *
+     * @param rows        Rows to add per statistic
+     * @param statements  Statements to perform together with the rows
+     * @param checkpoints Checkpoints that are reached once the rows are written, with their position
+     * @throws SQLException         if the rows could not be written. The checkpoints are not stored in that case.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public void write(Map<PlayerStat, List<Query>> rows, List<String> statements, Map<String, String> checkpoints)
+            throws SQLException, InterruptedException {
+        Map<Table, List<Query>> batches = new LinkedHashMap<>();
+        int rowCount = 0;
+
+        for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+            Table table = DatabaseConnector.getTable(entry.getKey());
+
+            if (table == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+
+            batches.put(table, entry.getValue());
+            rowCount += entry.getValue().size();
+        }
+
+        if (batches.isEmpty() && statements.isEmpty() && checkpoints.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> changedPlayers = new HashSet<>();
+
+        for (List<Query> statRows : rows.values()) {
+            for (Query row : statRows) {
+                UUID uuid = row.getUUID();
+
+                if (uuid != null) {
+                    changedPlayers.add(uuid);
+                }
+            }
+        }
+
+        List<String> transaction = new ArrayList<>(statements);
+
+        transaction.addAll(plugin.getJobManager().getCheckpointStatements(job, checkpoints));
+
+        // Other servers should know that the data of these players changed.
+        transaction = plugin.getCacheSnapshotManager().withFlushEpochStatement(transaction);
+
+        synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+            if (!plugin.getDatabaseConnector().setBatchObjects(batches, DatabaseConnector.SET_OPERATION.ADD,
+                    transaction)) {
+                throw new SQLException("Could not write " + rowCount + " rows of job " + job.getName());
+            }
+
+            plugin.getCacheSnapshotManager().onFlushed(changedPlayers);
+
+            for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+                plugin.getLeaderboardManager().addFlushedQueries(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Map.Entry<PlayerStat, List<Query>> entry : rows.entrySet()) {
+            for (Query row : entry.getValue()) {
+                UUID uuid = row.getUUID();
+
+                if (uuid != null && plugin.getCachingManager().isPlayerCacheLoaded(uuid, entry.getKey())) {
+                    plugin.getCachingManager().addCachedQuery(entry.getKey(), row, uuid);
+                }
+            }
+        }
+
+        this.checkpoints.putAll(checkpoints);
+
+        this.throttle(writtenRows.addAndGet(rowCount));
+    }
+
+    /**
+     * Add values of a single statistic to the database, see {@link #write(Map, Map)}.
+     */
+    public void write(PlayerStat statType, List<Query> rows, String checkpoint, String position) throws
+            SQLException, InterruptedException {
+        this.write(Collections.singletonMap(statType, rows), Collections.singletonMap(checkpoint, position));
+    }
+
+    /**
+     * Report rows that the job changed without {@link #write(Map, Map)}, such as rows that it removed. They count
+     * towards the rows that are reported and towards 'bulk jobs.rows per second', so this method may wait before it
+     * returns.
+     *
+     * @param rows Number of rows that were changed
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public void addWrittenRows(long rows) throws InterruptedException {
+        this.throttle(writtenRows.addAndGet(rows));
+    }
+
+    /**
+     * Add to the total amount of work of the job, which is used to compute its progress. The unit of work is up to
+     * the job (e.g. files or rows), as long as it is the same for all methods.
+     *
+     * @param amount Amount of work to add
+     */
+    public void addTotalWork(long amount) {
+        totalWork.addAndGet(amount);
+    }
+
+    /**
+     * Report that an amount of work has been done.
+     *
+     * @param amount Amount of work that was done
+     */
+    public void completeWork(long amount) {
+        completedWork.addAndGet(amount);
+    }
+
+    /**
+     * Report that an amount of work was already done by an earlier run of the job. This counts towards the
+     * progress of the job, but not towards the speed that is used to compute the remaining time.
+     *
+     * @param amount Amount of work that was skipped
+     */
+    public void skipWork(long amount) {
+        completedWork.addAndGet(amount);
+        skippedWork.addAndGet(amount);
+    }
+
+    /**
+     * Get the number of rows that were written by this run of the job.
+     *
+     * @return number of written rows.
+     */
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    /**
+     * Send a message to whoever started the job.
+     *
+     * @param message Message to send
+     */
+    public void sendMessage(String message) {
+        sender.sendMessage(message);
+    }
+
+    /**
+     * Send the progress and the remaining time of the job to whoever started it.
+     */
+    void reportProgress() {
+        long total = totalWork.get();
+        long completed = Math.min(completedWork.get(), total);
+
+        StringBuilder message = new StringBuilder(ChatColor.GOLD + job.getDescription() + ": " + ChatColor.GREEN);
+
+        if (total > 0) {
+            message.append(completed * 100 / total).append("% done, ");
+        }
+
+        message.append(writtenRows.get()).append(" rows written");
+
+        long doneInThisRun = completed - skippedWork.get();
+        long elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000;
+
+        if (total > 0 && doneInThisRun > 0 && elapsedSeconds > 0) {
+            int remainingSeconds = (int) Math.min((total - completed) * elapsedSeconds / doneInThisRun,
+                    Integer.MAX_VALUE);
+
+            message.append(", about ").append(StatzUtil.timeToString(remainingSeconds, StatzUtil.Time.SECONDS))
+                    .append(" left");
+        }
+
+        this.sendMessage(message.append(".").toString());
+    }
+
+    // Wait until the rows that have been written are allowed by the configured number of rows per second.
+    private void throttle(long rowsWritten) throws InterruptedException {
+        int rowsPerSecond = plugin.getConfigHandler().getBulkJobRowsPerSecond();
+
+        if (rowsPerSecond <= 0) {
+            return;
+        }
+
+        long waitTime = startTime + rowsWritten * 1000 / rowsPerSecond - System.currentTimeMillis();
+
+        if (waitTime > 0) {
+            Thread.sleep(waitTime);
+        }
+    }
+}
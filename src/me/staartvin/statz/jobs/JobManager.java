@@ -0,0 +1,193 @@
+package me.staartvin.statz.jobs;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.dialect.SQLDialect;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Runs {@link BulkJob}s, such as imports and transfers, on another thread than the main thread. The checkpoints of a
+ * job are stored in {@link #CHECKPOINTS_TABLE} until the job has finished, so an interrupted job continues where it
+ * stopped when it is started again. While a job is running, its progress is sent to whoever started it every 'bulk
+ * jobs.progress interval' seconds.
+ */
+public class JobManager {
+
+    /**
+     * Table that holds the checkpoints of jobs that have not finished yet.
+     */
+    public static final String CHECKPOINTS_TABLE = DatabaseConnector.prefix + "job_checkpoints";
+
+    private final Statz plugin;
+
+    // Names of the jobs that are running
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+    public JobManager(Statz plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start a job on another thread. Only one job with the same name can run at the same time.
+     *
+     * @param job    Job to run
+     * @param sender Sender that progress is reported to
+     * @return a future that completes with the number of rows that were written by the job, or completes
+     * exceptionally if the job failed or a job with the same name is already running.
+     */
+    public CompletableFuture<Long> startJob(BulkJob job, CommandSender sender) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+
+        if (!runningJobs.add(job.getName())) {
+            result.completeExceptionally(new IllegalStateException("Job " + job.getName() + " is already running."));
+            return result;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            BukkitTask progressTask = null;
+
+            try {
+                Map<String, String> checkpoints = this.loadCheckpoints(job);
+                JobContext context = new JobContext(plugin, job, sender, checkpoints);
+
+                if (!checkpoints.isEmpty()) {
+                    context.sendMessage(ChatColor.GOLD + job.getDescription() + ": " + ChatColor.GREEN + "continuing " +
+                            "where the previous run stopped.");
+                }
+
+                long interval = plugin.getConfigHandler().getBulkJobProgressInterval() * 20L;
+
+                progressTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                        context::reportProgress, interval, interval);
+
+                job.run(context);
+
+                // The job is done, so it should start from the beginning the next time.
+                this.deleteCheckpoints(job);
+
+                result.complete(context.getWrittenRows());
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Job " + job.getName() + " stopped before it was finished", e);
+
+                sender.sendMessage(ChatColor.RED + job.getDescription() + " stopped before it was finished. Run it " +
+                        "again to continue where it stopped.");
+
+                result.completeExceptionally(e);
+            } finally {
+                if (progressTask != null) {
+                    progressTask.cancel();
+                }
+
+                runningJobs.remove(job.getName());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Check whether a job is running.
+     *
+     * @param jobName Name of the job
+     * @return true if a job with the given name is running.
+     */
+    public boolean isRunning(String jobName) {
+        return runningJobs.contains(jobName);
+    }
+
+    /**
+     * Get the statements that store checkpoints of a job. The statements replace earlier positions of the same
+     * checkpoints.
+     *
+     * @param job         Job the checkpoints belong to
+     * @param checkpoints Position of every checkpoint
+     * @return a statement per checkpoint.
+     */
+    List<String> getCheckpointStatements(BulkJob job, Map<String, String> checkpoints) {
+        SQLDialect dialect = plugin.getDatabaseConnector().getDialect();
+        List<String> statements = new ArrayList<>(checkpoints.size());
+
+        for (Map.Entry<String, String> checkpoint : checkpoints.entrySet()) {
+            Map<String, String> row = new LinkedHashMap<>();
+
+            row.put("job", toLiteral(job.getName()));
+            row.put("checkpoint", toLiteral(checkpoint.getKey()));
+            row.put("position", toLiteral(checkpoint.getValue()));
+
+            statements.add(dialect.createReplaceStatement(CHECKPOINTS_TABLE, Arrays.asList("job", "checkpoint"), row));
+        }
+
+        return statements;
+    }
+
+    private Map<String, String> loadCheckpoints(BulkJob job) throws SQLException {
+        Map<String, String> checkpoints = new ConcurrentHashMap<>();
+        Connection connection = this.getConnection();
+
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + CHECKPOINTS_TABLE + " (job VARCHAR(100) " +
+                        "NOT NULL, checkpoint VARCHAR(255) NOT NULL, position VARCHAR(255) NOT NULL, PRIMARY KEY " +
+                        "(job, checkpoint))");
+            }
+
+            try (PreparedStatement select = connection.prepareStatement("SELECT checkpoint, position FROM " +
+                    CHECKPOINTS_TABLE + " WHERE job = ?")) {
+                select.setString(1, job.getName());
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        checkpoints.put(resultSet.getString(1), resultSet.getString(2));
+                    }
+                }
+            }
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+
+        return checkpoints;
+    }
+
+    private void deleteCheckpoints(BulkJob job) throws SQLException {
+        Connection connection = this.getConnection();
+
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + CHECKPOINTS_TABLE + " WHERE " +
+                "job = ?")) {
+            delete.setString(1, job.getName());
+            delete.executeUpdate();
+        } finally {
+            plugin.getDatabaseConnector().releaseConnection(connection);
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        Connection connection = plugin.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        return connection;
+    }
+
+    private static String toLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
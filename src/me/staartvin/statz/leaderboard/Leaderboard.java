@@ -0,0 +1,198 @@
+package me.staartvin.statz.leaderboard;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.util.*;
+
+/**
+ * A ranking of all players by the total value of a statistic, optionally counting only the rows that meet a
+ * requirement (e.g. only zombies or only a single world). The ranking is kept up-to-date by adding the values that
+ * are written to the database, see {@link LeaderboardManager}.
+ * <br>
+ * <br>
+ * Rank 1 is the player with the highest total. Players with the same total are ordered by their UUID, so the order
+ * is stable. All methods are thread-safe.
+ */
+public class Leaderboard {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble(Entry::getValue).reversed()
+            .thenComparing(Entry::getUUID);
+
+    private final PlayerStat statType;
+    private final RowRequirement filter;
+
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final OrderStatisticTree<Entry> ranking = new OrderStatisticTree<>(ORDER);
+
+    public Leaderboard(PlayerStat statType, RowRequirement filter) {
+        this.statType = statType;
+        this.filter = filter;
+    }
+
+    /**
+     * Get the statistic that players are ranked by.
+     *
+     * @return statistic of this leaderboard.
+     */
+    public PlayerStat getStatType() {
+        return statType;
+    }
+
+    /**
+     * Get the requirement that rows need to meet to be counted.
+     *
+     * @return requirement of this leaderboard or null if all rows are counted.
+     */
+    public RowRequirement getFilter() {
+        return filter;
+    }
+
+    /**
+     * Check whether a row counts towards this leaderboard.
+     *
+     * @param row Row of the statistic of this leaderboard
+     * @return true if the value of the row should be added to the total of its player.
+     */
+    public boolean matches(Query row) {
+        if (filter == null) {
+            return true;
+        }
+
+        Object value = row.getValue(filter.getColumnName());
+
+        // Updates can hold numbers or enums where the filter holds text, so compare the text of the value.
+        return value != null && value.toString().equals(filter.getColumnValue());
+    }
+
+    /**
+     * Replace all totals of this leaderboard.
+     *
+     * @param totals Total value per player
+     */
+    public synchronized void setTotals(Map<UUID, Double> totals) {
+        entries.clear();
+        ranking.clear();
+
+        for (Map.Entry<UUID, Double> total : totals.entrySet()) {
+            Entry entry = new Entry(total.getKey(), total.getValue());
+
+            entries.put(entry.getUUID(), entry);
+            ranking.add(entry);
+        }
+    }
+
+    /**
+     * Add a value to the total of a player.
+     *
+     * @param uuid  UUID of the player
+     * @param value Value to add
+     */
+    public synchronized void addToTotal(UUID uuid, double value) {
+        Entry oldEntry = entries.get(uuid);
+
+        double total = value;
+
+        if (oldEntry != null) {
+            ranking.remove(oldEntry);
+            total += oldEntry.getValue();
+        }
+
+        Entry newEntry = new Entry(uuid, total);
+
+        entries.put(uuid, newEntry);
+        ranking.add(newEntry);
+    }
+
+    /**
+     * Remove a player from this leaderboard.
+     *
+     * @param uuid UUID of the player
+     */
+    public synchronized void removePlayer(UUID uuid) {
+        Entry entry = entries.remove(uuid);
+
+        if (entry != null) {
+            ranking.remove(entry);
+        }
+    }
+
+    /**
+     * Get the player at the given rank.
+     *
+     * @param rank Rank of the player, starting at 1
+     * @return the entry at the given rank or null if there are fewer players on the leaderboard.
+     */
+    public synchronized Entry getEntry(int rank) {
+        if (rank < 1 || rank > ranking.size()) {
+            return null;
+        }
+
+        return ranking.get(rank - 1);
+    }
+
+    /**
+     * Get a number of consecutive entries of this leaderboard.
+     *
+     * @param fromRank First rank to get, starting at 1
+     * @param count    Maximum number of entries to get
+     * @return entries from the given rank onwards. The list may be shorter if there are not enough players.
+     */
+    public synchronized List<Entry> getEntries(int fromRank, int count) {
+        List<Entry> result = new ArrayList<>();
+
+        for (int rank = Math.max(1, fromRank); rank <= ranking.size() && result.size() < count; rank++) {
+            result.add(ranking.get(rank - 1));
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the rank of a player.
+     *
+     * @param uuid UUID of the player
+     * @return rank of the player (starting at 1) or 0 if the player is not on this leaderboard.
+     */
+    public synchronized int getRank(UUID uuid) {
+        Entry entry = entries.get(uuid);
+
+        if (entry == null) {
+            return 0;
+        }
+
+        return ranking.indexOf(entry) + 1;
+    }
+
+    /**
+     * Get the number of players on this leaderboard.
+     *
+     * @return number of players.
+     */
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+    /**
+     * The total value of a single player on a leaderboard.
+     */
+    public static class Entry {
+
+        private final UUID uuid;
+        private final double value;
+
+        private Entry(UUID uuid, double value) {
+            this.uuid = uuid;
+            this.value = value;
+        }
+
+        public UUID getUUID() {
+            return uuid;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+}
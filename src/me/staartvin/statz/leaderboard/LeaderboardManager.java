@@ -0,0 +1,384 @@
+package me.staartvin.statz.leaderboard;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import org.bukkit.OfflinePlayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * The LeaderboardManager keeps track of the leaderboards that have been requested. A leaderboard is loaded with a
+ * single query that sums the values of all players in the database. After that, it is kept up-to-date with the
+ * updates that are written to the database by {@link me.staartvin.statz.tasks.UpdateDatabaseTask}, so it never has
+ * to be loaded again.
+ * <br>
+ * <br>
+ * Updates are written to the database while holding {@link #getFlushLock()}. The totals of a leaderboard are computed
+ * without holding the lock, after which the totals of the players that were updated meanwhile are read again while
+ * holding it. That way, an update is never counted twice or missed by a leaderboard that is loading.
+ * <br>
+ * <br>
+ * Leaderboards with a filter can be requested by any player, so only the {@link #MAX_FILTERED_LEADERBOARDS} most
+ * recently used ones are kept. A filter whose value does not occur in the table is rejected instead of loaded.
+ */
+public class LeaderboardManager {
+
+    // Number of players whose totals are read again at once, after they changed while a leaderboard was loading
+    private static final int RELOAD_BATCH_SIZE = 500;
+
+    // Number of leaderboards with a filter that are kept up-to-date. The least recently used one is dropped first.
+    private static final int MAX_FILTERED_LEADERBOARDS = 64;
+
+    // Number of filters that are remembered to not match any row
+    private static final int MAX_REJECTED_FILTERS = 256;
+
+    // Time after which a rejected filter is checked again, as rows with its value may have been written since.
+    private static final long REJECTED_FILTER_EXPIRY = TimeUnit.MINUTES.toMillis(5);
+
+    private final Statz plugin;
+
+    // Leaderboards that are loaded, by their key
+    private final Map<String, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+
+    // Leaderboards that are loaded or loading, by their key
+    private final Map<String, CompletableFuture<Leaderboard>> requestedLeaderboards = new ConcurrentHashMap<>();
+
+    // Time at which each leaderboard with a filter was last requested, by the key of the leaderboard
+    private final Map<String, Long> lastRequested = new ConcurrentHashMap<>();
+
+    // Time at which filters were found to not match any row, by the key of their leaderboard
+    private final Map<String, Long> rejectedFilters = Collections.synchronizedMap(new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return this.size() > MAX_REJECTED_FILTERS;
+        }
+    });
+
+    // Names of players that are shown on leaderboards
+    private final Map<UUID, String> playerNames = new ConcurrentHashMap<>();
+
+    // Leaderboards whose totals are being computed, with the players whose rows changed meanwhile. Guarded by
+    // flushLock.
+    private final Map<Leaderboard, Set<UUID>> loadingLeaderboards = new HashMap<>();
+
+    private final Object flushLock = new Object();
+
+    public LeaderboardManager(Statz instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Get the key that identifies a leaderboard.
+     *
+     * @param statType Statistic of the leaderboard
+     * @param filter   Requirement of the leaderboard, can be null
+     * @return a unique key of the leaderboard.
+     */
+    private static String getKey(PlayerStat statType, RowRequirement filter) {
+        if (filter == null) {
+            return statType.toString();
+        }
+
+        return statType + ":" + filter.getColumnName().toLowerCase() + "=" + filter.getColumnValue();
+    }
+
+    /**
+     * Get a leaderboard if it is loaded. If it is not loaded yet, it will be loaded in the background.
+     *
+     * @param statType Statistic to rank players by
+     * @param filter   Requirement that rows should meet to be counted, can be null to count all rows
+     * @return the leaderboard or null if it is still loading.
+     * @throws IllegalArgumentException if the statistic has no values or the filter refers to an unknown column.
+     */
+    public Leaderboard getLeaderboard(PlayerStat statType, RowRequirement filter) throws IllegalArgumentException {
+        String key = getKey(statType, filter);
+        Leaderboard leaderboard = leaderboards.get(key);
+
+        if (leaderboard == null) {
+            this.loadLeaderboard(statType, filter);
+        } else if (filter != null) {
+            lastRequested.put(key, System.currentTimeMillis());
+        }
+
+        return leaderboard;
+    }
+
+    /**
+     * Load a leaderboard in the background. If the leaderboard is already loaded, the returned future is already
+     * completed.
+     *
+     * @param statType Statistic to rank players by
+     * @param filter   Requirement that rows should meet to be counted, can be null to count all rows
+     * @return a future that is completed with the leaderboard once it is loaded. It is completed with an
+     * {@link IllegalArgumentException} if no row of the statistic meets the filter.
+     * @throws IllegalArgumentException if the statistic has no values or the filter refers to an unknown column.
+     */
+    public CompletableFuture<Leaderboard> loadLeaderboard(PlayerStat statType, RowRequirement filter) throws
+            IllegalArgumentException {
+
+        if (statType == null || statType == PlayerStat.PLAYERS) {
+            throw new IllegalArgumentException("There is no leaderboard for statistic " + statType);
+        }
+
+        Table table = DatabaseConnector.getTable(statType);
+
+        if (table == null) {
+            throw new IllegalArgumentException("Statistic " + statType + " has no table");
+        }
+
+        if (filter != null && table.getColumn(filter.getColumnName()) == null) {
+            throw new IllegalArgumentException(String.format("Statistic %s has no column '%s'", statType,
+                    filter.getColumnName()));
+        }
+
+        String key = getKey(statType, filter);
+
+        if (filter != null) {
+            Long rejectedAt = rejectedFilters.get(key);
+
+            if (rejectedAt != null && System.currentTimeMillis() - rejectedAt < REJECTED_FILTER_EXPIRY) {
+                throw new IllegalArgumentException(getNoRowsMessage(statType, filter));
+            }
+
+            lastRequested.put(key, System.currentTimeMillis());
+        }
+
+        CompletableFuture<Leaderboard> future = requestedLeaderboards.computeIfAbsent(key, k ->
+                plugin.getDataManager().getDatabaseExecutor().supply(() -> this.createLeaderboard(k, statType,
+                        table, filter)));
+
+        // Try again next time if the leaderboard could not be loaded.
+        future.whenComplete((leaderboard, error) -> {
+            if (error == null) {
+                return;
+            }
+
+            requestedLeaderboards.remove(key, future);
+            lastRequested.remove(key);
+
+            if (error instanceof IllegalArgumentException) {
+                plugin.debugMessage("Did not load leaderboard " + key + ": " + error.getMessage());
+            } else {
+                plugin.getLogger().log(Level.WARNING, "Could not load leaderboard " + key, error);
+            }
+        });
+
+        return future;
+    }
+
+    private static String getNoRowsMessage(PlayerStat statType, RowRequirement filter) {
+        return String.format("Statistic %s has no rows where %s is '%s'", statType, filter.getColumnName(),
+                filter.getColumnValue());
+    }
+
+    private Leaderboard createLeaderboard(String key, PlayerStat statType, Table table, RowRequirement filter) {
+        // Do not sum the whole table for a value that does not occur in it, such as a misspelled mob.
+        if (filter != null && !this.hasRows(table, filter)) {
+            rejectedFilters.put(key, System.currentTimeMillis());
+
+            throw new IllegalArgumentException(getNoRowsMessage(statType, filter));
+        }
+
+        Leaderboard leaderboard = new Leaderboard(statType, filter);
+        Set<UUID> changedPlayers = new HashSet<>();
+
+        RowRequirement[] requirements = filter == null ? new RowRequirement[0] : new RowRequirement[]{filter};
+
+        synchronized (flushLock) {
+            loadingLeaderboards.put(leaderboard, changedPlayers);
+        }
+
+        try {
+            // Updates can be written while the totals are computed, so a large table does not hold them up.
+            Map<UUID, Double> totals = plugin.getDatabaseConnector().getTotalsPerPlayer(table, requirements);
+
+            synchronized (flushLock) {
+                // Updates of these players were written while the totals were computed, so they may or may not be
+                // counted. Their totals are read again, which is cheap as there are only a few of them.
+                if (!changedPlayers.isEmpty()) {
+                    totals.keySet().removeAll(changedPlayers);
+                    totals.putAll(this.getTotals(table, requirements, new ArrayList<>(changedPlayers)));
+                }
+
+                leaderboard.setTotals(totals);
+
+                leaderboards.put(key, leaderboard);
+
+                if (filter != null) {
+                    this.dropUnusedLeaderboards();
+                }
+            }
+        } finally {
+            synchronized (flushLock) {
+                loadingLeaderboards.remove(leaderboard);
+            }
+        }
+
+        plugin.debugMessage("Loaded leaderboard " + key + " with " + leaderboard.size() + " players.");
+
+        return leaderboard;
+    }
+
+    // Check whether at least one row of a table meets a requirement.
+    private boolean hasRows(Table table, RowRequirement requirement) {
+        Selection selection = new Selection(table).where(requirement).columns(requirement.getColumnName()).limit(1);
+
+        int rowCount = plugin.getDatabaseConnector().forEachObject(selection, row -> {
+        });
+
+        if (rowCount < 0) {
+            throw new IllegalStateException("Could not check whether " + table.getTableName() + " has rows where "
+                    + requirement.getColumnName() + " is '" + requirement.getColumnValue() + "'");
+        }
+
+        return rowCount > 0;
+    }
+
+    // Drop the least recently requested leaderboards with a filter until there are no more than allowed. The caller
+    // must hold the flush lock.
+    private void dropUnusedLeaderboards() {
+        List<String> filteredKeys = leaderboards.entrySet().stream()
+                .filter(entry -> entry.getValue().getFilter() != null).map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        if (filteredKeys.size() <= MAX_FILTERED_LEADERBOARDS) {
+            return;
+        }
+
+        filteredKeys.sort(Comparator.comparingLong(key -> lastRequested.getOrDefault(key, 0L)));
+
+        for (String key : filteredKeys.subList(0, filteredKeys.size() - MAX_FILTERED_LEADERBOARDS)) {
+            leaderboards.remove(key);
+            requestedLeaderboards.remove(key);
+            lastRequested.remove(key);
+
+            plugin.debugMessage("Dropped leaderboard " + key + " as it was not used recently.");
+        }
+    }
+
+    // Sum the rows of a group of players. The caller must hold the flush lock, so no updates are written meanwhile.
+    private Map<UUID, Double> getTotals(Table table, RowRequirement[] requirements, List<UUID> uuids) {
+        Map<UUID, Double> totals = new HashMap<>();
+
+        for (int start = 0; start < uuids.size(); start += RELOAD_BATCH_SIZE) {
+            List<String> batch = uuids.subList(start, Math.min(start + RELOAD_BATCH_SIZE, uuids.size())).stream()
+                    .map(UUID::toString).collect(Collectors.toList());
+            Selection selection = new Selection(table).where(requirements).whereIn("uuid", batch)
+                    .columns("uuid", "value");
+
+            int rowCount = plugin.getDatabaseConnector().forEachObject(selection, row -> {
+                UUID uuid = row.getUUID();
+
+                if (uuid != null && row.hasColumn("value")) {
+                    totals.merge(uuid, row.getValue(), Double::sum);
+                }
+            });
+
+            if (rowCount < 0) {
+                throw new IllegalStateException("Could not read the totals of players that changed while loading " +
+                        "a leaderboard of " + table.getTableName());
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Get the lock that must be held while writing updates to the database and passing them to
+     * {@link #addFlushedQueries(PlayerStat, List)}.
+     *
+     * @return the lock object.
+     */
+    public Object getFlushLock() {
+        return flushLock;
+    }
+
+    /**
+     * Update the loaded leaderboards of a statistic with updates that have been written to the database. The
+     * caller must hold {@link #getFlushLock()}.
+     *
+     * @param statType Statistic of the updates
+     * @param queries  Updates that were written to the database. Their values are added to the totals.
+     */
+    public void addFlushedQueries(PlayerStat statType, List<Query> queries) {
+        for (Map.Entry<Leaderboard, Set<UUID>> loading : loadingLeaderboards.entrySet()) {
+            if (loading.getKey().getStatType() != statType) {
+                continue;
+            }
+
+            for (Query query : queries) {
+                UUID uuid = query.getUUID();
+
+                if (uuid != null && loading.getKey().matches(query)) {
+                    loading.getValue().add(uuid);
+                }
+            }
+        }
+
+        for (Leaderboard leaderboard : leaderboards.values()) {
+            if (leaderboard.getStatType() != statType) {
+                continue;
+            }
+
+            for (Query query : queries) {
+                UUID uuid = query.getUUID();
+
+                if (uuid == null || !query.hasColumn("value") || !leaderboard.matches(query)) {
+                    continue;
+                }
+
+                leaderboard.addToTotal(uuid, query.getValue());
+            }
+        }
+    }
+
+    /**
+     * Remove a player from all loaded leaderboards, for example because the data of the player was purged.
+     *
+     * @param uuid UUID of the player
+     */
+    public void removePlayer(UUID uuid) {
+        synchronized (flushLock) {
+            for (Leaderboard leaderboard : leaderboards.values()) {
+                leaderboard.removePlayer(uuid);
+            }
+
+            for (Set<UUID> changedPlayers : loadingLeaderboards.values()) {
+                changedPlayers.add(uuid);
+            }
+        }
+    }
+
+    /**
+     * Get the name of a player that is shown on a leaderboard.
+     *
+     * @param uuid UUID of the player
+     * @return the name of the player or the UUID if the name is not known.
+     */
+    public String getPlayerName(UUID uuid) {
+        return playerNames.computeIfAbsent(uuid, id -> {
+            OfflinePlayer player = plugin.getServer().getOfflinePlayer(id);
+
+            return player.getName() == null ? id.toString() : player.getName();
+        });
+    }
+}
@@ -0,0 +1,239 @@
+package me.staartvin.statz.leaderboard;
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sorted collection that can find the element at a given position, and the position of a given element, in
+ * logarithmic time. It is implemented as a treap (a binary search tree that is balanced by random priorities) where
+ * each node knows the size of its subtree.
+ * <br>
+ * <br>
+ * Elements are ordered by the given comparator. Elements that are equal according to the comparator are not
+ * stored twice. This class is not thread-safe.
+ *
+ * @param <T> Type of the elements
+ */
+public class OrderStatisticTree<T> {
+
+    private final Comparator<? super T> comparator;
+
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null.");
+        }
+
+        this.comparator = comparator;
+    }
+
+    /**
+     * Get the number of elements in the tree.
+     *
+     * @return number of elements.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Add an element to the tree.
+     *
+     * @param element Element to add
+     * @return true if the element was added, false if an equal element was already in the tree.
+     */
+    public boolean add(T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("Element cannot be null.");
+        }
+
+        if (this.indexOf(element) >= 0) {
+            return false;
+        }
+
+        root = insert(root, new Node<>(element));
+        return true;
+    }
+
+    /**
+     * Remove an element from the tree.
+     *
+     * @param element Element to remove
+     * @return true if the element was removed, false if it was not in the tree.
+     */
+    public boolean remove(T element) {
+        if (element == null || this.indexOf(element) < 0) {
+            return false;
+        }
+
+        root = delete(root, element);
+        return true;
+    }
+
+    /**
+     * Remove all elements from the tree.
+     */
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * Get the element at the given position.
+     *
+     * @param index Position of the element, starting at 0 for the smallest element
+     * @return the element at the given position.
+     * @throws IndexOutOfBoundsException if there is no element at the given position.
+     */
+    public T get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size());
+        }
+
+        Node<T> node = root;
+
+        while (true) {
+            int leftSize = size(node.left);
+
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.element;
+            }
+        }
+    }
+
+    /**
+     * Get the position of an element.
+     *
+     * @param element Element to look for
+     * @return the position of the element (starting at 0) or -1 if it is not in the tree.
+     */
+    public int indexOf(T element) {
+        Node<T> node = root;
+        int index = 0;
+
+        while (node != null) {
+            int comparison = comparator.compare(element, node.element);
+
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+
+        return -1;
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> newNode) {
+        if (node == null) {
+            return newNode;
+        }
+
+        if (comparator.compare(newNode.element, node.element) < 0) {
+            node.left = insert(node.left, newNode);
+
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+
+        node.update();
+        return node;
+    }
+
+    private Node<T> delete(Node<T> node, T element) {
+        int comparison = comparator.compare(element, node.element);
+
+        if (comparison < 0) {
+            node.left = delete(node.left, element);
+        } else if (comparison > 0) {
+            node.right = delete(node.right, element);
+        } else {
+            // Merge the children of the removed node.
+            return merge(node.left, node.right);
+        }
+
+        node.update();
+        return node;
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+
+        node.left = left.right;
+        node.update();
+
+        left.right = node;
+        left.update();
+
+        return left;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+
+        node.right = right.left;
+        node.update();
+
+        right.left = node;
+        right.update();
+
+        return right;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node<T> {
+
+        private final T element;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+
+        private Node<T> left;
+        private Node<T> right;
+        private int size = 1;
+
+        private Node(T element) {
+            this.element = element;
+        }
+
+        private void update() {
+            size = 1 + size(left) + size(right);
+        }
+    }
+}
@@ -10,13 +10,24 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 public class DistanceTravelledListener implements Listener {
 
     private final Statz plugin;
 
+    // Distance that has not been recorded yet because the statistic is sampled coarsely.
+    private final Map<UUID, PendingDistance> pendingDistances = new HashMap<>();
+    private final int sampleInterval;
+
     public DistanceTravelledListener(final Statz plugin) {
         this.plugin = plugin;
+        this.sampleInterval = plugin.getConfigHandler().getWatchdogDistanceSampleInterval();
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -27,12 +38,6 @@ public class DistanceTravelledListener implements Listener {
         // Get player
         final Player player = event.getPlayer();
 
-        // Do general check
-        if (!plugin.doGeneralCheck(player, stat))
-            return;
-
-        String movementType = StatzUtil.getMovementType(player);
-
         final double distTravelled;
 
         try {
@@ -46,11 +51,96 @@ public class DistanceTravelledListener implements Listener {
             return;
         }
 
+        String movementType = StatzUtil.getMovementType(player);
+        String worldName = player.getWorld().getName();
+
+        // Listeners used too much time, so only record every few moves.
+        boolean degraded = plugin.getListenerWatchdog().isDegraded(stat);
+
+        // Record distance that was left over from sampling.
+        if (!degraded) {
+            this.recordPendingDistance(player.getUniqueId());
+        }
+
+        // Do general check
+        if (!plugin.doGeneralCheck(player, stat))
+            return;
+
+        if (degraded) {
+            this.sampleDistance(player, distTravelled, worldName, movementType);
+            return;
+        }
+
         PlayerStatSpecification specification = new DistanceTravelledSpecification(player.getUniqueId(),
-                distTravelled, player.getWorld().getName(), movementType);
+                distTravelled, worldName, movementType);
 
         // Update value to new stat.
         plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat, specification.constructQuery());
 
     }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(final PlayerQuitEvent event) {
+        this.recordPendingDistance(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Record the distance of all players that has not been recorded yet, for example because Statz is disabled.
+     */
+    public void recordPendingDistances() {
+        for (UUID uuid : new ArrayList<>(pendingDistances.keySet())) {
+            this.recordPendingDistance(uuid);
+        }
+    }
+
+    /**
+     * Add the travelled distance to the pending distance of a player. The pending distance is recorded once enough
+     * moves have been made or when the player changes world or movement type. Only moves that pass
+     * {@link Statz#doGeneralCheck(Player, PlayerStat)} should be added.
+     */
+    private void sampleDistance(Player player, double distance, String worldName, String movementType) {
+        PendingDistance pending = pendingDistances.get(player.getUniqueId());
+
+        if (pending != null && (!pending.worldName.equals(worldName) || !pending.movementType.equals(movementType))) {
+            this.recordPendingDistance(player.getUniqueId());
+            pending = null;
+        }
+
+        if (pending == null) {
+            pending = new PendingDistance(worldName, movementType);
+            pendingDistances.put(player.getUniqueId(), pending);
+        }
+
+        pending.distance += distance;
+        pending.moves++;
+
+        if (pending.moves >= sampleInterval) {
+            this.recordPendingDistance(player.getUniqueId());
+        }
+    }
+
+    private void recordPendingDistance(UUID uuid) {
+        PendingDistance pending = pendingDistances.remove(uuid);
+
+        if (pending == null) {
+            return;
+        }
+
+        PlayerStatSpecification specification = new DistanceTravelledSpecification(uuid, pending.distance,
+                pending.worldName, pending.movementType);
+
+        plugin.getDataManager().setPlayerInfo(uuid, PlayerStat.DISTANCE_TRAVELLED, specification.constructQuery());
+    }
+
+    private static class PendingDistance {
+        private final String worldName;
+        private final String movementType;
+        private double distance;
+        private int moves;
+
+        private PendingDistance(String worldName, String movementType) {
+            this.worldName = worldName;
+            this.movementType = movementType;
+        }
+    }
 }
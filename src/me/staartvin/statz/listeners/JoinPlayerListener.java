@@ -1,6 +1,7 @@
 package me.staartvin.statz.listeners;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.tasks.TaskManager;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
@@ -17,8 +18,14 @@ public class JoinPlayerListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onJoin(final PlayerJoinEvent event) {
 
-        // Start task that periodically updates cache of a player.
-        plugin.getTaskManager().startUpdatePlayerCacheTask(event.getPlayer().getUniqueId());
+        // Start task that periodically updates cache of a player. If the player was loaded while logging in, the
+        // cache does not have to be updated right away.
+        if (plugin.getConfigHandler().isPreLoginWarmUpEnabled()) {
+            plugin.getTaskManager().startUpdatePlayerCacheTask(event.getPlayer().getUniqueId(),
+                    TaskManager.UPDATE_PLAYER_CACHE_INTERVAL);
+        } else {
+            plugin.getTaskManager().startUpdatePlayerCacheTask(event.getPlayer().getUniqueId());
+        }
 
     }
 
@@ -0,0 +1,52 @@
+package me.staartvin.statz.listeners;
+
+import me.staartvin.statz.Statz;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * Loads the data of a player while they are logging in, so it is cached by the time they join. The login is
+ * handled on its own thread, so waiting for the database here does not hold up the server.
+ */
+public class PreLoginListener implements Listener {
+
+    private final Statz plugin;
+
+    public PreLoginListener(final Statz plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(final AsyncPlayerPreLoginEvent event) {
+
+        // Do not load players that are not allowed to join.
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        UUID uuid = event.getUniqueId();
+        long timeout = plugin.getConfigHandler().getPreLoginWarmUpTimeout();
+
+        try {
+            plugin.getDataManager().warmUpPlayerAsync(uuid).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Let the player join, the data is cached as soon as it is loaded.
+            plugin.debugMessage("Data of " + uuid + " was not loaded within " + timeout + " ms, so it is loaded " +
+                    "in the background.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load the data of " + uuid + " before they joined",
+                    e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package me.staartvin.statz.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram for recording durations (or any other non-negative long values). It uses a log-linear
+ * bucketing scheme, similar to HdrHistogram: every power of two is split into {@link #SUB_BUCKETS} equally sized
+ * buckets. This gives a relative error of at most 12.5% for every recorded value, while only needing a few hundred
+ * counters to cover the complete range of a long.
+ * <br>
+ * <br>
+ * Recording a value never allocates and never blocks, so it is safe to call from the main thread and from many
+ * asynchronous threads at the same time.
+ */
+public class LatencyHistogram {
+
+    // Number of bits used for the linear part of a bucket
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets to store Long.MAX_VALUE
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Get the index of the bucket a value belongs to.
+     *
+     * @param value Value to find a bucket for
+     * @return index of the bucket
+     */
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the highest value that is still stored in the bucket with the given index.
+     *
+     * @param index Index of the bucket
+     * @return the (inclusive) upper bound of the bucket.
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = ((long) (SUB_BUCKETS + subBucket)) << (exponent - SUB_BUCKET_BITS);
+
+        return lowerBound + width - 1;
+    }
+
+    /**
+     * Record a value in this histogram. Negative values are ignored.
+     *
+     * @param value Value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the number of values that have been recorded.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the sum of all recorded values.
+     *
+     * @return sum of all values.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Get the highest value that was recorded.
+     *
+     * @return highest recorded value or 0 if no values were recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of all recorded values.
+     *
+     * @return the mean or 0 if no values were recorded.
+     */
+    public double getMean() {
+        long total = getCount();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        return getSum() / (double) total;
+    }
+
+    /**
+     * Get the value at a given percentile. The returned value is the upper bound of the bucket the percentile falls
+     * in, so it is never lower than the real value.
+     *
+     * @param percentile Percentile to get, between 0 and 100.
+     * @return the value at the given percentile or 0 if no values were recorded.
+     * @throws IllegalArgumentException if the percentile is not between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+
+        long total = getCount();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+
+            if (seen >= target) {
+                return Math.min(getBucketUpperBound(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Reset all values of this histogram. Values that are recorded while resetting may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,123 @@
+package me.staartvin.statz.metrics;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ListenerWatchdog keeps track of the time the listeners of Statz spend on the main thread during a single tick.
+ * When the listeners use more than the configured budget in a tick, the statistic that used the most time is
+ * degraded for a while. Degraded statistics do less work on the main thread, for example by sampling
+ * DISTANCE_TRAVELLED more coarsely or by deferring cache updates to the async pipeline.
+ * <br>
+ * <br>
+ * The watchdog runs every tick on the main thread. Time is recorded by {@link TimedEventExecutor} on the main thread
+ * as well, so the counters don't need to be synchronized.
+ */
+public class ListenerWatchdog implements Runnable {
+
+    // Minimum time between two reports of the same statistic
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Statz plugin;
+
+    private final boolean enabled;
+    private final long budgetNanos;
+    private final long degradeTicks;
+
+    // Time spent in the current tick, per statistic
+    private final long[] tickNanos = new long[PlayerStat.values().length];
+
+    // Tick until which a statistic is degraded, per statistic
+    private final long[] degradedUntil = new long[PlayerStat.values().length];
+
+    // Last time a statistic was reported in the console, per statistic
+    private final long[] lastReport = new long[PlayerStat.values().length];
+
+    private volatile long currentTick = 0;
+
+    public ListenerWatchdog(Statz instance) {
+        this.plugin = instance;
+        this.enabled = instance.getConfigHandler().isWatchdogEnabled();
+        this.budgetNanos = (long) (instance.getConfigHandler().getWatchdogTickBudget() * 1_000_000);
+        this.degradeTicks = instance.getConfigHandler().getWatchdogDegradeTime() * 20L;
+    }
+
+    /**
+     * Check whether the watchdog is enforcing a budget.
+     *
+     * @return true if the watchdog is enabled, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record time spent by a listener of a statistic in the current tick. Should only be called on the main thread.
+     *
+     * @param stat  Statistic the listener belongs to
+     * @param nanos Time spent in nanoseconds
+     */
+    public void record(PlayerStat stat, long nanos) {
+        if (!enabled) return;
+
+        tickNanos[stat.ordinal()] += nanos;
+    }
+
+    /**
+     * Check whether a statistic is degraded because it used too much time on the main thread.
+     *
+     * @param stat Statistic to check
+     * @return true if listeners of this statistic should do as little work as possible on the main thread.
+     */
+    public boolean isDegraded(PlayerStat stat) {
+        return enabled && degradedUntil[stat.ordinal()] > currentTick;
+    }
+
+    @Override
+    public void run() {
+        long tick = currentTick + 1;
+
+        long total = 0;
+        int worst = -1;
+
+        for (int i = 0; i < tickNanos.length; i++) {
+            total += tickNanos[i];
+
+            if (worst == -1 || tickNanos[i] > tickNanos[worst]) {
+                worst = i;
+            }
+        }
+
+        if (total > budgetNanos && worst != -1) {
+            PlayerStat stat = PlayerStat.values()[worst];
+
+            degradedUntil[worst] = tick + degradeTicks;
+
+            plugin.getMetricsManager().recordBudgetOverrun(stat);
+
+            this.report(stat, total, tickNanos[worst]);
+        }
+
+        Arrays.fill(tickNanos, 0);
+
+        currentTick = tick;
+    }
+
+    private void report(PlayerStat stat, long totalNanos, long statNanos) {
+        long now = System.currentTimeMillis();
+
+        if (now - lastReport[stat.ordinal()] < REPORT_INTERVAL) {
+            return;
+        }
+
+        lastReport[stat.ordinal()] = now;
+
+        plugin.getLogger().warning(String.format("Listeners of Statz used %.2f ms in a single tick (budget is %.2f " +
+                        "ms). %s was responsible for %.2f ms and will do less work on the main thread for the next " +
+                        "%d seconds.", totalNanos / 1_000_000.0, budgetNanos / 1_000_000.0, stat,
+                statNanos / 1_000_000.0, degradeTicks / 20));
+    }
+}
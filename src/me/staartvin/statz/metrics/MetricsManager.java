@@ -0,0 +1,315 @@
+package me.staartvin.statz.metrics;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * The MetricsManager keeps track of runtime metrics of Statz, such as the number of events that were recorded per
+ * statistic, how long it takes to send the pools to the database and how often the cache is hit. All metrics are
+ * recorded with lock-free counters and histograms, so recording a metric is cheap enough to do on the main thread.
+ * <br>
+ * <br>
+ * The metrics can be viewed with /statz metrics and are periodically written to the logs folder, see
+ * {@link me.staartvin.statz.tasks.WriteMetricsSnapshotTask}. They can also be scraped by Prometheus, see
+ * {@link PrometheusExporter}.
+ */
+public class MetricsManager {
+
+    private final Statz plugin;
+
+    private final long startTime = System.currentTimeMillis();
+
+    // Number of events recorded by listeners, per statistic
+    private final Map<PlayerStat, LongAdder> events = new EnumMap<>(PlayerStat.class);
+
+    // Main thread time spent in listeners (in nanoseconds), per statistic
+    private final Map<PlayerStat, LatencyHistogram> listenerTime = new EnumMap<>(PlayerStat.class);
+
+    // Number of ticks in which a statistic exceeded the main thread budget, per statistic
+    private final Map<PlayerStat, LongAdder> budgetOverruns = new EnumMap<>(PlayerStat.class);
+
+    // Time it takes to compress and send a pool to the database (in nanoseconds), per statistic
+    private final Map<PlayerStat, LatencyHistogram> flushTime = new EnumMap<>(PlayerStat.class);
+
+    // Number of updates that were written to the database, before they were merged, per statistic
+    private final Map<PlayerStat, LongAdder> rowsWritten = new EnumMap<>(PlayerStat.class);
+
+    // Number of distinct keys in the pool during the last flush, per statistic
+    private final Map<PlayerStat, AtomicLong> poolDistinctKeys = new EnumMap<>(PlayerStat.class);
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LatencyHistogram cacheLoadTime = new LatencyHistogram();
+    private final LatencyHistogram connectionWaitTime = new LatencyHistogram();
+
+    private final boolean enabled;
+
+    private PrometheusExporter exporter;
+
+    public MetricsManager(Statz instance) {
+        this.plugin = instance;
+        this.enabled = instance.getConfigHandler().isMetricsEnabled();
+
+        // Create all counters up front, so we never have to lock when recording a metric.
+        for (PlayerStat stat : PlayerStat.values()) {
+            events.put(stat, new LongAdder());
+            listenerTime.put(stat, new LatencyHistogram());
+            budgetOverruns.put(stat, new LongAdder());
+            flushTime.put(stat, new LatencyHistogram());
+            rowsWritten.put(stat, new LongAdder());
+            poolDistinctKeys.put(stat, new AtomicLong());
+        }
+    }
+
+    /**
+     * Start the Prometheus exporter if it is enabled in the config. Metrics must be enabled for the exporter to start.
+     */
+    public void startExporter() {
+        if (!enabled || !plugin.getConfigHandler().isPrometheusExporterEnabled()) {
+            return;
+        }
+
+        String address = plugin.getConfigHandler().getPrometheusAddress();
+        int port = plugin.getConfigHandler().getPrometheusPort();
+
+        PrometheusExporter prometheusExporter = new PrometheusExporter(plugin, this);
+
+        try {
+            prometheusExporter.start(address, port);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not start Prometheus exporter on " + address + ":" + port, e);
+            return;
+        }
+
+        this.exporter = prometheusExporter;
+
+        plugin.getLogger().info("Serving metrics on http://" + address + ":" + port + "/metrics");
+    }
+
+    /**
+     * Stop the Prometheus exporter if it is running.
+     */
+    public void stopExporter() {
+        if (exporter == null) {
+            return;
+        }
+
+        exporter.stop();
+        exporter = null;
+    }
+
+    /**
+     * Check whether metrics are recorded.
+     *
+     * @return true if metrics are being recorded, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record that a listener registered a new update for a statistic.
+     *
+     * @param stat Statistic that was updated
+     */
+    public void recordEvent(PlayerStat stat) {
+        if (!enabled) return;
+
+        events.get(stat).increment();
+    }
+
+    /**
+     * Record the time a listener of a statistic spent on the main thread.
+     *
+     * @param stat  Statistic the listener belongs to
+     * @param nanos Time spent in nanoseconds
+     */
+    public void recordListenerTime(PlayerStat stat, long nanos) {
+        if (!enabled) return;
+
+        listenerTime.get(stat).record(nanos);
+    }
+
+    /**
+     * Record that listeners used more time on the main thread than the budget allows, with the given statistic
+     * being the most expensive one.
+     *
+     * @param stat Statistic that used the most time
+     */
+    public void recordBudgetOverrun(PlayerStat stat) {
+        if (!enabled) return;
+
+        budgetOverruns.get(stat).increment();
+    }
+
+    /**
+     * Record that the pool of a statistic was sent to the database.
+     *
+     * @param stat         Statistic of the pool
+     * @param nanos        Time it took to compress and send the pool (in nanoseconds)
+     * @param distinctKeys Number of distinct keys in the pool after compression
+     * @param rows         Number of rows that were written to the database, after the pool was compressed
+     */
+    public void recordFlush(PlayerStat stat, long nanos, int distinctKeys, int rows) {
+        if (!enabled) return;
+
+        flushTime.get(stat).record(nanos);
+        poolDistinctKeys.get(stat).set(distinctKeys);
+        rowsWritten.get(stat).add(rows);
+    }
+
+    /**
+     * Record that requested data was found in the cache.
+     */
+    public void recordCacheHit() {
+        if (!enabled) return;
+
+        cacheHits.increment();
+    }
+
+    /**
+     * Record that requested data was not found in the cache.
+     */
+    public void recordCacheMiss() {
+        if (!enabled) return;
+
+        cacheMisses.increment();
+    }
+
+    /**
+     * Record that data of a player was loaded from the database into the cache.
+     *
+     * @param nanos Time it took to load the data (in nanoseconds)
+     */
+    public void recordCacheLoad(long nanos) {
+        if (!enabled) return;
+
+        cacheLoadTime.record(nanos);
+    }
+
+    /**
+     * Record how long it took to obtain a connection to the database.
+     *
+     * @param nanos Time spent waiting for a connection (in nanoseconds)
+     */
+    public void recordConnectionWait(long nanos) {
+        if (!enabled) return;
+
+        connectionWaitTime.record(nanos);
+    }
+
+    public long getEvents(PlayerStat stat) {
+        return events.get(stat).sum();
+    }
+
+    public LatencyHistogram getListenerTime(PlayerStat stat) {
+        return listenerTime.get(stat);
+    }
+
+    public long getBudgetOverruns(PlayerStat stat) {
+        return budgetOverruns.get(stat).sum();
+    }
+
+    public LatencyHistogram getFlushTime(PlayerStat stat) {
+        return flushTime.get(stat);
+    }
+
+    public long getRowsWritten(PlayerStat stat) {
+        return rowsWritten.get(stat).sum();
+    }
+
+    public long getPoolDistinctKeys(PlayerStat stat) {
+        return poolDistinctKeys.get(stat).get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public LatencyHistogram getCacheLoadTime() {
+        return cacheLoadTime;
+    }
+
+    public LatencyHistogram getConnectionWaitTime() {
+        return connectionWaitTime;
+    }
+
+    /**
+     * Get the time (in milliseconds) at which this manager started recording metrics.
+     *
+     * @return start time in milliseconds since epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Create a human-readable report of all metrics. Statistics that have not recorded anything are left out.
+     *
+     * @return a list of lines that make up the report.
+     */
+    public List<String> createReport() {
+        List<String> lines = new ArrayList<>();
+
+        long uptimeSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime);
+        long hits = getCacheHits();
+        long misses = getCacheMisses();
+
+        lines.add("Recording for " + uptimeSeconds + " seconds");
+        lines.add("Cache: " + hits + " hits, " + misses + " misses (" + formatRatio(hits, hits + misses) + " hit " +
+                "rate), " + cacheLoadTime.getCount() + " loads, " + formatHistogram(cacheLoadTime));
+        lines.add("Connection wait: " + connectionWaitTime.getCount() + " connections, " + formatHistogram
+                (connectionWaitTime));
+
+        for (PlayerStat stat : PlayerStat.values()) {
+            long eventCount = getEvents(stat);
+            LatencyHistogram flushes = getFlushTime(stat);
+            LatencyHistogram listeners = getListenerTime(stat);
+
+            if (eventCount == 0 && flushes.getCount() == 0 && listeners.getCount() == 0) {
+                continue;
+            }
+
+            lines.add(stat + ": " + eventCount + " events, " + getRowsWritten(stat) + " rows written, " +
+                    getPoolDistinctKeys(stat) + " keys in last flush");
+            lines.add("  flush: " + flushes.getCount() + "x, " + formatHistogram(flushes));
+
+            if (listeners.getCount() > 0) {
+                lines.add("  listener: " + listeners.getCount() + "x, " + formatHistogram(listeners) + ", " +
+                        getBudgetOverruns(stat) + " ticks over budget");
+            }
+        }
+
+        return lines;
+    }
+
+    private static String formatHistogram(LatencyHistogram histogram) {
+        return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                histogram.getMean() / 1_000_000.0,
+                histogram.getValueAtPercentile(50) / 1_000_000.0,
+                histogram.getValueAtPercentile(99) / 1_000_000.0,
+                histogram.getMax() / 1_000_000.0);
+    }
+
+    private static String formatRatio(long part, long total) {
+        if (total == 0) {
+            return "0%";
+        }
+
+        return String.format("%.1f%%", part * 100.0 / total);
+    }
+}
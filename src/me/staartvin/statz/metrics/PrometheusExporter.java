@@ -0,0 +1,271 @@
+package me.staartvin.statz.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.cache.CacheBackend;
+import me.staartvin.statz.cache.OffHeapCacheBackend;
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.MySQLConnector;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the metrics of Statz in the Prometheus text exposition format on a local HTTP endpoint. Requests are
+ * handled by a single daemon thread, so the main thread is never involved. The text buffer and output buffer are
+ * reused between requests, so a scrape does not need to allocate much.
+ */
+public class PrometheusExporter implements HttpHandler {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Statz plugin;
+    private final MetricsManager metrics;
+
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+    private byte[] output = new byte[16 * 1024];
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PrometheusExporter(Statz plugin, MetricsManager metrics) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start the HTTP server on the given address.
+     *
+     * @param address Address to bind to
+     * @param port    Port to bind to
+     * @throws IOException if the server could not be bound.
+     */
+    public void start(String address, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Statz Prometheus exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.setExecutor(executor);
+        server.createContext("/metrics", this);
+        server.start();
+    }
+
+    /**
+     * Stop the HTTP server if it is running.
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+
+        server.stop(0);
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        server = null;
+        executor = null;
+    }
+
+    @Override
+    public synchronized void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            text.setLength(0);
+            this.writeMetrics();
+
+            int length = this.encode();
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, length);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(output, 0, length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Copy the text buffer into the output buffer. All metric names and labels are ASCII, so every character fits
+     * in a single byte.
+     *
+     * @return number of bytes in the output buffer.
+     */
+    private int encode() {
+        int length = text.length();
+
+        if (output.length < length) {
+            output = new byte[Math.max(length, output.length * 2)];
+        }
+
+        for (int i = 0; i < length; i++) {
+            output[i] = (byte) text.charAt(i);
+        }
+
+        return length;
+    }
+
+    private void writeMetrics() {
+        writeHeader("statz_events_total", "Number of updates recorded by listeners.", "counter");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeStatSample("statz_events_total", stat, metrics.getEvents(stat));
+        }
+
+        writeHeader("statz_rows_written_total", "Number of rows written to the database.", "counter");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeStatSample("statz_rows_written_total", stat, metrics.getRowsWritten(stat));
+        }
+
+        writeHeader("statz_pool_size", "Number of updates waiting in the pool.", "gauge");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeStatSample("statz_pool_size", stat, plugin.getUpdatePoolManager().getPoolSize(stat));
+        }
+
+        writeHeader("statz_pool_distinct_keys", "Number of distinct keys in the pool during the last flush.", "gauge");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeStatSample("statz_pool_distinct_keys", stat, metrics.getPoolDistinctKeys(stat));
+        }
+
+        writeHeader("statz_flush_duration_seconds", "Time it takes to send a pool to the database.", "summary");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeSummary("statz_flush_duration_seconds", stat, metrics.getFlushTime(stat));
+        }
+
+        writeHeader("statz_listener_duration_seconds", "Main thread time spent in listeners.", "summary");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeSummary("statz_listener_duration_seconds", stat, metrics.getListenerTime(stat));
+        }
+
+        writeHeader("statz_listener_budget_overruns_total", "Ticks in which a statistic used the most time while " +
+                "listeners exceeded the budget.", "counter");
+        for (PlayerStat stat : PlayerStat.values()) {
+            writeStatSample("statz_listener_budget_overruns_total", stat, metrics.getBudgetOverruns(stat));
+        }
+
+        long hits = metrics.getCacheHits();
+        long misses = metrics.getCacheMisses();
+
+        writeHeader("statz_cache_hits_total", "Number of requests that were served from the cache.", "counter");
+        writeSample("statz_cache_hits_total", hits);
+        writeHeader("statz_cache_misses_total", "Number of requests that were not in the cache.", "counter");
+        writeSample("statz_cache_misses_total", misses);
+        writeHeader("statz_cache_hit_ratio", "Ratio of requests that were served from the cache.", "gauge");
+        writeSample("statz_cache_hit_ratio", hits + misses == 0 ? 0 : hits / (double) (hits + misses));
+        writeHeader("statz_cache_players", "Number of players that have cached data.", "gauge");
+        writeSample("statz_cache_players", plugin.getCachingManager().getCachedPlayerCount());
+
+        CacheBackend cacheBackend = plugin.getCachingManager().getBackend();
+
+        if (cacheBackend instanceof OffHeapCacheBackend) {
+            OffHeapCacheBackend offHeapBackend = (OffHeapCacheBackend) cacheBackend;
+
+            writeHeader("statz_cache_heap_players", "Number of cached players that are kept on the heap.", "gauge");
+            writeSample("statz_cache_heap_players", offHeapBackend.getHotPlayerCount());
+            writeHeader("statz_cache_offheap_bytes", "Direct memory that is allocated for cached players.", "gauge");
+            writeSample("statz_cache_offheap_bytes", offHeapBackend.getAllocatedBytes());
+        }
+
+        writeHeader("statz_cache_load_duration_seconds", "Time it takes to load data of a player.", "summary");
+        writeSummary("statz_cache_load_duration_seconds", null, metrics.getCacheLoadTime());
+
+        writeHeader("statz_connection_wait_seconds", "Time spent waiting for a database connection.", "summary");
+        writeSummary("statz_connection_wait_seconds", null, metrics.getConnectionWaitTime());
+
+        DatabaseConnector connector = plugin.getDatabaseConnector();
+
+        if (connector instanceof MySQLConnector) {
+            HikariPoolMXBean pool = ((MySQLConnector) connector).getPoolStatistics();
+
+            if (pool != null) {
+                writeHeader("statz_hikari_connections_active", "Connections that are in use.", "gauge");
+                writeSample("statz_hikari_connections_active", pool.getActiveConnections());
+                writeHeader("statz_hikari_connections_idle", "Connections that are idle.", "gauge");
+                writeSample("statz_hikari_connections_idle", pool.getIdleConnections());
+                writeHeader("statz_hikari_connections_total", "Connections in the pool.", "gauge");
+                writeSample("statz_hikari_connections_total", pool.getTotalConnections());
+                writeHeader("statz_hikari_threads_awaiting", "Threads waiting for a connection.", "gauge");
+                writeSample("statz_hikari_threads_awaiting", pool.getThreadsAwaitingConnection());
+            }
+        }
+    }
+
+    private void writeHeader(String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void writeSample(String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void writeSample(String name, double value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void writeStatSample(String name, PlayerStat stat, long value) {
+        text.append(name).append("{stat=\"").append(stat.name()).append("\"} ").append(value).append('\n');
+    }
+
+    private void writeSummary(String name, PlayerStat stat, LatencyHistogram histogram) {
+        writeQuantile(name, stat, "0.5", histogram.getValueAtPercentile(50));
+        writeQuantile(name, stat, "0.99", histogram.getValueAtPercentile(99));
+
+        text.append(name).append("_sum");
+        writeLabels(stat, null);
+        text.append(' ').append(histogram.getSum() / 1e9).append('\n');
+
+        text.append(name).append("_count");
+        writeLabels(stat, null);
+        text.append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private void writeQuantile(String name, PlayerStat stat, String quantile, long nanos) {
+        text.append(name);
+        writeLabels(stat, quantile);
+        text.append(' ').append(nanos / 1e9).append('\n');
+    }
+
+    private void writeLabels(PlayerStat stat, String quantile) {
+        if (stat == null && quantile == null) {
+            return;
+        }
+
+        text.append('{');
+
+        if (stat != null) {
+            text.append("stat=\"").append(stat.name()).append('"');
+        }
+
+        if (quantile != null) {
+            if (stat != null) {
+                text.append(',');
+            }
+
+            text.append("quantile=\"").append(quantile).append('"');
+        }
+
+        text.append('}');
+    }
+}
@@ -0,0 +1,49 @@
+package me.staartvin.statz.metrics;
+
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.RegisteredListener;
+
+/**
+ * Wraps the executor of a listener of Statz so that the time spent on the main thread is recorded for the statistic
+ * the listener belongs to. The time is also reported to the {@link ListenerWatchdog}, so it can enforce the budget.
+ */
+public class TimedEventExecutor implements EventExecutor {
+
+    private final RegisteredListener delegate;
+    private final PlayerStat stat;
+    private final MetricsManager metrics;
+    private final ListenerWatchdog watchdog;
+
+    public TimedEventExecutor(RegisteredListener delegate, PlayerStat stat, MetricsManager metrics,
+                              ListenerWatchdog watchdog) {
+        this.delegate = delegate;
+        this.stat = stat;
+        this.metrics = metrics;
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) throws EventException {
+        // Only time events that are called on the main thread.
+        if (!Bukkit.isPrimaryThread()) {
+            delegate.callEvent(event);
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            delegate.callEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+
+            metrics.recordListenerTime(stat, elapsed);
+            watchdog.record(stat, elapsed);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package me.staartvin.statz.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is emitted when data of a player is loaded from the database into the cache.
+ */
+@Name("statz.CacheLoad")
+@Label("Statz Cache Load")
+@Category({"Statz", "Cache"})
+@Description("Data of a player was loaded from the database into the cache")
+public class CacheLoadEvent extends Event {
+
+    @Label("Player")
+    public String uuid;
+
+    @Label("Table")
+    @Description("Table that was loaded or '*' if all tables were loaded")
+    public String table;
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,23 @@
+package me.staartvin.statz.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is emitted when the cache of a player is refreshed with data from the database.
+ */
+@Name("statz.CacheRefresh")
+@Label("Statz Cache Refresh")
+@Category({"Statz", "Cache"})
+@Description("The cache of a player was overwritten with data from the database")
+public class CacheRefreshEvent extends Event {
+
+    @Label("Player")
+    public String uuid;
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,30 @@
+package me.staartvin.statz.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is emitted when the pool of a statistic is sent to the database.
+ */
+@Name("statz.Flush")
+@Label("Statz Flush")
+@Category({"Statz", "Database"})
+@Description("The compressed pool of a statistic was written to the database")
+public class FlushEvent extends Event {
+
+    @Label("Table")
+    public String table;
+
+    @Label("Rows")
+    @Description("Number of rows that were written")
+    public int rows;
+
+    @Label("Bytes")
+    @Description("Estimated size of the written data")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,29 @@
+package me.staartvin.statz.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is emitted when a patch is applied to the database.
+ */
+@Name("statz.PatchApply")
+@Label("Statz Patch Apply")
+@Category({"Statz", "Database"})
+@Description("A patch was applied to the database")
+public class PatchApplyEvent extends Event {
+
+    @Label("Patch Id")
+    public int patchId;
+
+    @Label("Patch Name")
+    public String patchName;
+
+    @Label("Database")
+    public String database;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,28 @@
+package me.staartvin.statz.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is emitted when the pool of a statistic is compressed before it is sent to the database.
+ */
+@Name("statz.PoolCompression")
+@Label("Statz Pool Compression")
+@Category({"Statz", "Database"})
+@Description("Conflicting queries in the pool of a statistic were merged")
+public class PoolCompressionEvent extends Event {
+
+    @Label("Table")
+    public String table;
+
+    @Label("Input Queries")
+    @Description("Number of queries in the pool before compression")
+    public int inputQueries;
+
+    @Label("Output Queries")
+    @Description("Number of queries in the pool after compression")
+    public int outputQueries;
+}
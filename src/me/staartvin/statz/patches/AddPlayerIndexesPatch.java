@@ -0,0 +1,224 @@
+package me.staartvin.statz.patches;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * This patch adds indexes to all tables of Statz. The unique key of a table does not always start with the uuid
+ * column, so loading or purging the data of a single player had to scan the whole table. Every table gets an index
+ * on (uuid, value), which is also used to compute the totals of leaderboards, and an index on value.
+ * <br>
+ * <br>
+ * After the indexes are created, the query plans of a player lookup and a leaderboard query are checked with
+ * EXPLAIN, and a warning is logged for every table where the database does not use an index.
+ */
+public class AddPlayerIndexesPatch extends Patch {
+
+    public AddPlayerIndexesPatch(Statz plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public boolean applyMySQLChanges() {
+        return this.createIndexes("CREATE INDEX %s ON %s (%s)");
+    }
+
+    @Override
+    public boolean applySQLiteChanges() {
+        return this.createIndexes("CREATE INDEX IF NOT EXISTS %s ON %s (%s)");
+    }
+
+    @Override
+    public String getPatchName() {
+        return "Add indexes on uuid and value";
+    }
+
+    @Override
+    public int getPatchId() {
+        return 7;
+    }
+
+    @Override
+    public boolean isPatchNeeded() {
+        try {
+            for (Table table : this.getIndexedTables()) {
+                if (!this.getExistingIndexes(table).containsAll(getRequiredIndexes(table).keySet())) {
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return true;
+        }
+
+        // All indexes exist already.
+        return false;
+    }
+
+    private boolean createIndexes(String statementFormat) {
+        try {
+            for (Table table : this.getIndexedTables()) {
+                Set<String> existingIndexes = this.getExistingIndexes(table);
+
+                for (Map.Entry<String, String> index : getRequiredIndexes(table).entrySet()) {
+                    if (existingIndexes.contains(index.getKey())) {
+                        continue;
+                    }
+
+                    this.withStatement(statement -> statement.executeUpdate(String.format(statementFormat,
+                            index.getKey(), table.getTableName(), index.getValue())));
+                }
+            }
+        } catch (SQLException e) {
+            this.getStatz().getLogger().log(Level.WARNING, "Failed to patch database for patch " +
+                    this.getPatchId(), e);
+            return false;
+        }
+
+        this.checkQueryPlans();
+
+        return true;
+    }
+
+    /**
+     * Check whether the database uses the new indexes to look up the rows of a player and to compute the totals
+     * per player. This only logs a warning, as the indexes are still valid if a database decides not to use them.
+     */
+    private void checkQueryPlans() {
+        boolean useMySQL = this.plugin.getConfigHandler().isMySQLEnabled();
+        String explain = useMySQL ? "EXPLAIN " : "EXPLAIN QUERY PLAN ";
+
+        for (Table table : this.getIndexedTables()) {
+            Set<String> createdIndexes = getRequiredIndexes(table).keySet();
+            List<String> queries = new ArrayList<>();
+
+            queries.add("SELECT * FROM " + table.getTableName() + " WHERE uuid = ''");
+
+            if (table.getColumn("value") != null) {
+                queries.add("SELECT uuid, SUM(value) FROM " + table.getTableName() + " GROUP BY uuid");
+            }
+
+            for (String query : queries) {
+                try {
+                    boolean usesIndex = this.withStatement(statement -> {
+                        try (ResultSet resultSet = statement.executeQuery(explain + query)) {
+                            while (resultSet.next()) {
+                                // MySQL shows the index it chose (NULL if it scans the table), SQLite describes how
+                                // it finds the rows.
+                                if (useMySQL) {
+                                    String key = resultSet.getString("key");
+
+                                    if (key != null && createdIndexes.stream().anyMatch(key::equalsIgnoreCase)) {
+                                        return true;
+                                    }
+                                } else {
+                                    String plan = resultSet.getString("detail");
+
+                                    if (plan != null && plan.toUpperCase().contains("INDEX")) {
+                                        return true;
+                                    }
+                                }
+                            }
+                        }
+
+                        return false;
+                    });
+
+                    if (!usesIndex) {
+                        this.getStatz().getLogger().warning("The database does not use an index for query '" +
+                                query + "'. Loading data of players may be slow.");
+                    }
+                } catch (SQLException e) {
+                    this.getStatz().getLogger().log(Level.WARNING, "Could not check query plan of '" + query + "'", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the indexes that a table with a uuid column should have.
+     *
+     * @param table Table to get the indexes of
+     * @return a map of the name of each index to the columns it covers.
+     */
+    public static Map<String, String> getRequiredIndexes(Table table) {
+        Map<String, String> indexes = new LinkedHashMap<>();
+
+        if (table.getColumn("value") == null) {
+            indexes.put(table.getTableName() + "_uuid", "uuid");
+        } else {
+            indexes.put(table.getTableName() + "_uuid_value", "uuid, value");
+            indexes.put(table.getTableName() + "_value", "value");
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Get all tables that store data per player.
+     */
+    private List<Table> getIndexedTables() {
+        List<Table> tables = new ArrayList<>();
+
+        for (Table table : this.getDatabaseConnector().getTables()) {
+            if (table.getColumn("uuid") != null) {
+                tables.add(table);
+            }
+        }
+
+        return tables;
+    }
+
+    private Set<String> getExistingIndexes(Table table) throws SQLException {
+        boolean useMySQL = this.plugin.getConfigHandler().isMySQLEnabled();
+
+        return this.withStatement(statement -> {
+            Set<String> indexes = new HashSet<>();
+
+            try (ResultSet resultSet = statement.executeQuery(useMySQL ? "SHOW INDEX FROM " + table.getTableName()
+                    : "PRAGMA index_list(" + table.getTableName() + ")")) {
+                while (resultSet.next()) {
+                    indexes.add(resultSet.getString(useMySQL ? "Key_name" : "name"));
+                }
+            }
+
+            return indexes;
+        });
+    }
+
+    /**
+     * Run a task with a statement of the database. The statement is closed afterwards. The connection is also
+     * closed for MySQL, but not for SQLite as it is shared.
+     */
+    private <T> T withStatement(StatementTask<T> task) throws SQLException {
+        Connection connection = this.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            return task.run(statement);
+        } finally {
+            if (this.plugin.getConfigHandler().isMySQLEnabled()) {
+                connection.close();
+            }
+        }
+    }
+
+    private interface StatementTask<T> {
+        T run(Statement statement) throws SQLException;
+    }
+}
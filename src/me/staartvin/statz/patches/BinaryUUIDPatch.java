@@ -0,0 +1,210 @@
+package me.staartvin.statz.patches;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.BinaryUUIDs;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * This patch stores the uuids of all tables of Statz as 16 bytes instead of text, see {@link BinaryUUIDs}. It is
+ * only applied when 'binary uuids' is enabled in the config. Tables that have been converted are stored in
+ * {@link BinaryUUIDs#BINARY_TABLES_TABLE}, so a table is never converted twice.
+ * <br>
+ * <br>
+ * For MySQL, the uuid columns are changed to BINARY(16). SQLite stores the bytes in the existing columns, as a
+ * column of SQLite can hold values of any type.
+ */
+public class BinaryUUIDPatch extends Patch {
+
+    public BinaryUUIDPatch(Statz plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public boolean applyMySQLChanges() {
+        return this.convertTables(true);
+    }
+
+    @Override
+    public boolean applySQLiteChanges() {
+        return this.convertTables(false);
+    }
+
+    @Override
+    public String getPatchName() {
+        return "Store uuids as bytes";
+    }
+
+    @Override
+    public int getPatchId() {
+        return 9;
+    }
+
+    @Override
+    public boolean isPatchNeeded() {
+        return plugin.getConfigHandler().isBinaryUUIDsEnabled() && !this.getTablesToConvert().isEmpty();
+    }
+
+    @Override
+    public boolean isOptional() {
+        return true;
+    }
+
+    private boolean convertTables(boolean useMySQL) {
+        try {
+            this.withConnection(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + BinaryUUIDs.BINARY_TABLES_TABLE + " " +
+                            "(table_name " + (useMySQL ? "VARCHAR(100)" : "TEXT") + " NOT NULL PRIMARY KEY)");
+                }
+
+                return null;
+            });
+
+            for (Table table : this.getTablesToConvert()) {
+                // Do not write new statistics to the table while its uuids are being converted.
+                synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                    this.withConnection(connection -> {
+                        if (useMySQL) {
+                            this.convertMySQLTable(connection, table);
+                        } else {
+                            this.convertSQLiteTable(connection, table);
+                        }
+
+                        return null;
+                    });
+
+                    this.getDatabaseConnector().getBinaryUUIDs().load();
+                }
+
+                plugin.debugMessage("Converted uuids of table " + table.getTableName());
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to patch database for patch " + this.getPatchId(), e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The text of the uuids is first turned into bytes by changing the column to VARBINARY, so the text can be
+     * converted without running into the character set of the column. Only uuids that are still text are
+     * converted, so the table can be converted again if the server stopped halfway.
+     */
+    private void convertMySQLTable(Connection connection, Table table) throws SQLException {
+        String tableName = table.getTableName();
+        String notNull = table.getColumn("uuid").isNotNull() ? " NOT NULL" : "";
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + tableName + " MODIFY uuid VARBINARY(100)" + notNull);
+            statement.executeUpdate("UPDATE " + tableName + " SET uuid = UNHEX(REPLACE(uuid, '-', '')) WHERE " +
+                    "LENGTH(uuid) = 36");
+            statement.executeUpdate("ALTER TABLE " + tableName + " MODIFY uuid BINARY(16)" + notNull);
+        }
+
+        this.markConverted(connection, tableName);
+    }
+
+    /**
+     * SQLite does not have a function to turn hexadecimal text into bytes in every version, so the uuids are
+     * converted one player at a time, in a single transaction.
+     */
+    private void convertSQLiteTable(Connection connection, Table table) throws SQLException {
+        String tableName = table.getTableName();
+        List<String> uuids = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT DISTINCT uuid FROM " + tableName + " WHERE " +
+                     "typeof(uuid) = 'text'")) {
+            while (resultSet.next()) {
+                uuids.add(resultSet.getString(1));
+            }
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+
+        try {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement update = connection.prepareStatement("UPDATE " + tableName + " SET uuid = ? " +
+                    "WHERE uuid = ?")) {
+                for (String uuid : uuids) {
+                    try {
+                        update.setBytes(1, BinaryUUIDs.toBytes(UUID.fromString(uuid)));
+                    } catch (IllegalArgumentException e) {
+                        // Leave rows that do not have a valid uuid as they are.
+                        continue;
+                    }
+
+                    update.setString(2, uuid);
+                    update.addBatch();
+                }
+
+                update.executeBatch();
+            }
+
+            this.markConverted(connection, tableName);
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void markConverted(Connection connection, String tableName) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " +
+                BinaryUUIDs.BINARY_TABLES_TABLE + " (table_name) VALUES (?)")) {
+            insert.setString(1, tableName);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Get all tables that have a uuid column, but have not been converted yet.
+     */
+    private List<Table> getTablesToConvert() {
+        List<Table> tables = new ArrayList<>();
+
+        for (Table table : this.getDatabaseConnector().getTables()) {
+            if (table.getColumn("uuid") != null && !this.getDatabaseConnector().getBinaryUUIDs().isBinary(table)) {
+                tables.add(table);
+            }
+        }
+
+        return tables;
+    }
+
+    /**
+     * Run a task with a connection of the database. The connection is given back afterwards.
+     */
+    private <T> T withConnection(ConnectionTask<T> task) throws SQLException {
+        Connection connection = this.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try {
+            return task.run(connection);
+        } finally {
+            this.getDatabaseConnector().releaseConnection(connection);
+        }
+    }
+
+    private interface ConnectionTask<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,228 @@
+package me.staartvin.statz.patches;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.Dictionary;
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * This patch replaces the names of worlds, materials, mobs, etc. in the tables of Statz by the ids of a
+ * {@link Dictionary}. It is only applied when 'dictionary encoding' is enabled in the config. Tables that have been
+ * converted are stored in {@link Dictionary#ENCODED_TABLES_TABLE}, so a table is never converted twice.
+ * <br>
+ * <br>
+ * For MySQL, the encoded columns are changed to integer columns afterwards. SQLite cannot change the type of a
+ * column, so the ids are stored as text there. They are still a lot smaller than the names they replace.
+ */
+public class DictionaryEncodingPatch extends Patch {
+
+    public DictionaryEncodingPatch(Statz plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public boolean applyMySQLChanges() {
+        return this.encodeTables(true);
+    }
+
+    @Override
+    public boolean applySQLiteChanges() {
+        return this.encodeTables(false);
+    }
+
+    @Override
+    public String getPatchName() {
+        return "Encode names of worlds, materials, etc. in a dictionary";
+    }
+
+    @Override
+    public int getPatchId() {
+        return 8;
+    }
+
+    @Override
+    public boolean isPatchNeeded() {
+        return plugin.getConfigHandler().isDictionaryEncodingEnabled() && !this.getTablesToEncode().isEmpty();
+    }
+
+    @Override
+    public boolean isOptional() {
+        return true;
+    }
+
+    private boolean encodeTables(boolean useMySQL) {
+        try {
+            this.withConnection(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (String statementText : getCreateStatements(useMySQL)) {
+                        statement.executeUpdate(statementText);
+                    }
+                }
+
+                return null;
+            });
+
+            for (Table table : this.getTablesToEncode()) {
+                // Do not write new statistics to the table while its names are being replaced.
+                synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                    this.withConnection(connection -> {
+                        this.encodeTable(connection, table, useMySQL);
+                        return null;
+                    });
+
+                    this.getDatabaseConnector().getDictionary().load();
+                }
+
+                plugin.debugMessage("Encoded names of table " + table.getTableName());
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to patch database for patch " + this.getPatchId(), e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace the names of all encoded columns of a table by their ids and mark the table as encoded. The names are
+     * added to the dictionaries first. Replacing the names and marking the table is done in one transaction.
+     */
+    private void encodeTable(Connection connection, Table table, boolean useMySQL) throws SQLException {
+        List<String> columns = Dictionary.getEncodedColumns(table);
+        String tableName = table.getTableName();
+
+        try (Statement statement = connection.createStatement()) {
+            for (String column : columns) {
+                statement.executeUpdate((useMySQL ? "INSERT IGNORE INTO " : "INSERT OR IGNORE INTO ")
+                        + Dictionary.getTableName(Dictionary.getDimension(column)) + " (name) SELECT DISTINCT "
+                        + column + " FROM " + tableName + " WHERE " + column + " IS NOT NULL");
+            }
+        }
+
+        StringBuilder update = new StringBuilder("UPDATE ").append(tableName);
+        List<String> assignments = new ArrayList<>();
+
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String dictionaryTable = Dictionary.getTableName(Dictionary.getDimension(column));
+
+            if (useMySQL) {
+                update.append(" LEFT JOIN ").append(dictionaryTable).append(" d").append(i).append(" ON ")
+                        .append(tableName).append('.').append(column).append(" = d").append(i).append(".name");
+                assignments.add(tableName + "." + column + " = d" + i + ".id");
+            } else {
+                assignments.add(column + " = (SELECT id FROM " + dictionaryTable + " WHERE name = " + tableName
+                        + "." + column + ")");
+            }
+        }
+
+        update.append(" SET ").append(String.join(", ", assignments));
+
+        boolean autoCommit = connection.getAutoCommit();
+
+        try {
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(update.toString());
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " +
+                    Dictionary.ENCODED_TABLES_TABLE + " (table_name) VALUES (?)")) {
+                insert.setString(1, tableName);
+                insert.executeUpdate();
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        if (!useMySQL) {
+            return;
+        }
+
+        // The table is already encoded, the smaller column type only saves space.
+        List<String> modifications = new ArrayList<>();
+
+        for (String column : columns) {
+            Column definition = table.getColumn(column);
+
+            modifications.add("MODIFY " + column + " INT" + (definition.isNotNull() ? " NOT NULL" : ""));
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + tableName + " " + String.join(", ", modifications));
+        }
+    }
+
+    /**
+     * Get the statements that create the dictionaries and the table of encoded tables.
+     */
+    private static List<String> getCreateStatements(boolean useMySQL) {
+        List<String> statements = new ArrayList<>();
+
+        for (String dimension : Dictionary.getDimensions()) {
+            if (useMySQL) {
+                statements.add("CREATE TABLE IF NOT EXISTS " + Dictionary.getTableName(dimension) + " (id INT NOT " +
+                        "NULL AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) NOT NULL, UNIQUE KEY name (name))");
+            } else {
+                statements.add("CREATE TABLE IF NOT EXISTS " + Dictionary.getTableName(dimension) + " (id INTEGER " +
+                        "PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL UNIQUE)");
+            }
+        }
+
+        statements.add("CREATE TABLE IF NOT EXISTS " + Dictionary.ENCODED_TABLES_TABLE + " (table_name " +
+                (useMySQL ? "VARCHAR(100)" : "TEXT") + " NOT NULL PRIMARY KEY)");
+
+        return statements;
+    }
+
+    /**
+     * Get all tables that have encoded columns, but have not been converted yet.
+     */
+    private List<Table> getTablesToEncode() {
+        List<Table> tables = new ArrayList<>();
+
+        for (Table table : this.getDatabaseConnector().getTables()) {
+            if (!Dictionary.getEncodedColumns(table).isEmpty()
+                    && !this.getDatabaseConnector().getDictionary().isEncoded(table)) {
+                tables.add(table);
+            }
+        }
+
+        return tables;
+    }
+
+    /**
+     * Run a task with a connection of the database. The connection is given back afterwards.
+     */
+    private <T> T withConnection(ConnectionTask<T> task) throws SQLException {
+        Connection connection = this.getDatabaseConnector().getConnection();
+
+        if (connection == null) {
+            throw new SQLException("Statz is not connected to the database.");
+        }
+
+        try {
+            return task.run(connection);
+        } finally {
+            this.getDatabaseConnector().releaseConnection(connection);
+        }
+    }
+
+    private interface ConnectionTask<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
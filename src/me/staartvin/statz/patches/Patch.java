@@ -29,6 +29,16 @@ public abstract class Patch {
      * @return true if the patch should be applied, false if not.
      */
     public abstract boolean isPatchNeeded();
+
+    /**
+     * Check whether this patch is optional. Optional patches are only applied when a server owner enables them, so
+     * they are checked on every start, regardless of the patches that were applied before.
+     *
+     * @return true if the patch is optional, false if it should always be applied.
+     */
+    public boolean isOptional() {
+        return false;
+    }
 	
 	public DatabaseConnector getDatabaseConnector() {
 		return plugin.getDatabaseConnector();
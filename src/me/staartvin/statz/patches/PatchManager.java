@@ -1,6 +1,7 @@
 package me.staartvin.statz.patches;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.metrics.jfr.PatchApplyEvent;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,6 +11,9 @@ public class PatchManager {
     private Statz plugin;
     private List<Patch> patches = new ArrayList<>();
 
+    // Number of patches that changed the database since Statz was enabled
+    private int appliedPatchCount = 0;
+
     public PatchManager(Statz plugin) {
         this.plugin = plugin;
 
@@ -20,6 +24,9 @@ public class PatchManager {
         patches.add(new RemoveTypeIdAndDataValuesPatch(plugin));
         patches.add(new RenameFoodNamesPatch(plugin));
         patches.add(new RemoveForceShotArrowsPatch(plugin));
+        patches.add(new AddPlayerIndexesPatch(plugin));
+        patches.add(new DictionaryEncodingPatch(plugin));
+        patches.add(new BinaryUUIDPatch(plugin));
     }
 
     public void applyPatches() {
@@ -35,15 +42,18 @@ public class PatchManager {
 
         for (Patch patch : patches) {
 
-            // We already applied this patch, so ignore it
-            if (useMySQL && plugin.getConfigHandler().getLatestPatchMySQLVersion() >= patch.getPatchId()) {
+            // Optional patches do not count towards the latest patch version, so check them every time.
+            if (patch.isOptional()) {
+                if (!patch.isPatchNeeded()) {
+                    continue;
+                }
+            } else if (useMySQL && plugin.getConfigHandler().getLatestPatchMySQLVersion() >= patch.getPatchId()) {
+                // We already applied this patch, so ignore it
                 continue;
             } else if (!useMySQL && plugin.getConfigHandler().getLatestPatchSQLiteVersion() >= patch.getPatchId()) {
                 continue;
-            }
-
-            // Don't apply the patch if it is not needed.
-            if (!patch.isPatchNeeded()) {
+            } else if (!patch.isPatchNeeded()) {
+                // Don't apply the patch if it is not needed.
 
                 // Check to see if the current patch version is smaller than we just checked.
                 // If it is, we update it to current patch version.
@@ -78,6 +88,9 @@ public class PatchManager {
 
             boolean success = false;
 
+            PatchApplyEvent event = new PatchApplyEvent();
+            event.begin();
+
             // Update latest patch information.
             if (plugin.getConfigHandler().isMySQLEnabled()) {
 
@@ -88,7 +101,7 @@ public class PatchManager {
                 }
 
 
-                if (success) {
+                if (success && !patch.isOptional()) {
                     plugin.getConfigHandler().setLatestPatchMySQLVersion(patch.getPatchId());
                 }
             } else {
@@ -100,11 +113,21 @@ public class PatchManager {
                     success = false;
                 }
 
-                if (success) {
+                if (success && !patch.isOptional()) {
                     plugin.getConfigHandler().setLatestPatchSQLiteVersion(patch.getPatchId());
                 }
             }
 
+            event.end();
+
+            if (event.shouldCommit()) {
+                event.patchId = patch.getPatchId();
+                event.patchName = patch.getPatchName();
+                event.database = useMySQL ? "MySQL" : "SQLite";
+                event.success = success;
+                event.commit();
+            }
+
             if (success) {
                 plugin.getLogger().info("Successfully applied patch '" + patch.getPatchName() + "' (id: " + patch
                         .getPatchId() + ").");
@@ -127,6 +150,7 @@ public class PatchManager {
             }
 
             count++;
+            appliedPatchCount++;
         }
 
         if (count == 0) {
@@ -151,6 +175,15 @@ public class PatchManager {
 
     }
 
+    /**
+     * Get the number of patches that changed the database since Statz was enabled.
+     *
+     * @return the number of applied patches.
+     */
+    public int getAppliedPatchCount() {
+        return appliedPatchCount;
+    }
+
     /**
      * Create a backup of the storage of data. This is used to be able to rollback data when a patch has gone wrong.
      *
@@ -3,13 +3,17 @@ package me.staartvin.statz.patches;
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.DatabaseConnector;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import me.staartvin.statz.util.StatzUtil;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * This patch updates the database schemas so Statz records the material names used in Minecraft 1.13 instead of the
@@ -21,15 +25,15 @@ public class RemoveTypeIdAndDataValuesPatch extends Patch {
         super(plugin);
     }
 
+    // Number of rows that are read and converted at once
+    private static final int CONVERT_BATCH_SIZE = 1000;
+
     @Override
     public boolean applyMySQLChanges() {
 
-        List<String> queries = convertMySQLTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName());
-
-        queries.addAll(convertMySQLTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN).getTableName()));
-
         try {
-            this.getDatabaseConnector().sendQueries(queries, false);
+            convertMySQLTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName());
+            convertMySQLTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN).getTableName());
 
             return true;
 
@@ -83,15 +87,11 @@ public class RemoveTypeIdAndDataValuesPatch extends Patch {
     @Override
     public boolean applySQLiteChanges() {
 
-        List<String> queries = convertSQLiteTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN)
-                .getTableName(), DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN)
-                .getTableName() + "_temp");
-
-        queries.addAll(convertSQLiteTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName(),
-                DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName() + "_temp"));
-
         try {
-            this.getDatabaseConnector().sendQueries(queries, false);
+            convertSQLiteTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN).getTableName(),
+                    DatabaseConnector.getTable(PlayerStat.BLOCKS_BROKEN).getTableName() + "_temp");
+            convertSQLiteTable(DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName(),
+                    DatabaseConnector.getTable(PlayerStat.BLOCKS_PLACED).getTableName() + "_temp");
 
             return true;
         } catch (Exception e) {
@@ -102,7 +102,7 @@ public class RemoveTypeIdAndDataValuesPatch extends Patch {
 
     }
 
-    private List<String> convertSQLiteTable(String tableName, String temporaryName) {
+    private void convertSQLiteTable(String tableName, String temporaryName) throws SQLException {
         // Create new table with new indexes and column 'block' (without columns 'typeid' and 'datavalue').
         // Insert data from old table to new table (but convert to material name)
         // Drop old table
@@ -111,50 +111,48 @@ public class RemoveTypeIdAndDataValuesPatch extends Patch {
 
         List<String> queries = new ArrayList<>();
 
+        // Remove the rows of an earlier attempt that did not finish.
+        queries.add("DROP TABLE IF EXISTS " + temporaryName);
         queries.add("CREATE TABLE " + temporaryName + " ('id' INTEGER PRIMARY KEY " +
                 "NOT NULL, " +
                 "'uuid' TEXT NOT NULL, 'value' INTEGER NOT NULL, 'world' TEXT NOT NULL, 'block' TEXT NOT NULL, UNIQUE" +
                 " (uuid, block, world))");
 
-        // Get all data in the table
-        List<Query> data = this.getDatabaseConnector().getObjects(tableName);
-
-        for (Query query : data) {
+        this.getDatabaseConnector().sendQueries(queries, false);
 
+        convertRows(tableName, query -> {
             int typeId = Integer.parseInt(query.getValue("typeid").toString());
             int dataValue = Integer.parseInt(query.getValue("datavalue").toString());
 
             org.bukkit.Material matchingMaterial = StatzUtil.findMaterial(typeId, dataValue);
 
-            queries.add(String.format("INSERT INTO %s (uuid, value, world, block) VALUES ('%s', %s, '%s', '%s')",
+            return String.format("INSERT INTO %s (uuid, value, world, block) VALUES ('%s', %s, '%s', '%s')",
                     temporaryName,
-                    query.getUUID(), query.getValue(), query.getValue("world").toString(), matchingMaterial.name()));
-        }
+                    query.getUUID(), query.getValue(), query.getValue("world").toString(), matchingMaterial.name());
+        });
 
+        queries.clear();
         queries.add("DROP TABLE IF EXISTS " + tableName);
         queries.add("ALTER TABLE " + temporaryName + " RENAME TO " + tableName);
 
-        return queries;
+        this.getDatabaseConnector().sendQueries(queries, false);
     }
 
-    private List<String> convertMySQLTable(String tableName) {
-        List<String> queries = new ArrayList<>();
-
+    private void convertMySQLTable(String tableName) throws SQLException {
         // Add a new column called 'block'
-        queries.add("ALTER TABLE " + tableName + " ADD block VARCHAR(100) NOT NULL");
-
-        // Get all data in the table
-        List<Query> data = this.getDatabaseConnector().getObjects(tableName);
+        this.getDatabaseConnector().sendQueries(Collections.singletonList("ALTER TABLE " + tableName + " ADD block " +
+                "VARCHAR(100) NOT NULL"), false);
 
         // Add value for each row for the new block column
-        for (Query query : data) {
-
+        convertRows(tableName, query -> {
             int itemId = Integer.parseInt(query.getValue("typeid").toString());
             int damageValue = Integer.parseInt(query.getValue("datavalue").toString());
 
-            queries.add("UPDATE " + tableName + " SET block='" + StatzUtil.findMaterial(itemId, damageValue) + "' " +
-                    "WHERE id=" + query.getValue("id"));
-        }
+            return "UPDATE " + tableName + " SET block='" + StatzUtil.findMaterial(itemId, damageValue) + "' " +
+                    "WHERE id=" + query.getValue("id");
+        });
+
+        List<String> queries = new ArrayList<>();
 
         // Update the index with the new column
         queries.add("ALTER TABLE " + tableName + " DROP INDEX uuid, ADD UNIQUE KEY `uuid` (`uuid`,`block`,`world`)");
@@ -162,8 +160,43 @@ public class RemoveTypeIdAndDataValuesPatch extends Patch {
         // Remove the old columns
         queries.add("ALTER TABLE " + tableName + " DROP COLUMN typeid, DROP COLUMN datavalue");
 
+        this.getDatabaseConnector().sendQueries(queries, false);
+    }
+
+    /**
+     * Go over the rows of a table in batches, ordered by their id, and write the statements that convert the rows of
+     * a batch before the next batch is read. Neither the rows nor the statements of the whole table are kept in
+     * memory, and no rows are being read while the statements are written.
+     */
+    private void convertRows(String tableName, Function<Query, String> conversion) throws SQLException {
+        Table table = DatabaseConnector.getTable(tableName);
+        Long lastId = null;
+
+        while (true) {
+            Selection selection = new Selection(table).orderBy("id", false).limit(CONVERT_BATCH_SIZE);
+            List<String> queries = new ArrayList<>();
+            List<Query> rows = new ArrayList<>();
+
+            if (lastId != null) {
+                selection.whereAfter("id", lastId);
+            }
+
+            if (this.getDatabaseConnector().forEachObject(selection, rows::add) < 0) {
+                throw new SQLException("Could not read table " + tableName);
+            }
+
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            for (Query row : rows) {
+                queries.add(conversion.apply(row));
+            }
 
-        return queries;
+            this.getDatabaseConnector().sendQueries(queries, false);
+
+            lastId = Long.parseLong(rows.get(rows.size() - 1).getValue("id").toString());
+        }
     }
 
 }
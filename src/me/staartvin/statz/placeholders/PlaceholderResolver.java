@@ -0,0 +1,320 @@
+package me.staartvin.statz.placeholders;
+
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.leaderboard.Leaderboard;
+import me.staartvin.statz.leaderboard.LeaderboardManager;
+import me.staartvin.statz.util.StatzUtil;
+import org.bukkit.Material;
+import org.bukkit.entity.EntityType;
+
+import java.util.Locale;
+
+/**
+ * A placeholder of Statz that has been parsed into the statistic and requirements it refers to. Parsing a
+ * placeholder (and looking up the materials, mobs, etc. it mentions) is only done once per placeholder, see
+ * {@link #compile(String)}. Resolving a compiled placeholder only needs the data of the player, or a leaderboard
+ * for placeholders of the form <code>top_&lt;stat&gt;[_&lt;column&gt;=&lt;value&gt;]_&lt;rank&gt;_name|value</code>.
+ */
+public class PlaceholderResolver {
+
+    /**
+     * Resolver for placeholders that are not provided by Statz.
+     */
+    public static final PlaceholderResolver INVALID = new PlaceholderResolver(null, null, null, null, 0);
+
+    private final PlayerStat statType;
+    private final RowRequirement[] requirements;
+    private final Format format;
+
+    // Text that is returned regardless of the data of the player, e.g. when the placeholder mentions an unknown mob.
+    private final String fixedText;
+
+    // Rank on the leaderboard that is shown, or 0 if this is not a leaderboard placeholder.
+    private final int rank;
+
+    private PlaceholderResolver(PlayerStat statType, RowRequirement[] requirements, Format format,
+                                String fixedText, int rank) {
+        this.statType = statType;
+        this.requirements = requirements;
+        this.format = format;
+        this.fixedText = fixedText;
+        this.rank = rank;
+    }
+
+    private static PlaceholderResolver of(PlayerStat statType, Format format, RowRequirement... requirements) {
+        return new PlaceholderResolver(statType, requirements, format, null, 0);
+    }
+
+    private static PlaceholderResolver fixed(String text) {
+        return new PlaceholderResolver(null, null, null, text, 0);
+    }
+
+    /**
+     * Parse the parameters of a placeholder (the part after 'statz_').
+     *
+     * @param params Parameters of the placeholder
+     * @return a resolver for the placeholder, or {@link #INVALID} if Statz does not provide this placeholder.
+     */
+    public static PlaceholderResolver compile(String params) {
+        String lowerCaseParams = params.toLowerCase(Locale.ROOT);
+
+        // Regular placeholders
+        switch (lowerCaseParams) {
+            case "joins":
+                return of(PlayerStat.JOINS, Format.NUMBER);
+            case "deaths":
+                return of(PlayerStat.DEATHS, Format.NUMBER);
+            case "blocks_broken":
+                return of(PlayerStat.BLOCKS_BROKEN, Format.NUMBER);
+            case "blocks_placed":
+                return of(PlayerStat.BLOCKS_PLACED, Format.NUMBER);
+            case "damage_taken":
+                return of(PlayerStat.DAMAGE_TAKEN, Format.NUMBER);
+            case "distance_travelled":
+                return of(PlayerStat.DISTANCE_TRAVELLED, Format.NUMBER);
+            case "food_eaten":
+                return of(PlayerStat.FOOD_EATEN, Format.NUMBER);
+            case "crafted_items":
+                return of(PlayerStat.ITEMS_CRAFTED, Format.NUMBER);
+            case "caught_items":
+                return of(PlayerStat.ITEMS_CAUGHT, Format.NUMBER);
+            case "players_killed":
+                return of(PlayerStat.KILLS_PLAYERS, Format.NUMBER);
+            case "time_played":
+                return of(PlayerStat.TIME_PLAYED, Format.NUMBER);
+            case "time_played_formatted":
+                return of(PlayerStat.TIME_PLAYED, Format.TIME);
+            case "times_shorn":
+                return of(PlayerStat.TIMES_SHORN, Format.NUMBER);
+            case "xp_gained":
+                return of(PlayerStat.XP_GAINED, Format.NUMBER);
+            case "mobs_killed":
+                return of(PlayerStat.KILLS_MOBS, Format.NUMBER);
+            case "villager_trades":
+                return of(PlayerStat.VILLAGER_TRADES, Format.NUMBER);
+            case "votes":
+                return of(PlayerStat.VOTES, Format.NUMBER);
+        }
+
+        // Leaderboard placeholders
+        if (lowerCaseParams.startsWith("top_")) {
+            return compileLeaderboard(params.substring("top_".length()));
+        }
+
+        // More specific placeholders
+        if (lowerCaseParams.startsWith("mobs_killed_")) {
+            EntityType type = parseEnum(EntityType.class, params.substring("mobs_killed_".length()));
+
+            return type == null ? fixed("Unknown mob") : of(PlayerStat.KILLS_MOBS, Format.NUMBER,
+                    new RowRequirement("mob", type.toString()));
+        } else if (lowerCaseParams.startsWith("blocks_broken_")) {
+            Material type = parseEnum(Material.class, params.substring("blocks_broken_".length()));
+
+            return type == null ? fixed("Unknown block") : of(PlayerStat.BLOCKS_BROKEN, Format.NUMBER,
+                    new RowRequirement("block", type.toString()));
+        } else if (lowerCaseParams.startsWith("blocks_placed_")) {
+            Material type = parseEnum(Material.class, params.substring("blocks_placed_".length()));
+
+            return type == null ? fixed("Unknown block") : of(PlayerStat.BLOCKS_PLACED, Format.NUMBER,
+                    new RowRequirement("block", type.toString()));
+        } else if (lowerCaseParams.startsWith("food_eaten_")) {
+            Material type = parseEnum(Material.class, params.substring("food_eaten_".length()));
+
+            return type == null ? fixed("Unknown food") : of(PlayerStat.FOOD_EATEN, Format.NUMBER,
+                    new RowRequirement("foodEaten", type.toString()));
+        } else if (lowerCaseParams.startsWith("villager_trades_")) {
+            Material type = parseEnum(Material.class, params.substring("villager_trades_".length()));
+
+            return type == null ? fixed("Unknown material") : of(PlayerStat.VILLAGER_TRADES, Format.NUMBER,
+                    new RowRequirement("trade", type.toString()));
+        } else if (lowerCaseParams.startsWith("distance_travelled_")) {
+            return of(PlayerStat.DISTANCE_TRAVELLED, Format.ROUNDED, new RowRequirement("moveType",
+                    params.substring("distance_travelled_".length()).toUpperCase(Locale.ROOT)));
+        } else if (lowerCaseParams.startsWith("deaths_")) {
+            return of(PlayerStat.DEATHS, Format.NUMBER, new RowRequirement("world",
+                    params.substring("deaths_".length())));
+        }
+
+        return INVALID;
+    }
+
+    /**
+     * Parse a leaderboard placeholder of the form
+     * <code>&lt;stat&gt;[_&lt;column&gt;=&lt;value&gt;]_&lt;rank&gt;_name|value</code>, e.g.
+     * <code>kills_mobs_mob=ZOMBIE_1_name</code>.
+     */
+    private static PlaceholderResolver compileLeaderboard(String params) {
+        Format format;
+
+        if (params.toLowerCase(Locale.ROOT).endsWith("_name")) {
+            format = Format.NAME;
+        } else if (params.toLowerCase(Locale.ROOT).endsWith("_value")) {
+            format = Format.NUMBER;
+        } else {
+            return INVALID;
+        }
+
+        params = params.substring(0, params.lastIndexOf('_'));
+
+        int rankSeparator = params.lastIndexOf('_');
+
+        if (rankSeparator < 0) {
+            return INVALID;
+        }
+
+        int rank;
+
+        try {
+            rank = Integer.parseInt(params.substring(rankSeparator + 1));
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+
+        if (rank < 1) {
+            return fixed("Invalid rank");
+        }
+
+        params = params.substring(0, rankSeparator);
+
+        RowRequirement filter = null;
+
+        int valueSeparator = params.indexOf('=');
+
+        if (valueSeparator >= 0) {
+            int columnSeparator = params.lastIndexOf('_', valueSeparator);
+
+            if (columnSeparator < 0) {
+                return INVALID;
+            }
+
+            filter = new RowRequirement(params.substring(columnSeparator + 1, valueSeparator),
+                    params.substring(valueSeparator + 1));
+            params = params.substring(0, columnSeparator);
+        }
+
+        PlayerStat leaderboardStat = parseEnum(PlayerStat.class, params);
+
+        if (leaderboardStat == null) {
+            return fixed("Unknown statistic");
+        }
+
+        RowRequirement[] filters = filter == null ? new RowRequirement[0] : new RowRequirement[]{filter};
+
+        return new PlaceholderResolver(leaderboardStat, filters, format, null, rank);
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> enumClass, String name) {
+        try {
+            return Enum.valueOf(enumClass, name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the statistic that this placeholder shows.
+     *
+     * @return the statistic or null if the placeholder does not depend on the data of a player.
+     */
+    public PlayerStat getStatType() {
+        return statType;
+    }
+
+    /**
+     * Get the requirements that rows should meet to be counted by this placeholder.
+     *
+     * @return the requirements, can be empty.
+     */
+    public RowRequirement[] getRequirements() {
+        return requirements == null ? new RowRequirement[0] : requirements.clone();
+    }
+
+    /**
+     * Check whether this placeholder depends on the data of a player.
+     *
+     * @return true if {@link #resolve(PlayerInfo)} needs the data of the player, false otherwise.
+     */
+    public boolean needsData() {
+        return statType != null && !this.isLeaderboard();
+    }
+
+    /**
+     * Check whether this placeholder shows an entry of a leaderboard.
+     *
+     * @return true if {@link #resolve(LeaderboardManager)} should be used to compute the text.
+     */
+    public boolean isLeaderboard() {
+        return rank > 0;
+    }
+
+    /**
+     * Compute the text of a leaderboard placeholder.
+     *
+     * @param leaderboardManager Manager that provides the leaderboards
+     * @return the text to show for this placeholder or null if the leaderboard is still loading.
+     */
+    public String resolve(LeaderboardManager leaderboardManager) {
+        Leaderboard leaderboard;
+
+        try {
+            leaderboard = leaderboardManager.getLeaderboard(statType, requirements.length == 0 ? null :
+                    requirements[0]);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+
+        if (leaderboard == null) {
+            return null;
+        }
+
+        Leaderboard.Entry entry = leaderboard.getEntry(rank);
+
+        // There are not enough players on this leaderboard.
+        if (entry == null) {
+            return "";
+        }
+
+        if (format == Format.NAME) {
+            return leaderboardManager.getPlayerName(entry.getUUID());
+        }
+
+        return entry.getValue() + "";
+    }
+
+    /**
+     * Compute the text of this placeholder.
+     *
+     * @param info Data of the player, containing the statistic of this placeholder
+     * @return the text to show for this placeholder.
+     */
+    public String resolve(PlayerInfo info) {
+        if (fixedText != null) {
+            return fixedText;
+        }
+
+        return this.format(info.getTotalValue(statType, requirements));
+    }
+
+    /**
+     * Format the total value of the statistic of this placeholder, e.g. when it was computed by the database.
+     *
+     * @param value Total value of the rows that meet the requirements of this placeholder
+     * @return the text to show for this placeholder.
+     */
+    public String format(double value) {
+        switch (format) {
+            case ROUNDED:
+                return "" + (int) Math.round(value);
+            case TIME:
+                return StatzUtil.timeToString((int) Math.round(value), StatzUtil.Time.MINUTES);
+            default:
+                return value + "";
+        }
+    }
+
+    private enum Format {
+        NUMBER, ROUNDED, TIME, NAME
+    }
+}
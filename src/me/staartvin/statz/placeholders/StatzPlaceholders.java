@@ -2,22 +2,44 @@ package me.staartvin.statz.placeholders;
 
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.database.datatype.RowRequirement;
-import me.staartvin.statz.datamanager.player.PlayerStat;
-import me.staartvin.statz.util.StatzUtil;
-import org.bukkit.Material;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.entity.EntityType;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Provides the placeholders of Statz to PlaceholderAPI. Placeholders are parsed once into a
+ * {@link PlaceholderResolver} and the computed values are cached per player for a short while ('placeholder cache
+ * time' in the config), so scoreboards that request the same placeholder many times per second only do a lookup.
+ */
 public class StatzPlaceholders extends PlaceholderExpansion {
 
+    // Time between two clean-ups of the cached values (in milliseconds)
+    private static final long CLEANUP_INTERVAL = 60_000;
+
+    // Minimum time (in milliseconds) that a total computed by the database is shown, so a placeholder of a player
+    // that is not cached does not query the database on every request.
+    private static final long MIN_DATABASE_CACHE_TIME = 5_000;
+
     Statz plugin;
 
+    // Placeholders that have been parsed, by their parameters
+    private final Map<String, PlaceholderResolver> compiledPlaceholders = new ConcurrentHashMap<>();
+
+    // Values of placeholders that have been computed recently, per player
+    private final Map<UUID, Map<PlaceholderResolver, CachedValue>> cachedValues = new ConcurrentHashMap<>();
+
+    // Time (in milliseconds) that a computed value may be shown
+    private final long cacheTime;
+
+    private volatile long lastCleanup = System.currentTimeMillis();
+
     public StatzPlaceholders(Statz instance) {
         this.plugin = instance;
+        this.cacheTime = instance.getConfigHandler().getPlaceholderCacheTime();
     }
 
     @Override
@@ -46,121 +68,93 @@ public class StatzPlaceholders extends PlaceholderExpansion {
     @Override
     public String onRequest(OfflinePlayer player, @NotNull String params) {
 
-        // If data of player is not loaded, first load it.
-        if (!plugin.getDataManager().isPlayerLoaded(player.getUniqueId())) {
-            plugin.getDataManager().loadPlayerData(player.getUniqueId());
+        PlaceholderResolver resolver = compiledPlaceholders.computeIfAbsent(params, PlaceholderResolver::compile);
+
+        // Return null because it does not seem to be a valid placeholder.
+        if (resolver == PlaceholderResolver.INVALID) {
+            return null;
         }
 
+        if (resolver.isLeaderboard()) {
+            String text = resolver.resolve(plugin.getLeaderboardManager());
 
-        // Regular placeholders
-        if (params.equalsIgnoreCase("joins")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.JOINS, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("deaths")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.DEATHS, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("blocks_broken")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.BLOCKS_BROKEN, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("blocks_placed")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.BLOCKS_PLACED, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("damage_taken")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.DAMAGE_TAKEN, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("distance_travelled")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.DISTANCE_TRAVELLED, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("food_eaten")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.FOOD_EATEN, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("crafted_items")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.ITEMS_CRAFTED, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("caught_items")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.ITEMS_CAUGHT, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("players_killed")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.KILLS_PLAYERS, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("time_played")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.TIME_PLAYED, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("time_played_formatted")) {
-            return StatzUtil.timeToString((int) Math.round(plugin.getStatzAPI().getSpecificData(PlayerStat.TIME_PLAYED,
-                    player.getUniqueId())), StatzUtil.Time.MINUTES);
-        } else if (params.equalsIgnoreCase("times_shorn")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.TIMES_SHORN, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("xp_gained")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.XP_GAINED, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("mobs_killed")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.KILLS_MOBS, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("villager_trades")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.VILLAGER_TRADES, player.getUniqueId()) + "";
-        } else if (params.equalsIgnoreCase("votes")) {
-            return plugin.getStatzAPI().getSpecificData(PlayerStat.VOTES, player.getUniqueId()) + "";
+            return text == null ? plugin.getConfigHandler().getPlaceholderLoadingText() : text;
         }
 
-        // More specific placeholders
-        else if (params.toLowerCase(Locale.ROOT).startsWith("mobs_killed_")) {
-            EntityType type;
-            try {
-                type = EntityType.valueOf(params.replace("mobs_killed_", "").toUpperCase(Locale.ROOT));
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.KILLS_MOBS, player.getUniqueId(),
-                        new RowRequirement("mob", type.toString())) + "";
-            } catch (Exception e) {
-                return "Unknown mob";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("blocks_broken_")) {
-            Material type;
-            try {
-                type = Material.valueOf(params.replace("blocks_broken_", "").toUpperCase(Locale.ROOT));
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.BLOCKS_BROKEN, player.getUniqueId(),
-                        new RowRequirement("block", type.toString())) + "";
-            } catch (Exception e) {
-                return "Unknown block";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("blocks_placed_")) {
-            Material type;
-            try {
-                type = Material.valueOf(params.replace("blocks_placed_", "").toUpperCase(Locale.ROOT));
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.BLOCKS_PLACED, player.getUniqueId(),
-                        new RowRequirement("block", type.toString())) + "";
-            } catch (Exception e) {
-                return "Unknown block";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("food_eaten_")) {
-            Material type;
-            try {
-                type = Material.valueOf(params.replace("food_eaten_", "").toUpperCase(Locale.ROOT));
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.FOOD_EATEN, player.getUniqueId(),
-                        new RowRequirement("foodEaten", type.toString())) + "";
-            } catch (Exception e) {
-                return "Unknown food";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("villager_trades_")) {
-            Material type;
-            try {
-                type = Material.valueOf(params.replace("villager_trades_", "").toUpperCase(Locale.ROOT));
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.VILLAGER_TRADES, player.getUniqueId(),
-                        new RowRequirement("item", type.toString())) + "";
-            } catch (Exception e) {
-                return "Unknown material";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("distance_travelled_")) {
-            try {
-                return "" + (int) Math.round(plugin.getStatzAPI().getSpecificData(PlayerStat.DISTANCE_TRAVELLED,
-                        player.getUniqueId(),
-                        new RowRequirement("moveType",
-                                params.replace("distance_travelled_", "").toUpperCase(Locale.ROOT))));
-            } catch (Exception e) {
-                return "Unknown movementType";
-            }
-        } else if (params.toLowerCase(Locale.ROOT).startsWith("deaths_")) {
-            try {
-                return plugin.getStatzAPI().getSpecificData(PlayerStat.DEATHS, player.getUniqueId(),
-                        new RowRequirement("world", params.replace("deaths_", ""))) + "";
-            } catch (Exception e) {
-                return "Unknown world";
+        if (!resolver.needsData()) {
+            return resolver.resolve((PlayerInfo) null);
+        }
+
+        UUID uuid = player.getUniqueId();
+        long now = System.currentTimeMillis();
+
+        this.removeExpiredValues(now);
+
+        Map<PlaceholderResolver, CachedValue> valuesOfPlayer = cachedValues.get(uuid);
+
+        if (valuesOfPlayer != null) {
+            CachedValue cachedValue = valuesOfPlayer.get(resolver);
+
+            if (cachedValue != null && cachedValue.expiresAt > now) {
+                return cachedValue.text;
             }
         }
 
+        // If data of player is not loaded, let the database compute the total in the background instead of loading
+        // all rows of the player. Never wait for the database here, as placeholders are often requested on the main
+        // thread.
+        if (!plugin.getDataManager().isPlayerLoaded(uuid, resolver.getStatType())) {
+            plugin.getDataManager().getTotalAsync(uuid, resolver.getStatType(), resolver.getRequirements())
+                    .thenAccept(total -> cachedValues.computeIfAbsent(uuid, key -> new ConcurrentHashMap<>())
+                            .put(resolver, new CachedValue(resolver.format(total), System.currentTimeMillis()
+                                    + Math.max(cacheTime, MIN_DATABASE_CACHE_TIME))));
+            return plugin.getConfigHandler().getPlaceholderLoadingText();
+        }
+
+        PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid);
+
+        if (info == null) {
+            return plugin.getConfigHandler().getPlaceholderLoadingText();
+        }
+
+        String text = resolver.resolve(info);
+
+        if (cacheTime > 0) {
+            cachedValues.computeIfAbsent(uuid, key -> new ConcurrentHashMap<>())
+                    .put(resolver, new CachedValue(text, now + cacheTime));
+        }
+
+        return text;
+    }
+
+    /**
+     * Periodically forget the values of players that have not requested placeholders for a while, so the cache
+     * does not keep growing.
+     */
+    private void removeExpiredValues(long now) {
+        if (now - lastCleanup < CLEANUP_INTERVAL) {
+            return;
+        }
 
-        // Return null as default because it does not seem to be a valid placeholder.
-        return null;
+        lastCleanup = now;
+
+        cachedValues.values().forEach(values -> values.values().removeIf(value -> value.expiresAt <= now));
+        cachedValues.values().removeIf(Map::isEmpty);
     }
 
     @Override
     public boolean persist() {
         return true;
     }
+
+    private static class CachedValue {
+
+        private final String text;
+        private final long expiresAt;
+
+        private CachedValue(String text, long expiresAt) {
+            this.text = text;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
@@ -23,6 +23,10 @@ public class TaskManager {
      * How often should the cache of a player be validated with the database (in seconds)?
      */
     public static int UPDATE_PLAYER_CACHE_INTERVAL = 60;
+    /**
+     * How often should a snapshot of the metrics be written to the logs folder (in minutes)?
+     */
+    public static int METRICS_SNAPSHOT_INTERVAL = 15;
     // Store the task id of the 'update player cache' task for each player.
     private Map<UUID, Integer> cacheUpdateTask = new HashMap<>();
 
@@ -30,6 +34,7 @@ public class TaskManager {
         this.plugin = instance;
         UPDATE_DATABASE_TASK_INTERVAL = instance.getConfigHandler().getPeriodicSaveTime();
         UPDATE_PLAYER_CACHE_INTERVAL = instance.getConfigHandler().getPeriodiceRefreshPlayerCacheTime();
+        METRICS_SNAPSHOT_INTERVAL = instance.getConfigHandler().getMetricsSnapshotInterval();
     }
 
     /**
@@ -38,8 +43,18 @@ public class TaskManager {
      * @param uuid UUID of the player to start the task for.
      */
     public void startUpdatePlayerCacheTask(UUID uuid) {
-        BukkitTask task = new UpdatePlayerCacheTask(plugin, uuid).runTaskTimerAsynchronously(plugin, 0, 20 *
-                UPDATE_PLAYER_CACHE_INTERVAL);
+        this.startUpdatePlayerCacheTask(uuid, 0);
+    }
+
+    /**
+     * Start an update task that periodically updates the cache of a player, after the given delay.
+     *
+     * @param uuid  UUID of the player to start the task for.
+     * @param delay Number of seconds before the cache is updated for the first time.
+     */
+    public void startUpdatePlayerCacheTask(UUID uuid, int delay) {
+        BukkitTask task = new UpdatePlayerCacheTask(plugin, uuid).runTaskTimerAsynchronously(plugin, 20L * delay,
+                20 * UPDATE_PLAYER_CACHE_INTERVAL);
 
         cacheUpdateTask.put(uuid, task.getTaskId());
 
@@ -83,4 +98,30 @@ public class TaskManager {
         plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new UpdateDatabaseTask(plugin),
                 0, 20 * UPDATE_DATABASE_TASK_INTERVAL);
     }
+
+    /**
+     * Starts the task that periodically writes a snapshot of the metrics to the logs folder. The task is not started
+     * if metrics are disabled or the interval is not positive.
+     */
+    public void startMetricsSnapshotTask() {
+        if (!plugin.getMetricsManager().isEnabled() || METRICS_SNAPSHOT_INTERVAL <= 0) {
+            return;
+        }
+
+        long interval = 20L * 60 * METRICS_SNAPSHOT_INTERVAL;
+
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new WriteMetricsSnapshotTask(plugin),
+                interval, interval);
+    }
+
+    /**
+     * Starts the watchdog that enforces the main thread budget of listeners. It runs every tick on the main thread.
+     */
+    public void startListenerWatchdog() {
+        if (!plugin.getListenerWatchdog().isEnabled()) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskTimer(plugin, plugin.getListenerWatchdog(), 1, 1);
+    }
 }
@@ -4,11 +4,18 @@ import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.DatabaseConnector;
 import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.metrics.jfr.FlushEvent;
+import me.staartvin.statz.metrics.jfr.PoolCompressionEvent;
 import me.staartvin.statz.update.UpdatePoolManager;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * This task runs regularly and updates the database with the queries that are in the pool. Before the queries are
@@ -18,6 +25,9 @@ public class UpdateDatabaseTask implements Runnable {
 
     private Statz plugin;
 
+    // Whether the last run wrote all updates in the pools to the database
+    private volatile boolean writtenAllUpdates = false;
+
     public UpdateDatabaseTask(Statz instance) {
         this.plugin = instance;
     }
@@ -25,6 +35,8 @@ public class UpdateDatabaseTask implements Runnable {
     @Override
     public void run() {
 
+        writtenAllUpdates = false;
+
         if (UpdatePoolManager.isForcingPool) {
             // Skip call, as we are still busy.
             plugin.debugMessage("Skip database sync as there is still one running.");
@@ -36,56 +48,120 @@ public class UpdateDatabaseTask implements Runnable {
         // Set lock so we can't accidentally run two sync tasks at the same time.
         UpdatePoolManager.isForcingPool = true;
 
-        for (PlayerStat statType : PlayerStat.values()) {
-            // Grab updates that have happened since the last sync.
-            List<Query> updates = plugin.getUpdatePoolManager().getUpdateQueriesCopy(statType);
+        try {
+            boolean failedWrite = false;
 
-            if (updates.isEmpty()) {
-                continue;
-            }
+            for (PlayerStat statType : PlayerStat.values()) {
+                // Grab updates that have happened since the last sync.
+                List<Query> updates = plugin.getUpdatePoolManager().getUpdateQueriesCopy(statType);
 
-            // Store queries that have already been converted
-            List<Query> convertedQueries = new ArrayList<>();
+                if (updates.isEmpty()) {
+                    continue;
+                }
 
-            // Queries that should be send to the database
-            List<Query> resultingQueries = new ArrayList<>();
+                // Updates that are removed from the pool once they are written
+                List<Query> pooledUpdates = new ArrayList<>(updates);
 
-            // Loop over all queries and remove duplicate queries.
-            for (Iterator<Query> iterator = updates.iterator(); iterator.hasNext(); ) {
+                long flushStart = System.nanoTime();
 
-                // Get a query.
-                Query query = iterator.next();
+                PoolCompressionEvent compressionEvent = new PoolCompressionEvent();
+                compressionEvent.begin();
 
-                // If we've already converted it, skip it.
-                if (convertedQueries.contains(query)) {
-                    continue;
+                int poolSize = updates.size();
+
+                // Store queries that have already been converted
+                List<Query> convertedQueries = new ArrayList<>();
+
+                // Queries that should be send to the database
+                List<Query> resultingQueries = new ArrayList<>();
+
+                // Loop over all queries and remove duplicate queries.
+                for (Iterator<Query> iterator = updates.iterator(); iterator.hasNext(); ) {
+
+                    // Get a query.
+                    Query query = iterator.next();
+
+                    // If we've already converted it, skip it.
+                    if (convertedQueries.contains(query)) {
+                        continue;
+                    }
+
+                    // Remove the current query so it doesn't conflict with itself.
+                    iterator.remove();
+
+                    // Find queries that conflict with the current query
+                    List<Query> conflictingQueries = query.findConflicts(updates);
+
+                    // Add queries that were conflicting to converted queries, so we don't count them again.
+                    convertedQueries.addAll(conflictingQueries);
+
+                    // Calculate sum of all conflicting queries.
+                    Query sumQuery = query.resolveConflicts(conflictingQueries);
+
+                    // Store the final query
+                    resultingQueries.add(sumQuery);
                 }
 
-                // Remove the current query so it doesn't conflict with itself.
-                iterator.remove();
+                compressionEvent.end();
 
-                // Find queries that conflict with the current query
-                List<Query> conflictingQueries = query.findConflicts(updates);
+                if (compressionEvent.shouldCommit()) {
+                    compressionEvent.table = statType.getTableName();
+                    compressionEvent.inputQueries = poolSize;
+                    compressionEvent.outputQueries = resultingQueries.size();
+                    compressionEvent.commit();
+                }
 
-                // Add queries that were conflicting to converted queries, so we don't count them again.
-                convertedQueries.addAll(conflictingQueries);
+                FlushEvent flushEvent = new FlushEvent();
+                flushEvent.begin();
 
-                // Calculate sum of all conflicting queries.
-                Query sumQuery = query.resolveConflicts(conflictingQueries);
+                // The flush epoch is increased together with the updates, so a cache snapshot can tell whether the
+                // database has changed since it was saved.
+                List<String> statements = plugin.getCacheSnapshotManager().withFlushEpochStatement(
+                        Collections.emptyList());
 
-                // Store the final query
-                resultingQueries.add(sumQuery);
-            }
+                boolean written;
 
-            // Update database with new data.
-            plugin.getDatabaseConnector().setBatchObjects(DatabaseConnector.getTable(statType),
-                    resultingQueries, DatabaseConnector.SET_OPERATION.ADD);
+                // Update database with new data and pass the same updates to the leaderboards.
+                synchronized (plugin.getLeaderboardManager().getFlushLock()) {
+                    written = plugin.getDatabaseConnector().setBatchObjects(Collections.singletonMap(
+                            DatabaseConnector.getTable(statType), resultingQueries),
+                            DatabaseConnector.SET_OPERATION.ADD, statements);
 
-            plugin.getUpdatePoolManager().clearUpdateQueries(statType);
-        }
+                    if (written) {
+                        plugin.getCacheSnapshotManager().onFlushed(getPlayers(resultingQueries));
+                        plugin.getLeaderboardManager().addFlushedQueries(statType, resultingQueries);
+                    }
+                }
 
-        // Release lock
-        UpdatePoolManager.isForcingPool = false;
+                flushEvent.end();
+
+                if (flushEvent.shouldCommit()) {
+                    flushEvent.table = statType.getTableName();
+                    flushEvent.rows = resultingQueries.size();
+                    flushEvent.bytes = estimateSize(resultingQueries);
+                    flushEvent.commit();
+                }
+
+                // Every compressed update is written as a single row, and none are written if the write failed.
+                plugin.getMetricsManager().recordFlush(statType, System.nanoTime() - flushStart,
+                        resultingQueries.size(), written ? resultingQueries.size() : 0);
+
+                // Keep the updates in the pool if they could not be written, so they are written next time.
+                if (!written) {
+                    plugin.getLogger().warning("Could not write " + resultingQueries.size() + " updates of " +
+                            statType + " to the database, they will be written later.");
+                    failedWrite = true;
+                    continue;
+                }
+
+                plugin.getUpdatePoolManager().removeUpdateQueries(statType, pooledUpdates);
+            }
+
+            writtenAllUpdates = !failedWrite;
+        } finally {
+            // Release lock, also if writing failed with an exception, so later syncs are not skipped forever.
+            UpdatePoolManager.isForcingPool = false;
+        }
 
         plugin.debugMessage("Successfully updated database with local data.");
 
@@ -93,4 +169,56 @@ public class UpdateDatabaseTask implements Runnable {
 
     }
 
+    /**
+     * Check whether the last run of this task wrote all updates in the pools to the database. This is not the case
+     * if the task was skipped because another update of the database was still running.
+     *
+     * @return true if all updates were written, false otherwise.
+     */
+    public boolean hasWrittenAllUpdates() {
+        return writtenAllUpdates;
+    }
+
+    /**
+     * Get the players that the given queries are about.
+     *
+     * @param queries Queries to get the players of
+     * @return the uuids of the players.
+     */
+    private static Set<UUID> getPlayers(List<Query> queries) {
+        Set<UUID> players = new HashSet<>();
+
+        for (Query query : queries) {
+            try {
+                UUID uuid = query.getUUID();
+
+                if (uuid != null) {
+                    players.add(uuid);
+                }
+            } catch (IllegalArgumentException e) {
+                // The query does not belong to a valid player.
+            }
+        }
+
+        return players;
+    }
+
+    /**
+     * Estimate the number of bytes that are sent to the database for the given queries.
+     *
+     * @param queries Queries to estimate the size of
+     * @return estimated size in bytes.
+     */
+    private static long estimateSize(List<Query> queries) {
+        long size = 0;
+
+        for (Query query : queries) {
+            for (Map.Entry<String, Object> entry : query.getEntrySet()) {
+                size += entry.getKey().length() + String.valueOf(entry.getValue()).length();
+            }
+        }
+
+        return size;
+    }
+
 }
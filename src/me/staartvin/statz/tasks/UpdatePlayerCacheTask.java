@@ -4,6 +4,7 @@ import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.metrics.jfr.CacheRefreshEvent;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.UUID;
@@ -24,8 +25,14 @@ public class UpdatePlayerCacheTask extends BukkitRunnable {
     @Override
     public void run() {
 
+        CacheRefreshEvent event = new CacheRefreshEvent();
+        event.begin();
+
         PlayerInfo cachedData = new PlayerInfo(uuid);
 
+        // After a restart, the data of the player is taken from the cache snapshot instead of the database.
+        PlayerInfo snapshotData = plugin.getCacheSnapshotManager().takePlayer(uuid);
+
         for (PlayerStat statType : PlayerStat.values()) {
             // Find conflicts and resolve them.
 
@@ -33,7 +40,14 @@ public class UpdatePlayerCacheTask extends BukkitRunnable {
                 continue;
             }
 
-            PlayerInfo databaseInfo = plugin.getDataManager().getFreshPlayerInfo(uuid, statType);
+            PlayerInfo databaseInfo;
+
+            if (snapshotData != null && snapshotData.hasDataOfPlayerStat(statType)) {
+                databaseInfo = new PlayerInfo(uuid);
+                databaseInfo.setData(statType, snapshotData.getDataOfPlayerStat(statType));
+            } else {
+                databaseInfo = plugin.getDataManager().getFreshPlayerInfo(uuid, statType);
+            }
 
             // User is not loaded, or there is no cache so we don't bother overwriting the cache.
             if (databaseInfo == null) {
@@ -53,5 +67,13 @@ public class UpdatePlayerCacheTask extends BukkitRunnable {
         // Store into cache.
         plugin.getCachingManager().registerCachedData(uuid, cachedData);
 
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.uuid = uuid.toString();
+            event.rows = cachedData.getRows().size();
+            event.commit();
+        }
+
     }
 }
@@ -0,0 +1,84 @@
+package me.staartvin.statz.tasks;
+
+import me.staartvin.statz.Statz;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.logging.Level;
+
+/**
+ * This task periodically writes a snapshot of the metrics of Statz to the logs folder. Only the most recent
+ * snapshots are kept, older snapshots are deleted.
+ */
+public class WriteMetricsSnapshotTask implements Runnable {
+
+    private final static DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+    private final static DateFormat humanDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    private static final String SNAPSHOT_PREFIX = "metrics-";
+
+    private Statz plugin;
+
+    public WriteMetricsSnapshotTask(Statz instance) {
+        this.plugin = instance;
+    }
+
+    @Override
+    public void run() {
+        File folder = new File(plugin.getDataFolder() + "/logs");
+
+        if (!folder.exists() && !folder.mkdirs()) {
+            return;
+        }
+
+        Date now = new Date();
+        File snapshotFile;
+
+        synchronized (dateFormat) {
+            snapshotFile = new File(folder, SNAPSHOT_PREFIX + dateFormat.format(now) + ".txt");
+        }
+
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(snapshotFile))) {
+            synchronized (humanDateFormat) {
+                out.write("Metrics of Statz at " + humanDateFormat.format(now));
+            }
+            out.newLine();
+
+            for (String line : plugin.getMetricsManager().createReport()) {
+                out.write(line);
+                out.newLine();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write metrics snapshot", e);
+            return;
+        }
+
+        this.removeOldSnapshots(folder);
+    }
+
+    private void removeOldSnapshots(File folder) {
+        File[] snapshots = folder.listFiles((dir, name) -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(".txt"));
+
+        int snapshotsToKeep = plugin.getConfigHandler().getMetricsSnapshotsToKeep();
+
+        if (snapshots == null || snapshots.length <= snapshotsToKeep) {
+            return;
+        }
+
+        // Names contain the date, so sorting by name sorts from oldest to newest.
+        Arrays.sort(snapshots, Comparator.comparing(File::getName));
+
+        for (int i = 0; i < snapshots.length - snapshotsToKeep; i++) {
+            if (!snapshots[i].delete()) {
+                plugin.debugMessage("Could not delete old metrics snapshot " + snapshots[i].getName());
+            }
+        }
+    }
+}
@@ -5,10 +5,16 @@ import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The UpdatePoolManager is responsible for keeping track of the different update queries that need to be sent to the
@@ -44,36 +50,40 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class UpdatePoolManager {
 
-    public static boolean isForcingPool = false;
-    private Map<PlayerStat, List<Query>> updateQueries = new ConcurrentHashMap<>();
+    public static volatile boolean isForcingPool = false;
+
+    // Pool of every statistic. Updates are added on the main thread while the task that writes them removes the
+    // written updates on another thread, so the pools are concurrent queues. Pools are emptied but never removed, so
+    // an update is never added to a pool that is no longer in the map.
+    private final Map<PlayerStat, Queue<Query>> updateQueries = new ConcurrentHashMap<>();
     private Statz plugin;
 
+    // Cache updates of degraded statistics that still need to be applied.
+    private final Queue<Runnable> deferredCacheUpdates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean(false);
+
     public UpdatePoolManager(Statz instance) {
         this.plugin = instance;
     }
 
     /**
      * Get a map containing every pool for each statistic. The pools are given in key-value pairs where the key is
-     * the type of statistic for the pool, and the value is the pool (list of queries) itself.
+     * the type of statistic for the pool, and the value is the pool (queue of queries) itself.
      *
      * @return a map of all pools.
      */
-    public Map<PlayerStat, List<Query>> getAllUpdateQueries() {
+    public Map<PlayerStat, Queue<Query>> getAllUpdateQueries() {
         return updateQueries;
     }
 
     /**
-     * Get a list of queries that are in the pool of the given statistic.
+     * Get the pool of the given statistic, creating it if it does not exist yet.
      *
      * @param statType Type of statistic.
-     * @return a list of queries that are in the pool.
+     * @return the queue of queries that are in the pool.
      */
-    private List<Query> getUpdateQueries(PlayerStat statType) {
-        if (!hasUpdateQueries(statType)) {
-            return new ArrayList<>();
-        }
-
-        return this.updateQueries.get(statType);
+    private Queue<Query> getUpdateQueries(PlayerStat statType) {
+        return this.updateQueries.computeIfAbsent(statType, stat -> new ConcurrentLinkedQueue<>());
     }
 
     /**
@@ -84,27 +94,33 @@ public class UpdatePoolManager {
      * @return a list of queries that are in the pool.
      */
     public List<Query> getUpdateQueriesCopy(PlayerStat statType) {
-        return new ArrayList<>(this.getUpdateQueries(statType));
+        Queue<Query> queries = this.updateQueries.get(statType);
+
+        return queries == null ? new ArrayList<>() : new ArrayList<>(queries);
     }
 
     /**
-     * Get whether there is a pool for the given statistic. Note that a pool may exist but still be empty.
+     * Get the number of queries that are waiting in the pool of the given statistic.
      *
-     * @param statType Type of statistic
-     * @return true if there is a pool for the given statistic, false otherwise.
+     * @param statType Type of statistic.
+     * @return number of queries in the pool.
      */
-    public boolean hasUpdateQueries(PlayerStat statType) {
-        return updateQueries.containsKey(statType) && updateQueries.get(statType) != null;
+    public int getPoolSize(PlayerStat statType) {
+        Queue<Query> queries = this.updateQueries.get(statType);
+
+        return queries == null ? 0 : queries.size();
     }
 
     /**
-     * Set the pool of the given statistic.
+     * Get whether the pool of the given statistic has updates that have not been written yet.
      *
      * @param statType Type of statistic
-     * @param queries List of queries to set the pool to
+     * @return true if the pool of the given statistic is not empty, false otherwise.
      */
-    private void setUpdateQueries(PlayerStat statType, List<Query> queries) {
-        this.updateQueries.put(statType, queries);
+    public boolean hasUpdateQueries(PlayerStat statType) {
+        Queue<Query> queries = updateQueries.get(statType);
+
+        return queries != null && !queries.isEmpty();
     }
 
     /**
@@ -114,18 +130,16 @@ public class UpdatePoolManager {
      * @param query Query to add
      */
     public void addQuery(PlayerStat statType, Query query) {
-        List<Query> queries = getUpdateQueries(statType);
-
-        queries.add(query);
-
-        this.setUpdateQueries(statType, queries);
+        this.getUpdateQueries(statType).add(query);
     }
 
     /**
      * Clear all pools.
      */
     public void clearAllUpdateQueries() {
-        updateQueries.clear();
+        for (Queue<Query> queries : updateQueries.values()) {
+            queries.clear();
+        }
     }
 
     /**
@@ -134,7 +148,47 @@ public class UpdatePoolManager {
      * @param statType Type of statistic
      */
     public void clearUpdateQueries(PlayerStat statType) {
-        this.updateQueries.remove(statType);
+        Queue<Query> queries = this.updateQueries.get(statType);
+
+        if (queries != null) {
+            queries.clear();
+        }
+    }
+
+    /**
+     * Remove queries that were written to the database from the pool of the given statistic. Queries that were
+     * added to the pool in the meantime are kept.
+     *
+     * @param statType Type of statistic
+     * @param queries  Queries that were written
+     */
+    public void removeUpdateQueries(PlayerStat statType, List<Query> queries) {
+        Queue<Query> pool = this.updateQueries.get(statType);
+
+        if (pool == null) {
+            return;
+        }
+
+        Set<Query> writtenQueries = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        writtenQueries.addAll(queries);
+
+        // Only the written queries are removed, so updates that are added meanwhile stay in the pool.
+        pool.removeIf(writtenQueries::contains);
+    }
+
+    /**
+     * Remove the queries of a group of players from all pools, so they are not sent to the database. The pools are
+     * concurrent queues, so this can be called on any thread. Queries that are added while the pools are cleaned
+     * are kept, so players that may still get updates (e.g. online players) should be kicked first.
+     *
+     * @param uuids UUIDs of the players
+     */
+    public void removeQueries(Set<UUID> uuids) {
+        for (Queue<Query> queries : updateQueries.values()) {
+            // Only the matching queries are unlinked from the queue, other threads can keep adding queries.
+            queries.removeIf(query -> uuids.contains(query.getUUID()));
+        }
     }
 
     /**
@@ -159,14 +213,50 @@ public class UpdatePoolManager {
         // Add query to list of update queries
         this.addQuery(statType, query);
 
-        // Update cache of a player with this new update query. Run this async as it can be an intensive task.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        plugin.getMetricsManager().recordEvent(statType);
+
+        Runnable cacheUpdate = new Runnable() {
             @Override
             public void run() {
                 plugin.getCachingManager().addCachedQuery(statType, query, uuid);
             }
-        });
+        };
+
+        // If the statistic uses too much time on the main thread, don't schedule a task for every update, but let a
+        // single task apply all updates.
+        if (plugin.getListenerWatchdog().isDegraded(statType)) {
+            this.deferCacheUpdate(cacheUpdate);
+            return;
+        }
+
+        // Update cache of a player with this new update query. Run this async as it can be an intensive task.
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, cacheUpdate);
+
+    }
+
+    /**
+     * Queue an update of the cache. A single asynchronous task applies all queued updates, so the main thread only
+     * has to schedule a task when none is pending.
+     *
+     * @param cacheUpdate Update to apply to the cache
+     */
+    private void deferCacheUpdate(Runnable cacheUpdate) {
+        deferredCacheUpdates.add(cacheUpdate);
 
+        if (!isDrainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Allow a new task to be scheduled before draining, so no update is left behind.
+            isDrainScheduled.set(false);
+
+            Runnable update;
+
+            while ((update = deferredCacheUpdates.poll()) != null) {
+                update.run();
+            }
+        });
     }
 
     /**
@@ -0,0 +1,91 @@
+import me.staartvin.statz.archive.ArchiveManager;
+import me.staartvin.statz.database.datatype.Query;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class ArchiveManagerTest {
+
+    private static final UUID PLAYER = UUID.fromString("c5f39a1d-3786-46a7-8953-d4efabf8880d");
+    private static final UUID OTHER_PLAYER = UUID.fromString("0b2a7c5e-90f1-4d4f-a6a7-3c1f4c0f6d11");
+
+    private Connection connection;
+
+    @Before
+    public void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + ArchiveManager.ARCHIVE_TABLE + " (uuid VARCHAR(36) NOT NULL, " +
+                    "data BLOB NOT NULL, archived_at BIGINT NOT NULL, PRIMARY KEY (uuid))");
+        }
+    }
+
+    @After
+    public void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    private void archive(UUID uuid) throws SQLException {
+        Query row = new Query();
+
+        row.setValue("uuid", uuid.toString());
+        row.setValue("value", "3.0");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(ArchiveManager.getArchiveStatement(uuid,
+                    Collections.singletonMap("JOINS", Collections.singletonList(row)), System.currentTimeMillis()));
+        }
+    }
+
+    private List<String> getArchivedPlayers() throws SQLException {
+        List<String> players = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT uuid FROM " + ArchiveManager.ARCHIVE_TABLE +
+                     " ORDER BY uuid")) {
+            while (resultSet.next()) {
+                players.add(resultSet.getString(1));
+            }
+        }
+
+        return players;
+    }
+
+    @Test
+    public void testPurgeAfterArchive() throws SQLException {
+        archive(PLAYER);
+        archive(OTHER_PLAYER);
+
+        try (Statement statement = connection.createStatement()) {
+            Assert.assertEquals(1, statement.executeUpdate(ArchiveManager.getPurgeStatement(
+                    Collections.singletonList(PLAYER))));
+        }
+
+        // Only the archive of the purged player is removed.
+        Assert.assertEquals(Collections.singletonList(OTHER_PLAYER.toString()), getArchivedPlayers());
+    }
+
+    @Test
+    public void testPurgeWithoutArchive() throws SQLException {
+        archive(OTHER_PLAYER);
+
+        try (Statement statement = connection.createStatement()) {
+            Assert.assertEquals(0, statement.executeUpdate(ArchiveManager.getPurgeStatement(
+                    Collections.singletonList(PLAYER))));
+        }
+
+        Assert.assertEquals(Collections.singletonList(OTHER_PLAYER.toString()), getArchivedPlayers());
+    }
+}
@@ -0,0 +1,109 @@
+import me.staartvin.statz.database.BatchingLoader;
+import me.staartvin.statz.database.DatabaseExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingLoaderTest {
+
+    private DatabaseExecutor executor;
+
+    // Batches that were loaded, in order
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        executor = new DatabaseExecutor(2, 16);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private Map<String, Integer> lengths(List<String> keys) {
+        batches.add(keys);
+
+        Map<String, Integer> values = new HashMap<>();
+
+        for (String key : keys) {
+            values.put(key, key.length());
+        }
+
+        return values;
+    }
+
+    @Test
+    public void testKeysAreBatchedWhileLoading() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        BatchingLoader<String, Integer> loader = new BatchingLoader<>(executor, keys -> {
+            if (keys.contains("first")) {
+                started.countDown();
+
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return this.lengths(keys);
+        }, 2);
+
+        CompletableFuture<Integer> first = loader.load("first");
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // These keys are requested while the first batch is loading.
+        CompletableFuture<Integer> a = loader.load("a");
+        CompletableFuture<Integer> bb = loader.load("bb");
+        CompletableFuture<Integer> ccc = loader.load("ccc");
+
+        Assert.assertSame(a, loader.load("a"));
+
+        release.countDown();
+
+        Assert.assertEquals(Integer.valueOf(5), first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(1), a.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(2), bb.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(3), ccc.get(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("first"), Arrays.asList("a", "bb"),
+                Collections.singletonList("ccc")), batches);
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        BatchingLoader<String, Integer> loader = new BatchingLoader<>(executor, keys -> {
+            if (keys.contains("broken")) {
+                throw new IllegalStateException("Database is down");
+            }
+
+            return this.lengths(keys);
+        }, 10);
+
+        try {
+            loader.load("broken").get(5, TimeUnit.SECONDS);
+            Assert.fail("The batch should have failed");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        // The loader keeps working after a failed batch.
+        Assert.assertEquals(Integer.valueOf(4), loader.load("fine").get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,106 @@
+import me.staartvin.statz.cache.CacheSnapshot;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public class CacheSnapshotTest {
+
+    private static final UUID PLAYER = UUID.fromString("c5f39a1d-3786-46a7-8953-d4efabf8880d");
+    private static final UUID OTHER_PLAYER = UUID.fromString("0b2a7c5e-90f1-4d4f-a6a7-3c1f4c0f6d11");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Query kills(UUID uuid, String mob, double value) {
+        Query query = new Query();
+
+        query.setValue("id", 7);
+        query.setValue("uuid", uuid);
+        query.setValue("mob", mob);
+        query.setValue("world", "world");
+        query.setValue("value", value);
+
+        return query;
+    }
+
+    private PlayerInfo player() {
+        PlayerInfo info = new PlayerInfo(PLAYER);
+
+        info.setData(PlayerStat.KILLS_MOBS, Arrays.asList(kills(PLAYER, "ZOMBIE", 3), kills(PLAYER, "SPIDER", 1.5)));
+
+        // Statistics without rows are cached as well, so they are not loaded again.
+        info.setData(PlayerStat.DEATHS, new ArrayList<>());
+
+        return info;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = new File(folder.getRoot(), "cache.snapshot");
+
+        CacheSnapshot.write(file, 42, 9, Collections.singletonList(this.player()));
+
+        CacheSnapshot snapshot = CacheSnapshot.open(file);
+
+        Assert.assertEquals(42, snapshot.getSchemaVersion());
+        Assert.assertEquals(9, snapshot.getFlushEpoch());
+        Assert.assertEquals(Collections.singleton(PLAYER), snapshot.getPlayers());
+        Assert.assertNull(snapshot.read(OTHER_PLAYER));
+
+        PlayerInfo info = snapshot.read(PLAYER);
+
+        Assert.assertEquals(2, info.getNumberOfRows(PlayerStat.KILLS_MOBS));
+        Assert.assertEquals(4.5, info.getTotalValue(PlayerStat.KILLS_MOBS), 0.0001);
+        Assert.assertEquals("ZOMBIE", info.getValue(PlayerStat.KILLS_MOBS, 0, "mob"));
+        Assert.assertNull(info.getValue(PlayerStat.KILLS_MOBS, 0, "id"));
+
+        Assert.assertTrue(info.hasDataOfPlayerStat(PlayerStat.DEATHS));
+        Assert.assertEquals(0, info.getNumberOfRows(PlayerStat.DEATHS));
+        Assert.assertFalse(info.hasDataOfPlayerStat(PlayerStat.VOTES));
+    }
+
+    @Test
+    public void testReplaceSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "cache.snapshot");
+
+        CacheSnapshot.write(file, 1, 1, Collections.singletonList(this.player()));
+        CacheSnapshot.write(file, 1, 2, Collections.singletonList(new PlayerInfo(OTHER_PLAYER)));
+
+        CacheSnapshot snapshot = CacheSnapshot.open(file);
+
+        Assert.assertEquals(2, snapshot.getFlushEpoch());
+        Assert.assertEquals(Collections.singleton(OTHER_PLAYER), snapshot.getPlayers());
+        Assert.assertFalse(new File(folder.getRoot(), "cache.snapshot.tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDamagedPlayer() throws IOException {
+        File file = new File(folder.getRoot(), "cache.snapshot");
+
+        CacheSnapshot.write(file, 1, 1, Collections.singletonList(this.player()));
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long position = randomAccessFile.length() - 1;
+
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+
+        CacheSnapshot.open(file).read(PLAYER);
+    }
+}
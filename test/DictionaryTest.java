@@ -0,0 +1,188 @@
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.Dictionary;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
+import me.staartvin.statz.database.dialect.H2Dialect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class DictionaryTest {
+
+    private static final String TABLE_NAME = DatabaseConnector.prefix + "test_kills";
+
+    private Connection connection;
+    private Dictionary dictionary;
+    private Table table;
+
+    @Before
+    public void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + Dictionary.getTableName("world") + " (id INT AUTO_INCREMENT " +
+                    "PRIMARY KEY, name VARCHAR(16) NOT NULL UNIQUE)");
+            statement.executeUpdate("CREATE TABLE " + TABLE_NAME + " (id INT PRIMARY KEY, world INT NOT NULL)");
+        }
+
+        table = new SQLiteTable("test_kills");
+        table.addColumn("id", true, SQLDataType.INT);
+        table.addColumn("world", false, SQLDataType.TEXT);
+
+        // Only the connection is used by the dictionary.
+        dictionary = new DatabaseConnector(null, new H2Dialect()) {
+            @Override
+            public void loadTables() {
+            }
+
+            @Override
+            public Connection getConnection() {
+                return connection;
+            }
+
+            @Override
+            public void releaseConnection(Connection connection) {
+            }
+
+            @Override
+            protected void loadDatabase() {
+            }
+
+            @Override
+            protected int forEachRow(Selection selection, Consumer<Query> consumer) {
+                return -1;
+            }
+
+            @Override
+            public ResultSet sendQuery(String query, boolean wantResult) {
+                return null;
+            }
+
+            @Override
+            public List<ResultSet> sendQueries(List<String> queries, boolean wantResult) {
+                return null;
+            }
+
+            @Override
+            public boolean createBackup(String identifier) {
+                return false;
+            }
+        }.getDictionary();
+
+        dictionary.setEncoded(table);
+    }
+
+    @After
+    public void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    private void addRow(int id, String world) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE_NAME +
+                " (id, world) VALUES (?, ?)")) {
+            insert.setInt(1, id);
+            insert.setInt(2, dictionary.intern("world", world));
+            insert.executeUpdate();
+        }
+    }
+
+    private Selection selection() {
+        return new Selection(table).columns("id", "world");
+    }
+
+    // Get the ids of the rows of a selection, in the order the database returns them.
+    private List<Integer> select(Selection selection) throws SQLException {
+        Selection encodedSelection = dictionary.encode(selection);
+        List<Integer> ids = new ArrayList<>();
+
+        try (PreparedStatement select = connection.prepareStatement(encodedSelection.toSQL())) {
+            List<Object> parameters = encodedSelection.getParameters();
+
+            for (int i = 0; i < parameters.size(); i++) {
+                select.setObject(i + 1, parameters.get(i));
+            }
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt("id"));
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    @Test
+    public void testIntern() throws SQLException {
+        int id = dictionary.intern("world", "world_nether");
+
+        Assert.assertEquals(id, dictionary.intern("world", "world_nether"));
+        Assert.assertNotEquals(id, dictionary.intern("world", "world"));
+        Assert.assertEquals("world_nether", dictionary.getName("world", id));
+    }
+
+    @Test
+    public void testInternPropagatesInsertError() {
+        try {
+            // The name is too long for the dictionary table.
+            dictionary.intern("world", "a_world_with_a_long_name");
+            Assert.fail();
+        } catch (SQLException e) {
+            // Value too long for column
+            Assert.assertEquals("22001", e.getSQLState());
+        }
+    }
+
+    @Test
+    public void testMissesAreRemembered() throws SQLException {
+        Assert.assertNull(dictionary.getId("world", "nether"));
+
+        // Another server adds the name, but the miss is remembered until the name is interned here.
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO " + Dictionary.getTableName("world") + " (name) VALUES ('nether')");
+        }
+
+        Assert.assertNull(dictionary.getId("world", "nether"));
+
+        int id = dictionary.intern("world", "nether");
+
+        Assert.assertEquals(Integer.valueOf(id), dictionary.getId("world", "nether"));
+        Assert.assertEquals("nether", dictionary.getName("world", id));
+    }
+
+    @Test
+    public void testEncodedSelection() throws SQLException {
+        addRow(1, "world_the_end");
+        addRow(2, "nether");
+        addRow(3, "world");
+        addRow(4, "world");
+
+        Assert.assertEquals(Arrays.asList(3, 4), select(selection().whereEquals("world", "world")
+                .orderBy("id", false)));
+        Assert.assertEquals(Arrays.asList(1, 2), select(selection().whereIn("world", Arrays.asList("nether",
+                "world_the_end", "unknown")).orderBy("id", false)));
+        Assert.assertEquals(Arrays.asList(), select(selection().whereEquals("world", "unknown")));
+
+        // Ranges, prefixes and sorting compare names instead of ids.
+        Assert.assertEquals(Arrays.asList(1, 3, 4), select(selection().whereStartsWith("world", "world")
+                .orderBy("id", false)));
+        Assert.assertEquals(Arrays.asList(2), select(selection().whereBetween("world", "a", "t")));
+        Assert.assertEquals(Arrays.asList(2), select(selection().orderBy("world", false).limit(1)));
+        Assert.assertEquals(Arrays.asList(1), select(selection().orderBy("world", true).limit(1)));
+    }
+}
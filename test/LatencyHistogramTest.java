@@ -0,0 +1,61 @@
+import me.staartvin.statz.metrics.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 4; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(4, histogram.getCount());
+        Assert.assertEquals(2, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(4, histogram.getValueAtPercentile(100));
+        Assert.assertEquals(2.5, histogram.getMean(), 0.0001);
+    }
+
+    @Test
+    public void testPercentileWithinError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+
+        // Buckets have a relative error of at most 12.5%
+        Assert.assertTrue(p50 >= 50_000_000L && p50 <= 50_000_000L * 1.125);
+        Assert.assertTrue(p99 >= 99_000_000L && p99 <= 99_000_000L * 1.125);
+        Assert.assertEquals(100_000_000L, histogram.getMax());
+        Assert.assertEquals(100_000_000L, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        Assert.assertEquals(1, histogram.getCount());
+
+        histogram.reset();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,104 @@
+import me.staartvin.statz.cache.OffHeapCacheBackend;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.player.PlayerStat;
+import me.staartvin.statz.util.StatzUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+public class OffHeapCacheBackendTest {
+
+    private static final UUID PLAYER = UUID.fromString("6f0e2c4b-1d3a-4b8e-9c57-2a9d4e81f3b0");
+    private static final UUID OTHER_PLAYER = UUID.fromString("e3a91d27-5b6c-4f08-8d2e-71c4b09a6e55");
+
+    private static PlayerInfo player(UUID uuid) {
+        PlayerInfo info = new PlayerInfo(uuid);
+
+        info.setData(PlayerStat.KILLS_MOBS, Arrays.asList(
+                StatzUtil.makeQuery(uuid, "id", 12, "mob", "CREEPER", "world", "world_nether", "value", 4.0),
+                StatzUtil.makeQuery(uuid, "id", 13, "mob", "SKELETON", "world", "world_nether", "value", 2.5)));
+        info.setData(PlayerStat.DEATHS, new ArrayList<>());
+
+        return info;
+    }
+
+    @Test
+    public void testEvictedPlayerIsRestored() {
+        OffHeapCacheBackend backend = new OffHeapCacheBackend(1, 4096);
+
+        backend.put(PLAYER, player(PLAYER));
+        backend.put(OTHER_PLAYER, player(OTHER_PLAYER));
+
+        // Only the most recently used player stays on the heap.
+        Assert.assertEquals(1, backend.getHotPlayerCount());
+        Assert.assertEquals(2, backend.size());
+        Assert.assertTrue(backend.contains(PLAYER));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(PLAYER, OTHER_PLAYER)), new HashSet<>(backend.getPlayers()));
+
+        PlayerInfo info = backend.get(PLAYER);
+
+        Assert.assertEquals(2, info.getNumberOfRows(PlayerStat.KILLS_MOBS));
+        Assert.assertEquals(6.5, info.getTotalValue(PlayerStat.KILLS_MOBS), 0.0001);
+        Assert.assertEquals("SKELETON", info.getValue(PlayerStat.KILLS_MOBS, 1, "mob"));
+        Assert.assertEquals("world_nether", info.getValue(PlayerStat.KILLS_MOBS, 1, "world"));
+        Assert.assertEquals(PLAYER, info.getRow(PlayerStat.KILLS_MOBS, 0).getUUID());
+        Assert.assertNull(info.getValue(PlayerStat.KILLS_MOBS, 0, "id"));
+        Assert.assertTrue(info.hasDataOfPlayerStat(PlayerStat.DEATHS));
+        Assert.assertFalse(info.hasDataOfPlayerStat(PlayerStat.VOTES));
+    }
+
+    @Test
+    public void testUpdateOfEvictedPlayer() {
+        OffHeapCacheBackend backend = new OffHeapCacheBackend(1, 4096);
+
+        backend.put(PLAYER, player(PLAYER));
+        backend.put(OTHER_PLAYER, player(OTHER_PLAYER));
+
+        backend.update(PLAYER, info -> info.applyDelta(PlayerStat.KILLS_MOBS,
+                StatzUtil.makeQuery(PLAYER, "id", 12, "mob", "CREEPER", "world", "world_nether", "value", 2.0)));
+
+        // Peeking does not bring the other player back to the heap.
+        Assert.assertEquals(6.5, backend.peek(OTHER_PLAYER).getTotalValue(PlayerStat.KILLS_MOBS), 0.0001);
+        Assert.assertEquals(1, backend.getHotPlayerCount());
+
+        backend.get(OTHER_PLAYER);
+
+        Assert.assertEquals(8.5, backend.get(PLAYER).getTotalValue(PlayerStat.KILLS_MOBS), 0.0001);
+
+        backend.remove(PLAYER);
+
+        Assert.assertFalse(backend.contains(PLAYER));
+        Assert.assertNull(backend.get(PLAYER));
+        Assert.assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void testManyDifferentValues() {
+        OffHeapCacheBackend backend = new OffHeapCacheBackend(1, 4096);
+        PlayerInfo info = new PlayerInfo(PLAYER);
+        List<Query> rows = new ArrayList<>();
+
+        // More different values than fit in the table of strings
+        for (int i = 0; i < 70000; i++) {
+            rows.add(StatzUtil.makeQuery(PLAYER, "id", 7, "mob", "MOB_" + i, "world", "world", "value", 1.0));
+        }
+
+        info.setData(PlayerStat.KILLS_MOBS, rows);
+
+        backend.put(PLAYER, info);
+        backend.put(OTHER_PLAYER, player(OTHER_PLAYER));
+
+        PlayerInfo restored = backend.get(PLAYER);
+
+        Assert.assertEquals(70000, restored.getNumberOfRows(PlayerStat.KILLS_MOBS));
+        Assert.assertEquals("MOB_0", restored.getValue(PlayerStat.KILLS_MOBS, 0, "mob"));
+        Assert.assertEquals("MOB_69999", restored.getValue(PlayerStat.KILLS_MOBS, 69999, "mob"));
+        Assert.assertEquals("world", restored.getValue(PlayerStat.KILLS_MOBS, 69999, "world"));
+    }
+}
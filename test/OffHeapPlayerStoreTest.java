@@ -0,0 +1,103 @@
+import me.staartvin.statz.cache.OffHeapPlayerStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.UUID;
+
+public class OffHeapPlayerStoreTest {
+
+    private static final UUID PLAYER = UUID.fromString("c5f39a1d-3786-46a7-8953-d4efabf8880d");
+
+    @Test
+    public void testPutReplaceAndRemove() {
+        OffHeapPlayerStore store = new OffHeapPlayerStore(1024);
+
+        Assert.assertNull(store.get(PLAYER));
+
+        store.put(PLAYER, new byte[]{1, 2, 3});
+        store.put(PLAYER, new byte[]{4, 5});
+
+        Assert.assertEquals(1, store.size());
+        Assert.assertArrayEquals(new byte[]{4, 5}, store.get(PLAYER));
+        Assert.assertEquals(2, store.getStoredBytes());
+
+        Assert.assertTrue(store.remove(PLAYER));
+        Assert.assertFalse(store.remove(PLAYER));
+        Assert.assertFalse(store.contains(PLAYER));
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testManyPlayers() {
+        OffHeapPlayerStore store = new OffHeapPlayerStore(4096);
+        Random random = new Random(7);
+        UUID[] players = new UUID[5000];
+
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+            store.put(players[i], new byte[]{(byte) i, (byte) (i >> 8)});
+        }
+
+        // Remove every other player, which also moves entries in the index.
+        for (int i = 0; i < players.length; i += 2) {
+            Assert.assertTrue(store.remove(players[i]));
+        }
+
+        Assert.assertEquals(players.length / 2, store.size());
+
+        for (int i = 0; i < players.length; i++) {
+            if (i % 2 == 0) {
+                Assert.assertNull(store.get(players[i]));
+            } else {
+                Assert.assertArrayEquals(new byte[]{(byte) i, (byte) (i >> 8)}, store.get(players[i]));
+            }
+        }
+
+        Assert.assertEquals(players.length / 2, new HashSet<>(store.getPlayers()).size());
+    }
+
+    @Test
+    public void testGarbageIsReleased() {
+        OffHeapPlayerStore store = new OffHeapPlayerStore(1024);
+        byte[] data = new byte[100];
+
+        Arrays.fill(data, (byte) 9);
+
+        // Rewriting the same player leaves garbage behind, which is released once a chunk is mostly garbage.
+        for (int i = 0; i < 1000; i++) {
+            store.put(PLAYER, data);
+        }
+
+        store.put(UUID.randomUUID(), new byte[]{1});
+
+        Assert.assertTrue(store.getAllocatedBytes() <= 3 * 1024);
+        Assert.assertArrayEquals(data, store.get(PLAYER));
+
+        // Records larger than a chunk get a chunk of their own.
+        byte[] large = new byte[5000];
+
+        store.put(PLAYER, large);
+
+        Assert.assertArrayEquals(large, store.get(PLAYER));
+    }
+
+    @Test
+    public void testClose() {
+        OffHeapPlayerStore store = new OffHeapPlayerStore(1024);
+
+        store.put(PLAYER, new byte[]{1, 2, 3});
+        store.close();
+
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(0, store.getAllocatedBytes());
+        Assert.assertFalse(store.contains(PLAYER));
+
+        // The store can still be used after it is closed.
+        store.put(PLAYER, new byte[]{4});
+
+        Assert.assertArrayEquals(new byte[]{4}, store.get(PLAYER));
+    }
+}
@@ -0,0 +1,86 @@
+import me.staartvin.statz.leaderboard.OrderStatisticTree;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class OrderStatisticTreeTest {
+
+    @Test
+    public void testGetAndIndexOf() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+
+        for (int value : new int[]{50, 10, 40, 20, 30}) {
+            Assert.assertTrue(tree.add(value));
+        }
+
+        // Equal elements are only stored once.
+        Assert.assertFalse(tree.add(30));
+
+        Assert.assertEquals(5, tree.size());
+        Assert.assertEquals(10, (int) tree.get(0));
+        Assert.assertEquals(30, (int) tree.get(2));
+        Assert.assertEquals(50, (int) tree.get(4));
+        Assert.assertEquals(3, tree.indexOf(40));
+        Assert.assertEquals(-1, tree.indexOf(35));
+    }
+
+    @Test
+    public void testRemove() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+
+        for (int i = 0; i < 10; i++) {
+            tree.add(i);
+        }
+
+        Assert.assertTrue(tree.remove(4));
+        Assert.assertFalse(tree.remove(4));
+
+        Assert.assertEquals(9, tree.size());
+        Assert.assertEquals(5, (int) tree.get(4));
+        Assert.assertEquals(4, tree.indexOf(5));
+    }
+
+    // Compare the tree with a sorted list after many random changes.
+    @Test
+    public void testRandomOperations() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.reverseOrder());
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(1000);
+
+            if (random.nextBoolean()) {
+                Assert.assertEquals(!expected.contains(value), tree.add(value));
+
+                if (!expected.contains(value)) {
+                    expected.add(value);
+                }
+            } else {
+                Assert.assertEquals(expected.remove((Integer) value), tree.remove(value));
+            }
+        }
+
+        expected.sort(Collections.reverseOrder());
+
+        Assert.assertEquals(expected.size(), tree.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), tree.get(i));
+            Assert.assertEquals(i, tree.indexOf(expected.get(i)));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+
+        tree.add(1);
+        tree.get(1);
+    }
+}
@@ -0,0 +1,75 @@
+import me.staartvin.statz.archive.PlayerArchive;
+import me.staartvin.statz.database.datatype.Query;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class PlayerArchiveTest {
+
+    private static Query makeRow(String uuid, String... columnsAndValues) {
+        Query row = new Query();
+
+        row.setValue("uuid", uuid);
+
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.setValue(columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+
+        return row;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String uuid = UUID.randomUUID().toString();
+        Map<String, List<Query>> rows = new LinkedHashMap<>();
+
+        rows.put("KILLS_MOBS", Arrays.asList(makeRow(uuid, "value", "12.0", "world", "world", "mob", "ZOMBIE"),
+                makeRow(uuid, "value", "3.0", "world", "world_nether", "mob", "BLAZE")));
+        rows.put("JOINS", Collections.singletonList(makeRow(uuid, "value", "40.0")));
+
+        Map<String, List<Query>> restored = PlayerArchive.decompress(PlayerArchive.compress(rows));
+
+        Assert.assertEquals(Arrays.asList("KILLS_MOBS", "JOINS"), new ArrayList<>(restored.keySet()));
+        Assert.assertEquals(2, restored.get("KILLS_MOBS").size());
+
+        Query kills = restored.get("KILLS_MOBS").get(1);
+
+        Assert.assertEquals(uuid, kills.getValue("uuid"));
+        Assert.assertEquals("world_nether", kills.getValue("world"));
+        Assert.assertEquals("BLAZE", kills.getValue("mob"));
+        Assert.assertEquals(3.0, kills.getValue(), 0);
+        Assert.assertEquals(40.0, restored.get("JOINS").get(0).getValue(), 0);
+    }
+
+    @Test
+    public void testMissingColumns() throws IOException {
+        Map<String, List<Query>> rows = new LinkedHashMap<>();
+
+        rows.put("BLOCKS_BROKEN", Arrays.asList(makeRow("a", "value", "1.0", "block", "STONE"), makeRow("b",
+                "value", "2.0")));
+
+        List<Query> restored = PlayerArchive.decompress(PlayerArchive.compress(rows)).get("BLOCKS_BROKEN");
+
+        Assert.assertEquals("STONE", restored.get(0).getValue("block"));
+        Assert.assertFalse(restored.get(1).hasColumn("block"));
+        Assert.assertEquals(2, restored.get(1).getData().size());
+    }
+
+    @Test
+    public void testEmptyArchive() throws IOException {
+        Assert.assertTrue(PlayerArchive.decompress(PlayerArchive.compress(new LinkedHashMap<>())).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidData() throws IOException {
+        PlayerArchive.decompress(new byte[]{1, 2, 3, 4});
+    }
+}
@@ -1,4 +1,5 @@
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.datamanager.player.PlayerStat;
 import me.staartvin.statz.util.StatzUtil;
@@ -237,4 +238,151 @@ public class PlayerInfoTest {
         Assert.assertEquals(111, nonConflictingPlayerInfo.getTotalValue(statType), 0);
         Assert.assertEquals(53, nonConflictingPlayerInfo.getTotalValue(statType2), 0);
     }
+
+    // Test that deltas are merged into existing rows and that totals stay up-to-date.
+    @Test
+    public void testApplyDelta() {
+        UUID uuid = UUID.fromString("3657b9cc-2518-4265-ad69-323e11286ce2");
+        PlayerStat statType = PlayerStat.KILLS_MOBS;
+
+        PlayerInfo playerInfo = new PlayerInfo(uuid);
+
+        playerInfo.addRow(statType, StatzUtil.makeQuery(
+                "UUID", uuid,
+                "World", "worldName1",
+                "mob", "COW",
+                "value", 5));
+
+        // Compute the totals before applying deltas, so they have to be updated.
+        Assert.assertEquals(5, playerInfo.getTotalValue(statType), 0);
+
+        List<Query> rowsBeforeDelta = playerInfo.getDataOfPlayerStat(statType);
+
+        playerInfo.applyDelta(statType, StatzUtil.makeQuery(
+                "UUID", uuid,
+                "World", "worldName1",
+                "mob", "COW",
+                "value", 2));
+
+        playerInfo.applyDelta(statType, StatzUtil.makeQuery(
+                "UUID", uuid,
+                "World", "worldName2",
+                "mob", "COW",
+                "value", 3));
+
+        // Verify that the conflicting delta was merged and the other was added.
+        Assert.assertEquals(2, playerInfo.getNumberOfRows(statType));
+
+        // Verify that the list that was obtained earlier was not changed.
+        Assert.assertEquals(1, rowsBeforeDelta.size());
+
+        Assert.assertEquals(10, playerInfo.getTotalValue(statType), 0);
+        Assert.assertEquals(7, playerInfo.getTotalValue(statType, new RowRequirement("world", "worldName1")), 0);
+        Assert.assertEquals(10, playerInfo.getTotalValue(statType, new RowRequirement("mob", "COW")), 0);
+        Assert.assertEquals(0, playerInfo.getTotalValue(statType, new RowRequirement("mob", "PIG")), 0);
+        Assert.assertEquals(3, playerInfo.getTotalValue(statType, new RowRequirement("mob", "COW"),
+                new RowRequirement("world", "worldName2")), 0);
+    }
+
+    // Test that filtered rows are looked up correctly and stay correct after deltas are applied.
+    @Test
+    public void testGetRowsWithRequirements() {
+        UUID uuid = UUID.fromString("3657b9cc-2518-4265-ad69-323e11286ce2");
+        PlayerStat statType = PlayerStat.BLOCKS_BROKEN;
+
+        PlayerInfo playerInfo = new PlayerInfo(uuid);
+
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "world", "world1", "block", "STONE",
+                "value", 1));
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "world", "world2", "block", "STONE",
+                "value", 2));
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "world", "world1", "block", "DIRT",
+                "value", 4));
+
+        List<Query> stoneRows = playerInfo.getRows(statType, new RowRequirement("block", "STONE"));
+
+        Assert.assertEquals(2, stoneRows.size());
+        Assert.assertEquals(1, playerInfo.getRows(statType, new RowRequirement("block", "STONE"),
+                new RowRequirement("world", "world1")).size());
+
+        // Merge into an existing row and add a new row.
+        playerInfo.applyDelta(statType, StatzUtil.makeQuery("UUID", uuid, "world", "world1", "block", "STONE",
+                "value", 10));
+        playerInfo.applyDelta(statType, StatzUtil.makeQuery("UUID", uuid, "world", "world3", "block", "STONE",
+                "value", 20));
+
+        // The list that was returned earlier has not changed.
+        Assert.assertEquals(2, stoneRows.size());
+
+        List<Query> updatedStoneRows = playerInfo.getRows(statType, new RowRequirement("block", "STONE"));
+
+        Assert.assertEquals(3, updatedStoneRows.size());
+        Assert.assertEquals(37, playerInfo.getTotalValue(statType), 0);
+        Assert.assertEquals(11, playerInfo.getTotalValue(statType, new RowRequirement("block", "STONE"),
+                new RowRequirement("world", "world1")), 0);
+
+        try {
+            updatedStoneRows.clear();
+            Assert.fail("Rows should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    // Test that looking up rows by a column that does not hold text gives the same rows as checking every row.
+    @Test
+    public void testGetRowsWithNonTextColumn() {
+        UUID uuid = UUID.fromString("3657b9cc-2518-4265-ad69-323e11286ce2");
+        PlayerStat statType = PlayerStat.BLOCKS_BROKEN;
+
+        PlayerInfo playerInfo = new PlayerInfo(uuid);
+
+        Query numberRow = StatzUtil.makeQuery("UUID", uuid, "block", "STONE", "value", 1);
+        numberRow.getData().put("data", 3);
+
+        playerInfo.addRow(statType, numberRow);
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "block", "STONE", "data", 3, "value", 2));
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "block", "DIRT", "data", 4, "value", 4));
+
+        RowRequirement requirement = new RowRequirement("data", "3");
+
+        List<Query> rows = playerInfo.getRows(statType, requirement);
+
+        Assert.assertEquals(2, rows.size());
+
+        for (Query row : playerInfo.getDataOfPlayerStat(statType)) {
+            Assert.assertEquals(rows.contains(row), row.meetsRequirement(requirement));
+        }
+    }
+
+    // Test that the total of a numeric requirement column is the same as the sum of the rows that meet it.
+    @Test
+    public void testGetTotalValueWithNumericColumn() {
+        UUID uuid = UUID.fromString("3657b9cc-2518-4265-ad69-323e11286ce2");
+        PlayerStat statType = PlayerStat.BLOCKS_BROKEN;
+
+        PlayerInfo playerInfo = new PlayerInfo(uuid);
+
+        Query numberRow = StatzUtil.makeQuery("UUID", uuid, "block", "STONE", "value", 1);
+        numberRow.getData().put("data", 3);
+
+        playerInfo.addRow(statType, numberRow);
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "block", "DIRT", "data", 3, "value", 2));
+        playerInfo.addRow(statType, StatzUtil.makeQuery("UUID", uuid, "block", "DIRT", "data", 4, "value", 4));
+
+        for (String data : new String[]{"3", "4", "5"}) {
+            RowRequirement requirement = new RowRequirement("data", data);
+            double expected = 0;
+
+            for (Query row : playerInfo.getDataOfPlayerStat(statType)) {
+                if (row.meetsRequirement(requirement)) {
+                    expected += row.getValue();
+                }
+            }
+
+            Assert.assertEquals(expected, playerInfo.getTotalValue(statType, requirement), 0);
+        }
+
+        Assert.assertEquals(3, playerInfo.getTotalValue(statType, new RowRequirement("data", "3")), 0);
+    }
 }
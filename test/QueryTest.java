@@ -384,4 +384,21 @@ public class QueryTest {
         Assert.assertEquals(400, nonConflictingQuery.getValue(), 0);
     }
 
+    @Test
+    public void testUUIDChangesWithColumn() {
+        Query query = StatzUtil.makeQuery(
+                "uuid", "3657b9cc-2518-4265-ad69-323e11286ce2",
+                "value", 1);
+
+        Assert.assertEquals(UUID.fromString("3657b9cc-2518-4265-ad69-323e11286ce2"), query.getUUID());
+
+        query.setValue("uuid", "c9d7c0f4-2a5b-4e4c-9d3e-6b1f0a8e2d71");
+
+        Assert.assertEquals(UUID.fromString("c9d7c0f4-2a5b-4e4c-9d3e-6b1f0a8e2d71"), query.getUUID());
+
+        query.removeColumn("uuid");
+
+        Assert.assertNull(query.getUUID());
+    }
+
 }
@@ -0,0 +1,201 @@
+import me.staartvin.statz.database.segment.PlayerRows;
+import me.staartvin.statz.database.segment.RowChange;
+import me.staartvin.statz.database.segment.SegmentLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class SegmentLogTest {
+
+    private static final UUID PLAYER = UUID.fromString("c5f39a1d-3786-46a7-8953-d4efabf8880d");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private SegmentLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("segments");
+        log = this.openLog();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+    }
+
+    private SegmentLog openLog() throws IOException {
+        SegmentLog segmentLog = new SegmentLog(directory, 4096);
+
+        segmentLog.open(sequence -> false);
+
+        return segmentLog;
+    }
+
+    private static RowChange kills(String mob, double value, boolean add) {
+        Map<String, String> columns = new LinkedHashMap<>();
+
+        columns.put("mob", mob);
+        columns.put("world", "world");
+        columns.put("value", String.valueOf(value));
+
+        return new RowChange("kills", add, 2, columns);
+    }
+
+    private void write(RowChange... changes) throws IOException {
+        log.write(Collections.singletonMap(PLAYER, Arrays.asList(changes)), Collections.emptyList(), null);
+    }
+
+    private double getValue(String mob) throws IOException {
+        for (RowChange row : log.read(PLAYER).getRows("kills")) {
+            if (row.getColumns().get("mob").equals(mob)) {
+                return Double.parseDouble(row.getColumns().get("value"));
+            }
+        }
+
+        return -1;
+    }
+
+    @Test
+    public void testDeltasAreMerged() throws IOException {
+        this.write(kills("ZOMBIE", 2, true), kills("SPIDER", 1, true));
+        this.write(kills("ZOMBIE", 3, true));
+
+        Assert.assertEquals(5, this.getValue("ZOMBIE"), 0);
+        Assert.assertEquals(1, this.getValue("SPIDER"), 0);
+
+        this.write(kills("ZOMBIE", 1, false));
+
+        Assert.assertEquals(1, this.getValue("ZOMBIE"), 0);
+        Assert.assertTrue(log.read(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    public void testRowsSurviveReopen() throws IOException {
+        // Enough records to fill more than one segment
+        for (int i = 0; i < 200; i++) {
+            this.write(kills("ZOMBIE", 1, true));
+        }
+
+        log.close();
+        log = this.openLog();
+
+        Assert.assertEquals(200, this.getValue("ZOMBIE"), 0);
+
+        this.write(kills("ZOMBIE", 1, true));
+
+        Assert.assertEquals(201, this.getValue("ZOMBIE"), 0);
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            this.write(kills("ZOMBIE", 1, true));
+        }
+
+        long[] compacted = {-1};
+
+        log.compact(sequence -> compacted[0] = sequence);
+
+        Assert.assertEquals(200, compacted[0]);
+        Assert.assertEquals(0, log.getUncompactedBytes());
+        Assert.assertEquals(200, this.getValue("ZOMBIE"), 0);
+
+        this.write(kills("ZOMBIE", 1, true));
+        log.close();
+        log = this.openLog();
+
+        Assert.assertEquals(201, this.getValue("ZOMBIE"), 0);
+        Assert.assertEquals(200, log.getCompactedSequence());
+    }
+
+    @Test
+    public void testPurge() throws IOException {
+        this.write(kills("ZOMBIE", 4, true));
+        log.compact(sequence -> {
+        });
+
+        log.write(Collections.emptyMap(), Collections.singletonList(PLAYER), null);
+
+        Assert.assertTrue(log.getPlayers().isEmpty());
+
+        log.close();
+        log = this.openLog();
+
+        Assert.assertTrue(log.read(PLAYER).isEmpty());
+    }
+
+    @Test
+    public void testUnconfirmedBatchIsIgnored() throws IOException {
+        this.write(kills("ZOMBIE", 1, true));
+
+        try {
+            log.write(Collections.singletonMap(PLAYER, Collections.singletonList(kills("ZOMBIE", 5, true))),
+                    Collections.emptyList(), sequence -> {
+                        throw new IllegalStateException("Not confirmed");
+                    });
+            Assert.fail();
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(1, this.getValue("ZOMBIE"), 0);
+
+        log.close();
+        log = this.openLog();
+
+        Assert.assertEquals(1, this.getValue("ZOMBIE"), 0);
+    }
+
+    @Test
+    public void testDamagedTailIsIgnored() throws IOException {
+        this.write(kills("ZOMBIE", 1, true));
+        this.write(kills("ZOMBIE", 1, true));
+        log.close();
+
+        File segment = new File(directory, "deltas-00000001.seg");
+
+        // Damage the last byte of the second batch.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long end = 0;
+
+            while (true) {
+                file.seek(end);
+                int length = file.readInt();
+
+                if (length == 0) {
+                    break;
+                }
+
+                end += 8 + length;
+            }
+
+            file.seek(end - 1);
+            file.writeByte(0x7F);
+        }
+
+        log = this.openLog();
+
+        Assert.assertEquals(1, this.getValue("ZOMBIE"), 0);
+
+        this.write(kills("ZOMBIE", 2, true));
+        log.close();
+        log = this.openLog();
+
+        Assert.assertEquals(3, this.getValue("ZOMBIE"), 0);
+    }
+}
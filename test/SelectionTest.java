@@ -0,0 +1,131 @@
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Selection;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SelectionTest {
+
+    private static final String[] MOBS = {"ZOMBIE", "SKELETON", "CREEPER", "SPIDER", "ZOMBIE_VILLAGER", "WITCH"};
+    private static final String[] WORLDS = {"world", "world_nether"};
+
+    private Connection connection;
+    private Table table;
+    private final List<Query> rows = new ArrayList<>();
+
+    @Before
+    public void openDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + DatabaseConnector.prefix + "test_kills (id INTEGER PRIMARY " +
+                    "KEY, mob TEXT NOT NULL, world TEXT NOT NULL, value DOUBLE NOT NULL)");
+        }
+
+        table = new SQLiteTable("test_kills");
+        table.addColumn("id", true, SQLDataType.INT);
+        table.addColumn("mob", false, SQLDataType.TEXT);
+        table.addColumn("world", false, SQLDataType.TEXT);
+        table.addColumn("value", false, SQLDataType.DOUBLE);
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table.getTableName() +
+                " (id, mob, world, value) VALUES (?, ?, ?, ?)")) {
+            for (int id = 1; id <= 24; id++) {
+                Query row = new Query();
+
+                row.setValue("id", id);
+                row.setValue("mob", MOBS[id % MOBS.length]);
+                row.setValue("world", WORLDS[id % WORLDS.length]);
+                // Every row has a different value, so sorting on it gives a single order.
+                row.setValue("value", (id * 7 % 24) + 0.5);
+
+                insert.setObject(1, row.getValue("id"));
+                insert.setObject(2, row.getValue("mob"));
+                insert.setObject(3, row.getValue("world"));
+                insert.setObject(4, row.getValue("value"));
+                insert.executeUpdate();
+
+                rows.add(row);
+            }
+        }
+    }
+
+    @After
+    public void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    private Selection selection() {
+        return new Selection(table).columns("id");
+    }
+
+    // Check that the selection gives the same rows, in the same order, in memory and in the database.
+    private void assertSameRows(Selection selection) throws SQLException {
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+
+        try (PreparedStatement select = connection.prepareStatement(selection.toSQL())) {
+            List<Object> parameters = selection.getParameters();
+
+            for (int i = 0; i < parameters.size(); i++) {
+                select.setObject(i + 1, parameters.get(i));
+            }
+
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    expected.add(resultSet.getInt("id"));
+                }
+            }
+        }
+
+        for (Query row : selection.apply(rows)) {
+            actual.add(Integer.parseInt(row.getValue("id").toString()));
+        }
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testApplyMatchesSQL() throws SQLException {
+        assertSameRows(selection().whereEquals("world", "world_nether").orderBy("value", true));
+        assertSameRows(selection().whereIn("mob", Arrays.asList("ZOMBIE", "WITCH", "SPIDER")).orderBy("value",
+                false));
+        assertSameRows(selection().whereIn("mob", Arrays.asList(MOBS).subList(0, 5)).whereAfter("id", 10)
+                .orderBy("id", true));
+        assertSameRows(selection().whereBetween("value", 2, 12.5).orderBy("value", false));
+        assertSameRows(selection().whereBetween("value", null, 6).whereEquals("world", "world").orderBy("value",
+                true));
+        assertSameRows(selection().whereStartsWith("mob", "zombie").orderBy("value", true).limit(3));
+        assertSameRows(selection().orderBy("value", false).limit(5));
+    }
+
+    @Test
+    public void testInListsShareStatements() {
+        Selection three = selection().whereIn("mob", Arrays.asList(MOBS).subList(0, 3));
+        Selection four = selection().whereIn("mob", Arrays.asList(MOBS).subList(0, 4));
+        Selection five = selection().whereIn("mob", Arrays.asList(MOBS).subList(0, 5));
+
+        Assert.assertEquals(four.toSQL(), three.toSQL());
+        Assert.assertNotEquals(four.toSQL(), five.toSQL());
+
+        // The last value is repeated to fill the list.
+        Assert.assertEquals(Arrays.asList("ZOMBIE", "SKELETON", "CREEPER", "CREEPER"), three.getParameters());
+        Assert.assertEquals(8, five.getParameters().size());
+    }
+}
@@ -0,0 +1,48 @@
+import me.staartvin.statz.importer.VanillaStatistics;
+import org.json.simple.parser.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class VanillaStatisticsTest {
+
+    private static final String STATISTICS = "{\"stats\": {" +
+            "\"minecraft:custom\": {\"minecraft:leave_game\": 12, \"minecraft:deaths\": 3}," +
+            "\"minecraft:mined\": {\"minecraft:stone\": 250, \"minecraft:dirt\": 40}}," +
+            "\"DataVersion\": 3578}";
+
+    @Test
+    public void testReadSections() throws IOException, ParseException {
+        VanillaStatistics statistics = VanillaStatistics.read(new StringReader(STATISTICS));
+
+        Assert.assertTrue(statistics.hasSection(VanillaStatistics.CUSTOM));
+        Assert.assertTrue(statistics.hasSection(VanillaStatistics.MINED));
+        Assert.assertFalse(statistics.hasSection(VanillaStatistics.USED));
+
+        Assert.assertEquals(12, statistics.getStatistic(VanillaStatistics.CUSTOM, "minecraft:leave_game"));
+        Assert.assertEquals(250, statistics.getStatistic(VanillaStatistics.MINED, "minecraft:stone"));
+        Assert.assertEquals(2, statistics.getSection(VanillaStatistics.MINED).size());
+    }
+
+    @Test
+    public void testMissingStatistics() throws IOException, ParseException {
+        VanillaStatistics statistics = VanillaStatistics.read(new StringReader(STATISTICS));
+
+        Assert.assertEquals(0, statistics.getStatistic(VanillaStatistics.CUSTOM, "minecraft:jump"));
+        Assert.assertEquals(0, statistics.getStatistic(VanillaStatistics.USED, "minecraft:bow"));
+        Assert.assertTrue(statistics.getSection(VanillaStatistics.KILLED).isEmpty());
+    }
+
+    @Test
+    public void testIgnoreOtherValues() throws IOException, ParseException {
+        VanillaStatistics statistics = VanillaStatistics.read(new StringReader("{\"DataVersion\": 3578, " +
+                "\"custom\": {\"a\": {\"b\": 1}}, \"stats\": {\"minecraft:custom\": {\"minecraft:jump\": 5, " +
+                "\"minecraft:list\": [1, 2]}}}"));
+
+        Assert.assertFalse(statistics.hasSection("a"));
+        Assert.assertEquals(5, statistics.getStatistic(VanillaStatistics.CUSTOM, "minecraft:jump"));
+        Assert.assertEquals(1, statistics.getSection(VanillaStatistics.CUSTOM).size());
+    }
+}